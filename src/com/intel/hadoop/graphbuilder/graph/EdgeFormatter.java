@@ -18,14 +18,40 @@
  */
 package com.intel.hadoop.graphbuilder.graph;
 
+import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
 
 /**
- * Controls the low level string representation of the graph output.
+ * Controls the low level string representation of the graph output. The
+ * {@code write} methods stream the output into a {@code Writer}, and are used
+ * by the {@code GraphOutput} to write large partitions in chunks; the
+ * {@code StringWriter} methods build the whole output in memory.
  * 
  */
 public interface EdgeFormatter {
 
+  /**
+   * Writes the string representation of the graph's adjacency structure.
+   * 
+   * @param g
+   *          the graph to output.
+   * @param out
+   * @throws IOException
+   */
+  void writeStruct(Graph g, Writer out) throws IOException;
+
+  /**
+   * Writes the string representation of all the graph's edge data, aligned
+   * with its adjacency structure.
+   * 
+   * @param g
+   *          the graph to output.
+   * @param out
+   * @throws IOException
+   */
+  void writeEdata(Graph g, Writer out) throws IOException;
+
   /**
    * @param g
    *          the graph to output.
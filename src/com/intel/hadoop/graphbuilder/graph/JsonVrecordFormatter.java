@@ -20,6 +20,7 @@ package com.intel.hadoop.graphbuilder.graph;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
 
 import net.minidev.json.JSONObject;
 
@@ -30,7 +31,7 @@ import net.minidev.json.JSONObject;
 public class JsonVrecordFormatter implements VrecordFormatter {
 
   @Override
-  public StringWriter vrecordWriter(VertexRecord vrec) {
+  public void writeVrecord(VertexRecord vrec, Writer out) throws IOException {
     JSONObject obj = new JSONObject();
     obj.put("gvid", vrec.vid());
     obj.put("owner", vrec.owner());
@@ -38,9 +39,14 @@ public class JsonVrecordFormatter implements VrecordFormatter {
     obj.put("outEdges", vrec.outEdges());
     obj.put("mirrors", vrec.mirrorList());
     obj.put("vdata", vrec.vdata());
+    obj.writeJSONString(out);
+  }
+
+  @Override
+  public StringWriter vrecordWriter(VertexRecord vrec) {
     StringWriter out = new StringWriter();
     try {
-      obj.writeJSONString(out);
+      writeVrecord(vrec, out);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -18,7 +18,9 @@
  */
 package com.intel.hadoop.graphbuilder.graph;
 
+import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
 
 /**
  * Controls the low level string representation of the {@code VertexRecord}.
@@ -26,6 +28,16 @@ import java.io.StringWriter;
  */
 public interface VrecordFormatter {
 
+  /**
+   * Writes the string representation of the {@code VertexRecord}.
+   * 
+   * @param vrec
+   *          the {@code VertexRecord} to output.
+   * @param out
+   * @throws IOException
+   */
+  void writeVrecord(VertexRecord vrec, Writer out) throws IOException;
+
   /**
    * @param vrec
    *          the {@code VertexRecord} to output.
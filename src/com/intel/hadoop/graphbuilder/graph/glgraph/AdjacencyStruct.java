@@ -0,0 +1,56 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.graph.glgraph;
+
+/**
+ * Read only access to the rows of a compressed sparse adjacency structure.
+ * Row i spans the entries {@code [begin(i), end(i))}, and {@code col(j)} is
+ * the column of the j-th entry. {@code EdgeList} only depends on this
+ * interface, so the same edge traversal works on a heap
+ * {@link SparseGraphStruct} and on a memory mapped {@link MappedGraphStruct}.
+ */
+public interface AdjacencyStruct {
+  /**
+   * @return the number of rows.
+   */
+  int numVertices();
+
+  /**
+   * @return the number of non-zero entries.
+   */
+  int numEdges();
+
+  /**
+   * @param row
+   * @return the begin index of the entries of the row.
+   */
+  int begin(int row);
+
+  /**
+   * @param row
+   * @return the end index (exclusive) of the entries of the row.
+   */
+  int end(int row);
+
+  /**
+   * @param i
+   * @return the column index of the i-th non-zero entry.
+   */
+  int col(int i);
+}
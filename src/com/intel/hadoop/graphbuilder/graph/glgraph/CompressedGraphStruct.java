@@ -0,0 +1,221 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.graph.glgraph;
+
+import java.util.Arrays;
+
+import com.intel.hadoop.graphbuilder.util.IntArrayList;
+
+/**
+ * A compressed, read only variant of {@link SparseGraphStruct}. The row
+ * offsets are kept as an int array, so {@code begin} and {@code end} stay
+ * constant time, but the column index is gap encoded into a byte array: each
+ * column is written as the zigzag varint of its difference to the previous
+ * column. Since {@code GLGraph} sorts the columns within each row, most gaps
+ * take one byte.
+ * <p>
+ * The column index is cut into blocks of {@link #BLOCK_SIZE} entries. The
+ * first column of each block is written as is, and a skip index holds the
+ * byte offset of each block, so a column is decoded from the start of its
+ * block. {@link #col(int)} costs up to {@code BLOCK_SIZE} varint decodes;
+ * sequential scans should use a {@link Cursor}, which decodes each column
+ * once.
+ * </p>
+ */
+public class CompressedGraphStruct implements AdjacencyStruct {
+  /** Number of columns between two entries of the skip index. */
+  public static final int BLOCK_SIZE = 64;
+
+  /**
+   * Compresses an adjacency structure.
+   * 
+   * @param s
+   */
+  public CompressedGraphStruct(AdjacencyStruct s) {
+    int numVertices = s.numVertices();
+    numEdges = s.numEdges();
+    rowOffsets = new int[numVertices + 1];
+    for (int v = 0; v < numVertices; ++v)
+      rowOffsets[v + 1] = s.end(v);
+    blockOffsets = new int[(numEdges + BLOCK_SIZE - 1) / BLOCK_SIZE + 1];
+    byte[] buf = new byte[Math.max(16, numEdges + numEdges / 2)];
+    int pos = 0;
+    int prev = 0;
+    for (int i = 0; i < numEdges; ++i) {
+      if (buf.length - pos < 5)
+        buf = Arrays.copyOf(buf, buf.length + (buf.length >> 1));
+      int col = s.col(i);
+      if (i % BLOCK_SIZE == 0) {
+        blockOffsets[i / BLOCK_SIZE] = pos;
+        pos = writeVarint(buf, pos, col);
+      } else {
+        int delta = col - prev;
+        pos = writeVarint(buf, pos, (delta << 1) ^ (delta >> 31));
+      }
+      prev = col;
+    }
+    blockOffsets[blockOffsets.length - 1] = pos;
+    data = Arrays.copyOf(buf, pos);
+  }
+
+  @Override
+  public int numVertices() {
+    return rowOffsets.length - 1;
+  }
+
+  @Override
+  public int numEdges() {
+    return numEdges;
+  }
+
+  @Override
+  public int begin(int row) {
+    return rowOffsets[row];
+  }
+
+  @Override
+  public int end(int row) {
+    return rowOffsets[row + 1];
+  }
+
+  @Override
+  public int col(int i) {
+    return cursor(i).next();
+  }
+
+  /**
+   * @param i
+   *          index of the first column to decode.
+   * @return a cursor positioned on the i-th column.
+   */
+  public Cursor cursor(int i) {
+    if (i < 0 || i > numEdges)
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: "
+          + numEdges);
+    Cursor c = new Cursor(i / BLOCK_SIZE * BLOCK_SIZE);
+    while (c.index < i)
+      c.next();
+    return c;
+  }
+
+  /**
+   * Decodes the columns of a row.
+   * 
+   * @param row
+   * @param dest
+   *          array of length at least {@code end(row) - begin(row)}.
+   * @return the number of columns of the row.
+   */
+  public int decodeRow(int row, int[] dest) {
+    int n = end(row) - begin(row);
+    if (n > 0) {
+      Cursor c = cursor(begin(row));
+      for (int j = 0; j < n; ++j)
+        dest[j] = c.next();
+    }
+    return n;
+  }
+
+  /**
+   * @return a {@code SparseGraphStruct} with the same entries.
+   */
+  public SparseGraphStruct decompress() {
+    int[] cols = new int[numEdges];
+    if (numEdges > 0) {
+      Cursor c = cursor(0);
+      for (int i = 0; i < numEdges; ++i)
+        cols[i] = c.next();
+    }
+    return new SparseGraphStruct(new IntArrayList(rowOffsets.clone(),
+        rowOffsets.length), new IntArrayList(cols, numEdges));
+  }
+
+  /**
+   * @return the number of bytes used by the arrays of this structure.
+   */
+  public long sizeInBytes() {
+    return data.length + 4L * (rowOffsets.length + blockOffsets.length);
+  }
+
+  /**
+   * Sequential decoder over the column index. A cursor is not thread safe, but
+   * any number of cursors can read the same structure concurrently.
+   */
+  public class Cursor {
+    private Cursor(int blockStart) {
+      index = blockStart;
+      pos = blockOffsets[blockStart / BLOCK_SIZE];
+    }
+
+    /**
+     * @return true if there are more columns.
+     */
+    public boolean hasNext() {
+      return index < numEdges;
+    }
+
+    /**
+     * @return the index of the column returned by the next call to
+     *         {@link #next()}.
+     */
+    public int index() {
+      return index;
+    }
+
+    /**
+     * @return the next column.
+     */
+    public int next() {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = data[pos++];
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      if (index++ % BLOCK_SIZE == 0)
+        prev = value;
+      else
+        prev += (value >>> 1) ^ -(value & 1);
+      return prev;
+    }
+
+    private int index;
+    private int pos;
+    private int prev;
+  }
+
+  private static int writeVarint(byte[] buf, int pos, int v) {
+    while ((v & ~0x7F) != 0) {
+      buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    buf[pos++] = (byte) v;
+    return pos;
+  }
+
+  /** Row offsets, with length = #rows + 1. */
+  private int[] rowOffsets;
+  /** Byte offset of each block of columns, with a final end offset. */
+  private int[] blockOffsets;
+  /** Gap and varint encoded column index. */
+  private byte[] data;
+  private int numEdges;
+}
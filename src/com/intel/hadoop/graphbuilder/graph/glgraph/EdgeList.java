@@ -26,11 +26,11 @@ import java.util.Iterator;
  * property with respect to a center vertex. In other words, given a center
  * vertex v, the list represents either the incoming or outgoing edges of v
  * depending on the direction variable {@code dir}. The list has a pointer to an
- * {@code SparseGraphStruct} object as its backend storage. The element of the
+ * {@code AdjacencyStruct} object as its backend storage. The element of the
  * list is an {@code EdgeType} object which contains lazy pointers to the
  * storage used for obtaining the actual data when evaluated.
  * 
- * @see SparseGraphStruct
+ * @see AdjacencyStruct
  * @see EdgeType
  */
 public class EdgeList implements Iterable<EdgeType> {
@@ -44,7 +44,7 @@ public class EdgeList implements Iterable<EdgeType> {
   }
 
   /**
-   * Construct an EdgeList containing all edges in the {@code SparseGraphStruct}
+   * Construct an EdgeList containing all edges in the {@code AdjacencyStruct}
    * that are incoming (outgoing) edges with respect to the given vertex. The
    * direction is determined by the parameter {@code dir}.
    * 
@@ -55,7 +55,7 @@ public class EdgeList implements Iterable<EdgeType> {
    * @param dir
    *          the direction of edges with respect to the center vertex.
    */
-  public EdgeList(int vid, SparseGraphStruct store, EdgeType.DIR dir) {
+  public EdgeList(int vid, AdjacencyStruct store, EdgeType.DIR dir) {
     this.store = store;
     this.center = vid;
     this.begin = store.begin(vid);
@@ -92,6 +92,8 @@ public class EdgeList implements Iterable<EdgeType> {
     EdgeIterator(EdgeList list) {
       this.list = list;
       this.cur = list.begin;
+      if (list.store instanceof CompressedGraphStruct && list.begin < list.end)
+        cursor = ((CompressedGraphStruct) list.store).cursor(list.begin);
     }
 
     @Override
@@ -101,8 +103,8 @@ public class EdgeList implements Iterable<EdgeType> {
 
     @Override
     public final EdgeType next() {
-      EdgeType ret = new EdgeType(list.center, list.store.getColIndex()
-          .get(cur), cur, list.dir);
+      int col = cursor == null ? list.store.col(cur) : cursor.next();
+      EdgeType ret = new EdgeType(list.center, col, cur, list.dir);
       ++cur;
       return ret;
     }
@@ -116,6 +118,8 @@ public class EdgeList implements Iterable<EdgeType> {
     int cur;
     /** The list to be iterate. */
     EdgeList list;
+    /** Sequential decoder of the columns, if the storage is compressed. */
+    CompressedGraphStruct.Cursor cursor;
   }
 
   /**
@@ -140,5 +144,5 @@ public class EdgeList implements Iterable<EdgeType> {
   /** The direction of the edges with respect to the center vertex. */
   EdgeType.DIR dir;
   /** The back end dense storage of the edges. */
-  SparseGraphStruct store;
+  AdjacencyStruct store;
 }
@@ -19,12 +19,18 @@
 package com.intel.hadoop.graphbuilder.graph.glgraph;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import com.intel.hadoop.graphbuilder.util.IntArrayList;
+import com.intel.hadoop.graphbuilder.util.Parallel;
+import com.intel.hadoop.graphbuilder.util.Parallel.RangeOperation;
+
 /**
  * Stores a list of edges as 3 separate arrays of source id, target id and edge
  * data respectively. This class is used as a temporary storage for edges in the
- * {@code GLGraph} before finalization.
+ * {@code GLGraph} before finalization. Source and target ids are local vertex
+ * ids and are kept in primitive {@code IntArrayList}s to avoid boxing.
  * 
  * @see GLGraph#addEdge(Object, Object, Object)
  * @see GLGraph#finalize()
@@ -36,8 +42,8 @@ public class EdgeListStorage<EdgeData> {
    */
   public EdgeListStorage() {
     edata = new ArrayList<EdgeData>();
-    sources = new ArrayList<Integer>();
-    targets = new ArrayList<Integer>();
+    sources = new IntArrayList();
+    targets = new IntArrayList();
   }
 
   /**
@@ -47,8 +53,8 @@ public class EdgeListStorage<EdgeData> {
    */
   public EdgeListStorage(int size) {
     edata = new ArrayList<EdgeData>(size);
-    sources = new ArrayList<Integer>(size);
-    targets = new ArrayList<Integer>(size);
+    sources = new IntArrayList(size);
+    targets = new IntArrayList(size);
   }
 
   /**
@@ -70,7 +76,7 @@ public class EdgeListStorage<EdgeData> {
    * @param target
    * @param data
    */
-  public void addEdge(Integer source, Integer target, EdgeData data) {
+  public void addEdge(int source, int target, EdgeData data) {
     synchronized (this) {
       sources.add(source);
       targets.add(target);
@@ -118,35 +124,39 @@ public class EdgeListStorage<EdgeData> {
   }
 
   /**
-   * Inplace shuffle the edges in the storage by a permutation array.
+   * Inplace shuffle the edges in the storage by a permutation array. After the
+   * shuffle, the i-th edge is the edge previously at {@code permute[i]}. The
+   * permutation array is reset to the identity.
    * 
    * @permute A permutation array of the same size as the storage.
    * @throws Exception
    */
-  public void inplace_shuffle(List<Integer> permute) throws Exception {
-    if (permute.size() != edata.size()) {
+  public void inplace_shuffle(int[] permute) throws Exception {
+    if (permute.length != edata.size()) {
       throw new Exception("Attempt to shuffle"
           + "the edgelist with permutation array of different size.");
     }
-    for (int i = 0; i < permute.size(); ++i) {
-      if (i != permute.get(i)) {
-        int sourceSwap = sources.get(i);
-        int targetSwap = targets.get(i);
+    int[] src = sources.elements();
+    int[] dst = targets.elements();
+    for (int i = 0; i < permute.length; ++i) {
+      if (i != permute[i]) {
+        int sourceSwap = src[i];
+        int targetSwap = dst[i];
         EdgeData edataSwap = edata.get(i);
         int j = i;
-        while (j != permute.get(j)) {
-          int next = permute.get(j);
+        while (j != permute[j]) {
+          int next = permute[j];
           if (next != i) {
-            sources.set(j, sources.get(next));
-            targets.set(j, targets.get(next));
+            src[j] = src[next];
+            dst[j] = dst[next];
             edata.set(j, edata.get(next));
-            permute.set(j, j);
+            permute[j] = j;
             j = next;
           } else {
-            sources.set(j, sourceSwap);
-            targets.set(j, targetSwap);
+            src[j] = sourceSwap;
+            dst[j] = targetSwap;
             edata.set(j, edataSwap);
-            permute.set(j, j);
+            permute[j] = j;
             break;
           }
         }
@@ -154,6 +164,84 @@ public class EdgeListStorage<EdgeData> {
     }
   }
 
+  /**
+   * Out of place shuffle the edges in the storage by a permutation array. The
+   * edges are gathered in parallel into new arrays, which replace the old
+   * ones. Unlike {@link #inplace_shuffle(int[])}, the permutation array is
+   * left unchanged, but the storage temporarily needs
+   * {@link #outofplaceShuffleBytes()} extra bytes.
+   * 
+   * @param permute
+   *          A permutation array of the same size as the storage.
+   * @param parfor
+   * @throws Exception
+   */
+  public void outofplace_shuffle(final int[] permute, Parallel parfor)
+      throws Exception {
+    if (permute.length != edata.size()) {
+      throw new Exception("Attempt to shuffle"
+          + "the edgelist with permutation array of different size.");
+    }
+    final int n = permute.length;
+    final int[] src = sources.elements();
+    final int[] dst = targets.elements();
+    final int[] newSrc = new int[n];
+    final int[] newDst = new int[n];
+    final ArrayList<EdgeData> oldEdata = edata;
+    final ArrayList<EdgeData> newEdata = new ArrayList<EdgeData>(
+        Collections.<EdgeData> nCopies(n, null));
+    parfor.For(0, n, new RangeOperation() {
+      @Override
+      public void perform(int begin, int end) {
+        for (int i = begin; i < end; ++i) {
+          int j = permute[i];
+          newSrc[i] = src[j];
+          newDst[i] = dst[j];
+          newEdata.set(i, oldEdata.get(j));
+        }
+      }
+    });
+    sources = new IntArrayList(newSrc, n);
+    targets = new IntArrayList(newDst, n);
+    edata = newEdata;
+  }
+
+  /**
+   * Shuffles the edges by a permutation array, out of place if the extra
+   * memory fits in the budget, and in place otherwise. The content of the
+   * permutation array is undefined afterwards.
+   * 
+   * @param permute
+   *          A permutation array of the same size as the storage.
+   * @param parfor
+   * @param memoryBudget
+   *          the number of bytes the out of place shuffle may use, or a
+   *          negative value to use half of the currently free heap.
+   * @return true if the shuffle was done out of place.
+   * @throws Exception
+   */
+  public boolean shuffle(int[] permute, Parallel parfor, long memoryBudget)
+      throws Exception {
+    if (memoryBudget < 0) {
+      Runtime rt = Runtime.getRuntime();
+      memoryBudget = (rt.maxMemory() - rt.totalMemory() + rt.freeMemory()) / 2;
+    }
+    if (outofplaceShuffleBytes() <= memoryBudget) {
+      outofplace_shuffle(permute, parfor);
+      return true;
+    }
+    inplace_shuffle(permute);
+    return false;
+  }
+
+  /**
+   * @return an estimate of the extra bytes needed by the out of place
+   *         shuffle: two int arrays and one reference array.
+   */
+  public long outofplaceShuffleBytes() {
+    return (long) size() * (4 + 4 + 8);
+  }
+
   /**
    * A list of edge data.
    */
@@ -161,9 +249,9 @@ public class EdgeListStorage<EdgeData> {
   /**
    * A list of source vertex ids.
    */
-  public ArrayList<Integer> sources;
+  public IntArrayList sources;
   /**
    * A list of target vertex ids.
    */
-  public ArrayList<Integer> targets;
+  public IntArrayList targets;
 }
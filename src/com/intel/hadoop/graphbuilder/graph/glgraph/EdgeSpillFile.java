@@ -0,0 +1,144 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.graph.glgraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * A local file of edges, used to replay edges that can only be iterated once
+ * (e.g. the values of a reducer) into the second pass of a
+ * {@code GLGraphBuilder}. Each edge is written as source, target and edge data
+ * through their {@code Writable} encoding.
+ * 
+ * @see GLGraphBuilder
+ * @param <VidType>
+ * @param <EdgeData>
+ */
+public class EdgeSpillFile<VidType extends Writable, EdgeData extends Writable> {
+
+  /**
+   * Creates a spill file in the given directory, deleted on exit.
+   * 
+   * @param dir
+   *          the directory, or null for the default temporary directory.
+   * @param vidClass
+   * @param edataClass
+   * @throws IOException
+   */
+  public EdgeSpillFile(File dir, Class<VidType> vidClass,
+      Class<EdgeData> edataClass) throws IOException {
+    this.vidClass = vidClass;
+    this.edataClass = edataClass;
+    file = File.createTempFile("edgespill", ".bin", dir);
+    file.deleteOnExit();
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+        file), BUFFER_SIZE));
+  }
+
+  /**
+   * Appends an edge to the file.
+   * 
+   * @param source
+   * @param target
+   * @param edata
+   * @throws IOException
+   */
+  public void write(VidType source, VidType target, EdgeData edata)
+      throws IOException {
+    source.write(out);
+    target.write(out);
+    edata.write(out);
+    numEdges++;
+  }
+
+  /**
+   * @return the number of edges written.
+   */
+  public int numEdges() {
+    return numEdges;
+  }
+
+  /**
+   * Closes the file for writing and adds all edges to the second pass of the
+   * builder. The vids are read into two reused objects, and the edge data into
+   * a new object for each edge.
+   * 
+   * @param builder
+   * @throws IOException
+   */
+  public void replay(GLGraphBuilder<VidType, ?, EdgeData> builder)
+      throws IOException {
+    close();
+    VidType source = ReflectionUtils.newInstance(vidClass, null);
+    VidType target = ReflectionUtils.newInstance(vidClass, null);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file), BUFFER_SIZE));
+    try {
+      for (int i = 0; i < numEdges; ++i) {
+        source.readFields(in);
+        target.readFields(in);
+        EdgeData edata = ReflectionUtils.newInstance(edataClass, null);
+        edata.readFields(in);
+        builder.addEdge(source, target, edata);
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Closes the file for writing.
+   * 
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    if (out != null) {
+      out.close();
+      out = null;
+    }
+  }
+
+  /**
+   * Closes and deletes the file.
+   * 
+   * @throws IOException
+   */
+  public void delete() throws IOException {
+    close();
+    file.delete();
+  }
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private Class<VidType> vidClass;
+  private Class<EdgeData> edataClass;
+  private File file;
+  private DataOutputStream out;
+  private int numEdges;
+}
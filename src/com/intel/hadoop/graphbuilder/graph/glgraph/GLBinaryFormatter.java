@@ -0,0 +1,239 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.graph.glgraph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.io.Writable;
+
+import com.intel.hadoop.graphbuilder.util.IntArrayList;
+
+/**
+ * A binary encoding of GLGraph, written directly to an output stream. The
+ * structure file starts with a header of 5 little-endian ints: {@code MAGIC},
+ * {@code VERSION}, flags, #vertices and #edges, followed by the CSR row
+ * offsets and column index, the CSC row offsets and column index, and the
+ * {@code c2rMap}.
+ * <p>
+ * Without {@code FLAG_VARINT}, each section is a little-endian int array and
+ * can be memory mapped as is by {@link GLBinaryGraphReader}. With
+ * {@code FLAG_VARINT}, only the CSR is written, each int as a varint of a
+ * small delta: the row offsets as degrees, and the column index as the zigzag
+ * difference to the previous column of the row. The CSC and {@code c2rMap}
+ * are not written since {@link GLGraph#finalize()} orders each CSC column by
+ * source, stably, which makes them the transpose of the CSR in row order, and
+ * the reader rebuilds them.
+ * </p>
+ * The edge data and the vids, in the order of the local vids, are written as
+ * a big-endian int count followed by the {@code Writable} encoding of each
+ * element. A trailer makes the elements randomly accessible: if every element
+ * has the same encoded size, the last int is that size; otherwise the last int
+ * is -1 and is preceded by the count + 1 byte offsets of the elements from the
+ * start of the file. Sequential readers stop after the last element and never
+ * see the trailer. These files are limited to 2GB.
+ * <p>
+ * Unlike the text formatters, this is not an {@code EdgeFormatter}: it is used
+ * by {@link GLBinaryGraphOutput}, which owns its instance.
+ * </p>
+ */
+public class GLBinaryFormatter {
+  /** "GLGB" in little-endian order. */
+  public static final int MAGIC = 0x42474C47;
+  public static final int VERSION = 1;
+  /** The sections are delta and varint encoded. */
+  public static final int FLAG_VARINT = 1;
+
+  /**
+   * Creates a formatter writing the structure as raw int arrays, which can be
+   * memory mapped.
+   */
+  public GLBinaryFormatter() {
+    this(false);
+  }
+
+  /**
+   * @param varint
+   *          whether to delta and varint encode the structure; otherwise it is
+   *          written as raw int arrays that can be mapped without decoding.
+   */
+  public GLBinaryFormatter(boolean varint) {
+    this.varint = varint;
+  }
+
+  /**
+   * Writes the adjacency structure of a finalized graph.
+   * 
+   * @param g
+   * @param out
+   * @throws IOException
+   */
+  public void writeStructure(GLGraph g, OutputStream out) throws IOException {
+    SparseGraphStruct csr = g.csr();
+    SparseGraphStruct csc = g.csc();
+    IntArrayList c2rMap = g.c2rMap();
+    int numVertices = g.numVertices();
+    IntWriter writer = new IntWriter(out);
+    writer.writeInt(MAGIC);
+    writer.writeInt(VERSION);
+    writer.writeInt(varint ? FLAG_VARINT : 0);
+    writer.writeInt(numVertices);
+    writer.writeInt(g.numEdges());
+
+    writeOffsets(csr, writer);
+    writeColumns(csr, writer);
+    if (!varint) {
+      writeOffsets(csc, writer);
+      writeColumns(csc, writer);
+      for (int j = 0; j < c2rMap.size(); ++j)
+        writer.writeInt(c2rMap.getInt(j));
+    }
+    writer.flush();
+  }
+
+  /**
+   * Writes the edge data of a finalized graph, in CSR order.
+   * 
+   * @param g
+   * @param out
+   * @throws IOException
+   */
+  public void writeEdata(GLGraph g, OutputStream out) throws IOException {
+    writeWritables(g.edatalist(), out);
+  }
+
+  /**
+   * Writes the global vids ordered by local vid.
+   * 
+   * @param g
+   * @param out
+   * @throws IOException
+   */
+  public void writeVids(GLGraph g, OutputStream out) throws IOException {
+    Object[] vids = new Object[g.numVertices()];
+    for (Object e : g.vid2lvid().entrySet()) {
+      Map.Entry entry = (Map.Entry) e;
+      vids[(Integer) entry.getValue()] = entry.getKey();
+    }
+    writeWritables(Arrays.asList(vids), out);
+  }
+
+  private void writeOffsets(SparseGraphStruct s, IntWriter writer)
+      throws IOException {
+    int n = s.numVertices();
+    for (int v = 0; v <= n; ++v) {
+      if (!varint)
+        writer.writeInt(s.begin(v));
+      else if (v > 0)
+        writer.writeVarint(s.begin(v) - s.begin(v - 1));
+    }
+  }
+
+  private void writeColumns(SparseGraphStruct s, IntWriter writer)
+      throws IOException {
+    int n = s.numVertices();
+    for (int v = 0; v < n; ++v) {
+      int prev = 0;
+      for (int i = s.begin(v); i < s.end(v); ++i) {
+        int col = s.col(i);
+        if (varint) {
+          int delta = col - prev;
+          writer.writeVarint((delta << 1) ^ (delta >> 31));
+          prev = col;
+        } else {
+          writer.writeInt(col);
+        }
+      }
+    }
+  }
+
+  private static void writeWritables(List list, OutputStream out)
+      throws IOException {
+    DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out,
+        BUFFER_SIZE));
+    dout.writeInt(list.size());
+    IntArrayList offsets = new IntArrayList(list.size() + 1);
+    int size = -1;
+    boolean fixed = true;
+    offsets.add(dout.size());
+    for (Object o : list) {
+      ((Writable) o).write(dout);
+      int end = dout.size();
+      if (end == Integer.MAX_VALUE)
+        throw new IOException("Writable file is larger than 2GB.");
+      int len = end - offsets.getInt(offsets.size() - 1);
+      if (size < 0)
+        size = len;
+      else if (size != len)
+        fixed = false;
+      offsets.add(end);
+    }
+    if (fixed) {
+      dout.writeInt(Math.max(size, 0));
+    } else {
+      for (int j = 0; j < offsets.size(); ++j)
+        dout.writeInt(offsets.getInt(j));
+      dout.writeInt(-1);
+    }
+    dout.flush();
+  }
+
+  /** Buffers little-endian ints and varints in front of a stream. */
+  private static class IntWriter {
+    IntWriter(OutputStream out) {
+      this.out = out;
+      buf = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    void writeInt(int v) throws IOException {
+      if (buf.remaining() < 4)
+        flush();
+      buf.putInt(v);
+    }
+
+    void writeVarint(int v) throws IOException {
+      if (buf.remaining() < 5)
+        flush();
+      while ((v & ~0x7F) != 0) {
+        buf.put((byte) ((v & 0x7F) | 0x80));
+        v >>>= 7;
+      }
+      buf.put((byte) v);
+    }
+
+    void flush() throws IOException {
+      out.write(buf.array(), 0, buf.position());
+      buf.clear();
+    }
+
+    private OutputStream out;
+    private ByteBuffer buf;
+  }
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private boolean varint;
+}
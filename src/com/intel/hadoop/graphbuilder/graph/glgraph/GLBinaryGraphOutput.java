@@ -0,0 +1,152 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.graph.glgraph;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.log4j.Logger;
+
+import com.intel.hadoop.graphbuilder.graph.EdgeFormatter;
+import com.intel.hadoop.graphbuilder.graph.Graph;
+import com.intel.hadoop.graphbuilder.graph.GraphOutput;
+import com.intel.hadoop.graphbuilder.io.MultiDirOutputFormat;
+
+/**
+ * Controls the binary output of a GLGraph with a {@code GLBinaryFormatter}.
+ * Unlike {@code GLGraphOutput}, the graph is not collected as {@code Text}
+ * records but written by the formatter straight into files in the task's work
+ * output directory, which are committed with the task:
+ * <ul>
+ * <li>Vids ordered by lvid: $prefix/partition{$i}/vid2lvid.bin</li>
+ * <li>Edge data list: $prefix/partition{$i}/edata.bin</li>
+ * <li>Graph structure: $prefix/partition{$i}/structure.bin</li>
+ * </ul>
+ * The {@code EdgeFormatter} given to {@link #write} is ignored: the output
+ * writes with its own {@code GLBinaryFormatter}, which writes the structure as
+ * raw int arrays, to be memory mapped, unless {@code VARINT_KEY} is true.
+ * 
+ * @see GLBinaryFormatter
+ * @see GLBinaryGraphReader
+ * @see MappedGLGraph
+ */
+public class GLBinaryGraphOutput implements GraphOutput {
+  /** Name of the vid file in a partition directory. */
+  public static final String VIDS_FILE = "vid2lvid.bin";
+  /** Name of the edge data file in a partition directory. */
+  public static final String EDATA_FILE = "edata.bin";
+  /** Name of the structure file in a partition directory. */
+  public static final String STRUCTURE_FILE = "structure.bin";
+  /**
+   * Whether the structure is delta and varint encoded, which is smaller but
+   * cannot be mapped without decoding; false by default.
+   */
+  public static final String VARINT_KEY = "graphbuilder.output.binary.varint";
+
+  private static final Logger LOG = Logger.getLogger(GLBinaryGraphOutput.class);
+
+  /** Default constructor. */
+  public GLBinaryGraphOutput() {
+  }
+
+  @Override
+  public final void init(JobConf conf) {
+    /* Vertex records are still collected as text. */
+    conf.setOutputFormat(MultiDirOutputFormat.class);
+  }
+
+  @Override
+  public void configure(JobConf conf) {
+    this.conf = conf;
+    shuffleMemoryBudget = conf.getLong(
+        GLGraphOutput.SHUFFLE_MEMORY_BUDGET_KEY, -1);
+    binFormatter = new GLBinaryFormatter(conf.getBoolean(VARINT_KEY, false));
+  }
+
+  @Override
+  public final void write(Graph g, EdgeFormatter formatter,
+      OutputCollector out, Reporter reporter) throws Exception {
+    GLGraph graph = (GLGraph) g;
+    int pid = g.pid();
+
+    LOG.info("Finalizing graph: " + pid);
+    graph.setShuffleMemoryBudget(shuffleMemoryBudget);
+    g.finalize();
+    LOG.info("Done finalizing finished: " + pid);
+
+    Path outputPath = FileOutputFormat.getWorkOutputPath(conf);
+    if (outputPath == null)
+      outputPath = FileOutputFormat.getOutputPath(conf);
+    Path dir = new Path(outputPath, "partition" + pid);
+    FileSystem fs = dir.getFileSystem(conf);
+
+    LOG.info("Writing vid2lvid: " + pid);
+    OutputStream stream = fs.create(new Path(dir, VIDS_FILE));
+    try {
+      binFormatter.writeVids(graph, stream);
+    } finally {
+      stream.close();
+    }
+    if (clearAfterWrite)
+      graph.vid2lvid().clear();
+
+    LOG.info("Writing edata: " + pid);
+    stream = fs.create(new Path(dir, EDATA_FILE));
+    try {
+      binFormatter.writeEdata(graph, stream);
+    } finally {
+      stream.close();
+    }
+    if (clearAfterWrite)
+      graph.edatalist().clear();
+
+    LOG.info("Writing graph structure: " + pid);
+    stream = fs.create(new Path(dir, STRUCTURE_FILE));
+    try {
+      binFormatter.writeStructure(graph, stream);
+    } finally {
+      stream.close();
+    }
+    if (clearAfterWrite)
+      g.clear();
+    LOG.info("Done writing graph: " + pid);
+  }
+
+  @Override
+  public final void writeAndClear(Graph g, EdgeFormatter formatter,
+      OutputCollector out, Reporter reporter) throws Exception {
+    clearAfterWrite = true;
+    write(g, formatter, out, reporter);
+  }
+
+  @Override
+  public void close() throws IOException {
+  }
+
+  private JobConf conf;
+  private GLBinaryFormatter binFormatter = new GLBinaryFormatter();
+  private boolean clearAfterWrite = false;
+  private long shuffleMemoryBudget = -1;
+}
@@ -0,0 +1,254 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.graph.glgraph;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Reads the structure file written by {@link GLBinaryFormatter} through a
+ * memory mapping. Raw files are not decoded: each section is a little-endian
+ * {@code IntBuffer} view of the mapping. Varint files are decoded once into
+ * heap buffers, rebuilding the CSC and {@code c2rMap} from the CSR. The file
+ * must be on the local file system and smaller than 2GB.
+ */
+public class GLBinaryGraphReader {
+
+  /**
+   * Maps and parses a structure file.
+   * 
+   * @param file
+   * @throws IOException
+   *           if the file is not a GLGraph structure file.
+   */
+  public GLBinaryGraphReader(File file) throws IOException {
+    ByteBuffer buf = map(file);
+    buf.order(ByteOrder.LITTLE_ENDIAN);
+    if (buf.remaining() < HEADER_BYTES || buf.getInt() != GLBinaryFormatter.MAGIC)
+      throw new IOException(file + " is not a GLGraph structure file.");
+    int version = buf.getInt();
+    if (version != GLBinaryFormatter.VERSION)
+      throw new IOException("Unsupported version " + version + " of " + file);
+    varint = (buf.getInt() & GLBinaryFormatter.FLAG_VARINT) != 0;
+    numVertices = buf.getInt();
+    numEdges = buf.getInt();
+
+    if (varint) {
+      decode(buf);
+    } else {
+      IntBuffer ints = buf.slice().order(ByteOrder.LITTLE_ENDIAN)
+          .asIntBuffer();
+      int pos = 0;
+      csrOffsets = section(ints, pos, numVertices + 1);
+      pos += numVertices + 1;
+      csrColumns = section(ints, pos, numEdges);
+      pos += numEdges;
+      cscOffsets = section(ints, pos, numVertices + 1);
+      pos += numVertices + 1;
+      cscColumns = section(ints, pos, numEdges);
+      pos += numEdges;
+      c2rMap = section(ints, pos, numEdges);
+    }
+  }
+
+  public int numVertices() {
+    return numVertices;
+  }
+
+  public int numEdges() {
+    return numEdges;
+  }
+
+  /**
+   * @return true if the file is varint encoded, and the buffers are decoded
+   *         copies rather than views of the mapping.
+   */
+  public boolean isVarint() {
+    return varint;
+  }
+
+  /**
+   * @return the CSR row offsets, with length = #vertices + 1.
+   */
+  public IntBuffer csrOffsets() {
+    return csrOffsets.duplicate();
+  }
+
+  /**
+   * @return the CSR column index (targets), with length = #edges.
+   */
+  public IntBuffer csrColumns() {
+    return csrColumns.duplicate();
+  }
+
+  /**
+   * @return the CSC row offsets, with length = #vertices + 1.
+   */
+  public IntBuffer cscOffsets() {
+    return cscOffsets.duplicate();
+  }
+
+  /**
+   * @return the CSC column index (sources), with length = #edges.
+   */
+  public IntBuffer cscColumns() {
+    return cscColumns.duplicate();
+  }
+
+  /**
+   * @return the edge index mapping from CSC to CSR, with length = #edges.
+   */
+  public IntBuffer c2rMap() {
+    return c2rMap.duplicate();
+  }
+
+  /**
+   * Reads an edge data or vid file written by {@link GLBinaryFormatter}.
+   * 
+   * @param file
+   * @param valueClass
+   * @return the list of values.
+   * @throws IOException
+   */
+  public static <T extends Writable> ArrayList<T> readWritables(File file,
+      Class<T> valueClass) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file), 1 << 16));
+    try {
+      int n = in.readInt();
+      ArrayList<T> list = new ArrayList<T>(n);
+      for (int i = 0; i < n; ++i) {
+        T value = ReflectionUtils.newInstance(valueClass, null);
+        value.readFields(in);
+        list.add(value);
+      }
+      return list;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Maps a whole file read only.
+   * 
+   * @param file
+   * @return the mapping, in big-endian order.
+   * @throws IOException
+   */
+  static ByteBuffer map(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      /* The mapping stays valid after the channel is closed. */
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      raf.close();
+    }
+  }
+
+  private void decode(ByteBuffer buf) {
+    int[] csrOff = decodeOffsets(buf);
+    int[] csrCol = decodeColumns(buf, csrOff);
+
+    /* Transpose the CSR in row order, as GLGraph.finalize() orders the CSC. */
+    int[] cscOff = new int[numVertices + 1];
+    for (int i = 0; i < numEdges; ++i)
+      cscOff[csrCol[i] + 1]++;
+    for (int v = 0; v < numVertices; ++v)
+      cscOff[v + 1] += cscOff[v];
+    int[] next = Arrays.copyOf(cscOff, numVertices);
+    int[] cscCol = new int[numEdges];
+    int[] c2r = new int[numEdges];
+    for (int v = 0; v < numVertices; ++v) {
+      for (int i = csrOff[v]; i < csrOff[v + 1]; ++i) {
+        int pos = next[csrCol[i]]++;
+        cscCol[pos] = v;
+        c2r[pos] = i;
+      }
+    }
+    csrOffsets = IntBuffer.wrap(csrOff);
+    csrColumns = IntBuffer.wrap(csrCol);
+    cscOffsets = IntBuffer.wrap(cscOff);
+    cscColumns = IntBuffer.wrap(cscCol);
+    c2rMap = IntBuffer.wrap(c2r);
+  }
+
+  private int[] decodeOffsets(ByteBuffer buf) {
+    int[] offsets = new int[numVertices + 1];
+    for (int v = 1; v <= numVertices; ++v)
+      offsets[v] = offsets[v - 1] + readVarint(buf);
+    return offsets;
+  }
+
+  private int[] decodeColumns(ByteBuffer buf, int[] offsets) {
+    int[] cols = new int[numEdges];
+    for (int v = 0; v < numVertices; ++v) {
+      int prev = 0;
+      for (int i = offsets[v]; i < offsets[v + 1]; ++i) {
+        int zigzag = readVarint(buf);
+        prev += (zigzag >>> 1) ^ -(zigzag & 1);
+        cols[i] = prev;
+      }
+    }
+    return cols;
+  }
+
+  private static int readVarint(ByteBuffer buf) {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buf.get();
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+  private static IntBuffer section(IntBuffer ints, int pos, int length) {
+    IntBuffer dup = ints.duplicate();
+    dup.position(pos);
+    dup.limit(pos + length);
+    return dup.slice();
+  }
+
+  private static final int HEADER_BYTES = 20;
+
+  private boolean varint;
+  private int numVertices;
+  private int numEdges;
+  private IntBuffer csrOffsets;
+  private IntBuffer csrColumns;
+  private IntBuffer cscOffsets;
+  private IntBuffer cscColumns;
+  private IntBuffer c2rMap;
+}
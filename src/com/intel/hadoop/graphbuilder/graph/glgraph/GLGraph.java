@@ -20,20 +20,18 @@ package com.intel.hadoop.graphbuilder.graph.glgraph;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
 import com.intel.hadoop.graphbuilder.graph.Graph;
 import com.intel.hadoop.graphbuilder.graph.VertexRecord;
+import com.intel.hadoop.graphbuilder.util.IntArrayList;
 import com.intel.hadoop.graphbuilder.util.Parallel;
-import com.intel.hadoop.graphbuilder.util.Parallel.Operation;
+import com.intel.hadoop.graphbuilder.util.Parallel.RangeOperation;
 
 /**
  * This is equivalent to GraphLab2 distributed graph {@link http
@@ -53,9 +51,15 @@ public class GLGraph<VidType, VertexData, EdgeData> implements
 
   private static final Logger LOG = Logger.getLogger(GLGraph.class);
 
+  /**
+   * Minimum number of edges of a chunk of the parallel counting sort, below
+   * which the cost of a chunk's histogram outweighs its share of the edges.
+   */
+  public static final int MIN_EDGES_PER_CHUNK = 1 << 14;
+
   public GLGraph() {
     numVertices = numEdges = 0;
-    vid2lvid = new HashMap<VidType, Integer>();
+    vertexCapacity = 0;
     edgeInfo = new EdgeListStorage<EdgeData>();
     vrecordList = new ArrayList<VertexRecord>();
   }
@@ -73,7 +77,7 @@ public class GLGraph<VidType, VertexData, EdgeData> implements
     if (e.direction == EdgeType.DIR.EMPTY) {
       return null;
     } else if (e.direction == EdgeType.DIR.IN) {
-      return edatalist.get(c2rMap.get(e.edgeid()));
+      return edatalist.get(c2rMap.getInt(e.edgeid()));
     } else {
       return edatalist.get(e.edgeid());
     }
@@ -90,7 +94,7 @@ public class GLGraph<VidType, VertexData, EdgeData> implements
     if (e.direction == EdgeType.DIR.EMPTY) {
       return null;
     } else if (e.direction == EdgeType.DIR.IN) {
-      return edatalist.set(c2rMap.get(e.edgeid()), value);
+      return edatalist.set(c2rMap.getInt(e.edgeid()), value);
     } else {
       return edatalist.set(e.edgeid(), value);
     }
@@ -102,10 +106,7 @@ public class GLGraph<VidType, VertexData, EdgeData> implements
    * @return The local vertex id of a vertex in this graph partition.
    */
   public int lvid(VidType gvid) {
-    if (vid2lvid.containsKey(gvid))
-      return vid2lvid.get(gvid);
-    else
-      return -1;
+    return vid2lvid == null ? -1 : vid2lvid.lvid(gvid);
   }
 
   /**
@@ -135,7 +136,9 @@ public class GLGraph<VidType, VertexData, EdgeData> implements
 
   @Override
   public void reserveVertexSpace(int numVertices) {
-    vid2lvid = new HashMap<VidType, Integer>(numVertices);
+    vertexCapacity = numVertices;
+    if (vid2lvid != null && vid2lvid.size() == 0)
+      vid2lvid = null;
     vrecordList.ensureCapacity(numVertices);
   }
 
@@ -163,19 +166,10 @@ public class GLGraph<VidType, VertexData, EdgeData> implements
 
   @Override
   public void addEdge(VidType source, VidType target, EdgeData edata) {
-    int lsource, ltarget;
-    if (vid2lvid.containsKey(source)) {
-      lsource = vid2lvid.get(source);
-    } else {
-      lsource = vid2lvid.size();
-      vid2lvid.put(source, lsource);
-    }
-    if (vid2lvid.containsKey(target)) {
-      ltarget = vid2lvid.get(target);
-    } else {
-      ltarget = vid2lvid.size();
-      vid2lvid.put(target, ltarget);
-    }
+    if (vid2lvid == null)
+      vid2lvid = VidMap.create(source, vertexCapacity);
+    int lsource = vid2lvid.insert(source);
+    int ltarget = vid2lvid.insert(target);
     edgeInfo.addEdge(lsource, ltarget, edata);
     numVertices = vid2lvid.size();
     numEdges++;
@@ -184,129 +178,200 @@ public class GLGraph<VidType, VertexData, EdgeData> implements
     }
   }
 
+  /**
+   * Sets the number of bytes the out of place edge shuffle in
+   * {@link #finalize()} may use. If the shuffle needs more, the slower in
+   * place shuffle is used. A negative value, the default, uses half of the
+   * currently free heap.
+   * 
+   * @param bytes
+   */
+  public void setShuffleMemoryBudget(long bytes) {
+    this.shuffleMemoryBudget = bytes;
+  }
+
   @Override
   public void addVertexRecord(VertexRecord<VidType, VertexData> vrecord) {
     vrecordList.add(vrecord);
   }
 
+  /**
+   * Convenience wrapper over the CSC. Each element of the list is a new
+   * {@code EdgeType}; use {@link #forEachInEdge(int, IntEdgeVisitor)} for
+   * traversals that should not allocate.
+   * 
+   * @param vid
+   *          the local vertex id.
+   * @return the incoming edges of the vertex.
+   */
   public EdgeList inEdges(int vid) {
     return new EdgeList(vid, csc, EdgeType.DIR.IN);
   }
 
+  /**
+   * Convenience wrapper over the CSR. Each element of the list is a new
+   * {@code EdgeType}; use {@link #forEachOutEdge(int, IntEdgeVisitor)} for
+   * traversals that should not allocate.
+   * 
+   * @param vid
+   *          the local vertex id.
+   * @return the outgoing edges of the vertex.
+   */
   public EdgeList outEdges(int vid) {
     return new EdgeList(vid, csr, EdgeType.DIR.OUT);
   }
 
+  /**
+   * Visits the outgoing edges of a vertex in order of target id, without
+   * allocation per edge. The graph must be finalized.
+   * 
+   * @param vid
+   *          the local vertex id.
+   * @param visitor
+   */
+  public void forEachOutEdge(int vid, IntEdgeVisitor visitor) {
+    int end = csr.end(vid);
+    if (csr instanceof CompressedGraphStruct) {
+      int begin = csr.begin(vid);
+      if (begin == end)
+        return;
+      CompressedGraphStruct.Cursor c = ((CompressedGraphStruct) csr)
+          .cursor(begin);
+      for (int i = begin; i < end; ++i)
+        visitor.visit(vid, c.next(), i);
+      return;
+    }
+    for (int i = csr.begin(vid); i < end; ++i)
+      visitor.visit(vid, csr.col(i), i);
+  }
+
+  /**
+   * Visits the incoming edges of a vertex in order of source id, without
+   * allocation per edge. The edge id passed to the visitor is already mapped through
+   * {@code c2rMap}. The graph must be finalized.
+   * 
+   * @param vid
+   *          the local vertex id.
+   * @param visitor
+   */
+  public void forEachInEdge(int vid, IntEdgeVisitor visitor) {
+    int end = csc.end(vid);
+    if (csc instanceof CompressedGraphStruct) {
+      int begin = csc.begin(vid);
+      if (begin == end)
+        return;
+      CompressedGraphStruct.Cursor c = ((CompressedGraphStruct) csc)
+          .cursor(begin);
+      for (int i = begin; i < end; ++i)
+        visitor.visit(c.next(), vid, c2rMap.getInt(i));
+      return;
+    }
+    for (int i = csc.begin(vid); i < end; ++i)
+      visitor.visit(csc.col(i), vid, c2rMap.getInt(i));
+  }
+
+  /**
+   * @param edgeid
+   *          the edge id as passed to an {@code IntEdgeVisitor}.
+   * @return the edge data.
+   */
+  public EdgeData edgeData(int edgeid) {
+    return edatalist.get(edgeid);
+  }
+
   @Override
   public void finalize() throws Exception {
     if (finalized)
       return;
 
-    boolean parallel = true;
     Parallel parfor = new Parallel();
 
     LOG.debug("Finalize graph of size: " + edgeInfo.size());
-    ArrayList<Integer> permute = new ArrayList<Integer>(Collections.nCopies(
-        numEdges, 0));
-    ArrayList<AtomicInteger> counterArray = new ArrayList<AtomicInteger>(
-        numVertices + 1);
-    for (int j = 0; j < numVertices + 1; ++j)
-      counterArray.add(new AtomicInteger(0));
+    final int[] permute = new int[numEdges];
+    final int[] buffer = new int[numEdges];
+    final int[] csrOffsets = new int[numVertices + 1];
+    final int[] cscOffsets = new int[numVertices + 1];
+    int numChunks = numSortChunks();
 
     /* Construct the CSR */
-    /* Sort and divide edges by source id using counting sort. */
+    /*
+     * Order edges by (source, target) with two stable counting sorts: first by
+     * target, then by source.
+     */
+    LOG.debug("Coutning sort target...");
+    counting_sort(parfor, numChunks, edgeInfo.targets.elements(), null,
+        buffer, cscOffsets);
     LOG.debug("Coutning sort source...");
-    counting_sort(edgeInfo.sources, counterArray, permute);
-    final CompareByVid cmpByTarget = new CompareByVid(edgeInfo.targets);
-
-    final ArrayList<List<Integer>> dummyList = new ArrayList<List<Integer>>(
-        numVertices);
-    /* Sort each part (of the same source) by its target. */
-    if (parallel) {
-      LOG.debug("Parallel sort target within source...");
-      for (int j = 0; j < numVertices; ++j)
-        dummyList.add(permute.subList(counterArray.get(j).get(), counterArray
-            .get(j + 1).get()));
-      parfor.For(dummyList, new Operation<List<Integer>>() {
-        @Override
-        public void perform(List<Integer> pParameter, int idx) {
-          // TODO Auto-generated method stub
-          java.util.Collections.sort(pParameter, cmpByTarget);
-        }
-      });
-    } else {
-      for (int j = 0; j < numVertices; ++j) {
-        java.util.Collections.sort(permute.subList(counterArray.get(j).get(),
-            counterArray.get(j + 1).get()), cmpByTarget);
-      }
-    }
+    counting_sort(parfor, numChunks, edgeInfo.sources.elements(), buffer,
+        permute, csrOffsets);
 
     /*
-     * Shuffle in place the sources, targets, and edatalist using the permute
-     * index.
+     * Shuffle the sources, targets, and edatalist using the permute index, out
+     * of place if it fits in the memory budget.
      */
-    edgeInfo.inplace_shuffle(permute);
+    boolean outofplace = edgeInfo.shuffle(permute, parfor,
+        shuffleMemoryBudget);
+    LOG.debug("Shuffled edges " + (outofplace ? "out of place" : "in place"));
 
     /* Fill in the CSR data structure. */
-    csr = new SparseGraphStruct(numVertices, edgeInfo.sources, edgeInfo.targets);
+    csr = new SparseGraphStruct(new IntArrayList(csrOffsets, numVertices + 1),
+        edgeInfo.targets);
 
     /* Construct the CSC */
-    /* Sort and divide edges by source id using counting sort. */
+    /*
+     * The edges are now ordered by source, so a single stable counting sort by
+     * target gives the (target, source) order, and the permutation is exactly
+     * the index map from CSC to CSR.
+     */
     LOG.debug("Coutning sort target...");
-    counting_sort(edgeInfo.targets, counterArray, permute);
-    final CompareByVid cmpBySource = new CompareByVid(edgeInfo.sources);
-    if (parallel) {
-      LOG.debug("Parallel sort source within target...");
-      dummyList.clear();
-      for (int j = 0; j < numVertices; ++j)
-        dummyList.add(permute.subList(counterArray.get(j).get(), counterArray
-            .get(j + 1).get()));
-      parfor.For(dummyList, new Operation<List<Integer>>() {
-        @Override
-        public void perform(List<Integer> pParameter, int idx) {
-          java.util.Collections.sort(pParameter, cmpBySource);
-        }
-      });
-    } else {
-      for (int j = 0; j < numVertices; ++j) {
-        java.util.Collections.sort(permute.subList(counterArray.get(j).get(),
-            counterArray.get(j + 1).get()), cmpBySource);
-      }
-    }
+    counting_sort(parfor, numChunks, edgeInfo.targets.elements(), null,
+        permute, cscOffsets);
 
     /* Shuffle out of place the sources. */
-    final ArrayList<Integer> shuffledSource = new ArrayList<Integer>(
-        Collections.nCopies(edgeInfo.sources.size(), 0));
-
-    parfor.For(permute, new Operation<Integer>() {
+    final int[] sources = edgeInfo.sources.elements();
+    final int[] shuffledSource = buffer;
+    parfor.For(0, numEdges, new RangeOperation() {
       @Override
-      public void perform(Integer val, int idx) {
-        shuffledSource.set(idx, edgeInfo.sources.get(val));
+      public void perform(int begin, int end) {
+        for (int j = begin; j < end; ++j)
+          shuffledSource[j] = sources[permute[j]];
       }
     });
-
-    edgeInfo.sources = shuffledSource;
+    edgeInfo.sources = new IntArrayList(shuffledSource, numEdges);
 
     // Fill in the CSC data structure
-    List<Integer> transformedTargets = new ArrayList<Integer>(
-        edgeInfo.targets.size());
-    for (int j = 0; j < edgeInfo.targets.size(); ++j) {
-      transformedTargets.add(edgeInfo.targets.get(permute.get(j)));
-    }
-    csc = new SparseGraphStruct(numVertices, transformedTargets,
+    csc = new SparseGraphStruct(new IntArrayList(cscOffsets, numVertices + 1),
         edgeInfo.sources);
 
-    c2rMap = permute;
+    c2rMap = new IntArrayList(permute, numEdges);
     edatalist = edgeInfo.edata;
     finalized = true;
-    parfor.close();
+  }
+
+  /**
+   * Installs a finalized structure built outside of {@link #finalize()}.
+   * 
+   * @see GLGraphBuilder
+   */
+  void setFinalized(VidMap<VidType> vid2lvid, SparseGraphStruct csr,
+      SparseGraphStruct csc, IntArrayList c2rMap, ArrayList<EdgeData> edatalist) {
+    this.vid2lvid = vid2lvid;
+    this.csr = csr;
+    this.csc = csc;
+    this.c2rMap = c2rMap;
+    this.edatalist = edatalist;
+    numVertices = csr.numVertices();
+    numEdges = c2rMap.size();
+    finalized = true;
   }
 
   /**
    * @return the map from global vid to local vid in this graph partition.
    */
   public Map<VidType, Integer> vid2lvid() {
-    return vid2lvid;
+    if (vid2lvid == null)
+      return Collections.emptyMap();
+    return vid2lvid.asMap();
   }
 
   /**
@@ -316,14 +381,44 @@ public class GLGraph<VidType, VertexData, EdgeData> implements
     return edatalist;
   }
 
+  /**
+   * Replaces the CSR and CSC of a finalized graph with their
+   * {@link CompressedGraphStruct} encoding, which typically takes a third of
+   * the memory of the column index. The traversal methods decode the columns
+   * on the fly, while {@link #csr()} and {@link #csc()} return decompressed
+   * copies.
+   */
+  public void compressStructure() {
+    if (!finalized)
+      throw new IllegalStateException("Graph is not finalized.");
+    if (isStructureCompressed())
+      return;
+    csr = new CompressedGraphStruct(csr);
+    csc = new CompressedGraphStruct(csc);
+  }
+
+  /**
+   * @return whether {@link #compressStructure()} has been called since the
+   *         graph was finalized.
+   */
+  public boolean isStructureCompressed() {
+    return csr instanceof CompressedGraphStruct;
+  }
+
   @Override
   public void clear() {
-    csr.clear();
-    csc.clear();
+    if (isStructureCompressed()) {
+      csr = new SparseGraphStruct(0);
+      csc = new SparseGraphStruct(0);
+    } else {
+      ((SparseGraphStruct) csr).clear();
+      ((SparseGraphStruct) csc).clear();
+    }
     c2rMap.clear();
     edatalist.clear();
     vrecordList.clear();
-    vid2lvid.clear();
+    if (vid2lvid != null)
+      vid2lvid.clear();
     edgeInfo.clear();
     numVertices = 0;
     numEdges = 0;
@@ -339,7 +434,7 @@ public class GLGraph<VidType, VertexData, EdgeData> implements
     builder.append("numVertices: " + numVertices + "\n");
     builder.append("numEdges: " + numEdges + "\n");
     builder.append("-------------Vid2lvid---------------\n");
-    Iterator<Entry<VidType, Integer>> iter = vid2lvid.entrySet().iterator();
+    Iterator<Entry<VidType, Integer>> iter = vid2lvid().entrySet().iterator();
     while (iter.hasNext()) {
       Entry<VidType, Integer> e = iter.next();
       builder.append(e.getKey().toString() + ":\t" + e.getValue() + "\n");
@@ -362,23 +457,31 @@ public class GLGraph<VidType, VertexData, EdgeData> implements
   }
 
   /**
-   * @return the CSR representation of the graph.
+   * @return the CSR representation of the graph, decompressed on each call if
+   *         the structure is compressed.
    */
   public SparseGraphStruct csr() {
-    return csr;
+    return sparse(csr);
   }
 
   /**
-   * @return the CSC representation of the graph.
+   * @return the CSC representation of the graph, decompressed on each call if
+   *         the structure is compressed.
    */
   public SparseGraphStruct csc() {
-    return csc;
+    return sparse(csc);
+  }
+
+  private static SparseGraphStruct sparse(AdjacencyStruct s) {
+    if (s instanceof CompressedGraphStruct)
+      return ((CompressedGraphStruct) s).decompress();
+    return (SparseGraphStruct) s;
   }
 
   /**
    * @return the edge index mapping from the CSC to CSR.
    */
-  public List<Integer> c2rMap() {
+  public IntArrayList c2rMap() {
     return c2rMap;
   }
 
@@ -386,77 +489,136 @@ public class GLGraph<VidType, VertexData, EdgeData> implements
    * =================Private helper functions========================
    */
   /**
-   * Given a reference ArrayList<Integer> valueList, compare two integers i,j by
-   * valueList[i], and valueList[j].
-   * 
-   * @author Haijie Gu
+   * Operation on a contiguous chunk {@code [begin, end)} of an index range.
    */
-  private class CompareByVid implements Comparator<Integer> {
-    /**
-     * Constructs a comparator with a given reference list.
-     * 
-     * @param val
-     */
-    public CompareByVid(ArrayList<Integer> val) {
-      valueList = val;
-    }
-
-    @Override
-    public int compare(Integer arg0, Integer arg1) {
-      Integer v0 = valueList.get((arg0));
-      Integer v1 = valueList.get((arg1));
-      return v0.compareTo(v1);
-    }
-
-    /** The reference list for comparison. */
-    private ArrayList<Integer> valueList;
+  private static interface ChunkOperation {
+    void perform(int chunk, int begin, int end);
   }
 
   /**
-   * Performs a counting sort on valueArray and stores the result in
-   * counterArray and permute.
+   * Splits {@code [0, n)} into {@code numChunks} contiguous chunks of equal
+   * size and runs the operation on each chunk in parallel.
    * 
-   * @param valueArray
-   *          the array of elements to be sorted.
-   * @param counterArray
-   *          the array counting the occurence of each element.
-   * @param permute
-   *          the permutation array corresponds to the sorting operation.
-   * @param <valueType>
-   *          the type of the element to be sorted.
+   * @param parfor
+   * @param n
+   * @param numChunks
+   * @param op
    */
-  private <valueType> void counting_sort(ArrayList<valueType> valueArray,
-      final ArrayList<AtomicInteger> counterArray,
-      final ArrayList<Integer> permute) {
+  private static void parallelChunks(Parallel parfor, final int n,
+      final int numChunks, final ChunkOperation op) {
+    parfor.For(0, numChunks, 1, new RangeOperation() {
+      @Override
+      public void perform(int begin, int end) {
+        for (int t = begin; t < end; ++t)
+          op.perform(t, chunkBegin(n, numChunks, t),
+              chunkBegin(n, numChunks, t + 1));
+      }
+    });
+  }
 
-    assert permute.size() == valueArray.size();
-    Parallel parfor = new Parallel();
-    for (int j = 0; j < counterArray.size(); j++)
-      counterArray.get(j).set(0);
+  private static int chunkBegin(int n, int numChunks, int chunk) {
+    return (int) ((long) n * chunk / numChunks);
+  }
 
-    for (int j = 0; j < permute.size(); j++)
-      permute.set(j, 0);
+  /**
+   * The counting sort keeps one histogram of size #vertices per chunk. Use at
+   * most one chunk per thread, each of at least {@code MIN_EDGES_PER_CHUNK}
+   * edges.
+   * 
+   * @return the number of chunks used by the counting sort.
+   */
+  private int numSortChunks() {
+    int chunks = numEdges / MIN_EDGES_PER_CHUNK;
+    return Math.max(1, Math.min(Parallel.numThreads(), chunks));
+  }
 
-    parfor.For(valueArray, new Operation<valueType>() {
+  /**
+   * Performs a parallel stable counting sort of the positions
+   * {@code in[0..n)} (or {@code 0..n} if {@code in} is null) by
+   * {@code keys[position]}, and stores the sorted positions in {@code out}.
+   * Each chunk of the input builds its own histogram, the histograms are
+   * turned into per-chunk write offsets by a parallel prefix sum, and then
+   * each chunk scatters its positions independently. Because the chunks are
+   * of equal size, the work is balanced regardless of the key distribution.
+   * 
+   * @param parfor
+   * @param numChunks
+   *          the number of parallel chunks.
+   * @param keys
+   *          the sort key of each position, in [0, #buckets).
+   * @param in
+   *          the input order, or null for the identity.
+   * @param out
+   *          the output permutation array.
+   * @param offsets
+   *          the bucket begin indices in out, with length = #buckets + 1.
+   */
+  private static void counting_sort(Parallel parfor, final int numChunks,
+      final int[] keys, final int[] in, final int[] out, final int[] offsets) {
+    final int n = out.length;
+    final int numBuckets = offsets.length - 1;
+    final int[][] histograms = new int[numChunks][numBuckets];
+
+    /* Count the keys of each chunk. */
+    parallelChunks(parfor, n, numChunks, new ChunkOperation() {
       @Override
-      public void perform(valueType val, int idx) {
-        counterArray.get((Integer) val).incrementAndGet();
+      public void perform(int chunk, int begin, int end) {
+        int[] hist = histograms[chunk];
+        if (in == null) {
+          for (int i = begin; i < end; ++i)
+            hist[keys[i]]++;
+        } else {
+          for (int i = begin; i < end; ++i)
+            hist[keys[in[i]]]++;
+        }
       }
-
     });
 
-    for (int j = 1; j < counterArray.size(); j++)
-      counterArray.get(j).addAndGet(counterArray.get(j - 1).get());
-
-    parfor.For(valueArray, new Operation<valueType>() {
+    /*
+     * Prefix sum in (bucket, chunk) order. Each block of buckets first sums up
+     * its counts, then the block sums are scanned, and finally each block
+     * turns its counts into the write offsets of every chunk.
+     */
+    final long[] blockStart = new long[numChunks + 1];
+    parallelChunks(parfor, numBuckets, numChunks, new ChunkOperation() {
       @Override
-      public void perform(valueType val, int idx) {
-        permute.set(counterArray.get((Integer) val).decrementAndGet(), idx);
+      public void perform(int block, int begin, int end) {
+        long sum = 0;
+        for (int v = begin; v < end; ++v)
+          for (int t = 0; t < numChunks; ++t)
+            sum += histograms[t][v];
+        blockStart[block + 1] = sum;
+      }
+    });
+    for (int b = 1; b <= numChunks; ++b)
+      blockStart[b] += blockStart[b - 1];
+    parallelChunks(parfor, numBuckets, numChunks, new ChunkOperation() {
+      @Override
+      public void perform(int block, int begin, int end) {
+        int running = (int) blockStart[block];
+        for (int v = begin; v < end; ++v) {
+          offsets[v] = running;
+          for (int t = 0; t < numChunks; ++t) {
+            int count = histograms[t][v];
+            histograms[t][v] = running;
+            running += count;
+          }
+        }
       }
-
     });
+    offsets[numBuckets] = n;
 
-    parfor.close();
+    /* Scatter the positions of each chunk. */
+    parallelChunks(parfor, n, numChunks, new ChunkOperation() {
+      @Override
+      public void perform(int chunk, int begin, int end) {
+        int[] next = histograms[chunk];
+        for (int i = begin; i < end; ++i) {
+          int pos = in == null ? i : in[i];
+          out[next[keys[pos]]++] = pos;
+        }
+      }
+    });
   }
 
   /** Partition id of this graph. */
@@ -467,6 +629,8 @@ public class GLGraph<VidType, VertexData, EdgeData> implements
   private int numEdges;
   /** Flag of finalized state. */
   private boolean finalized;
+  /** Memory budget in bytes of the out of place shuffle, negative for auto. */
+  private long shuffleMemoryBudget = -1;
 
   /** Internal storage of the edge data. */
   private ArrayList<EdgeData> edatalist;
@@ -474,13 +638,18 @@ public class GLGraph<VidType, VertexData, EdgeData> implements
   private ArrayList<VertexRecord> vrecordList;
   /** Temporary storage of edges. */
   private EdgeListStorage<EdgeData> edgeInfo;
-  /** Map from global vid to local vid. */
-  private HashMap<VidType, Integer> vid2lvid;
-  /** CSR representation of the adjacency structure. */
-  private SparseGraphStruct csr;
-  /** CSC representation of the adjacency structure. */
-  private SparseGraphStruct csc;
+  /**
+   * Map from global vid to local vid, created on the first edge since the
+   * implementation depends on the vid type.
+   */
+  private VidMap<VidType> vid2lvid;
+  /** Expected number of vertices, used to size vid2lvid. */
+  private int vertexCapacity;
+  /** CSR representation of the adjacency structure, possibly compressed. */
+  private AdjacencyStruct csr;
+  /** CSC representation of the adjacency structure, possibly compressed. */
+  private AdjacencyStruct csc;
   /** EdgeData index mapping from CSC to CSR, with length = #edges. */
-  private ArrayList<Integer> c2rMap;
+  private IntArrayList c2rMap;
 
 }
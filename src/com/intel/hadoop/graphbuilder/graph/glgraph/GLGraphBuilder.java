@@ -0,0 +1,239 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.graph.glgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.log4j.Logger;
+
+import com.intel.hadoop.graphbuilder.util.IntArrayList;
+import com.intel.hadoop.graphbuilder.util.Parallel;
+import com.intel.hadoop.graphbuilder.util.Parallel.RangeOperation;
+
+/**
+ * Builds a finalized {@code GLGraph} in two passes over the edges, without
+ * keeping the raw edge list. The first pass only counts the degrees of the
+ * vertices:
+ * 
+ * <pre>
+ * for (each edge) builder.countEdge(source, target);
+ * builder.allocate();
+ * for (each edge, in any order) builder.addEdge(source, target, edata);
+ * GLGraph g = builder.build();
+ * </pre>
+ * 
+ * {@code allocate} preallocates the CSR arrays from the degrees, and the
+ * second pass writes each edge directly into its CSR slot. {@code build} then
+ * sorts every row by target and derives the CSC and {@code c2rMap} from the
+ * CSR, so the peak memory stays close to the size of the final graph. The
+ * result is identical to {@link GLGraph#finalize()} on the same edges when the
+ * second pass replays the first in the same order. If the edges can only be
+ * read once, they can be replayed from an {@link EdgeSpillFile}.
+ * 
+ * @param <VidType>
+ * @param <VertexData>
+ * @param <EdgeData>
+ */
+public class GLGraphBuilder<VidType, VertexData, EdgeData> {
+  private static final Logger LOG = Logger.getLogger(GLGraphBuilder.class);
+
+  /** Creates a builder with no expected size. */
+  public GLGraphBuilder() {
+    this(0);
+  }
+
+  /**
+   * Creates a builder that expects {@code numVertices} vertices.
+   * 
+   * @param numVertices
+   */
+  public GLGraphBuilder(int numVertices) {
+    vertexCapacity = numVertices;
+    outDegree = new IntArrayList(Math.max(numVertices, 10));
+    inDegree = new IntArrayList(Math.max(numVertices, 10));
+  }
+
+  /**
+   * First pass: counts an edge.
+   * 
+   * @param source
+   * @param target
+   */
+  public void countEdge(VidType source, VidType target) {
+    if (csrCols != null)
+      throw new IllegalStateException("countEdge called after allocate.");
+    if (vid2lvid == null)
+      vid2lvid = VidMap.create(source, vertexCapacity);
+    int lsource = vid2lvid.insert(source);
+    int ltarget = vid2lvid.insert(target);
+    while (outDegree.size() < vid2lvid.size()) {
+      outDegree.add(0);
+      inDegree.add(0);
+    }
+    outDegree.elements()[lsource]++;
+    inDegree.elements()[ltarget]++;
+    numEdges++;
+  }
+
+  /**
+   * Ends the first pass: computes the row offsets and preallocates the CSR
+   * column index and the edge data.
+   */
+  public void allocate() {
+    if (csrCols != null)
+      throw new IllegalStateException("allocate called twice.");
+    int numVertices = outDegree.size();
+    LOG.debug("Allocate graph of " + numVertices + " vertices and "
+        + numEdges + " edges.");
+    csrOffsets = prefixSum(outDegree.elements(), numVertices);
+    cscOffsets = prefixSum(inDegree.elements(), numVertices);
+    /* The degree arrays are reused as the fill cursors. */
+    next = outDegree.elements();
+    System.arraycopy(csrOffsets, 0, next, 0, numVertices);
+    outDegree = null;
+    csrCols = new int[numEdges];
+    edatalist = new ArrayList<EdgeData>(Collections.<EdgeData> nCopies(
+        numEdges, null));
+  }
+
+  /**
+   * Second pass: places an edge into its CSR slot.
+   * 
+   * @param source
+   * @param target
+   * @param edata
+   */
+  public void addEdge(VidType source, VidType target, EdgeData edata) {
+    if (csrCols == null)
+      throw new IllegalStateException("addEdge called before allocate.");
+    int lsource = vid2lvid.lvid(source);
+    int ltarget = vid2lvid.lvid(target);
+    if (lsource < 0 || ltarget < 0 || next[lsource] == csrOffsets[lsource + 1])
+      throw new IllegalStateException("Edge (" + source + ", " + target
+          + ") was not counted in the first pass.");
+    int pos = next[lsource]++;
+    csrCols[pos] = ltarget;
+    edatalist.set(pos, edata);
+    numFilled++;
+  }
+
+  /**
+   * Ends the second pass and returns the finalized graph. The builder can not
+   * be used afterwards.
+   * 
+   * @return the finalized graph.
+   */
+  public GLGraph<VidType, VertexData, EdgeData> build() {
+    if (csrCols == null || numFilled != numEdges)
+      throw new IllegalStateException("Expect " + numEdges
+          + " edges in the second pass, got " + numFilled + ".");
+    final int numVertices = csrOffsets.length - 1;
+
+    /* Stable sort each row by target. */
+    new Parallel().For(0, numVertices, new RangeOperation() {
+      @Override
+      public void perform(int begin, int end) {
+        for (int v = begin; v < end; ++v)
+          sortRow(csrOffsets[v], csrOffsets[v + 1]);
+      }
+    });
+
+    /*
+     * Derive the CSC by scanning the CSR in row order, so that each column is
+     * sorted by source.
+     */
+    int[] cscCols = new int[numEdges];
+    int[] c2rMap = new int[numEdges];
+    System.arraycopy(cscOffsets, 0, next, 0, numVertices);
+    for (int v = 0; v < numVertices; ++v) {
+      for (int i = csrOffsets[v]; i < csrOffsets[v + 1]; ++i) {
+        int pos = next[csrCols[i]]++;
+        cscCols[pos] = v;
+        c2rMap[pos] = i;
+      }
+    }
+
+    GLGraph<VidType, VertexData, EdgeData> g = new GLGraph<VidType, VertexData, EdgeData>();
+    g.setFinalized(vid2lvid, new SparseGraphStruct(new IntArrayList(
+        csrOffsets, numVertices + 1), new IntArrayList(csrCols, numEdges)),
+        new SparseGraphStruct(new IntArrayList(cscOffsets, numVertices + 1),
+            new IntArrayList(cscCols, numEdges)), new IntArrayList(c2rMap,
+            numEdges), edatalist);
+    vid2lvid = null;
+    inDegree = null;
+    next = csrOffsets = cscOffsets = csrCols = null;
+    edatalist = null;
+    return g;
+  }
+
+  /**
+   * Stable sorts the CSR slots {@code [begin, end)} by target, moving the edge
+   * data along.
+   */
+  @SuppressWarnings("unchecked")
+  private void sortRow(int begin, int end) {
+    boolean sorted = true;
+    for (int i = begin + 1; i < end && sorted; ++i)
+      sorted = csrCols[i - 1] <= csrCols[i];
+    if (sorted)
+      return;
+    int len = end - begin;
+    /* Target in the high bits and position in the low bits keep it stable. */
+    long[] keys = new long[len];
+    for (int k = 0; k < len; ++k)
+      keys[k] = ((long) csrCols[begin + k] << 32) | k;
+    Arrays.sort(keys);
+    Object[] data = edatalist.subList(begin, end).toArray();
+    for (int k = 0; k < len; ++k) {
+      int from = (int) keys[k];
+      csrCols[begin + k] = (int) (keys[k] >>> 32);
+      edatalist.set(begin + k, (EdgeData) data[from]);
+    }
+  }
+
+  private static int[] prefixSum(int[] degree, int n) {
+    int[] offsets = new int[n + 1];
+    for (int i = 0; i < n; ++i)
+      offsets[i + 1] = offsets[i] + degree[i];
+    return offsets;
+  }
+
+  /** Expected number of vertices, used to size vid2lvid. */
+  private int vertexCapacity;
+  /** Number of edges counted in the first pass. */
+  private int numEdges;
+  /** Number of edges placed in the second pass. */
+  private int numFilled;
+  /** Map from global vid to local vid, shared with the built graph. */
+  private VidMap<VidType> vid2lvid;
+  /** Degrees counted in the first pass. */
+  private IntArrayList outDegree;
+  private IntArrayList inDegree;
+  /** Row offsets of the CSR and CSC, with length = #vertices + 1. */
+  private int[] csrOffsets;
+  private int[] cscOffsets;
+  /** Next free slot of each row during a fill. */
+  private int[] next;
+  /** CSR column index, filled in the second pass. */
+  private int[] csrCols;
+  /** Edge data in CSR order, filled in the second pass. */
+  private ArrayList<EdgeData> edatalist;
+}
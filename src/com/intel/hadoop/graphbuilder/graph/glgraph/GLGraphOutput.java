@@ -19,7 +19,6 @@
 package com.intel.hadoop.graphbuilder.graph.glgraph;
 
 import java.io.IOException;
-import java.io.StringWriter;
 
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.JobConf;
@@ -30,6 +29,7 @@ import org.apache.log4j.Logger;
 import com.intel.hadoop.graphbuilder.graph.Graph;
 import com.intel.hadoop.graphbuilder.graph.EdgeFormatter;
 import com.intel.hadoop.graphbuilder.graph.GraphOutput;
+import com.intel.hadoop.graphbuilder.io.ChunkedRecordWriter;
 import com.intel.hadoop.graphbuilder.io.MultiDirOutputFormat;
 
 /**
@@ -41,12 +41,20 @@ import com.intel.hadoop.graphbuilder.io.MultiDirOutputFormat;
  * <li>Edge data list: $prefix/partition{$i}/edata/</li>
  * <li>Graph structure: $prefix/partition{$i}/structure</li>
  * </ul>
- * The actual output of each part is controlled by the {@code GraphFormatter}.
+ * The actual output of each part is controlled by the {@code GraphFormatter},
+ * which streams it into the {@code OutputCollector} in chunks of
+ * {@code ChunkedRecordWriter.CHUNK_SIZE_KEY} characters.
  * 
  */
 public class GLGraphOutput implements GraphOutput {
   private static final Logger LOG = Logger.getLogger(GLGraphOutput.class);
 
+  /**
+   * Configuration key of the memory budget in bytes for the out of place edge
+   * shuffle during finalize. Negative means half of the free heap.
+   */
+  public static final String SHUFFLE_MEMORY_BUDGET_KEY = "graphbuilder.glgraph.shuffle.memorybudget";
+
   /** Default constructor. */
   public GLGraphOutput() {
   }
@@ -58,6 +66,9 @@ public class GLGraphOutput implements GraphOutput {
 
   @Override
   public void configure(JobConf conf) {
+    shuffleMemoryBudget = conf.getLong(SHUFFLE_MEMORY_BUDGET_KEY, -1);
+    chunkSize = conf.getInt(ChunkedRecordWriter.CHUNK_SIZE_KEY,
+        ChunkedRecordWriter.DEFAULT_CHUNK_SIZE);
   }
 
   @Override
@@ -68,42 +79,38 @@ public class GLGraphOutput implements GraphOutput {
 
     /* Output vid2lvidmap. */
     LOG.info("Collecting vid2lvid: " + pid);
-    StringWriter vid2lvidWriter = ((GLJsonFormatter) formatter)
-        .vid2lvidWriter((GLGraph) g);
+    ChunkedRecordWriter vid2lvidWriter = new ChunkedRecordWriter(out,
+        new Text("partition" + pid + "/vid2lvid"), chunkSize);
+    ((GLJsonFormatter) formatter).writeVid2lvid((GLGraph) g, vid2lvidWriter);
+    vid2lvidWriter.close();
     if (clearAfterWrite)
       ((GLGraph) g).vid2lvid().clear();
-
-    out.collect(new Text("partition" + pid + "/vid2lvid"), new Text(
-        vid2lvidWriter.toString()));
-    vid2lvidWriter.close();
     LOG.info("Done collecting vid2lvid: " + pid);
 
     /* Graph finalize. */
     LOG.info("Finalizing graph: " + pid);
+    ((GLGraph) g).setShuffleMemoryBudget(shuffleMemoryBudget);
     g.finalize();
     LOG.info("Done finalizing finished: " + pid);
 
     /* Output edge data. */
     LOG.info("Collecting edata: " + pid);
-    StringWriter edataWriter = ((GLJsonFormatter) formatter)
-        .edataWriter((GLGraph) g);
+    ChunkedRecordWriter edataWriter = new ChunkedRecordWriter(out, new Text(
+        "partition" + pid + "/edata"), chunkSize);
+    formatter.writeEdata(g, edataWriter);
+    edataWriter.close();
     if (clearAfterWrite)
       ((GLGraph) g).edatalist().clear();
-
-    out.collect(new Text("partition" + pid + "/edata"),
-        new Text(edataWriter.toString()));
-    edataWriter.close();
     LOG.info("Done collecting edata: " + pid);
 
     /* Output graph structure. */
     LOG.info("Collecting graph structure: " + pid);
-    StringWriter structureWriter = formatter.structWriter(g);
-
-    out.collect(new Text("partition" + pid + "/structure"), new Text(
-        structureWriter.toString()));
+    ChunkedRecordWriter structureWriter = new ChunkedRecordWriter(out,
+        new Text("partition" + pid + "/structure"), chunkSize);
+    formatter.writeStruct(g, structureWriter);
+    structureWriter.close();
     if (clearAfterWrite)
       g.clear();
-    structureWriter.close();
     LOG.info("Done collecting graph structure: " + pid);
   }
 
@@ -119,4 +126,6 @@ public class GLGraphOutput implements GraphOutput {
   }
 
   private boolean clearAfterWrite = false;
+  private long shuffleMemoryBudget = -1;
+  private int chunkSize = ChunkedRecordWriter.DEFAULT_CHUNK_SIZE;
 }
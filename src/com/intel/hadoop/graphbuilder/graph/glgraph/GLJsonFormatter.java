@@ -20,6 +20,7 @@ package com.intel.hadoop.graphbuilder.graph.glgraph;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
 
 import net.minidev.json.JSONObject;
 
@@ -28,20 +29,50 @@ import com.intel.hadoop.graphbuilder.graph.EdgeFormatter;
 
 /**
  * A JSON encoding of GLGraph.
- * 
+ * <p>
+ * By default the CSR and CSC row structures are written in the legacy
+ * "rowIndex" encoding where empty rows are -1. With {@code useRowOffsets} set,
+ * they are written as the standard "rowOffsets" array of length
+ * {@code numVertices + 1}.
+ * </p>
  */
 public class GLJsonFormatter implements EdgeFormatter {
 
+  /** Creates a formatter using the legacy row encoding. */
+  public GLJsonFormatter() {
+    this(false);
+  }
+
+  /**
+   * @param useRowOffsets
+   *          whether to output the row offsets instead of the legacy row
+   *          encoding.
+   */
+  public GLJsonFormatter(boolean useRowOffsets) {
+    this.useRowOffsets = useRowOffsets;
+  }
+
   /**
+   * Writes the vid2lvid map of a GLGraph as JSON.
+   * 
    * @param g
-   * @return A JSON string of the vid2lvid map of a GLGraph.
+   * @param out
+   * @throws IOException
    */
-  public StringWriter vid2lvidWriter(GLGraph g) {
+  public void writeVid2lvid(GLGraph g, Writer out) throws IOException {
     JSONObject obj = new JSONObject();
     obj.put("vid2lvid", g.vid2lvid());
+    obj.writeJSONString(out);
+  }
+
+  /**
+   * @param g
+   * @return A JSON string of the vid2lvid map of a GLGraph.
+   */
+  public StringWriter vid2lvidWriter(GLGraph g) {
     StringWriter out = new StringWriter();
     try {
-      obj.writeJSONString(out);
+      writeVid2lvid(g, out);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -49,12 +80,17 @@ public class GLJsonFormatter implements EdgeFormatter {
   }
 
   @Override
-  public StringWriter edataWriter(Graph g) {
+  public void writeEdata(Graph g, Writer out) throws IOException {
     JSONObject obj = new JSONObject();
     obj.put("edataList", ((GLGraph) g).edatalist());
+    obj.writeJSONString(out);
+  }
+
+  @Override
+  public StringWriter edataWriter(Graph g) {
     StringWriter out = new StringWriter();
     try {
-      obj.writeJSONString(out);
+      writeEdata(g, out);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -62,20 +98,27 @@ public class GLJsonFormatter implements EdgeFormatter {
   }
 
   @Override
-  public StringWriter structWriter(Graph graph) {
+  public void writeStruct(Graph graph, Writer out) throws IOException {
     JSONObject obj = new JSONObject();
     GLGraph g = (GLGraph) graph;
     obj.put("numVertices", g.numVertices());
     obj.put("numEdges", g.numEdges());
-    obj.put("csr", g.csr().toJSONObj());
-    obj.put("csc", g.csc().toJSONObj());
+    obj.put("csr", g.csr().toJSONObj(useRowOffsets));
+    obj.put("csc", g.csc().toJSONObj(useRowOffsets));
     obj.put("c2rMap", g.c2rMap());
+    obj.writeJSONString(out);
+  }
+
+  @Override
+  public StringWriter structWriter(Graph g) {
     StringWriter out = new StringWriter();
     try {
-      obj.writeJSONString(out);
+      writeStruct(g, out);
     } catch (IOException e) {
       e.printStackTrace();
     }
     return out;
   }
+
+  private boolean useRowOffsets;
 }
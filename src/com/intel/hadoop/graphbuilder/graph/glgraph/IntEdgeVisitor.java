@@ -0,0 +1,40 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.graph.glgraph;
+
+/**
+ * Callback for the allocation free edge traversal of a finalized
+ * {@code GLGraph}. All ids are primitive local ids, so visiting an edge does
+ * not create any object.
+ * 
+ * @see GLGraph#forEachOutEdge(int, IntEdgeVisitor)
+ * @see GLGraph#forEachInEdge(int, IntEdgeVisitor)
+ */
+public interface IntEdgeVisitor {
+  /**
+   * @param source
+   *          local id of the source vertex.
+   * @param target
+   *          local id of the target vertex.
+   * @param edgeid
+   *          index of the edge data in {@link GLGraph#edatalist()}, valid for
+   *          both incoming and outgoing edges.
+   */
+  void visit(int source, int target, int edgeid);
+}
@@ -0,0 +1,211 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.graph.glgraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * A read only view of a finalized {@code GLGraph} partition written by
+ * {@link GLBinaryGraphOutput}, with the traversal API of {@code GLGraph}. The
+ * structure, edge data and vid files are memory mapped rather than read, so
+ * opening a partition only costs the mapping, and processes on the same node
+ * share the pages of a partition through the page cache.
+ * <p>
+ * The structure is mapped as written by default. A structure file written with
+ * {@code GLBinaryGraphOutput.VARINT_KEY} is decoded into heap buffers when it
+ * is opened instead, which is smaller on disk but neither instant nor shared. Edge data and vids are
+ * deserialized from the mapping on each access. The map from global to local
+ * vid is built on the first call of {@link #lvid(Writable)}.
+ * </p>
+ * 
+ * @param <VidType>
+ * @param <EdgeData>
+ */
+public class MappedGLGraph<VidType extends Writable, EdgeData extends Writable> {
+
+  /**
+   * Maps the files of a partition directory.
+   * 
+   * @param dir
+   *          the partition directory, containing the files named in
+   *          {@code GLBinaryGraphOutput}.
+   * @param vidClass
+   * @param edataClass
+   * @throws IOException
+   */
+  public MappedGLGraph(File dir, Class<VidType> vidClass,
+      Class<EdgeData> edataClass) throws IOException {
+    GLBinaryGraphReader reader = new GLBinaryGraphReader(new File(dir,
+        GLBinaryGraphOutput.STRUCTURE_FILE));
+    numVertices = reader.numVertices();
+    numEdges = reader.numEdges();
+    csr = new MappedGraphStruct(reader.csrOffsets(), reader.csrColumns());
+    csc = new MappedGraphStruct(reader.cscOffsets(), reader.cscColumns());
+    c2rMap = reader.c2rMap();
+    edata = new MappedWritableArray<EdgeData>(new File(dir,
+        GLBinaryGraphOutput.EDATA_FILE), edataClass);
+    vids = new MappedWritableArray<VidType>(new File(dir,
+        GLBinaryGraphOutput.VIDS_FILE), vidClass);
+    if (edata.size() != numEdges || vids.size() != numVertices)
+      throw new IOException("Partition " + dir
+          + " has inconsistent edge data or vid files.");
+  }
+
+  public int numVertices() {
+    return numVertices;
+  }
+
+  public int numEdges() {
+    return numEdges;
+  }
+
+  /**
+   * @param vid
+   *          the local vertex id.
+   * @return the incoming edges of the vertex.
+   */
+  public EdgeList inEdges(int vid) {
+    return new EdgeList(vid, csc, EdgeType.DIR.IN);
+  }
+
+  /**
+   * @param vid
+   *          the local vertex id.
+   * @return the outgoing edges of the vertex.
+   */
+  public EdgeList outEdges(int vid) {
+    return new EdgeList(vid, csr, EdgeType.DIR.OUT);
+  }
+
+  /**
+   * @param vid
+   *          the local vertex id.
+   * @return Number of incoming edges of the vertex in this graph partition.
+   */
+  public int numInEdges(int vid) {
+    return csc.end(vid) - csc.begin(vid);
+  }
+
+  /**
+   * @param vid
+   *          the local vertex id.
+   * @return Number of outgoing edges of the vertex in this graph partition.
+   */
+  public int numOutEdges(int vid) {
+    return csr.end(vid) - csr.begin(vid);
+  }
+
+  /**
+   * Visits the outgoing edges of a vertex in order of target id, without
+   * allocation.
+   * 
+   * @param vid
+   *          the local vertex id.
+   * @param visitor
+   */
+  public void forEachOutEdge(int vid, IntEdgeVisitor visitor) {
+    int end = csr.end(vid);
+    for (int i = csr.begin(vid); i < end; ++i)
+      visitor.visit(vid, csr.col(i), i);
+  }
+
+  /**
+   * Visits the incoming edges of a vertex in order of source id, without
+   * allocation. The edge id passed to the visitor is already mapped through
+   * {@code c2rMap}.
+   * 
+   * @param vid
+   *          the local vertex id.
+   * @param visitor
+   */
+  public void forEachInEdge(int vid, IntEdgeVisitor visitor) {
+    int end = csc.end(vid);
+    for (int i = csc.begin(vid); i < end; ++i)
+      visitor.visit(csc.col(i), vid, c2rMap.get(i));
+  }
+
+  /**
+   * @param e
+   *          A lazy edge object.
+   * @return a new instance holding the edge data of EdgeType e.
+   */
+  public EdgeData edgeData(EdgeType e) {
+    if (e.direction == EdgeType.DIR.EMPTY) {
+      return null;
+    } else if (e.direction == EdgeType.DIR.IN) {
+      return edgeData(c2rMap.get(e.edgeid()));
+    } else {
+      return edgeData(e.edgeid());
+    }
+  }
+
+  /**
+   * @param edgeid
+   *          the edge id as passed to an {@code IntEdgeVisitor}.
+   * @return a new instance holding the edge data.
+   */
+  public EdgeData edgeData(int edgeid) {
+    try {
+      return edata.get(edgeid);
+    } catch (IOException e) {
+      throw new RuntimeException("Corrupted edge data " + edgeid, e);
+    }
+  }
+
+  /**
+   * @param lvid
+   *          the local vertex id.
+   * @return a new instance holding the global vid.
+   */
+  public VidType vid(int lvid) {
+    try {
+      return vids.get(lvid);
+    } catch (IOException e) {
+      throw new RuntimeException("Corrupted vid " + lvid, e);
+    }
+  }
+
+  /**
+   * @param gvid
+   *          the global id of the vertex
+   * @return The local vertex id of a vertex in this graph partition, or -1.
+   */
+  public synchronized int lvid(VidType gvid) {
+    if (vid2lvid == null) {
+      VidMap<VidType> map = VidMap.create(gvid, numVertices);
+      for (int i = 0; i < numVertices; ++i)
+        map.insert(vid(i));
+      vid2lvid = map;
+    }
+    return vid2lvid.lvid(gvid);
+  }
+
+  private int numVertices;
+  private int numEdges;
+  private MappedGraphStruct csr;
+  private MappedGraphStruct csc;
+  private IntBuffer c2rMap;
+  private MappedWritableArray<EdgeData> edata;
+  private MappedWritableArray<VidType> vids;
+  private VidMap<VidType> vid2lvid;
+}
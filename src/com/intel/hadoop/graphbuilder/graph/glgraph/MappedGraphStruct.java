@@ -0,0 +1,74 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.graph.glgraph;
+
+import java.nio.IntBuffer;
+
+/**
+ * An {@link AdjacencyStruct} backed by two {@code IntBuffer}s, typically read
+ * only views of a memory mapped structure file returned by
+ * {@link GLBinaryGraphReader}. Only absolute reads are used, so a single
+ * instance can be shared by concurrent readers.
+ */
+public class MappedGraphStruct implements AdjacencyStruct {
+  /**
+   * @param rowOffsets
+   *          the row offsets with length = #rows + 1.
+   * @param colIndex
+   *          the column index.
+   */
+  public MappedGraphStruct(IntBuffer rowOffsets, IntBuffer colIndex) {
+    if (rowOffsets.limit() == 0
+        || rowOffsets.get(rowOffsets.limit() - 1) != colIndex.limit())
+      throw new IllegalArgumentException(
+          "MappedGraphStruct: rowOffsets does not match colIndex");
+    this.rowOffsets = rowOffsets;
+    this.colIndex = colIndex;
+  }
+
+  @Override
+  public int numVertices() {
+    return rowOffsets.limit() - 1;
+  }
+
+  @Override
+  public int numEdges() {
+    return colIndex.limit();
+  }
+
+  @Override
+  public int begin(int row) {
+    return rowOffsets.get(row);
+  }
+
+  @Override
+  public int end(int row) {
+    return rowOffsets.get(row + 1);
+  }
+
+  @Override
+  public int col(int i) {
+    return colIndex.get(i);
+  }
+
+  /** Row offsets, with length = #rows + 1. */
+  private IntBuffer rowOffsets;
+  /** Column index of the non-zero entries, with length = #entries. */
+  private IntBuffer colIndex;
+}
@@ -0,0 +1,136 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.graph.glgraph;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Random access to an edge data or vid file written by
+ * {@link GLBinaryFormatter}, through a read only memory mapping. Elements are
+ * located with the trailer of the file: by multiplication if all elements have
+ * the same encoded size, otherwise through the offset table. Nothing is
+ * deserialized until an element is read.
+ * 
+ * @param <T>
+ *          the {@code Writable} type of the elements.
+ */
+public class MappedWritableArray<T extends Writable> {
+
+  /**
+   * Maps a file.
+   * 
+   * @param file
+   * @param valueClass
+   * @throws IOException
+   *           if the file has no trailer.
+   */
+  public MappedWritableArray(File file, Class<T> valueClass)
+      throws IOException {
+    this.valueClass = valueClass;
+    buf = GLBinaryGraphReader.map(file);
+    int length = buf.limit();
+    if (length < 8)
+      throw new IOException(file + " is not a Writable array file.");
+    size = buf.getInt(0);
+    recordSize = buf.getInt(length - 4);
+    offsetTable = length - 4 - 4 * (size + 1);
+    if (size < 0 || (recordSize < 0 && offsetTable < 4)
+        || (recordSize >= 0 && 8 + (long) size * recordSize != length))
+      throw new IOException(file + " is not a Writable array file.");
+  }
+
+  /**
+   * @return the number of elements.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param i
+   * @return a new instance holding the i-th element.
+   * @throws IOException
+   */
+  public T get(int i) throws IOException {
+    return get(i, ReflectionUtils.newInstance(valueClass, null));
+  }
+
+  /**
+   * Reads the i-th element into an existing instance.
+   * 
+   * @param i
+   * @param reuse
+   * @return {@code reuse}.
+   * @throws IOException
+   */
+  public T get(int i, T reuse) throws IOException {
+    if (i < 0 || i >= size)
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+    ByteBuffer dup = buf.duplicate();
+    dup.position(offset(i));
+    reuse.readFields(new DataInputStream(new ByteBufferInputStream(dup)));
+    return reuse;
+  }
+
+  private int offset(int i) {
+    if (recordSize >= 0)
+      return 4 + i * recordSize;
+    return buf.getInt(offsetTable + 4 * i);
+  }
+
+  /** An {@code InputStream} reading from the position of a buffer. */
+  private static class ByteBufferInputStream extends InputStream {
+    ByteBufferInputStream(ByteBuffer buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public int read() {
+      return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0)
+        return 0;
+      if (!buf.hasRemaining())
+        return -1;
+      len = Math.min(len, buf.remaining());
+      buf.get(b, off, len);
+      return len;
+    }
+
+    private ByteBuffer buf;
+  }
+
+  private Class<T> valueClass;
+  private ByteBuffer buf;
+  private int size;
+  /** Encoded size of every element, or -1 if the sizes differ. */
+  private int recordSize;
+  /** Position of the offset table, used if {@code recordSize} is -1. */
+  private int offsetTable;
+}
@@ -18,12 +18,12 @@
  */
 package com.intel.hadoop.graphbuilder.graph.glgraph;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import net.minidev.json.JSONObject;
 
+import com.intel.hadoop.graphbuilder.util.IntArrayList;
+
 /**
  * A dense data structure of a sparse matrix: (Compressed Sparse Row)
  * {@link http
@@ -31,9 +31,16 @@ import net.minidev.json.JSONObject;
  * .29}. This class only represents the zero/non-zero structure of the matrix,
  * and the actual entry data, if any, should be stored separately as a list
  * elsewhere.
- * 
+ * <p>
+ * Internally the rows are stored in the standard CSR layout: an offset array
+ * of length {@code numVertices + 1}, where row i spans
+ * {@code [rowOffsets[i], rowOffsets[i+1])} of the column index. This makes
+ * {@code begin} and {@code end} constant time. The legacy row encoding, where
+ * an empty row is marked by -1, is still available through
+ * {@link #getRowIndex()} and is the default JSON encoding.
+ * </p>
  */
-public class SparseGraphStruct {
+public class SparseGraphStruct implements AdjacencyStruct {
   /**
    * Initialize a n by n empty matrix.
    * 
@@ -41,8 +48,8 @@ public class SparseGraphStruct {
    *          the size of the square matrix.
    */
   public SparseGraphStruct(int n) {
-    rowIndex = new ArrayList<Integer>(Collections.nCopies(n, -1));
-    colIndex = new ArrayList<Integer>();
+    rowOffsets = new IntArrayList(n + 1, 0);
+    colIndex = new IntArrayList();
   }
 
   /**
@@ -58,27 +65,55 @@ public class SparseGraphStruct {
    */
   public SparseGraphStruct(int numVertices, List<Integer> sources,
       List<Integer> targets) {
+    this(numVertices, toIntArrayList(sources), toIntArrayList(targets));
+  }
+
+  /**
+   * Initialize a n by n matrix, with entries encoded by a source array and
+   * target array. The source array must be sorted. The target array is used as
+   * the column index directly without copying.
+   * 
+   * @param n
+   *          the size of the square matrix.
+   * @param sources
+   *          the list of source ids.
+   * @param targets
+   *          the list of target ids.
+   */
+  public SparseGraphStruct(int numVertices, IntArrayList sources,
+      IntArrayList targets) {
     colIndex = targets;
-    rowIndex = new ArrayList<Integer>(numVertices);
-    int lastSource = -1;
-    int i = 0;
-    for (; i < sources.size(); ++i) {
-      int source = sources.get(i);
-      if (source != lastSource) {
-        for (int j = lastSource + 1; j < source; ++j)
-          rowIndex.add(-1);
-        rowIndex.add(i);
-        lastSource = source;
-      }
+    rowOffsets = new IntArrayList(numVertices + 1, 0);
+    int[] offsets = rowOffsets.elements();
+    int[] src = sources.elements();
+    for (int i = 0; i < sources.size(); ++i) {
+      assert i == 0 || src[i - 1] <= src[i] : "SparseGraphStruct: sources are not sorted";
+      offsets[src[i] + 1]++;
     }
-    for (i = lastSource + 1; i < numVertices; i++)
-      rowIndex.add(-1);
-    assert numVertices == rowIndex.size() : "SparseGraphStruct: numVertices differs from rowIndex";
+    for (int i = 1; i <= numVertices; ++i)
+      offsets[i] += offsets[i - 1];
+  }
+
+  /**
+   * Initialize a matrix directly from a CSR offset array and column index.
+   * Neither array is copied.
+   * 
+   * @param rowOffsets
+   *          the row offsets with length = #rows + 1.
+   * @param colIndex
+   *          the column index.
+   */
+  public SparseGraphStruct(IntArrayList rowOffsets, IntArrayList colIndex) {
+    assert rowOffsets.size() > 0
+        && rowOffsets.getInt(rowOffsets.size() - 1) == colIndex.size() : "SparseGraphStruct: rowOffsets does not match colIndex";
+    this.rowOffsets = rowOffsets;
+    this.colIndex = colIndex;
   }
 
   /**
    * @return the number of non-zero entries.
    */
+  @Override
   public int numEdges() {
     return colIndex.size();
   }
@@ -86,47 +121,60 @@ public class SparseGraphStruct {
   /**
    * @return the dimension.
    */
+  @Override
   public int numVertices() {
-    return rowIndex.size();
+    return Math.max(rowOffsets.size() - 1, 0);
   }
 
   /**
    * @param row
    * @return the begin column index of the non-zero entry of a given row index.
    */
+  @Override
   public int begin(int row) {
-    return rowIndex.get(row);
+    return rowOffsets.getInt(row);
   }
 
   /**
    * @param row
    * @return the end column index of the non-zero entry of a given row index.
    */
+  @Override
   public int end(int row) {
-    if (rowIndex.get(row) < 0)
-      return -1;
-
-    int i = row + 1;
-    while (i < numVertices() && rowIndex.get(i) == -1)
-      ++i;
-    return i < numVertices() ? rowIndex.get(i) : numEdges();
+    return rowOffsets.getInt(row + 1);
   }
 
   /**
    * Clear the matrix.
    */
   public void clear() {
-    rowIndex.clear();
+    rowOffsets.clear();
     colIndex.clear();
   }
 
   /**
-   * @return the internal row representation.
+   * Returns the legacy row encoding, where the i-th entry is the begin column
+   * index of row i, or -1 if row i is empty. The list is computed from the
+   * offsets on each call.
+   * 
+   * @return the legacy row representation.
    */
   public List<Integer> getRowIndex() {
+    int n = numVertices();
+    int[] offsets = rowOffsets.elements();
+    IntArrayList rowIndex = new IntArrayList(n);
+    for (int i = 0; i < n; ++i)
+      rowIndex.add(offsets[i] == offsets[i + 1] ? -1 : offsets[i]);
     return rowIndex;
   }
 
+  /**
+   * @return the internal row representation, with length = #rows + 1.
+   */
+  public IntArrayList getRowOffsets() {
+    return rowOffsets;
+  }
+
   /**
    * @return the internal column representation.
    */
@@ -135,15 +183,47 @@ public class SparseGraphStruct {
   }
 
   /**
-   * @return the JSON encoding.
+   * @param i
+   * @return the column index of the i-th non-zero entry.
+   */
+  @Override
+  public int col(int i) {
+    return colIndex.getInt(i);
+  }
+
+  /**
+   * @return the JSON encoding, using the legacy row encoding.
    */
   public JSONObject toJSONObj() {
+    return toJSONObj(false);
+  }
+
+  /**
+   * @param useRowOffsets
+   *          if true, output the row offsets as "rowOffsets", otherwise output
+   *          the legacy encoding as "rowIndex".
+   * @return the JSON encoding.
+   */
+  public JSONObject toJSONObj(boolean useRowOffsets) {
     JSONObject obj = new JSONObject();
-    obj.put("rowIndex", rowIndex);
+    if (useRowOffsets)
+      obj.put("rowOffsets", rowOffsets);
+    else
+      obj.put("rowIndex", getRowIndex());
     obj.put("colIndex", colIndex);
     return obj;
   }
 
-  private List<Integer> rowIndex;
-  private List<Integer> colIndex;
+  private static IntArrayList toIntArrayList(List<Integer> list) {
+    if (list instanceof IntArrayList)
+      return (IntArrayList) list;
+    IntArrayList ret = new IntArrayList(list.size());
+    ret.addAll(list);
+    return ret;
+  }
+
+  /** Row offsets, with length = #rows + 1. */
+  private IntArrayList rowOffsets;
+  /** Column index of the non-zero entries, with length = #entries. */
+  private IntArrayList colIndex;
 }
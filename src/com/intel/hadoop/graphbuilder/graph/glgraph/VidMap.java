@@ -0,0 +1,259 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.graph.glgraph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.intel.hadoop.graphbuilder.types.IntType;
+import com.intel.hadoop.graphbuilder.types.LongType;
+import com.intel.hadoop.graphbuilder.util.LongIntHashMap;
+
+/**
+ * Map from global vid to local vid used by {@code GLGraph}. Local vids are
+ * assigned densely in insertion order. Integral vids ({@code Integer},
+ * {@code Long}, {@code IntType} and {@code LongType}) are stored in a
+ * primitive {@code LongIntHashMap}; any other vid type falls back to a
+ * {@code HashMap}. The primitive map takes about 14 bytes per vertex when
+ * created with the expected number of vertices, and between 14 and 21 bytes
+ * per vertex when it grows.
+ * 
+ * @param <VidType>
+ */
+abstract class VidMap<VidType> {
+
+  /**
+   * Creates the map best suited to the type of the given vid.
+   * 
+   * @param vid
+   *          a sample vid.
+   * @param expectedSize
+   *          the expected number of vertices.
+   * @return a new empty map.
+   */
+  static <VidType> VidMap<VidType> create(VidType vid, int expectedSize) {
+    if (vid instanceof Integer || vid instanceof Long
+        || vid instanceof IntType || vid instanceof LongType)
+      return new PrimitiveVidMap<VidType>(vid.getClass(), expectedSize);
+    return new GenericVidMap<VidType>(expectedSize);
+  }
+
+  /**
+   * @param vid
+   * @return the local vid, or -1 if the vid is absent.
+   */
+  abstract int lvid(Object vid);
+
+  /**
+   * Returns the local vid, assigning the next local vid if the vid is absent.
+   * 
+   * @param vid
+   * @return the local vid.
+   */
+  abstract int insert(VidType vid);
+
+  abstract int size();
+
+  abstract void clear();
+
+  /**
+   * @return a {@code Map} view of this map.
+   */
+  abstract Map<VidType, Integer> asMap();
+
+  /** Fallback for non integral vids. */
+  private static class GenericVidMap<VidType> extends VidMap<VidType> {
+    GenericVidMap(int expectedSize) {
+      map = new HashMap<VidType, Integer>(Math.max(16, expectedSize));
+    }
+
+    @Override
+    int lvid(Object vid) {
+      Integer lvid = map.get(vid);
+      return lvid == null ? -1 : lvid;
+    }
+
+    @Override
+    int insert(VidType vid) {
+      Integer lvid = map.get(vid);
+      if (lvid == null) {
+        lvid = map.size();
+        map.put(vid, lvid);
+      }
+      return lvid;
+    }
+
+    @Override
+    int size() {
+      return map.size();
+    }
+
+    @Override
+    void clear() {
+      map.clear();
+    }
+
+    @Override
+    Map<VidType, Integer> asMap() {
+      return map;
+    }
+
+    private HashMap<VidType, Integer> map;
+  }
+
+  /** Integral vids stored as primitive longs. */
+  private static class PrimitiveVidMap<VidType> extends VidMap<VidType> {
+    PrimitiveVidMap(Class<?> vidClass, int expectedSize) {
+      this.vidClass = vidClass;
+      map = new LongIntHashMap(expectedSize);
+    }
+
+    @Override
+    int lvid(Object vid) {
+      if (!vidClass.isInstance(vid))
+        return -1;
+      return map.get(toLong(vid));
+    }
+
+    @Override
+    int insert(VidType vid) {
+      int lvid = map.size();
+      int old = map.putIfAbsent(toLong(vid), lvid);
+      return old == LongIntHashMap.NO_VALUE ? lvid : old;
+    }
+
+    @Override
+    int size() {
+      return map.size();
+    }
+
+    @Override
+    void clear() {
+      map.clear();
+    }
+
+    @Override
+    Map<VidType, Integer> asMap() {
+      return new AbstractMap<VidType, Integer>() {
+        @Override
+        public Integer get(Object key) {
+          int lvid = lvid(key);
+          return lvid < 0 ? null : lvid;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+          return lvid(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+          return map.size();
+        }
+
+        @Override
+        public void clear() {
+          map.clear();
+        }
+
+        @Override
+        public Set<Map.Entry<VidType, Integer>> entrySet() {
+          return new AbstractSet<Map.Entry<VidType, Integer>>() {
+            @Override
+            public int size() {
+              return map.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<VidType, Integer>> iterator() {
+              return new EntryIterator();
+            }
+          };
+        }
+      };
+    }
+
+    private long toLong(Object vid) {
+      if (vid instanceof IntType)
+        return ((IntType) vid).get();
+      if (vid instanceof LongType)
+        return ((LongType) vid).get();
+      return ((Number) vid).longValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private VidType fromLong(long key) {
+      Object vid;
+      if (vidClass == Integer.class)
+        vid = (int) key;
+      else if (vidClass == Long.class)
+        vid = key;
+      else if (vidClass == IntType.class)
+        vid = new IntType((int) key);
+      else
+        vid = new LongType(key);
+      return (VidType) vid;
+    }
+
+    /** Iterates the occupied slots of the primitive map. */
+    private class EntryIterator implements
+        Iterator<Map.Entry<VidType, Integer>> {
+      EntryIterator() {
+        advance();
+      }
+
+      @Override
+      public boolean hasNext() {
+        return slot < map.capacity();
+      }
+
+      @Override
+      public Map.Entry<VidType, Integer> next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        Map.Entry<VidType, Integer> e = new AbstractMap.SimpleImmutableEntry<VidType, Integer>(
+            fromLong(map.keyAt(slot)), map.valueAt(slot));
+        slot++;
+        advance();
+        return e;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+
+      private void advance() {
+        while (slot < map.capacity()
+            && map.valueAt(slot) == LongIntHashMap.NO_VALUE)
+          slot++;
+      }
+
+      private int slot;
+    }
+
+    private Class<?> vidClass;
+    private LongIntHashMap map;
+  }
+}
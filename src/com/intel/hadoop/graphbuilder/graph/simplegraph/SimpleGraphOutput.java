@@ -19,7 +19,6 @@
 package com.intel.hadoop.graphbuilder.graph.simplegraph;
 
 import java.io.IOException;
-import java.io.StringWriter;
 
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.JobConf;
@@ -30,6 +29,7 @@ import org.apache.log4j.Logger;
 import com.intel.hadoop.graphbuilder.graph.Graph;
 import com.intel.hadoop.graphbuilder.graph.EdgeFormatter;
 import com.intel.hadoop.graphbuilder.graph.GraphOutput;
+import com.intel.hadoop.graphbuilder.io.ChunkedRecordWriter;
 import com.intel.hadoop.graphbuilder.io.MultiDirOutputFormat;
 
 /**
@@ -42,7 +42,9 @@ import com.intel.hadoop.graphbuilder.io.MultiDirOutputFormat;
  * <li>Metafile: $prefix/partition{$i}/subpart{$j}/meta</li>
  * <li>Graph structure: $prefix/partition{$i}/subpart{$j}/edgelist</li>
  * </ul>
- * The actual output of each part is controlled by the {@code GraphFormatter}.
+ * The actual output of each part is controlled by the {@code GraphFormatter},
+ * which streams it into the {@code OutputCollector} in chunks of
+ * {@code ChunkedRecordWriter.CHUNK_SIZE_KEY} characters.
  * 
  */
 
@@ -59,6 +61,8 @@ public class SimpleGraphOutput implements GraphOutput {
 
   @Override
   public void configure(JobConf conf) {
+    chunkSize = conf.getInt(ChunkedRecordWriter.CHUNK_SIZE_KEY,
+        ChunkedRecordWriter.DEFAULT_CHUNK_SIZE);
   }
 
   @Override
@@ -78,22 +82,24 @@ public class SimpleGraphOutput implements GraphOutput {
     out.collect(new Text(emetaout), new Text("{\"numEdges\":" + g.numEdges()
         + "}"));
 
-    StringWriter edataWriter = formatter.edataWriter((SimpleGraph) g);
-    if (clearAfterWrite)
-      ((SimpleGraph) g).clearEdataList();
     String edataout = basedir + " edata";
-    out.collect(new Text(edataout), new Text(edataWriter.toString()));
+    ChunkedRecordWriter edataWriter = new ChunkedRecordWriter(out, new Text(
+        edataout), chunkSize);
+    formatter.writeEdata(g, edataWriter);
     edataWriter.close();
+    if (clearAfterWrite)
+      ((SimpleGraph) g).clearEdataList();
     LOG.debug("Done collecting edata: " + pid);
 
     /* Output the graph structure. */
     LOG.debug("Collecting graph structure: " + pid);
-    StringWriter structureWriter = formatter.structWriter(g);
     String structout = basedir + " edgelist";
-    out.collect(new Text(structout), new Text(structureWriter.toString()));
+    ChunkedRecordWriter structureWriter = new ChunkedRecordWriter(out,
+        new Text(structout), chunkSize);
+    formatter.writeStruct(g, structureWriter);
+    structureWriter.close();
     if (clearAfterWrite)
       g.clear();
-    structureWriter.close();
     LOG.info("Done collecting graph structure: " + pid);
   }
 
@@ -109,4 +115,5 @@ public class SimpleGraphOutput implements GraphOutput {
   }
 
   boolean clearAfterWrite = false;
+  int chunkSize = ChunkedRecordWriter.DEFAULT_CHUNK_SIZE;
 }
@@ -20,6 +20,7 @@ package com.intel.hadoop.graphbuilder.graph.simplegraph;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -37,43 +38,52 @@ import com.intel.hadoop.graphbuilder.graph.EdgeFormatter;
 public class SimpleJsonFormatter implements EdgeFormatter {
 
   @Override
-  public StringWriter structWriter(Graph g) {
+  public void writeStruct(Graph g, Writer out) throws IOException {
     JSONObject obj = new JSONObject();
-    StringWriter out = new StringWriter();
-    int count = 0;
     List sortedKey = ((SimpleGraph) g).vertices();
     Collections.sort(sortedKey);
-    try {
-      for (int i = 0; i < sortedKey.size(); i++) {
-        obj.clear();
-        obj.put("source", sortedKey.get(i));
-        obj.put("targets", ((SimpleGraph) g).outEdgeTargetIds(sortedKey.get(i)));
-        obj.writeJSONString(out);
+    for (int i = 0; i < sortedKey.size(); i++) {
+      obj.clear();
+      obj.put("source", sortedKey.get(i));
+      obj.put("targets", ((SimpleGraph) g).outEdgeTargetIds(sortedKey.get(i)));
+      obj.writeJSONString(out);
+      out.append("\n");
+    }
+  }
+
+  @Override
+  public void writeEdata(Graph g, Writer out) throws IOException {
+    List sortedKey = ((SimpleGraph) g).vertices();
+    Collections.sort(sortedKey);
+    List buffer = new ArrayList();
+    for (int i = 0; i < sortedKey.size(); i++) {
+      List data = (List) ((SimpleGraph) g).outEdgeData(sortedKey.get(i));
+      buffer.addAll(data);
+      if (buffer.size() > recordPerLine) {
+        JSONValue.writeJSONString(buffer, out);
         out.append("\n");
+        buffer.clear();
       }
+    }
+    JSONValue.writeJSONString(buffer, out);
+  }
+
+  @Override
+  public StringWriter structWriter(Graph g) {
+    StringWriter out = new StringWriter();
+    try {
+      writeStruct(g, out);
     } catch (IOException e) {
       e.printStackTrace();
     }
     return out;
   }
 
+  @Override
   public StringWriter edataWriter(Graph g) {
     StringWriter out = new StringWriter();
-    int count = 0;
-    List sortedKey = ((SimpleGraph) g).vertices();
-    Collections.sort(sortedKey);
-    List buffer = new ArrayList();
     try {
-      for (int i = 0; i < sortedKey.size(); i++) {
-        List data = (List) ((SimpleGraph) g).outEdgeData(sortedKey.get(i));
-        buffer.addAll(data);
-        if (buffer.size() > recordPerLine) {
-          JSONValue.writeJSONString(buffer, out);
-          out.append("\n");
-          buffer.clear();
-        }
-      }
-      JSONValue.writeJSONString(buffer, out);
+      writeEdata(g, out);
     } catch (IOException e) {
       e.printStackTrace();
     }
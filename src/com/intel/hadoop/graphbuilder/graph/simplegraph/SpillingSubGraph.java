@@ -0,0 +1,461 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.graph.simplegraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+
+import org.apache.hadoop.fs.LocalDirAllocator;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.log4j.Logger;
+
+import com.intel.hadoop.graphbuilder.util.IntArrayList;
+
+/**
+ * An external memory counterpart of {@code SimpleSubGraph} together with
+ * {@code SimpleGraphOutput} and {@code SimpleJsonFormatter}, for partitions
+ * too large to fit in the heap. Edges are buffered in serialized form; once
+ * the buffer exceeds the spill threshold, it is sorted by source and written
+ * as a run to the local disk. {@link #write(OutputCollector, Reporter)} k-way
+ * merges the runs and emits the meta, edata and edgelist outputs record by
+ * record, with the same content as {@code SimpleGraphOutput}. The memory use
+ * is bounded by the spill threshold and the degree of the largest vertex,
+ * independent of the partition size.
+ * 
+ * @param <VidType>
+ * @param <EdgeData>
+ */
+public class SpillingSubGraph<VidType extends WritableComparable<VidType>, EdgeData extends Writable> {
+  private static final Logger LOG = Logger.getLogger(SpillingSubGraph.class);
+
+  /**
+   * Configuration key of the number of bytes buffered in memory before a run
+   * is spilled to disk. A non-positive value disables the external memory
+   * mode.
+   */
+  public static final String SPILL_THRESHOLD_KEY = "graphbuilder.ingress.spill.threshold";
+
+  /**
+   * @param conf
+   *          the job configuration, used to locate the local directories.
+   * @param vidClass
+   * @param edataClass
+   * @param spillThreshold
+   *          the number of bytes buffered before spilling a run.
+   */
+  public SpillingSubGraph(JobConf conf, Class<VidType> vidClass,
+      Class<EdgeData> edataClass, long spillThreshold) {
+    this.conf = conf;
+    this.vidClass = vidClass;
+    this.edataClass = edataClass;
+    this.spillThreshold = spillThreshold;
+    this.comparator = WritableComparator.get(vidClass);
+    buffer = new DataOutputBuffer();
+    recordOffsets = new IntArrayList();
+    runs = new ArrayList<File>();
+  }
+
+  public void setPid(int pid) {
+    this.pid = pid;
+  }
+
+  public int pid() {
+    return pid;
+  }
+
+  public void setSubPid(int subpid) {
+    this.subpid = subpid;
+  }
+
+  public int subpid() {
+    return subpid;
+  }
+
+  public int numEdges() {
+    return numEdges;
+  }
+
+  /**
+   * @return the number of runs spilled to disk so far.
+   */
+  public int numRuns() {
+    return runs.size();
+  }
+
+  /**
+   * Adds an edge, spilling the buffer to disk if it exceeds the threshold.
+   * 
+   * @param source
+   * @param target
+   * @param edata
+   * @throws IOException
+   */
+  public void addEdge(VidType source, VidType target, EdgeData edata)
+      throws IOException {
+    recordOffsets.add(buffer.getLength());
+    source.write(buffer);
+    target.write(buffer);
+    edata.write(buffer);
+    numEdges++;
+    if (bufferedBytes() > spillThreshold)
+      spill();
+  }
+
+  /**
+   * Merges the runs and writes the graph to the same outputs as
+   * {@code SimpleGraphOutput}, then deletes the runs.
+   * 
+   * @param out
+   * @param reporter
+   * @throws IOException
+   */
+  public void write(OutputCollector<Text, Text> out, Reporter reporter)
+      throws IOException {
+    String basedir = "partition" + pid + "/subpart" + subpid;
+    Text edataKey = new Text(basedir + " edata");
+    Text structKey = new Text(basedir + " edgelist");
+    out.collect(new Text(basedir + " meta"), new Text("{\"numEdges\":"
+        + numEdges + "}"));
+
+    PriorityQueue<RunReader> heap = new PriorityQueue<RunReader>(
+        runs.size() + 1, new Comparator<RunReader>() {
+          @Override
+          public int compare(RunReader r1, RunReader r2) {
+            int c = r1.source.compareTo(r2.source);
+            return c != 0 ? c : r1.runIndex - r2.runIndex;
+          }
+        });
+    try {
+      for (int i = 0; i < runs.size(); ++i)
+        offer(heap, new FileRunReader(i, runs.get(i)));
+      offer(heap, new MemoryRunReader(runs.size(), sortBuffer()));
+
+      LOG.info("Merging " + heap.size() + " runs of graph " + pid + "/"
+          + subpid);
+      VidType cur = null;
+      ArrayList<VidType> targets = new ArrayList<VidType>();
+      ArrayList<EdgeData> edatas = new ArrayList<EdgeData>();
+      while (!heap.isEmpty()) {
+        RunReader r = heap.poll();
+        if (cur == null || r.source.compareTo(cur) != 0) {
+          if (cur != null)
+            flushVertex(cur, targets, edatas, out, structKey, edataKey);
+          cur = WritableUtils.clone(r.source, conf);
+        }
+        VidType target = ReflectionUtils.newInstance(vidClass, conf);
+        target.readFields(r.in);
+        EdgeData edata = ReflectionUtils.newInstance(edataClass, conf);
+        edata.readFields(r.in);
+        targets.add(target);
+        edatas.add(edata);
+        offer(heap, r);
+        if (reporter != null && (++numMerged & 0xFFFF) == 0)
+          reporter.progress();
+      }
+      if (cur != null)
+        flushVertex(cur, targets, edatas, out, structKey, edataKey);
+
+      /* Same trailer as SimpleJsonFormatter and SimpleGraphOutput. */
+      out.collect(edataKey, new Text(JSONValue.toJSONString(edataLine)));
+      out.collect(structKey, new Text(""));
+    } finally {
+      for (RunReader r : heap)
+        r.close();
+      clear();
+    }
+  }
+
+  /**
+   * Drops all edges and deletes the runs, which {@link #write} does as well.
+   * Call it if the graph is not written, so that its runs do not outlive the
+   * task.
+   */
+  public void close() {
+    clear();
+  }
+
+  /**
+   * Drops all edges and deletes the runs.
+   */
+  public void clear() {
+    for (File f : runs)
+      f.delete();
+    runs.clear();
+    buffer.reset();
+    recordOffsets.clear();
+    edataLine.clear();
+    numEdges = 0;
+    numMerged = 0;
+  }
+
+  private long bufferedBytes() {
+    /* The serialized records, their offsets and the two sort indices. */
+    return buffer.getLength() + 12L * recordOffsets.size();
+  }
+
+  /**
+   * @return the indices of the buffered records, stable sorted by source.
+   */
+  private int[] sortBuffer() {
+    int n = recordOffsets.size();
+    int[] order = new int[n];
+    for (int i = 0; i < n; ++i)
+      order[i] = i;
+    /* A merge sort, which is stable, from order into a copy of itself. */
+    int[] tmp = order.clone();
+    mergeSort(tmp, order, 0, n);
+    return order;
+  }
+
+  /**
+   * Stable sorts {@code dst[begin, end)} by the source of the records, using
+   * {@code src[begin, end)}, a copy of it, as scratch.
+   */
+  private void mergeSort(int[] src, int[] dst, int begin, int end) {
+    if (end - begin <= INSERTION_SORT_SIZE) {
+      for (int i = begin + 1; i < end; ++i) {
+        int r = dst[i];
+        int j = i;
+        for (; j > begin && compareRecords(dst[j - 1], r) > 0; --j)
+          dst[j] = dst[j - 1];
+        dst[j] = r;
+      }
+      return;
+    }
+    int mid = (begin + end) >>> 1;
+    mergeSort(dst, src, begin, mid);
+    mergeSort(dst, src, mid, end);
+    if (compareRecords(src[mid - 1], src[mid]) <= 0) {
+      System.arraycopy(src, begin, dst, begin, end - begin);
+      return;
+    }
+    for (int i = begin, p = begin, q = mid; i < end; ++i) {
+      if (q >= end || p < mid && compareRecords(src[p], src[q]) <= 0)
+        dst[i] = src[p++];
+      else
+        dst[i] = src[q++];
+    }
+  }
+
+  /** Compares the sources of two buffered records. */
+  private int compareRecords(int i, int j) {
+    byte[] data = buffer.getData();
+    int[] offsets = recordOffsets.elements();
+    int n = recordOffsets.size();
+    int si = offsets[i], sj = offsets[j];
+    int ei = i + 1 < n ? offsets[i + 1] : buffer.getLength();
+    int ej = j + 1 < n ? offsets[j + 1] : buffer.getLength();
+    return comparator.compare(data, si, ei - si, data, sj, ej - sj);
+  }
+
+  /** Writes the buffer as a sorted run to the local disk. */
+  private void spill() throws IOException {
+    int[] order = sortBuffer();
+    Path dir = new LocalDirAllocator("mapred.local.dir").getLocalPathForWrite(
+        "edgespill", bufferedBytes(), conf);
+    File dirFile = new File(dir.toUri().getPath());
+    dirFile.mkdirs();
+    File file = File.createTempFile("run", ".bin", dirFile);
+    LOG.info("Spill run " + runs.size() + " of graph " + pid + "/" + subpid
+        + " with " + order.length + " edges to " + file);
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(file), BUFFER_SIZE));
+    try {
+      byte[] data = buffer.getData();
+      int[] offsets = recordOffsets.elements();
+      int n = recordOffsets.size();
+      for (int i : order) {
+        int end = i + 1 < n ? offsets[i + 1] : buffer.getLength();
+        out.writeInt(end - offsets[i]);
+        out.write(data, offsets[i], end - offsets[i]);
+      }
+    } finally {
+      out.close();
+    }
+    runs.add(file);
+    buffer.reset();
+    recordOffsets.clear();
+  }
+
+  private void flushVertex(VidType source, ArrayList<VidType> targets,
+      ArrayList<EdgeData> edatas, OutputCollector<Text, Text> out,
+      Text structKey, Text edataKey) throws IOException {
+    JSONObject obj = new JSONObject();
+    obj.put("source", source);
+    obj.put("targets", targets);
+    StringWriter writer = new StringWriter();
+    obj.writeJSONString(writer);
+    out.collect(structKey, new Text(writer.toString()));
+    targets.clear();
+
+    edataLine.addAll(edatas);
+    edatas.clear();
+    if (edataLine.size() > RECORD_PER_LINE) {
+      out.collect(edataKey, new Text(JSONValue.toJSONString(edataLine)));
+      edataLine.clear();
+    }
+  }
+
+  private void offer(PriorityQueue<RunReader> heap, RunReader r)
+      throws IOException {
+    if (r.next()) {
+      heap.add(r);
+    } else {
+      r.close();
+    }
+  }
+
+  /**
+   * A sorted run positioned at a record: the source is deserialized, and
+   * {@code in} is positioned at the target.
+   */
+  private abstract class RunReader {
+    RunReader(int runIndex) {
+      this.runIndex = runIndex;
+      source = ReflectionUtils.newInstance(vidClass, conf);
+      in = new DataInputBuffer();
+    }
+
+    /**
+     * Advances to the next record.
+     * 
+     * @return false if the run is exhausted.
+     */
+    boolean next() throws IOException {
+      if (!load())
+        return false;
+      source.readFields(in);
+      return true;
+    }
+
+    /** Loads the next record into {@code in}. */
+    abstract boolean load() throws IOException;
+
+    void close() throws IOException {
+    }
+
+    final int runIndex;
+    final VidType source;
+    final DataInputBuffer in;
+  }
+
+  private class FileRunReader extends RunReader {
+    FileRunReader(int runIndex, File file) throws IOException {
+      super(runIndex);
+      stream = new DataInputStream(new BufferedInputStream(
+          new FileInputStream(file), BUFFER_SIZE));
+      record = new byte[64];
+    }
+
+    @Override
+    boolean load() throws IOException {
+      int len;
+      try {
+        len = stream.readInt();
+      } catch (EOFException e) {
+        return false;
+      }
+      if (len > record.length)
+        record = new byte[Math.max(len, record.length * 2)];
+      stream.readFully(record, 0, len);
+      in.reset(record, len);
+      return true;
+    }
+
+    @Override
+    void close() throws IOException {
+      stream.close();
+    }
+
+    private DataInputStream stream;
+    private byte[] record;
+  }
+
+  private class MemoryRunReader extends RunReader {
+    MemoryRunReader(int runIndex, int[] order) {
+      super(runIndex);
+      this.order = order;
+    }
+
+    @Override
+    boolean load() {
+      if (pos == order.length)
+        return false;
+      int i = order[pos++];
+      int start = recordOffsets.getInt(i);
+      int end = i + 1 < recordOffsets.size() ? recordOffsets.getInt(i + 1)
+          : buffer.getLength();
+      in.reset(buffer.getData(), start, end - start);
+      return true;
+    }
+
+    private int[] order;
+    private int pos;
+  }
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int RECORD_PER_LINE = 1000;
+  /** Ranges of the merge sort sorted by insertion. */
+  private static final int INSERTION_SORT_SIZE = 16;
+
+  private JobConf conf;
+  private Class<VidType> vidClass;
+  private Class<EdgeData> edataClass;
+  private long spillThreshold;
+  private WritableComparator comparator;
+
+  private int pid;
+  private int subpid;
+  private int numEdges;
+  private long numMerged;
+
+  /** Serialized edges not yet spilled, and the offset of each record. */
+  private DataOutputBuffer buffer;
+  private IntArrayList recordOffsets;
+  /** Spilled runs, in order. */
+  private ArrayList<File> runs;
+  /** Edge data of the current edata output line. */
+  private ArrayList<EdgeData> edataLine = new ArrayList<EdgeData>();
+}
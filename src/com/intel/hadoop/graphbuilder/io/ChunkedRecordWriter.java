@@ -0,0 +1,116 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.io;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.OutputCollector;
+
+/**
+ * A {@code Writer} that streams one output record into an
+ * {@code OutputCollector}. The characters are buffered, and every time the
+ * buffer reaches the chunk size it is collected as a {@code TextChunk};
+ * {@link #close()} collects the rest as a plain {@code Text} which ends the
+ * record. With {@code MultiDirOutputFormat}, the output is the same as
+ * collecting the whole record at once, while only one chunk is held in memory.
+ */
+public class ChunkedRecordWriter extends Writer {
+  /** Configuration key of the chunk size in characters. */
+  public static final String CHUNK_SIZE_KEY = "graphbuilder.output.chunksize";
+  public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+  /**
+   * @param out
+   * @param key
+   *          the output key of the record.
+   * @param chunkSize
+   *          the number of characters buffered before a chunk is collected.
+   */
+  public ChunkedRecordWriter(OutputCollector<Text, Text> out, Text key,
+      int chunkSize) {
+    this.out = out;
+    this.key = key;
+    this.chunkSize = Math.max(chunkSize, 2);
+    buffer = new StringBuilder(Math.min(this.chunkSize, 1 << 12));
+  }
+
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    ensureOpen();
+    buffer.append(cbuf, off, len);
+    if (buffer.length() >= chunkSize)
+      collectChunk();
+  }
+
+  @Override
+  public void write(String str, int off, int len) throws IOException {
+    ensureOpen();
+    buffer.append(str, off, off + len);
+    if (buffer.length() >= chunkSize)
+      collectChunk();
+  }
+
+  @Override
+  public void write(int c) throws IOException {
+    ensureOpen();
+    buffer.append((char) c);
+    if (buffer.length() >= chunkSize)
+      collectChunk();
+  }
+
+  /**
+   * Does nothing: chunks are collected when full, and the record is ended by
+   * {@link #close()}.
+   */
+  @Override
+  public void flush() {
+  }
+
+  /**
+   * Collects the rest of the buffer and ends the record.
+   */
+  @Override
+  public void close() throws IOException {
+    if (buffer == null)
+      return;
+    out.collect(key, new Text(buffer.toString()));
+    buffer = null;
+  }
+
+  private void collectChunk() throws IOException {
+    int n = buffer.length();
+    /* Do not split a surrogate pair, which UTF-8 encodes as one character. */
+    if (Character.isHighSurrogate(buffer.charAt(n - 1)))
+      n--;
+    out.collect(key, new TextChunk(buffer.substring(0, n)));
+    buffer.delete(0, n);
+  }
+
+  private void ensureOpen() throws IOException {
+    if (buffer == null)
+      throw new IOException("Record " + key + " is already closed.");
+  }
+
+  private OutputCollector<Text, Text> out;
+  private Text key;
+  private int chunkSize;
+  private StringBuilder buffer;
+}
@@ -18,16 +18,33 @@
  */
 package com.intel.hadoop.graphbuilder.io;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.lib.MultipleTextOutputFormat;
+import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.util.ReflectionUtils;
 
 /**
  * OutputFormat which allows to multiplex output directory based on the output
  * key. If key does not contains space, then it is treated as the output
  * directory. If key does contains space, then its first part is the directory,
  * and the second part is the file name.
- * 
+ * <p>
+ * Values are written as by {@code TextOutputFormat}, except that a
+ * {@code TextChunk} is not followed by a line terminator, which allows a large
+ * record to be collected in pieces by a {@code ChunkedRecordWriter}.
+ * </p>
  */
 public class MultiDirOutputFormat extends MultipleTextOutputFormat<Text, Text> {
 
@@ -46,4 +63,60 @@ public class MultiDirOutputFormat extends MultipleTextOutputFormat<Text, Text> {
     }
   }
 
+  @Override
+  protected RecordWriter<Text, Text> getBaseRecordWriter(FileSystem fs,
+      JobConf job, String name, Progressable progress) throws IOException {
+    String separator = job.get("mapred.textoutputformat.separator", "\t");
+    DataOutputStream out;
+    if (getCompressOutput(job)) {
+      Class<? extends CompressionCodec> codecClass = getOutputCompressorClass(
+          job, GzipCodec.class);
+      CompressionCodec codec = ReflectionUtils.newInstance(codecClass, job);
+      Path file = FileOutputFormat.getTaskOutputPath(job, name
+          + codec.getDefaultExtension());
+      out = new DataOutputStream(codec.createOutputStream(file.getFileSystem(
+          job).create(file, progress)));
+    } else {
+      Path file = FileOutputFormat.getTaskOutputPath(job, name);
+      out = file.getFileSystem(job).create(file, progress);
+    }
+    return new ChunkedLineRecordWriter(out, separator);
+  }
+
+  /**
+   * Writes records as {@code TextOutputFormat}, but without the line
+   * terminator after a {@code TextChunk} value.
+   */
+  private static class ChunkedLineRecordWriter implements
+      RecordWriter<Text, Text> {
+    ChunkedLineRecordWriter(DataOutputStream out, String separator) {
+      this.out = out;
+      this.separator = separator.getBytes(UTF8);
+    }
+
+    @Override
+    public synchronized void write(Text key, Text value) throws IOException {
+      if (key == null && value == null)
+        return;
+      if (key != null)
+        out.write(key.getBytes(), 0, key.getLength());
+      if (key != null && value != null)
+        out.write(separator);
+      if (value != null)
+        out.write(value.getBytes(), 0, value.getLength());
+      if (!(value instanceof TextChunk))
+        out.write(NEWLINE);
+    }
+
+    @Override
+    public synchronized void close(Reporter reporter) throws IOException {
+      out.close();
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] NEWLINE = "\n".getBytes(UTF8);
+
+    private DataOutputStream out;
+    private byte[] separator;
+  }
 }
\ No newline at end of file
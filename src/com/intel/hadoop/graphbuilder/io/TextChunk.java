@@ -0,0 +1,38 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.io;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * A piece of a record that continues in the next value collected under the
+ * same key. {@code MultiDirOutputFormat} writes a {@code TextChunk} without
+ * the line terminator, so a record collected as a sequence of chunks followed
+ * by a plain {@code Text} is written exactly as the whole record would be.
+ * 
+ * @see ChunkedRecordWriter
+ */
+public class TextChunk extends Text {
+  public TextChunk() {
+  }
+
+  public TextChunk(String string) {
+    super(string);
+  }
+}
@@ -82,6 +82,38 @@ public abstract class AbstractPartitionJob<VidType extends WritableComparable<Vi
     return BasicGraphParser.class;
   }
 
+  /**
+   * @return the ingress method, see {@code EdgeIngressMR#setIngress}.
+   */
+  public String ingressMethod() {
+    return "greedy";
+  }
+
+  /**
+   * @return true to count the vertex degrees before the ingress, see
+   *         {@code EdgeIngressMR#setDegreePrepass}.
+   */
+  public boolean degreePrepass() {
+    return false;
+  }
+
+  /**
+   * @return the maximum number of vertices whose records are combined in each
+   *         mapper, or 0 for none, see {@code EdgeIngressMR#setVertexCombining}.
+   */
+  public int vertexBufferSize() {
+    return 0;
+  }
+
+  /**
+   * @return the number of edges sampled to split the partitions according to
+   *         their loads, or 0 for a uniform split, see
+   *         {@code EdgeIngressMR#setSkewAwareSplit}.
+   */
+  public int splitSampleSize() {
+    return 0;
+  }
+
   /**
    * Running the partitioning job with {@code nparts} partitions. Reads input
    * from {@code inputs}, and outputs to {@code output} directory.
@@ -108,12 +140,15 @@ public abstract class AbstractPartitionJob<VidType extends WritableComparable<Vi
         IngressJobKeyValueFactory.getValueClassByClassName(
             vidClass().getName(), vdataClass().getName(), edataClass()
                 .getName()));
+    job1.setDegreePrepass(degreePrepass());
+    job1.setVertexCombining(vertexBufferSize());
+    job1.setSkewAwareSplit(splitSampleSize());
     // Distribute new class file to cluster.
     FsUtil.distributedTempClassToClassPath(job1.getConf());
     VrecordIngressMR job2 = new VrecordIngressMR();
 
     try {
-      job1.run(inputs, output + "/edges", nparts, "greedy");
+      job1.run(inputs, output + "/edges", nparts, ingressMethod());
       job2.run(nparts, output + "/edges/vrecord", output + "/vrecords");
     } catch (Exception e) {
       e.printStackTrace();
@@ -0,0 +1,145 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.mapreduce.degree;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.TextInputFormat;
+import org.apache.log4j.Logger;
+
+import com.intel.hadoop.graphbuilder.partition.strategy.DegreeTable;
+
+/**
+ * The MapReduce class counts the degree of every vertex of the edge list in
+ * the input directories, before the edge ingress. The output directory holds
+ * one {@link DegreeTable} file per reducer, which
+ * {@link #addToDistributedCache} ships to the mappers of the ingress.
+ */
+public class DegreeCountMR {
+  private static final Logger LOG = Logger.getLogger(DegreeCountMR.class);
+
+  /** Set when the degree table is in the distributed cache of the job. */
+  public static final String DEGREES_KEY = "graphbuilder.ingress.degrees";
+
+  /**
+   * @param graphparser
+   * @param vidparser
+   * @param edataparser
+   */
+  public DegreeCountMR(Class graphparser, Class vidparser, Class edataparser) {
+    conf = new JobConf(DegreeCountMR.class);
+    conf.set("GraphParser", graphparser.getName());
+    conf.set("VidParser", vidparser.getName());
+    conf.set("EdataParser", edataparser.getName());
+  }
+
+  /**
+   * @return JobConf of the current job.
+   */
+  public JobConf getConf() {
+    return conf;
+  }
+
+  /**
+   * @param inputpaths
+   * @param outputpath
+   * @throws IOException
+   */
+  public void run(String[] inputpaths, String outputpath) throws IOException {
+    conf.setJobName("Degree Count Mapreduce");
+
+    conf.setOutputKeyClass(LongWritable.class);
+    conf.setOutputValueClass(IntWritable.class);
+
+    conf.setMapperClass(DegreeCountMapper.class);
+    conf.setCombinerClass(DegreeCountReducer.class);
+    conf.setReducerClass(DegreeCountReducer.class);
+
+    conf.setInputFormat(TextInputFormat.class);
+    conf.setOutputFormat(DegreeTableOutputFormat.class);
+
+    for (String path : inputpaths)
+      FileInputFormat.addInputPath(conf, new Path(path));
+    FileOutputFormat.setOutputPath(conf, new Path(outputpath));
+
+    LOG.info("====== Job: Count vertex degrees =============================");
+    LOG.info("input: " + StringUtils.join(inputpaths, ","));
+    LOG.info("output: " + outputpath);
+    LOG.info("==============================================================");
+
+    JobClient.runJob(conf);
+    LOG.info("==========================Done===============================");
+  }
+
+  /**
+   * Adds the table files of a degree count output to the distributed cache of
+   * a job, and flags the job to load them.
+   * 
+   * @param outputpath
+   * @param job
+   * @throws IOException
+   */
+  public static void addToDistributedCache(String outputpath, JobConf job)
+      throws IOException {
+    Path dir = new Path(outputpath);
+    FileSystem fs = dir.getFileSystem(job);
+    for (FileStatus f : fs.listStatus(dir)) {
+      if (f.getPath().getName().startsWith(DegreeTable.FILE_PREFIX))
+        DistributedCache.addCacheFile(f.getPath().toUri(), job);
+    }
+    job.setBoolean(DEGREES_KEY, true);
+  }
+
+  /**
+   * Loads the degree table from the distributed cache of a task.
+   * 
+   * @param job
+   * @return the table, or null if the job has none.
+   * @throws IOException
+   */
+  public static DegreeTable loadFromDistributedCache(JobConf job)
+      throws IOException {
+    if (!job.getBoolean(DEGREES_KEY, false))
+      return null;
+    Path[] cached = DistributedCache.getLocalCacheFiles(job);
+    if (cached == null)
+      throw new IOException("The degree table is not in the distributed cache.");
+    ArrayList<Path> files = new ArrayList<Path>();
+    for (Path p : cached) {
+      if (p.getName().startsWith(DegreeTable.FILE_PREFIX))
+        files.add(p);
+    }
+    return DegreeTable.load(FileSystem.getLocal(job),
+        files.toArray(new Path[files.size()]));
+  }
+
+  private JobConf conf;
+}
@@ -0,0 +1,96 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.mapreduce.degree;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.log4j.Logger;
+
+import com.intel.hadoop.graphbuilder.graph.Edge;
+import com.intel.hadoop.graphbuilder.parser.FieldParser;
+import com.intel.hadoop.graphbuilder.parser.GraphParser;
+import com.intel.hadoop.graphbuilder.partition.strategy.DegreeTable;
+
+/**
+ * Maps each edge of the input to a count of one for both of its endpoints,
+ * keyed by {@link DegreeTable#key}. Vertex lines, escaped by "!", are skipped.
+ * 
+ * @param <VidType>
+ * @param <EdgeData>
+ */
+public class DegreeCountMapper<VidType extends WritableComparable<VidType>, EdgeData extends Writable>
+    extends MapReduceBase implements
+    Mapper<LongWritable, Text, LongWritable, IntWritable> {
+  private static final Logger LOG = Logger.getLogger(DegreeCountMapper.class);
+
+  @Override
+  public void configure(JobConf job) {
+    super.configure(job);
+    try {
+      this.graphparser = (GraphParser) Class.forName(job.get("GraphParser"))
+          .newInstance();
+      this.vidparser = (FieldParser) Class.forName(job.get("VidParser"))
+          .newInstance();
+      this.edataparser = (FieldParser) Class.forName(job.get("EdataParser"))
+          .newInstance();
+    } catch (InstantiationException e) {
+      e.printStackTrace();
+    } catch (IllegalAccessException e) {
+      e.printStackTrace();
+    } catch (ClassNotFoundException e) {
+      e.printStackTrace();
+    }
+  }
+
+  @Override
+  public void map(LongWritable key, Text value,
+      OutputCollector<LongWritable, IntWritable> out, Reporter reporter)
+      throws IOException {
+    String text = value.toString();
+    if (text.startsWith("!") || !graphparser.isEdgeData(text))
+      return;
+    Edge<VidType, EdgeData> e = graphparser.parseEdge(text, vidparser,
+        edataparser);
+    if (e == null) {
+      LOG.error("Fail to parse: " + text);
+      return;
+    }
+    vertexKey.set(DegreeTable.key(e.source()));
+    out.collect(vertexKey, ONE);
+    vertexKey.set(DegreeTable.key(e.target()));
+    out.collect(vertexKey, ONE);
+  }
+
+  private static final IntWritable ONE = new IntWritable(1);
+
+  protected GraphParser<VidType, ?, EdgeData> graphparser;
+  protected FieldParser<VidType> vidparser;
+  protected FieldParser<EdgeData> edataparser;
+  private LongWritable vertexKey = new LongWritable();
+}
@@ -0,0 +1,49 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.mapreduce.degree;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Sums the counts of a vertex into its degree. Also used as the combiner.
+ */
+public class DegreeCountReducer extends MapReduceBase implements
+    Reducer<LongWritable, IntWritable, LongWritable, IntWritable> {
+
+  @Override
+  public void reduce(LongWritable key, Iterator<IntWritable> iter,
+      OutputCollector<LongWritable, IntWritable> out, Reporter reporter)
+      throws IOException {
+    int sum = 0;
+    while (iter.hasNext())
+      sum += iter.next().get();
+    degree.set(sum);
+    out.collect(key, degree);
+  }
+
+  private IntWritable degree = new IntWritable();
+}
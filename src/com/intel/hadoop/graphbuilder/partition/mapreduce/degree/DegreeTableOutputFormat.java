@@ -0,0 +1,65 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.mapreduce.degree;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.Progressable;
+
+import com.intel.hadoop.graphbuilder.partition.strategy.DegreeTable;
+
+/**
+ * Writes the sorted (vertex key, degree) output of a reducer as a binary
+ * {@link DegreeTable} file named {@code degrees-$name}.
+ */
+public class DegreeTableOutputFormat extends
+    FileOutputFormat<LongWritable, IntWritable> {
+
+  @Override
+  public RecordWriter<LongWritable, IntWritable> getRecordWriter(
+      FileSystem ignored, JobConf job, String name, Progressable progress)
+      throws IOException {
+    Path file = FileOutputFormat.getTaskOutputPath(job,
+        DegreeTable.FILE_PREFIX + name);
+    final FSDataOutputStream out = file.getFileSystem(job).create(file,
+        progress);
+    final DegreeTable.Writer writer = new DegreeTable.Writer(out);
+    return new RecordWriter<LongWritable, IntWritable>() {
+      @Override
+      public void write(LongWritable key, IntWritable value)
+          throws IOException {
+        writer.append(key.get(), value.get());
+      }
+
+      @Override
+      public void close(Reporter reporter) throws IOException {
+        out.close();
+      }
+    };
+  }
+}
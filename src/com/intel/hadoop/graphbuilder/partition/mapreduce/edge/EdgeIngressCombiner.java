@@ -27,7 +27,6 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 
-import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.CombinedEdgeValueType;
 import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressKeyType;
 import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressValueType;
 
@@ -55,12 +54,11 @@ public class EdgeIngressCombiner<KeyType extends IngressKeyType, ValType extends
       return;
     }
 
-    ValType ret;
     try {
-      ret = (ValType) valClass.newInstance();
+      if (ret == null)
+        ret = (ValType) valClass.newInstance();
 
       if (key.flag() == IngressKeyType.EDGEKEY) {
-        CombinedEdgeValueType eval = ret.edgeValue();
         ret.reduce(IngressKeyType.EDGEKEY, iter);
         out.collect(key, ret);
       } else if (key.flag() == IngressKeyType.VERTEXKEY) {
@@ -76,4 +74,6 @@ public class EdgeIngressCombiner<KeyType extends IngressKeyType, ValType extends
   }
 
   protected Class valClass;
+  /** The output value, reused since it is serialized by the collector. */
+  private ValType ret;
 }
@@ -19,6 +19,7 @@
 package com.intel.hadoop.graphbuilder.partition.mapreduce.edge;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.fs.Path;
@@ -29,6 +30,7 @@ import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.FileOutputFormat;
 import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RunningJob;
 import org.apache.hadoop.mapred.TextInputFormat;
 import org.apache.hadoop.mapred.TextOutputFormat;
 import org.apache.log4j.Logger;
@@ -37,8 +39,11 @@ import com.intel.hadoop.graphbuilder.graph.GraphOutput;
 import com.intel.hadoop.graphbuilder.graph.simplegraph.SimpleGraphOutput;
 import com.intel.hadoop.graphbuilder.parser.FieldParser;
 import com.intel.hadoop.graphbuilder.parser.GraphParser;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.degree.DegreeCountMR;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressKeyComparator;
 import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressKeyType;
 import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressValueType;
+import com.intel.hadoop.graphbuilder.partition.strategy.GreedyIngress;
 
 /**
  * The MapRedue class takes from input directory a list of edges and vertices,
@@ -124,23 +129,95 @@ public class EdgeIngressMR {
   }
 
   /**
-   * Set the ingress strategy {random, oblivious}.
+   * Set the ingress strategy {random, greedy, hdrf, grid, torus, pds}.
    * 
-   * @see {ObliviousIngress}
+   * @see {GreedyIngress}
    * @see {RandomIngress}
+   * @see {HdrfIngress}
+   * @see {ConstrainedIngress}
    * @param ingress
    */
   public void setIngress(String ingress) {
-    if (ingress.equals("random") || ingress.equals("greedy"))
+    if (ingress.equals("random") || ingress.equals("greedy")
+        || ingress.equals("hdrf") || ingress.equals("grid")
+        || ingress.equals("torus") || ingress.equals("pds"))
       this.ingress = ingress;
     else {
       LOG.error("Unknown ingress method: " + ingress
-          + "\n Supported ingress methods: oblivious, random");
+          + "\n Supported ingress methods: greedy, random, hdrf, grid, torus, pds");
       LOG.error("Use the default oblivious ingress");
       this.ingress = "greedy";
     }
   }
 
+  /**
+   * Bounds the memory of the greedy ingress in each mapper.
+   * 
+   * @param maxVertices
+   *          maximum number of vertices tracked by a mapper, or 0 for no bound.
+   * @param eviction
+   *          the eviction policy: lru, clock or degree.
+   */
+  public void setPresenceCache(int maxVertices, String eviction) {
+    conf.setInt(GreedyIngress.CACHE_SIZE_KEY, maxVertices);
+    conf.set(GreedyIngress.EVICTION_KEY, eviction);
+  }
+
+  /**
+   * Lets the mappers of the greedy ingress share their placements, so that the
+   * quality of the greedy placement holds as the number of mappers grows.
+   * 
+   * @see {PresenceExchange}
+   * @param interval
+   *          number of edges a mapper assigns between two exchanges.
+   * @param numBuckets
+   *          number of vertex buckets of the shared sketches, or 0 to size
+   *          them from the input.
+   */
+  public void setCoordination(int interval, int numBuckets) {
+    coordinated = true;
+    conf.setInt(PresenceExchange.INTERVAL_KEY, interval);
+    conf.setInt(PresenceExchange.BUCKETS_KEY, numBuckets);
+  }
+
+  /**
+   * Runs a degree count job over the input before the ingress, and gives the
+   * global degrees to the ingress of every mapper.
+   * 
+   * @see {DegreeCountMR}
+   * @param prepass
+   */
+  public void setDegreePrepass(boolean prepass) {
+    this.degreePrepass = prepass;
+  }
+
+  /**
+   * Combines the vertex records of the edges in each mapper before they are
+   * output, which divides the number of vertex records by about the average
+   * degree of the vertices of a mapper.
+   * 
+   * @see {VertexRecordBuffer}
+   * @param maxVertices
+   *          maximum number of vertices buffered by a mapper, or 0 to output
+   *          two vertex records per edge.
+   */
+  public void setVertexCombining(int maxVertices) {
+    conf.setInt(VertexRecordBuffer.SIZE_KEY, maxVertices);
+  }
+
+  /**
+   * Splits the partitions into sub-partitions according to their loads,
+   * estimated by running the ingress on a sample of the input, and balances
+   * the sub-partitions over the reducers.
+   * 
+   * @see {SubpartitionPlan}
+   * @param sampleSize
+   *          number of sampled edges, or 0 for a uniform split.
+   */
+  public void setSkewAwareSplit(int sampleSize) {
+    this.splitSampleSize = sampleSize;
+  }
+
   /**
    * Set the intermediate key value class.
    * 
@@ -171,9 +248,10 @@ public class EdgeIngressMR {
    * @param outputpath
    * @param numProcs
    * @param ingress
+   * @return the completed job.
    * @throws IOException
    */
-  public void run(String[] inputpaths, String outputpath, int numProcs,
+  public RunningJob run(String[] inputpaths, String outputpath, int numProcs,
       String ingress) throws IOException {
     this.setIngress(ingress);
     conf.setJobName(jobName);
@@ -192,6 +270,10 @@ public class EdgeIngressMR {
     LOG.debug("vdataparser = " + this.vdataparser.getClass().getName());
     LOG.debug("edataparser = " + this.edataparser.getClass().getName());
     LOG.info("ingress = " + this.ingress);
+    LOG.info("coordinated = " + Boolean.toString(coordinated));
+    LOG.info("degreePrepass = " + Boolean.toString(degreePrepass));
+    LOG.info("vertexBuffer = " + conf.getInt(VertexRecordBuffer.SIZE_KEY, 0));
+    LOG.info("splitSampleSize = " + splitSampleSize);
     LOG.info("gzip = " + Boolean.toString(gzip));
     LOG.info("===============================================================");
 
@@ -202,9 +284,20 @@ public class EdgeIngressMR {
     conf.set("VdataParser", vdataparser.getClass().getName());
     conf.set("EdataParser", edataparser.getClass().getName());
     conf.setInt("subpartPerPartition", subpartPerPartition);
+    // The mapper splits each partition into the sub-partitions decoded by the
+    // reducer.
+    conf.setInt("overpartition", subpartPerPartition);
+    Path presenceDir = null;
+    if (coordinated && this.ingress.equals("greedy")) {
+      presenceDir = new Path(outputpath, "_presence");
+      conf.set(PresenceExchange.DIR_KEY, presenceDir.toString());
+      // Concurrent attempts of a map would publish the same placements twice.
+      conf.setMapSpeculativeExecution(false);
+    }
 
     conf.setMapOutputKeyClass(this.mapkeytype.getClass());
     conf.setMapOutputValueClass(this.mapvaltype.getClass());
+    conf.setOutputKeyComparatorClass(IngressKeyComparator.class);
 
     conf.setOutputKeyClass(IntWritable.class);
     conf.setOutputValueClass(Text.class);
@@ -228,15 +321,47 @@ public class EdgeIngressMR {
     for (String path : inputpaths)
       FileInputFormat.addInputPath(conf, new Path(path));
     FileOutputFormat.setOutputPath(conf, new Path(outputpath));
+    if (presenceDir != null
+        && conf.getInt(PresenceExchange.BUCKETS_KEY, 0) <= 0) {
+      int numBuckets = PresenceExchange.numBuckets(conf, numProcs);
+      conf.setInt(PresenceExchange.BUCKETS_KEY, numBuckets);
+      LOG.info("Presence sketch buckets: " + numBuckets);
+    }
 
     if (!checkTypes()) {
       LOG.fatal("Type check failed."
           + "Please check the parsers are consistent with key/val types.");
-      return;
+      return null;
+    }
+
+    String degreepath = null;
+    if (degreePrepass) {
+      degreepath = outputpath + "_degrees";
+      new DegreeCountMR(graphparser.getClass(), vidparser.getClass(),
+          edataparser.getClass()).run(inputpaths, degreepath);
+      DegreeCountMR.addToDistributedCache(degreepath, conf);
+    }
+
+    if (splitSampleSize > 0) {
+      long[] loads = SubpartitionPlan.sampleLoads(conf,
+          EdgeIngressMapper.createIngress(conf), graphparser, vidparser,
+          edataparser, splitSampleSize);
+      SubpartitionPlan plan = SubpartitionPlan.balance(loads,
+          subpartPerPartition, conf.getNumReduceTasks());
+      plan.store(conf);
+      conf.setPartitionerClass(SubpartitionPartitioner.class);
+      LOG.info("Sampled partition loads: " + Arrays.toString(loads)
+          + ", sub-partitions per partition: " + plan.stride());
     }
 
-    JobClient.runJob(conf);
+    RunningJob job = JobClient.runJob(conf);
+    if (presenceDir != null)
+      presenceDir.getFileSystem(conf).delete(presenceDir, true);
+    if (degreepath != null)
+      new Path(degreepath).getFileSystem(conf).delete(new Path(degreepath),
+          true);
     LOG.info("================== Done ====================================\n");
+    return job;
   }
 
   /**
@@ -295,9 +420,12 @@ public class EdgeIngressMR {
   private FieldParser edataparser;
 
   private boolean gzip;
+  private boolean coordinated;
+  private boolean degreePrepass;
   private String jobName;
   private String ingress;
   private int subpartPerPartition;
+  private int splitSampleSize;
   private IngressKeyType mapkeytype;
   private IngressValueType mapvaltype;
 }
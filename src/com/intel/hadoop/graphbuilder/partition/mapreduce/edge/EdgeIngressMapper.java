@@ -19,6 +19,7 @@
 package com.intel.hadoop.graphbuilder.partition.mapreduce.edge;
 
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.Random;
 
 import org.apache.hadoop.io.LongWritable;
@@ -36,11 +37,16 @@ import com.intel.hadoop.graphbuilder.graph.Edge;
 import com.intel.hadoop.graphbuilder.graph.Vertex;
 import com.intel.hadoop.graphbuilder.parser.FieldParser;
 import com.intel.hadoop.graphbuilder.parser.GraphParser;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.degree.DegreeCountMR;
 import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressKeyType;
 import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressValueType;
+import com.intel.hadoop.graphbuilder.partition.strategy.ConstrainedIngress;
+import com.intel.hadoop.graphbuilder.partition.strategy.DegreeTable;
 import com.intel.hadoop.graphbuilder.partition.strategy.GreedyIngress;
+import com.intel.hadoop.graphbuilder.partition.strategy.HdrfIngress;
 import com.intel.hadoop.graphbuilder.partition.strategy.Ingress;
 import com.intel.hadoop.graphbuilder.partition.strategy.RandomIngress;
+import com.intel.hadoop.graphbuilder.partition.strategy.VertexPresenceCache;
 
 /**
  * 
@@ -61,6 +67,11 @@ import com.intel.hadoop.graphbuilder.partition.strategy.RandomIngress;
  * {@code (v, vdata)}.
  * </p>
  * <p>
+ * If {@link VertexRecordBuffer#SIZE_KEY} is set, the VertexType values of the
+ * edges are combined in a {@link VertexRecordBuffer} and output when the buffer
+ * is full and at {@link #close}.
+ * </p>
+ * <p>
  * All EdgeType value with the same partition id is reduced into a local graph
  * partition. And all VertexType value with the same vertex id is reduced into a
  * vertex record.
@@ -78,6 +89,11 @@ public class EdgeIngressMapper<VidType extends WritableComparable<VidType>, Vert
 
   private static final Logger LOG = Logger.getLogger(EdgeIngressMapper.class);
 
+  public static enum COUNTER {
+    PRESENCE_HITS, PRESENCE_MISSES, PRESENCE_EVICTIONS, DEGREE_TABLE_VERTICES,
+    VERTEX_BUFFER_FLUSHES
+  };
+
   @SuppressWarnings("unchecked")
   @Override
   public void configure(JobConf job) {
@@ -86,12 +102,36 @@ public class EdgeIngressMapper<VidType extends WritableComparable<VidType>, Vert
     this.valClass = job.getMapOutputValueClass();
     numprocs = job.getInt("numProcs", 1);
     overpartition = job.getInt("overpartition", 1);
+    plan = SubpartitionPlan.load(job);
+    if (plan != null)
+      overpartition = plan.stride();
+    random = new Random();
+    int bufferSize = job.getInt(VertexRecordBuffer.SIZE_KEY, 0);
+    if (bufferSize > 0) {
+      vertexBuffer = new VertexRecordBuffer<VidType>(bufferSize, numprocs);
+      bufferedPids = new BitSet();
+    }
 
-    String ingressMethod = job.get("ingress");
-    if (ingressMethod.equals("greedy")) {
-      this.ingress = new GreedyIngress<VidType>(numprocs);
-    } else {
-      this.ingress = new RandomIngress<VidType>(numprocs);
+    this.ingress = createIngress(job);
+    if (ingress instanceof GreedyIngress
+        && job.get(PresenceExchange.DIR_KEY) != null) {
+      try {
+        this.exchange = new PresenceExchange(job, (GreedyIngress) ingress);
+      } catch (IOException e) {
+        LOG.error("Fail to coordinate the greedy ingress, "
+            + "continue with the local placements only.", e);
+      }
+    }
+
+    try {
+      DegreeTable degrees = DegreeCountMR.loadFromDistributedCache(job);
+      if (degrees != null) {
+        this.ingress.setDegrees(degrees);
+        this.numDegrees = degrees.size();
+      }
+    } catch (IOException e) {
+      LOG.error("Fail to load the degree table, "
+          + "continue with the partial degrees only.", e);
     }
 
     try {
@@ -114,6 +154,38 @@ public class EdgeIngressMapper<VidType extends WritableComparable<VidType>, Vert
     }
   }
 
+  /**
+   * Creates the ingress defined by the job.
+   * 
+   * @param job
+   * @return a new ingress.
+   */
+  static <VidType> Ingress<VidType> createIngress(JobConf job) {
+    int numprocs = job.getInt("numProcs", 1);
+    String ingressMethod = job.get("ingress");
+    int cacheSize = job.getInt(GreedyIngress.CACHE_SIZE_KEY, 0);
+    VertexPresenceCache.Eviction eviction = VertexPresenceCache.Eviction
+        .valueOf(job.get(GreedyIngress.EVICTION_KEY, "degree").toUpperCase());
+    if (ingressMethod.equals("greedy")) {
+      if (job.get(GreedyIngress.SEED_KEY) != null) {
+        long seed = job.getLong(GreedyIngress.SEED_KEY, 0)
+            + job.getInt("mapred.task.partition", 0);
+        return new GreedyIngress<VidType>(numprocs, seed, cacheSize, eviction);
+      }
+      return new GreedyIngress<VidType>(numprocs, cacheSize, eviction);
+    } else if (ingressMethod.equals("hdrf")) {
+      double lambda = Double.parseDouble(job.get(HdrfIngress.LAMBDA_KEY,
+          String.valueOf(HdrfIngress.DEFAULT_LAMBDA)));
+      return new HdrfIngress<VidType>(numprocs, lambda, cacheSize, eviction);
+    } else if (ingressMethod.equals("grid") || ingressMethod.equals("torus")
+        || ingressMethod.equals("pds")) {
+      return new ConstrainedIngress<VidType>(numprocs,
+          ConstrainedIngress.Scheme.valueOf(ingressMethod.toUpperCase()));
+    } else {
+      return new RandomIngress<VidType>(numprocs);
+    }
+  }
+
   @Override
   public void map(LongWritable key, Text value,
       OutputCollector<KeyType, ValueType> out, Reporter reporter)
@@ -145,27 +217,139 @@ public class EdgeIngressMapper<VidType extends WritableComparable<VidType>, Vert
       Edge<VidType, EdgeData> e = graphparser.parseEdge(value, vidparser,
           edataparser);
       short pid = ingress.computePid(e.source(), e.target());
+      this.reporter = reporter;
+      if (numDegrees > 0) {
+        reporter.incrCounter(COUNTER.DEGREE_TABLE_VERTICES, numDegrees);
+        numDegrees = 0;
+      }
+      if ((++numEdges & COUNTER_INTERVAL) == 0)
+        reportPresenceCounters();
 
       // overpartition edges and assign its quasi pid.
-      Random r = new Random();
-      short qid = (short) (overpartition * pid + r.nextInt(overpartition));
+      short qid = pid;
+      if (overpartition > 1) {
+        int subparts = plan == null ? overpartition : plan.subparts(pid);
+        qid = (short) (overpartition * pid + (subparts > 1 ? random
+            .nextInt(subparts) : 0));
+      }
       mapKey.set(qid, null, IngressKeyType.EDGEKEY);
       mapValue.initEdgeValue(qid, e.source(), e.target(), e.EdgeData());
       out.collect(mapKey, mapValue);
 
-      // output source vertex record
-      mapKey.set(pid, e.source(), IngressKeyType.VERTEXKEY);
-      mapValue.initVrecValue(e.source(), pid, 0, 1);
-      out.collect(mapKey, mapValue);
-
-      // output target vertex record
-      mapKey.set(pid, e.target(), IngressKeyType.VERTEXKEY);
-      mapValue.initVrecValue(e.target(), pid, 1, 0);
-      out.collect(mapKey, mapValue);
+      // output source and target vertex records
+      collectVrec(e.source(), pid, 0, 1, out);
+      collectVrec(e.target(), pid, 1, 0, out);
 
     } catch (Exception e1) {
       e1.printStackTrace();
+      return;
+    }
+    if (exchange != null) {
+      try {
+        exchange.edgeAssigned();
+      } catch (IOException e) {
+        stopCoordination(e);
+      }
+    }
+  }
+
+  /**
+   * Turns off the exchange after a failure, so the mapper continues with its
+   * local placements and the last merged placements of the other mappers.
+   * 
+   * @param e
+   */
+  private void stopCoordination(IOException e) {
+    LOG.error("Fail to exchange the greedy placements, "
+        + "continue with the local placements only.", e);
+    exchange = null;
+  }
+
+  /**
+   * Outputs a vertex record of an edge, or adds it to the vertex buffer if
+   * there is one.
+   * 
+   * @param vid
+   * @param pid
+   * @param inEdges
+   * @param outEdges
+   * @param out
+   * @throws IOException
+   */
+  private void collectVrec(VidType vid, short pid, int inEdges, int outEdges,
+      OutputCollector<KeyType, ValueType> out) throws IOException {
+    if (vertexBuffer != null) {
+      this.collector = out;
+      if (vertexBuffer.add(vid, pid, inEdges, outEdges))
+        return;
+      if (vertexBuffer.isFull()) {
+        flushVertexBuffer();
+        if (vertexBuffer.add(vid, pid, inEdges, outEdges))
+          return;
+      }
     }
+    mapKey.set(pid, vid, IngressKeyType.VERTEXKEY);
+    mapValue.initVrecValue(vid, pid, inEdges, outEdges);
+    out.collect(mapKey, mapValue);
+  }
+
+  /**
+   * Outputs one vertex record for each buffered vertex, and empties the
+   * buffer.
+   * 
+   * @throws IOException
+   */
+  private void flushVertexBuffer() throws IOException {
+    if (vertexBuffer.size() == 0)
+      return;
+    for (int i = 0; i < vertexBuffer.size(); ++i) {
+      VidType vid = vertexBuffer.vid(i);
+      vertexBuffer.pids(i, bufferedPids);
+      mapKey.set((short) bufferedPids.nextSetBit(0), vid,
+          IngressKeyType.VERTEXKEY);
+      mapValue.initVrecValue(vid, bufferedPids, vertexBuffer.inEdges(i),
+          vertexBuffer.outEdges(i));
+      collector.collect(mapKey, mapValue);
+    }
+    vertexBuffer.clear();
+    if (reporter != null)
+      reporter.incrCounter(COUNTER.VERTEX_BUFFER_FLUSHES, 1);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (collector != null)
+      flushVertexBuffer();
+    reportPresenceCounters();
+    if (exchange != null) {
+      try {
+        exchange.close();
+      } catch (IOException e) {
+        stopCoordination(e);
+      }
+    }
+  }
+
+  /**
+   * Adds the presence cache statistics of the greedy or HDRF ingress since the
+   * last report to the job counters.
+   */
+  private void reportPresenceCounters() {
+    VertexPresenceCache cache = null;
+    if (ingress instanceof GreedyIngress)
+      cache = ((GreedyIngress) ingress).presenceCache();
+    else if (ingress instanceof HdrfIngress)
+      cache = ((HdrfIngress) ingress).presenceCache();
+    if (reporter == null || cache == null)
+      return;
+    reporter.incrCounter(COUNTER.PRESENCE_HITS, cache.hits() - reportedHits);
+    reporter.incrCounter(COUNTER.PRESENCE_MISSES, cache.misses()
+        - reportedMisses);
+    reporter.incrCounter(COUNTER.PRESENCE_EVICTIONS, cache.evictions()
+        - reportedEvictions);
+    reportedHits = cache.hits();
+    reportedMisses = cache.misses();
+    reportedEvictions = cache.evictions();
   }
 
   /**
@@ -201,5 +385,27 @@ public class EdgeIngressMapper<VidType extends WritableComparable<VidType>, Vert
   protected Class keyClass;
   protected Class valClass;
   protected int numprocs;
+  /** Number of qids per partition. */
   protected int overpartition;
+  /** The load based split of the partitions, or null for a uniform split. */
+  protected SubpartitionPlan plan;
+  /** Picks the quasi partition of an overpartitioned edge. */
+  protected Random random;
+
+  /** The counters are reported every COUNTER_INTERVAL + 1 edges. */
+  private static final int COUNTER_INTERVAL = (1 << 16) - 1;
+  /** Shares the greedy placements with other mappers, or null. */
+  private PresenceExchange exchange;
+  private Reporter reporter;
+  private long numEdges;
+  private long reportedHits;
+  private long reportedMisses;
+  private long reportedEvictions;
+  /** Size of the loaded degree table, until reported. */
+  private int numDegrees;
+  /** Combines the vertex records of the edges in memory, or null. */
+  private VertexRecordBuffer<VidType> vertexBuffer;
+  private BitSet bufferedPids;
+  /** The collector of the buffered vertex records, flushed at close. */
+  private OutputCollector<KeyType, ValueType> collector;
 }
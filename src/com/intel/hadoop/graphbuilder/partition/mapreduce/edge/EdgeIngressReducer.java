@@ -20,7 +20,6 @@ package com.intel.hadoop.graphbuilder.partition.mapreduce.edge;
 
 import java.io.IOException;
 import java.util.BitSet;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
@@ -44,11 +43,14 @@ import com.intel.hadoop.graphbuilder.graph.simplegraph.SimpleGraph;
 import com.intel.hadoop.graphbuilder.graph.simplegraph.SimpleGraphOutput;
 import com.intel.hadoop.graphbuilder.graph.simplegraph.SimpleJsonFormatter;
 import com.intel.hadoop.graphbuilder.graph.simplegraph.SimpleSubGraph;
+import com.intel.hadoop.graphbuilder.graph.simplegraph.SpillingSubGraph;
+import com.intel.hadoop.graphbuilder.io.ChunkedRecordWriter;
 import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.CombinedEdgeValueType;
 import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.CombinedVrecordValueType;
 import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressKeyType;
 import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressValueType;
 import com.intel.hadoop.graphbuilder.types.Mergable;
+import com.intel.hadoop.graphbuilder.util.Parallel;
 
 /**
  * This reduce task has 2 subroutines: edges are reduced into a {@code Graph}
@@ -66,7 +68,10 @@ import com.intel.hadoop.graphbuilder.types.Mergable;
  * {@code GraphOutput}.
  * </p>
  * The current reducer uses {@code SimpleSubGraph}, {@code SimpleJsonFormatter},
- * and {@code SimpleGraphOutput}.
+ * and {@code SimpleGraphOutput}. If {@code SpillingSubGraph.SPILL_THRESHOLD_KEY}
+ * is set to a positive number of bytes, edges are reduced by a
+ * {@code SpillingSubGraph} instead, which spills to the local disk and writes
+ * the same output.
  * 
  * @see SimpleSubGraph
  * @see SimpleGraph
@@ -83,11 +88,24 @@ public class EdgeIngressReducer<VidType extends WritableComparable<VidType>, Ver
 
   private static final Logger LOG = Logger.getLogger(EdgeIngressReducer.class);
 
+  /**
+   * The replication factor of the partitioning is REPLICAS / VERTICES, and
+   * REPLICAS - VERTICES is the number of mirrors to synchronize.
+   */
+  public static enum COUNTER {
+    VERTICES, REPLICAS
+  };
+
   @Override
   public void configure(JobConf job) {
     super.configure(job);
     this.numProcs = job.getInt("numProcs", 1);
     this.subpartPerPartition = job.getInt("subpartPerPartition", 1);
+    this.spillThreshold = job.getLong(SpillingSubGraph.SPILL_THRESHOLD_KEY, -1);
+    this.job = job;
+    this.chunkSize = job.getInt(ChunkedRecordWriter.CHUNK_SIZE_KEY,
+        ChunkedRecordWriter.DEFAULT_CHUNK_SIZE);
+    Parallel.configure(job);
     // Switch to GLGraph by uncommenting the next line.
     // graphOutput = new GLGraphOutput(numProcs);
     graphOutput = new SimpleGraphOutput();
@@ -107,8 +125,10 @@ public class EdgeIngressReducer<VidType extends WritableComparable<VidType>, Ver
     } else if (key.flag() == IngressKeyType.VERTEXKEY) {
       reduceVertex(key.vid(), iter, reporter);
       VrecordFormatter vformatter = new JsonVrecordFormatter();
-      out.collect(new Text("vrecord"),
-          new Text(vformatter.vrecordWriter(vrecord).toString()));
+      ChunkedRecordWriter writer = new ChunkedRecordWriter(out, new Text(
+          "vrecord"), chunkSize);
+      vformatter.writeVrecord(vrecord, writer);
+      writer.close();
     } else {
       LOG.error("Unknown key type: " + key.flag());
     }
@@ -132,6 +152,11 @@ public class EdgeIngressReducer<VidType extends WritableComparable<VidType>, Ver
   protected void reduceEdge(int pid, Iterator<ValueType> iter,
       OutputCollector<Text, Text> out, Reporter reporter) throws Exception {
 
+    if (spillThreshold > 0) {
+      reduceEdgeExternal(pid, iter, out, reporter);
+      return;
+    }
+
     // Switch to GLGraph by uncommenting the next line.
     // myGraph = new GLGraph<VidType, VertexData, EdgeData>();
     myGraph = new SimpleSubGraph<VidType, VertexData, EdgeData>();
@@ -155,6 +180,53 @@ public class EdgeIngressReducer<VidType extends WritableComparable<VidType>, Ver
     LOG.info("Done reducing graph:" + pid + ".");
   }
 
+  /**
+   * Reduce a list of EdgeValues with a {@code SpillingSubGraph}, which keeps
+   * at most {@code spillThreshold} bytes of edges in memory.
+   * 
+   * @param pid
+   * @param iter
+   * @param out
+   * @param reporter
+   * @throws IOException
+   */
+  @SuppressWarnings("unchecked")
+  protected void reduceEdgeExternal(int pid, Iterator<ValueType> iter,
+      OutputCollector<Text, Text> out, Reporter reporter) throws IOException {
+    SpillingSubGraph<VidType, EdgeData> graph = null;
+
+    LOG.info("Reduce edges for graph: " + pid + " in external memory");
+    try {
+      while (iter.hasNext()) {
+        CombinedEdgeValueType evalue = iter.next().edgeValue();
+        List<VidType> sources = evalue.sources();
+        List<VidType> targets = evalue.targets();
+        List<EdgeData> edata = evalue.edata();
+        if (graph == null && !sources.isEmpty()) {
+          graph = new SpillingSubGraph<VidType, EdgeData>(job,
+              (Class<VidType>) sources.get(0).getClass(),
+              (Class<EdgeData>) edata.get(0).getClass(), spillThreshold);
+          graph.setPid(pid / subpartPerPartition);
+          graph.setSubPid(pid % subpartPerPartition);
+        }
+        for (int i = 0; i < sources.size(); ++i)
+          graph.addEdge(sources.get(i), targets.get(i), edata.get(i));
+        reporter.progress();
+      }
+      if (graph == null)
+        return;
+
+      LOG.info("Write out graph " + pid + " with " + graph.numEdges()
+          + " edges from " + graph.numRuns() + " spilled runs");
+      graph.write(out, reporter);
+    } finally {
+      // Deletes the runs if the graph failed before being written.
+      if (graph != null)
+        graph.close();
+    }
+    LOG.info("Done reducing graph:" + pid + ".");
+  }
+
   /**
    * Reduce a list of VertexRecordValues and the Vertex Data into a vertex
    * record.
@@ -177,11 +249,7 @@ public class EdgeIngressReducer<VidType extends WritableComparable<VidType>, Ver
       CombinedVrecordValueType vrecordValue = val.vrecordValue();
       inEdges += vrecordValue.inEdges();
       outEdges += vrecordValue.outEdges();
-      HashSet<Short> pids = vrecordValue.pids();
-      Iterator<Short> piditer = pids.iterator();
-      while (piditer.hasNext()) {
-        mirrors.set(piditer.next());
-      }
+      mirrors.or(vrecordValue.pids());
 
       vrecord.setMirrors(mirrors);
       vrecord.setInEdges(inEdges);
@@ -206,9 +274,14 @@ public class EdgeIngressReducer<VidType extends WritableComparable<VidType>, Ver
       vrecord.setOwner(mirrorsList.get(generator.nextInt(mirrorsList.size())));
       vrecord.removeMirror(vrecord.owner());
     }
+    reporter.incrCounter(COUNTER.VERTICES, 1);
+    reporter.incrCounter(COUNTER.REPLICAS, vrecord.numMirrors() + 1);
   }
 
   int numProcs, subpartPerPartition;
+  long spillThreshold;
+  int chunkSize;
+  JobConf job;
   protected Graph<VidType, VertexData, EdgeData> myGraph;
   protected VertexRecord<VidType, VertexData> vrecord;
   protected GraphOutput graphOutput;
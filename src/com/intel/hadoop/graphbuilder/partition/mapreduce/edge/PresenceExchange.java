@@ -0,0 +1,368 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.mapreduce.edge;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.TaskAttemptID;
+import org.apache.hadoop.mapred.TaskID;
+import org.apache.log4j.Logger;
+
+import com.intel.hadoop.graphbuilder.partition.strategy.GreedyIngress;
+import com.intel.hadoop.graphbuilder.partition.strategy.PresenceSketch;
+
+/**
+ * Shares the placements of the greedy ingress between the mappers of a job
+ * through a directory of the job's file system.
+ * <p>
+ * Every {@code interval} edges and when it closes, a mapper writes the delta
+ * of its sketch since its previous publication to {@code dir/$attemptid.$seq}:
+ * the buckets it changed and its current loads, see
+ * {@link PresenceSketch#writeDelta}. It then reads the deltas of the other
+ * tasks it has not read yet, ors them into the merged sketch of the other
+ * mappers, and hands the merge to its ingress. A mapper also reads the deltas
+ * when it starts, so the mappers of a later wave see the complete placements
+ * of the earlier ones.
+ * </p>
+ * <p>
+ * Only the deltas of the latest attempt of a task are merged, and an attempt
+ * deletes the deltas of the earlier attempts of its task when it starts. The
+ * loads of a retried attempt replace those of the failed one, whose buckets
+ * stay in the merge of the mappers that read them: the merge may report more
+ * partitions for a vertex, as the buckets already do. Concurrent attempts of
+ * a task would both be merged, so the job runs without speculative maps.
+ * </p>
+ * <p>
+ * A delta that fails to be read is read again at the next exchange; the other
+ * deltas are read once by each mapper, so a mapper reads the
+ * placements of the whole job once, in sparse form, plus one listing of the
+ * directory per exchange. With m mappers the job still reads m times the
+ * placements of the job in total, and lists the directory m times per
+ * interval; the interval bounds this cost. The default number of buckets is
+ * sized from the input, see {@link #numBuckets}.
+ * </p>
+ */
+public class PresenceExchange {
+  private static final Logger LOG = Logger.getLogger(PresenceExchange.class);
+
+  /** Directory of the deltas; the coordinated mode is off if unset. */
+  public static final String DIR_KEY = "graphbuilder.ingress.greedy.coordination.dir";
+  /** Number of edges a mapper assigns between two exchanges. */
+  public static final String INTERVAL_KEY = "graphbuilder.ingress.greedy.coordination.interval";
+  /** Number of vertex buckets of the sketches. */
+  public static final String BUCKETS_KEY = "graphbuilder.ingress.greedy.coordination.buckets";
+  public static final int DEFAULT_INTERVAL = 1 << 16;
+  public static final int DEFAULT_BUCKETS = 1 << 18;
+  /** Bounds of the number of buckets sized from the input. */
+  public static final int MIN_BUCKETS = 1 << 10;
+  /** Longs of a sketch sized from the input; a mapper holds two sketches. */
+  public static final int MAX_SKETCH_LONGS = 1 << 21;
+
+  /**
+   * Turns the ingress into the coordinated mode and merges the deltas already
+   * published.
+   * 
+   * @param job
+   * @param ingress
+   * @throws IOException
+   */
+  public PresenceExchange(JobConf job, GreedyIngress<?> ingress)
+      throws IOException {
+    this.ingress = ingress;
+    dir = new Path(job.get(DIR_KEY));
+    fs = dir.getFileSystem(job);
+    interval = job.getInt(INTERVAL_KEY, DEFAULT_INTERVAL);
+    String attempt = job.get("mapred.task.id");
+    if (attempt == null)
+      throw new IOException("mapred.task.id is not set.");
+    TaskAttemptID id = TaskAttemptID.forName(attempt);
+    name = id.toString();
+    task = id.getTaskID();
+    int numBuckets = job.getInt(BUCKETS_KEY, DEFAULT_BUCKETS);
+    ingress.coordinate(numBuckets);
+    merged = new PresenceSketch(ingress.numProcs(), numBuckets);
+    deltaLoads = new long[ingress.numProcs()];
+    totalLoads = new long[ingress.numProcs()];
+    tasks = new HashMap<TaskID, TaskState>();
+    fs.mkdirs(dir);
+    deleteEarlierAttempts();
+    pull();
+  }
+
+  /**
+   * Sizes the buckets of the sketches from the input of the job: a power of
+   * two at least twice the estimated number of edges, which bounds the number
+   * of vertices, within {@code MIN_BUCKETS} and {@code MAX_SKETCH_LONGS}. The
+   * number of edges is the size of the input divided by the mean length of
+   * the first lines of the first input file.
+   * 
+   * @param job
+   * @param numProcs
+   * @return the number of buckets.
+   * @throws IOException
+   */
+  public static int numBuckets(JobConf job, int numProcs) throws IOException {
+    long bytes = 0;
+    Path sample = null;
+    for (Path p : FileInputFormat.getInputPaths(job)) {
+      FileSystem fs = p.getFileSystem(job);
+      bytes += fs.getContentSummary(p).getLength();
+      if (sample == null)
+        sample = firstFile(fs, p);
+    }
+    long edges = bytes / Math.max(1, meanLineLength(job, sample));
+    int maxBuckets = Integer.highestOneBit(MAX_SKETCH_LONGS
+        / ((numProcs + 63) >>> 6));
+    long buckets = MIN_BUCKETS;
+    while (buckets < 2 * edges && buckets < maxBuckets)
+      buckets <<= 1;
+    return (int) Math.max(1, Math.min(buckets, maxBuckets));
+  }
+
+  private static Path firstFile(FileSystem fs, Path p) throws IOException {
+    FileStatus status = fs.getFileStatus(p);
+    if (!status.isDir())
+      return p;
+    FileStatus[] files = fs.listStatus(p);
+    if (files == null)
+      return null;
+    for (FileStatus f : files) {
+      String fname = f.getPath().getName();
+      if (!f.isDir() && !fname.startsWith("_") && !fname.startsWith("."))
+        return f.getPath();
+    }
+    return null;
+  }
+
+  /** @return the mean length of the first lines of a file, or 1. */
+  private static int meanLineLength(JobConf job, Path file) throws IOException {
+    if (file == null)
+      return 1;
+    byte[] buf = new byte[1 << 16];
+    InputStream in = file.getFileSystem(job).open(file);
+    int n = 0;
+    try {
+      for (int r = 0; n < buf.length && (r = in.read(buf, n, buf.length - n)) > 0;)
+        n += r;
+    } finally {
+      in.close();
+    }
+    int lines = 0;
+    for (int i = 0; i < n; i++) {
+      if (buf[i] == '\n')
+        lines++;
+    }
+    return lines == 0 ? Math.max(1, n) : Math.max(1, n / lines);
+  }
+
+  /**
+   * Counts an assigned edge, and exchanges the deltas every {@code interval}
+   * edges.
+   * 
+   * @throws IOException
+   */
+  public void edgeAssigned() throws IOException {
+    if (++numEdges % interval == 0) {
+      publish();
+      pull();
+    }
+  }
+
+  /**
+   * Publishes the last delta of the mapper.
+   * 
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    publish();
+  }
+
+  /**
+   * Deletes the deltas of the earlier attempts of the task of this mapper.
+   */
+  private void deleteEarlierAttempts() throws IOException {
+    FileStatus[] files = fs.listStatus(dir);
+    if (files == null)
+      return;
+    for (FileStatus f : files) {
+      TaskAttemptID id = attemptOf(f.getPath().getName());
+      if (id != null && id.getTaskID().equals(task)
+          && !id.toString().equals(name))
+        fs.delete(f.getPath(), false);
+    }
+  }
+
+  /**
+   * @param fname
+   * @return the attempt of a delta file, or null for a temporary or unknown
+   *         file.
+   */
+  private static TaskAttemptID attemptOf(String fname) {
+    int dot = fname.lastIndexOf('.');
+    if (fname.startsWith("_") || dot < 0)
+      return null;
+    try {
+      return TaskAttemptID.forName(fname.substring(0, dot));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes the delta under a temporary name and renames it, so readers never
+   * see a partial delta.
+   */
+  private void publish() throws IOException {
+    seq++;
+    Path tmp = new Path(dir, "_" + name + "." + seq);
+    FSDataOutputStream out = fs.create(tmp, true);
+    try {
+      ingress.localSketch().writeDelta(out);
+    } finally {
+      out.close();
+    }
+    Path dst = new Path(dir, name + "." + seq);
+    if (!fs.rename(tmp, dst))
+      throw new IOException("Fail to rename " + tmp + " to " + dst);
+  }
+
+  /**
+   * Merges the deltas of the other tasks not read yet, and passes the merge to
+   * the ingress if any was read.
+   */
+  private void pull() throws IOException {
+    FileStatus[] files = fs.listStatus(dir);
+    if (files == null)
+      return;
+    /* The latest attempt of each task, before reading any delta. */
+    boolean changed = false;
+    for (FileStatus f : files) {
+      TaskAttemptID id = attemptOf(f.getPath().getName());
+      if (id == null || id.getTaskID().equals(task))
+        continue;
+      TaskState state = tasks.get(id.getTaskID());
+      if (state == null) {
+        tasks.put(id.getTaskID(), new TaskState(id.getId(), ingress.numProcs()));
+      } else if (state.attempt < id.getId()) {
+        state.attempt = id.getId();
+        state.lastSeq = 0;
+        state.readSeq = 0;
+        state.read.clear();
+        Arrays.fill(state.loads, 0);
+        changed = true;
+      }
+    }
+    for (FileStatus f : files) {
+      String fname = f.getPath().getName();
+      TaskAttemptID id = attemptOf(fname);
+      if (id == null || id.getTaskID().equals(task))
+        continue;
+      TaskState state = tasks.get(id.getTaskID());
+      long fseq;
+      try {
+        fseq = Long.parseLong(fname.substring(fname.lastIndexOf('.') + 1));
+      } catch (NumberFormatException e) {
+        continue;
+      }
+      if (id.getId() != state.attempt || fseq <= state.lastSeq
+          || state.read.contains(fseq))
+        continue;
+      try {
+        FSDataInputStream in = fs.open(f.getPath());
+        try {
+          merged.mergeDelta(in, deltaLoads);
+        } finally {
+          in.close();
+        }
+      } catch (IOException e) {
+        // The delta stays unread and is read again at the next exchange,
+        // unless a retry of its attempt deleted it meanwhile.
+        if (fs.exists(f.getPath()))
+          LOG.warn("Fail to read delta " + f.getPath() + ", retry later.", e);
+        else
+          LOG.debug("Skip deleted delta " + f.getPath());
+        continue;
+      }
+      state.read.add(fseq);
+      if (fseq > state.readSeq) {
+        state.readSeq = fseq;
+        System.arraycopy(deltaLoads, 0, state.loads, 0, deltaLoads.length);
+      }
+      changed = true;
+    }
+    if (changed) {
+      Arrays.fill(totalLoads, 0);
+      for (TaskState state : tasks.values()) {
+        while (state.read.remove(state.lastSeq + 1))
+          state.lastSeq++;
+        for (int pid = 0; pid < totalLoads.length; pid++)
+          totalLoads[pid] += state.loads[pid];
+      }
+      merged.setLoads(totalLoads);
+      ingress.setRemoteSketch(merged);
+    }
+  }
+
+  /** The deltas read from the latest attempt of a task. */
+  private static class TaskState {
+    TaskState(int attempt, int numProcs) {
+      this.attempt = attempt;
+      this.loads = new long[numProcs];
+    }
+
+    /** Attempt number within the task. */
+    int attempt;
+    /** All the deltas up to lastSeq are merged. */
+    long lastSeq;
+    /** Deltas after lastSeq already merged, past a delta not read yet. */
+    Set<Long> read = new HashSet<Long>();
+    /** Highest delta merged, whose loads are the loads of the task. */
+    long readSeq;
+    long[] loads;
+  }
+
+  private GreedyIngress<?> ingress;
+  private FileSystem fs;
+  private Path dir;
+  /** Name of the attempt of this mapper. */
+  private String name;
+  private TaskID task;
+  private int interval;
+  private long numEdges;
+  /** Sequence number of the last published delta. */
+  private long seq;
+  private Map<TaskID, TaskState> tasks;
+  /** Merge of the deltas of the other tasks. */
+  private PresenceSketch merged;
+  private long[] deltaLoads;
+  private long[] totalLoads;
+}
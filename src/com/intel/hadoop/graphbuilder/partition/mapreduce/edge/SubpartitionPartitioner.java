@@ -0,0 +1,54 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.mapreduce.edge;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Partitioner;
+
+import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressKeyType;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressValueType;
+
+/**
+ * Routes the sub-partitions of the edge ingress to the reducers of the
+ * {@link SubpartitionPlan} of the job. The vertex records, and the edges when
+ * the job has no plan, are routed like the {@code HashPartitioner}.
+ * 
+ * @param <KeyType>
+ * @param <ValueType>
+ */
+public class SubpartitionPartitioner<KeyType extends IngressKeyType, ValueType extends IngressValueType>
+    implements Partitioner<KeyType, ValueType> {
+
+  @Override
+  public void configure(JobConf job) {
+    plan = SubpartitionPlan.load(job);
+  }
+
+  @Override
+  public int getPartition(KeyType key, ValueType value, int numPartitions) {
+    if (key.flag() == IngressKeyType.EDGEKEY && plan != null) {
+      int reducer = plan.reducer(key.pid());
+      if (reducer >= 0 && reducer < numPartitions)
+        return reducer;
+    }
+    return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+  }
+
+  private SubpartitionPlan plan;
+}
@@ -0,0 +1,255 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.mapreduce.edge;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.log4j.Logger;
+
+import com.intel.hadoop.graphbuilder.graph.Edge;
+import com.intel.hadoop.graphbuilder.parser.FieldParser;
+import com.intel.hadoop.graphbuilder.parser.GraphParser;
+import com.intel.hadoop.graphbuilder.partition.strategy.Ingress;
+
+/**
+ * Splits the partitions of the edge ingress into sub-partitions according to
+ * their loads, and assigns the sub-partitions to the reducers.
+ * <p>
+ * Without a plan, every partition is split into {@code subpartPerPartition}
+ * sub-partitions, and the sub-partition {@code qid} goes to the reducer
+ * {@code qid % numReducers}, so a heavy partition makes heavy sub-partitions
+ * and a straggling reducer. With a plan, the sub-partitions have about the same
+ * number of edges: a partition gets a number of sub-partitions proportional to
+ * its load, for the same total number of sub-partitions. The sub-partitions are
+ * then assigned to the reducers heaviest first, each to the least loaded
+ * reducer.
+ * </p>
+ * <p>
+ * The loads are estimated by running the ingress on a sample of the input, the
+ * first edges of each input split.
+ * </p>
+ */
+public class SubpartitionPlan {
+  private static final Logger LOG = Logger.getLogger(SubpartitionPlan.class);
+
+  /** Number of sub-partitions of each partition, comma separated. */
+  public static final String SUBPARTS_KEY = "graphbuilder.ingress.subpart.counts";
+  /** Reducer of each sub-partition, comma separated, -1 if unused. */
+  public static final String REDUCERS_KEY = "graphbuilder.ingress.subpart.reducers";
+
+  /**
+   * Computes the plan for partition loads.
+   * 
+   * @param loads
+   *          estimated number of edges of each partition.
+   * @param subpartPerPartition
+   *          average number of sub-partitions per partition.
+   * @param numReducers
+   * @return the plan.
+   */
+  public static SubpartitionPlan balance(long[] loads, int subpartPerPartition,
+      int numReducers) {
+    int numProcs = loads.length;
+    long total = 0;
+    for (long load : loads)
+      total += load;
+    /* The qids are shorts. */
+    int maxSubparts = Math.max(1, (Short.MAX_VALUE + 1) / numProcs);
+    int[] subparts = new int[numProcs];
+    int stride = 1;
+    for (int pid = 0; pid < numProcs; ++pid) {
+      long n = total == 0 ? subpartPerPartition : Math.round((double) loads[pid]
+          * numProcs * subpartPerPartition / total);
+      subparts[pid] = (int) Math.max(1, Math.min(maxSubparts, n));
+      stride = Math.max(stride, subparts[pid]);
+    }
+
+    final double[] subpartLoads = new double[numProcs * stride];
+    Integer[] qids = new Integer[numProcs * stride];
+    int numQids = 0;
+    for (int pid = 0; pid < numProcs; ++pid) {
+      for (int sub = 0; sub < subparts[pid]; ++sub) {
+        int qid = pid * stride + sub;
+        subpartLoads[qid] = (double) loads[pid] / subparts[pid];
+        qids[numQids++] = qid;
+      }
+    }
+    Arrays.sort(qids, 0, numQids, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Double.compare(subpartLoads[b], subpartLoads[a]);
+      }
+    });
+    int[] reducers = new int[numProcs * stride];
+    Arrays.fill(reducers, -1);
+    double[] reducerLoads = new double[numReducers];
+    for (int i = 0; i < numQids; ++i) {
+      int least = 0;
+      for (int r = 1; r < numReducers; ++r) {
+        if (reducerLoads[r] < reducerLoads[least])
+          least = r;
+      }
+      reducers[qids[i]] = least;
+      reducerLoads[least] += subpartLoads[qids[i]];
+    }
+    return new SubpartitionPlan(subparts, stride, reducers);
+  }
+
+  /**
+   * Estimates the partition loads by running the ingress on the first edges
+   * of each input split of the job.
+   * 
+   * @param job
+   * @param ingress
+   *          a new instance of the ingress of the job.
+   * @param graphparser
+   * @param vidparser
+   * @param edataparser
+   * @param sampleSize
+   *          maximum number of sampled edges.
+   * @return the number of sampled edges of each partition.
+   * @throws IOException
+   */
+  @SuppressWarnings("unchecked")
+  public static long[] sampleLoads(JobConf job, Ingress ingress,
+      GraphParser graphparser, FieldParser vidparser,
+      FieldParser edataparser, int sampleSize) throws IOException {
+    long[] loads = new long[ingress.numProcs()];
+    InputFormat<LongWritable, Text> format = job.getInputFormat();
+    InputSplit[] splits = format.getSplits(job, job.getNumMapTasks());
+    int perSplit = Math.max(1, sampleSize / Math.max(1, splits.length));
+    LongWritable key = new LongWritable();
+    Text value = new Text();
+    for (InputSplit split : splits) {
+      RecordReader<LongWritable, Text> reader = format.getRecordReader(split,
+          job, Reporter.NULL);
+      try {
+        for (int n = 0; n < perSplit && reader.next(key, value);) {
+          String text = value.toString();
+          if (text.startsWith("!") || !graphparser.isEdgeData(text))
+            continue;
+          Edge e = graphparser.parseEdge(text, vidparser,
+              edataparser);
+          if (e == null)
+            continue;
+          ++loads[ingress.computePid(e.source(), e.target())];
+          ++n;
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    return loads;
+  }
+
+  /**
+   * @param job
+   * @return the plan stored in the job, or null.
+   */
+  public static SubpartitionPlan load(JobConf job) {
+    String subparts = job.get(SUBPARTS_KEY);
+    String reducers = job.get(REDUCERS_KEY);
+    if (subparts == null || reducers == null)
+      return null;
+    try {
+      int[] counts = parse(subparts);
+      int stride = 1;
+      for (int count : counts)
+        stride = Math.max(stride, count);
+      return new SubpartitionPlan(counts, stride, parse(reducers));
+    } catch (NumberFormatException e) {
+      LOG.error("Invalid sub-partition plan, "
+          + "continue with the uniform split.", e);
+      return null;
+    }
+  }
+
+  /**
+   * Stores the plan in the job. The stride of the plan is also set as the
+   * number of sub-partitions per partition decoded by the reducer.
+   * 
+   * @param job
+   */
+  public void store(JobConf job) {
+    job.set(SUBPARTS_KEY, join(subparts));
+    job.set(REDUCERS_KEY, join(reducers));
+    job.setInt("subpartPerPartition", stride);
+  }
+
+  /**
+   * @return the number of qids per partition: the qid of a sub-partition is
+   *         {@code stride * pid + sub}.
+   */
+  public int stride() {
+    return stride;
+  }
+
+  /**
+   * @param pid
+   * @return the number of sub-partitions of the partition.
+   */
+  public int subparts(int pid) {
+    return subparts[pid];
+  }
+
+  /**
+   * @param qid
+   * @return the reducer of the sub-partition, or -1 if unknown.
+   */
+  public int reducer(int qid) {
+    return qid >= 0 && qid < reducers.length ? reducers[qid] : -1;
+  }
+
+  private SubpartitionPlan(int[] subparts, int stride, int[] reducers) {
+    this.subparts = subparts;
+    this.stride = stride;
+    this.reducers = reducers;
+  }
+
+  private static int[] parse(String list) {
+    String[] fields = list.split(",");
+    int[] values = new int[fields.length];
+    for (int i = 0; i < fields.length; ++i)
+      values[i] = Integer.parseInt(fields[i].trim());
+    return values;
+  }
+
+  private static String join(int[] values) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < values.length; ++i) {
+      if (i > 0)
+        sb.append(',');
+      sb.append(values[i]);
+    }
+    return sb.toString();
+  }
+
+  private final int[] subparts;
+  private final int stride;
+  private final int[] reducers;
+}
@@ -0,0 +1,191 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.mapreduce.edge;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.intel.hadoop.graphbuilder.partition.strategy.DegreeTable;
+import com.intel.hadoop.graphbuilder.util.LongIntHashMap;
+
+/**
+ * Combines the vertex records of a mapper in memory. Without it, the mapper
+ * emits two vertex records for every edge, which are only merged by the
+ * combiner after serialization and sort. With it, a vertex seen by many edges
+ * is emitted once per flush, with the union of its partitions and the sum of
+ * its degrees.
+ * <p>
+ * The vertices are indexed by {@link DegreeTable#key} in a
+ * {@link LongIntHashMap}, and their records are rows of primitive arrays: the
+ * partitions of a vertex are a row of bitmap words, and the degrees are two
+ * ints. The buffer holds at most {@code maxVertices} vertices, and must be
+ * flushed with {@link #clear} when {@link #isFull}.
+ * </p>
+ * 
+ * @param <VidType>
+ */
+public class VertexRecordBuffer<VidType> {
+  /** Maximum number of vertices buffered by a mapper, or 0 for no buffer. */
+  public static final String SIZE_KEY = "graphbuilder.ingress.vertexbuffer.size";
+
+  /**
+   * @param maxVertices
+   *          maximum number of buffered vertices.
+   * @param numProcs
+   *          number of partitions.
+   */
+  public VertexRecordBuffer(int maxVertices, int numProcs) {
+    if (maxVertices <= 0)
+      throw new IllegalArgumentException("Invalid buffer size: " + maxVertices);
+    this.maxVertices = maxVertices;
+    this.numWords = (numProcs + 63) >>> 6;
+    this.index = new LongIntHashMap(Math.min(maxVertices, INITIAL_ROWS));
+    allocate(Math.min(maxVertices, INITIAL_ROWS));
+  }
+
+  /**
+   * Adds a partition and degrees to the record of a vertex.
+   * 
+   * @param vid
+   * @param pid
+   * @param inEdges
+   * @param outEdges
+   * @return false if the vertex is not buffered, either because the buffer is
+   *         full, or because another buffered vertex has the same key. The
+   *         caller then emits the record itself.
+   */
+  public boolean add(VidType vid, int pid, int inEdges, int outEdges) {
+    long key = DegreeTable.key(vid);
+    int row = index.get(key);
+    if (row == LongIntHashMap.NO_VALUE) {
+      if (size == maxVertices)
+        return false;
+      row = size++;
+      if (row == vids.length)
+        grow();
+      index.putIfAbsent(key, row);
+      vids[row] = vid;
+    } else if (!vids[row].equals(vid)) {
+      return false;
+    }
+    words[row * numWords + (pid >>> 6)] |= 1L << pid;
+    this.inEdges[row] += inEdges;
+    this.outEdges[row] += outEdges;
+    return true;
+  }
+
+  /**
+   * @return true if no new vertex can be added.
+   */
+  public boolean isFull() {
+    return size == maxVertices;
+  }
+
+  /**
+   * @return the number of buffered vertices.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param row
+   *          in [0, size()).
+   * @return the vid of the row.
+   */
+  @SuppressWarnings("unchecked")
+  public VidType vid(int row) {
+    return (VidType) vids[row];
+  }
+
+  /**
+   * Copies the partitions of a row.
+   * 
+   * @param row
+   *          in [0, size()).
+   * @param pids
+   *          cleared and set to the partitions of the row.
+   */
+  public void pids(int row, BitSet pids) {
+    pids.clear();
+    int offset = row * numWords;
+    for (int w = 0; w < numWords; ++w) {
+      long word = words[offset + w];
+      while (word != 0) {
+        pids.set((w << 6) + Long.numberOfTrailingZeros(word));
+        word &= word - 1;
+      }
+    }
+  }
+
+  /**
+   * @param row
+   * @return the number of incoming edges of the row.
+   */
+  public int inEdges(int row) {
+    return inEdges[row];
+  }
+
+  /**
+   * @param row
+   * @return the number of outgoing edges of the row.
+   */
+  public int outEdges(int row) {
+    return outEdges[row];
+  }
+
+  /** Removes all vertices, keeping the arrays. */
+  public void clear() {
+    index.clear();
+    Arrays.fill(words, 0, size * numWords, 0L);
+    Arrays.fill(inEdges, 0, size, 0);
+    Arrays.fill(outEdges, 0, size, 0);
+    Arrays.fill(vids, 0, size, null);
+    size = 0;
+  }
+
+  private void allocate(int rows) {
+    vids = new Object[rows];
+    words = new long[rows * numWords];
+    inEdges = new int[rows];
+    outEdges = new int[rows];
+  }
+
+  /** Doubles the number of rows, up to maxVertices. */
+  private void grow() {
+    int rows = (int) Math.min(maxVertices, (long) vids.length << 1);
+    vids = Arrays.copyOf(vids, rows);
+    words = Arrays.copyOf(words, rows * numWords);
+    inEdges = Arrays.copyOf(inEdges, rows);
+    outEdges = Arrays.copyOf(outEdges, rows);
+  }
+
+  /** Rows allocated up front, the arrays grow geometrically from there. */
+  private static final int INITIAL_ROWS = 1 << 10;
+  private final int maxVertices;
+  /** Number of bitmap words per row. */
+  private final int numWords;
+  /** Maps the key of a vertex to its row. */
+  private final LongIntHashMap index;
+  private Object[] vids;
+  private long[] words;
+  private int[] inEdges;
+  private int[] outEdges;
+  private int size;
+}
@@ -21,21 +21,37 @@ package com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 
+import com.intel.hadoop.graphbuilder.util.VarInt;
+
 /**
  * Intermediate value type of edge records and supports commutative and
  * associative add operation to merge with instances of the same type.
- * 
+ * <p>
+ * When the vids are {@code IntType} or {@code LongType} and the edge data is
+ * {@code IntType}, {@code LongType}, {@code FloatType} or {@code EmptyType},
+ * the edges are stored in columns: three primitive arrays growing
+ * geometrically. Adding a value is then an array copy, and the value is
+ * serialized with a single write. The lists returned by {@link #sources},
+ * {@link #targets} and {@link #edata} are read only views, creating an object
+ * on each get. Both storages have the same serialized form.
+ * </p>
  */
 public class CombinedEdgeValueType<VidType extends WritableComparable<VidType>, VertexData extends Writable, EdgeData extends Writable>
     implements Writable {
   public CombinedEdgeValueType(GraphTypeFactory factory) {
     this.factory = factory;
+    if (factory != null) {
+      this.vidColumn = factory.vidColumn();
+      this.edataColumn = factory.edataColumn();
+    }
   }
 
   /**
@@ -47,13 +63,34 @@ public class CombinedEdgeValueType<VidType extends WritableComparable<VidType>,
    */
   public CombinedEdgeValueType(VidType source, VidType target, EdgeData data,
       GraphTypeFactory factory) {
-    sources = new ArrayList<VidType>(1);
-    targets = new ArrayList<VidType>(1);
-    edata = new ArrayList<EdgeData>(1);
+    this(factory);
+    reset(source, target, data);
+  }
+
+  /**
+   * Replaces the edges of this value by a single edge, reusing the storage.
+   * 
+   * @param source
+   * @param target
+   * @param data
+   */
+  public void reset(VidType source, VidType target, EdgeData data) {
+    if (vidColumn != null) {
+      count = 0;
+      append(vidColumn.bits(source), vidColumn.bits(target),
+          edataColumn.bits(data));
+      return;
+    }
+    if (sources == null) {
+      sources = new ArrayList<VidType>(1);
+      targets = new ArrayList<VidType>(1);
+      edata = new ArrayList<EdgeData>(1);
+    } else {
+      clear();
+    }
     sources.add(source);
     targets.add(target);
     edata.add(data);
-    this.factory = factory;
   }
 
   /**
@@ -62,22 +99,39 @@ public class CombinedEdgeValueType<VidType extends WritableComparable<VidType>,
    * @param other
    */
   public void add(CombinedEdgeValueType other) {
-    if (this.size() == 0 && other.size() == 0)
+    if (other.size() == 0)
+      return;
+    if (vidColumn != null) {
+      if (other.vidColumn != null) {
+        ensureCapacity(count + other.count);
+        System.arraycopy(other.sourceIds, 0, sourceIds, count, other.count);
+        System.arraycopy(other.targetIds, 0, targetIds, count, other.count);
+        System.arraycopy(other.edataBits, 0, edataBits, count, other.count);
+        count += other.count;
+      } else {
+        for (int i = 0; i < other.size(); ++i)
+          append(vidColumn.bits(other.sources.get(i)),
+              vidColumn.bits(other.targets.get(i)),
+              edataColumn.bits(other.edata.get(i)));
+      }
       return;
-    if (this.size() == 0) {
+    }
+    if (this.sources == null) {
       this.sources = new ArrayList<VidType>(other.size());
       this.targets = new ArrayList<VidType>(other.size());
       this.edata = new ArrayList<EdgeData>(other.size());
     }
-    this.sources.addAll(other.sources);
-    this.targets.addAll(other.targets);
-    this.edata.addAll(other.edata);
+    this.sources.addAll(other.sources());
+    this.targets.addAll(other.targets());
+    this.edata.addAll(other.edata());
   }
 
   /**
    * @return number of edges in this value.
    */
   public int size() {
+    if (vidColumn != null)
+      return count;
     return sources == null ? 0 : sources.size();
   }
 
@@ -85,6 +139,9 @@ public class CombinedEdgeValueType<VidType extends WritableComparable<VidType>,
    * Clear the edges in the value.
    */
   public void clear() {
+    count = 0;
+    if (sources == null)
+      return;
     sources.clear();
     targets.clear();
     edata.clear();
@@ -94,6 +151,8 @@ public class CombinedEdgeValueType<VidType extends WritableComparable<VidType>,
    * @return the source ids of the edges.
    */
   public List<VidType> sources() {
+    if (vidColumn != null)
+      return new ColumnView<VidType>(sourceIds, vidColumn);
     return sources;
   }
 
@@ -101,6 +160,8 @@ public class CombinedEdgeValueType<VidType extends WritableComparable<VidType>,
    * @return the target ids of the edges.
    */
   public List<VidType> targets() {
+    if (vidColumn != null)
+      return new ColumnView<VidType>(targetIds, vidColumn);
     return targets;
   }
 
@@ -108,14 +169,28 @@ public class CombinedEdgeValueType<VidType extends WritableComparable<VidType>,
    * @return edge data of the edges.
    */
   public List<EdgeData> edata() {
+    if (vidColumn != null)
+      return new ColumnView<EdgeData>(edataBits, edataColumn);
     return edata;
   }
 
+  /**
+   * Reads the edges, appending them to the edges of this value.
+   */
   @Override
   public void readFields(DataInput in) throws IOException {
-
-    pid = in.readShort();
-    int size = in.readInt();
+    int size = VarInt.readUnsigned(in);
+    if (vidColumn != null) {
+      ensureCapacity(count + size);
+      for (int i = count; i < count + size; ++i)
+        sourceIds[i] = VarInt.readSignedLong(in);
+      for (int i = count; i < count + size; ++i)
+        targetIds[i] = VarInt.readSignedLong(in);
+      for (int i = count; i < count + size; ++i)
+        edataBits[i] = edataColumn.read(in);
+      count += size;
+      return;
+    }
     if (sources == null)
       sources = new ArrayList<VidType>(size);
     if (targets == null)
@@ -125,12 +200,12 @@ public class CombinedEdgeValueType<VidType extends WritableComparable<VidType>,
 
     for (int i = 0; i < size; ++i) {
       VidType source = factory.createVid();
-      source.readFields(in);
+      VarInt.readVid(in, source);
       sources.add(source);
     }
     for (int i = 0; i < size; ++i) {
       VidType target = factory.createVid();
-      target.readFields(in);
+      VarInt.readVid(in, target);
       targets.add(target);
     }
     for (int i = 0; i < size; ++i) {
@@ -140,34 +215,113 @@ public class CombinedEdgeValueType<VidType extends WritableComparable<VidType>,
     }
   }
 
+  /**
+   * Writes the number of edges as a varint, then the sources, the targets and
+   * the edge data. Integral vids are written as zigzag varints.
+   */
   @Override
   public void write(DataOutput out) throws IOException {
-    out.writeShort(pid);
-    out.writeInt(size());
-    for (int i = 0; i < size(); ++i) {
-      sources.get(i).write(out);
+    int size = size();
+    VarInt.writeUnsigned(out, size);
+    if (vidColumn != null) {
+      int maxBytes = size * (2 * VarInt.MAX_LONG_BYTES + edataColumn.width());
+      if (scratch == null || scratch.length < maxBytes)
+        scratch = new byte[Math.max(maxBytes, 2 * (scratch == null ? 0
+            : scratch.length))];
+      int pos = 0;
+      for (int i = 0; i < size; ++i)
+        pos = VarInt.putSignedLong(scratch, pos, sourceIds[i]);
+      for (int i = 0; i < size; ++i)
+        pos = VarInt.putSignedLong(scratch, pos, targetIds[i]);
+      for (int i = 0; i < size; ++i)
+        pos = edataColumn.put(scratch, pos, edataBits[i]);
+      out.write(scratch, 0, pos);
+      return;
     }
-    for (int i = 0; i < size(); ++i) {
-      targets.get(i).write(out);
+    for (int i = 0; i < size; ++i) {
+      VarInt.writeVid(out, sources.get(i));
     }
-    for (int i = 0; i < size(); ++i) {
+    for (int i = 0; i < size; ++i) {
+      VarInt.writeVid(out, targets.get(i));
+    }
+    for (int i = 0; i < size; ++i) {
       edata.get(i).write(out);
     }
   }
   
   @Override
   public String toString() {
+    List<VidType> sources = sources();
+    List<VidType> targets = targets();
+    List<EdgeData> edata = edata();
     StringBuilder sb = new StringBuilder();
-    sb.append("size: " + sources.size() + "[");
-    for (int i = 0; i < sources.size(); ++i) {
+    sb.append("size: " + size() + "[");
+    for (int i = 0; i < size(); ++i) {
       sb.append("(" + sources.get(i) + ", " + targets.get(i) + ", " + edata.get(i) + ") ");
     }
     return sb.toString();
   }
 
-  short pid;
+  private void append(long source, long target, long data) {
+    ensureCapacity(count + 1);
+    sourceIds[count] = source;
+    targetIds[count] = target;
+    edataBits[count] = data;
+    ++count;
+  }
+
+  /** Grows the columns geometrically to hold at least n edges. */
+  private void ensureCapacity(int n) {
+    if (sourceIds != null && sourceIds.length >= n)
+      return;
+    int capacity = Math.max(n, sourceIds == null ? 1 : 2 * sourceIds.length);
+    if (sourceIds == null) {
+      sourceIds = new long[capacity];
+      targetIds = new long[capacity];
+      edataBits = new long[capacity];
+    } else {
+      sourceIds = Arrays.copyOf(sourceIds, capacity);
+      targetIds = Arrays.copyOf(targetIds, capacity);
+      edataBits = Arrays.copyOf(edataBits, capacity);
+    }
+  }
+
+  /** A read only view of the first size() values of a column. */
+  private class ColumnView<T> extends AbstractList<T> {
+    ColumnView(long[] bits, EdgeColumn column) {
+      this.bits = bits;
+      this.column = column;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T get(int i) {
+      if (i >= count)
+        throw new IndexOutOfBoundsException(i + " >= " + count);
+      return (T) column.value(bits[i]);
+    }
+
+    @Override
+    public int size() {
+      return count;
+    }
+
+    private final long[] bits;
+    private final EdgeColumn column;
+  }
+
   private ArrayList<VidType> sources;
   private ArrayList<VidType> targets;
   private ArrayList<EdgeData> edata;
   private GraphTypeFactory<VidType, VertexData, EdgeData> factory;
-}
\ No newline at end of file
+  /** The column types, both null if the edges are stored in the lists. */
+  private EdgeColumn vidColumn;
+  private EdgeColumn edataColumn;
+  /** The columns of the first count edges. */
+  private long[] sourceIds;
+  private long[] targetIds;
+  private long[] edataBits;
+  private int count;
+  /** Encoding buffer of the columns, written with a single call. */
+  private byte[] scratch;
+}
@@ -21,13 +21,13 @@ package com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.BitSet;
 
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 
 import com.intel.hadoop.graphbuilder.types.Mergable;
+import com.intel.hadoop.graphbuilder.util.VarInt;
 
 /**
  * Intermediate value type of vertex records and supports commutative and
@@ -43,7 +43,7 @@ public class CombinedVrecordValueType<VidType extends WritableComparable<VidType
   public CombinedVrecordValueType(GraphTypeFactory factory) {
     this.vid = null;
     this.vdata = null;
-    pids = new HashSet<Short>();
+    pids = new BitSet();
     this.hasvdata = false;
     this.factory = factory;
   }
@@ -59,27 +59,74 @@ public class CombinedVrecordValueType<VidType extends WritableComparable<VidType
    */
   public CombinedVrecordValueType(VidType vid, short pid, int inEdges,
       int outEdges, GraphTypeFactory factory) {
+    pids = new BitSet();
+    this.factory = factory;
+    reset(vid, pid, inEdges, outEdges);
+  }
+
+  /**
+   * Creates a vertex record with vid and vdata. Other fields are left empty.
+   * 
+   * @param vid
+   * @param vdata
+   */
+  public CombinedVrecordValueType(VidType vid, VertexData vdata) {
+    this.pids = new BitSet();
+    reset(vid, vdata);
+  }
+
+  /**
+   * Overwrites this value with a vertex record with vid, pid, inEdges and
+   * outEdges, and no vertex data.
+   * 
+   * @param vid
+   * @param pid
+   * @param inEdges
+   * @param outEdges
+   */
+  public void reset(VidType vid, short pid, int inEdges, int outEdges) {
     this.vid = vid;
-    pids = new HashSet<Short>();
-    pids.add(pid);
+    this.vdata = null;
+    pids.clear();
+    pids.set(pid);
     this.inEdges = inEdges;
     this.outEdges = outEdges;
     this.hasvdata = false;
-    this.factory = factory;
   }
 
   /**
-   * Creates a vertex record with vid and vdata. Other fields are left empty.
+   * Overwrites this value with a vertex record with vid, a set of partitions,
+   * inEdges and outEdges, and no vertex data.
+   * 
+   * @param vid
+   * @param pids
+   *          copied into this value.
+   * @param inEdges
+   * @param outEdges
+   */
+  public void reset(VidType vid, BitSet pids, int inEdges, int outEdges) {
+    this.vid = vid;
+    this.vdata = null;
+    this.pids.clear();
+    this.pids.or(pids);
+    this.inEdges = inEdges;
+    this.outEdges = outEdges;
+    this.hasvdata = false;
+  }
+
+  /**
+   * Overwrites this value with a vertex record with vid and vdata, and other
+   * fields empty.
    * 
    * @param vid
    * @param vdata
    */
-  public CombinedVrecordValueType(VidType vid, VertexData vdata) {
+  public void reset(VidType vid, VertexData vdata) {
     this.vid = vid;
     this.vdata = vdata;
     this.inEdges = 0;
     this.outEdges = 0;
-    this.pids = new HashSet<Short>();
+    pids.clear();
     this.hasvdata = true;
   }
 
@@ -93,17 +140,14 @@ public class CombinedVrecordValueType<VidType extends WritableComparable<VidType
       this.vid = other.vid;
     }
 
-    if (!this.vid.equals(other.vid)) {
+    if (this.vid != null && other.vid != null && !this.vid.equals(other.vid)) {
       // fatal error
     } else {
       this.inEdges += other.inEdges;
       this.outEdges += other.outEdges;
 
       // merge pids
-      Iterator<Short> iter = other.pids.iterator();
-      while (iter.hasNext()) {
-        pids.add(iter.next());
-      }
+      pids.or(other.pids);
 
       // merge vdata
       if (this.hasvdata) {
@@ -120,7 +164,8 @@ public class CombinedVrecordValueType<VidType extends WritableComparable<VidType
   }
 
   /**
-   * @return vertex id.
+   * @return vertex id, or null for a deserialized value, whose vid is the key
+   *         of the record.
    */
   public VidType vid() {
     return vid;
@@ -150,7 +195,7 @@ public class CombinedVrecordValueType<VidType extends WritableComparable<VidType
   /**
    * @return partition ids that contains the mirror of this vertex.
    */
-  public HashSet<Short> pids() {
+  public BitSet pids() {
     return pids;
   }
 
@@ -169,43 +214,95 @@ public class CombinedVrecordValueType<VidType extends WritableComparable<VidType
     vdata = null;
   }
 
+  /**
+   * Reads a value written by {@link #write}. The vid is left null.
+   */
   @Override
   public void readFields(DataInput in) throws IOException {
-    vid = factory.createVid();
-    vid.readFields(in);
-    hasvdata = in.readBoolean();
+    vid = null;
+    int header = in.readByte();
+    hasvdata = (header & HAS_VDATA) != 0;
+    pids.clear();
+    if ((header & PID_BITMAP) != 0) {
+      int numBytes = VarInt.readUnsigned(in);
+      for (int i = 0; i < numBytes; ++i) {
+        int b = in.readByte() & 0xff;
+        for (int bit = 0; b != 0; ++bit, b >>>= 1) {
+          if ((b & 1) != 0)
+            pids.set(i * 8 + bit);
+        }
+      }
+    } else {
+      int numMirrors = VarInt.readUnsigned(in);
+      int pid = 0;
+      for (int i = 0; i < numMirrors; ++i) {
+        pid += VarInt.readUnsigned(in);
+        pids.set(pid);
+      }
+    }
+    inEdges = VarInt.readUnsigned(in);
+    outEdges = VarInt.readUnsigned(in);
     if (hasvdata) {
       vdata = factory.createVdata();
       vdata.readFields(in);
+    } else {
+      vdata = null;
     }
-    int numMirrors = in.readShort();
-    for (int i = 0; i < numMirrors; ++i) {
-      short mirror = in.readShort();
-      pids.add(mirror);
-    }
-    inEdges = in.readInt();
-    outEdges = in.readInt();
   }
 
+  /**
+   * Writes a header byte, the partitions, the edge counts as varints and the
+   * vertex data. The vid is not written since it is the key of the record.
+   * The partitions are written either as a bitmap or as the varint gaps of the
+   * sorted list, whichever is shorter: the bitmap for small partition ids.
+   */
   @Override
   public void write(DataOutput out) throws IOException {
-    vid.write(out);
-    out.writeBoolean(hasvdata);
+    int numMirrors = pids.cardinality();
+    int numBytes = (pids.length() + 7) >>> 3;
+    int listSize = VarInt.sizeOfUnsigned(numMirrors);
+    int prev = 0;
+    for (int pid = pids.nextSetBit(0); pid >= 0; pid = pids.nextSetBit(pid + 1)) {
+      listSize += VarInt.sizeOfUnsigned(pid - prev);
+      prev = pid;
+    }
+    boolean bitmap = VarInt.sizeOfUnsigned(numBytes) + numBytes < listSize;
+
+    out.writeByte((hasvdata ? HAS_VDATA : 0) | (bitmap ? PID_BITMAP : 0));
+    if (bitmap) {
+      VarInt.writeUnsigned(out, numBytes);
+      for (int i = 0; i < numBytes; ++i) {
+        int b = 0;
+        for (int bit = 0; bit < 8; ++bit) {
+          if (pids.get(i * 8 + bit))
+            b |= 1 << bit;
+        }
+        out.writeByte(b);
+      }
+    } else {
+      VarInt.writeUnsigned(out, numMirrors);
+      prev = 0;
+      for (int pid = pids.nextSetBit(0); pid >= 0; pid = pids
+          .nextSetBit(pid + 1)) {
+        VarInt.writeUnsigned(out, pid - prev);
+        prev = pid;
+      }
+    }
+    VarInt.writeUnsigned(out, inEdges);
+    VarInt.writeUnsigned(out, outEdges);
     if (hasvdata)
       vdata.write(out);
-    out.writeShort((short) pids.size());
-    Iterator<Short> iter = pids.iterator();
-    while (iter.hasNext())
-      out.writeShort(iter.next());
-    out.writeInt(inEdges);
-    out.writeInt(outEdges);
   }
 
+  /** Bits of the header byte. */
+  private static final int HAS_VDATA = 1;
+  private static final int PID_BITMAP = 2;
+
   private VidType vid;
   private VertexData vdata;
   private boolean hasvdata;
   private int inEdges;
   private int outEdges;
-  private HashSet<Short> pids;
+  private BitSet pids;
   private GraphTypeFactory<VidType, VertexData, EdgeData> factory;
 }
\ No newline at end of file
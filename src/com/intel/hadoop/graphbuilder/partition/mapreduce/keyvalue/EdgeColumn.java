@@ -0,0 +1,118 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+import com.intel.hadoop.graphbuilder.types.EmptyType;
+import com.intel.hadoop.graphbuilder.types.FloatType;
+import com.intel.hadoop.graphbuilder.types.IntType;
+import com.intel.hadoop.graphbuilder.types.LongType;
+
+/**
+ * The types whose values a columnar {@link CombinedEdgeValueType} stores as
+ * the bits of a long. The vids are INT or LONG, and the edge data any of them.
+ * The edge data is serialized with the same bytes as its {@code Writable}.
+ */
+enum EdgeColumn {
+  EMPTY(0), INT(4), LONG(8), FLOAT(4);
+
+  /**
+   * @param sample
+   * @return the column of the type of sample, or null if the type is not
+   *         stored in columns.
+   */
+  static EdgeColumn of(Object sample) {
+    if (sample instanceof IntType)
+      return INT;
+    if (sample instanceof LongType)
+      return LONG;
+    if (sample instanceof FloatType)
+      return FLOAT;
+    if (sample instanceof EmptyType)
+      return EMPTY;
+    return null;
+  }
+
+  EdgeColumn(int width) {
+    this.width = width;
+  }
+
+  /**
+   * @return the serialized size of an edge data of this column.
+   */
+  int width() {
+    return width;
+  }
+
+  long bits(Object value) {
+    switch (this) {
+    case INT:
+      return ((IntType) value).get();
+    case LONG:
+      return ((LongType) value).get();
+    case FLOAT:
+      return Float.floatToRawIntBits(((FloatType) value).get());
+    default:
+      return 0;
+    }
+  }
+
+  Object value(long bits) {
+    switch (this) {
+    case INT:
+      return new IntType((int) bits);
+    case LONG:
+      return new LongType(bits);
+    case FLOAT:
+      return new FloatType(Float.intBitsToFloat((int) bits));
+    default:
+      return EmptyType.INSTANCE;
+    }
+  }
+
+  /**
+   * Encodes the bits of an edge data big endian, as its {@code Writable}.
+   * 
+   * @return the position after the encoded value.
+   */
+  int put(byte[] buf, int pos, long bits) {
+    for (int shift = (width - 1) * 8; shift >= 0; shift -= 8)
+      buf[pos++] = (byte) (bits >>> shift);
+    return pos;
+  }
+
+  /**
+   * Reads the bits of an edge data written by {@link #put}.
+   */
+  long read(DataInput in) throws IOException {
+    switch (this) {
+    case INT:
+    case FLOAT:
+      return in.readInt();
+    case LONG:
+      return in.readLong();
+    default:
+      return 0;
+    }
+  }
+
+  private final int width;
+}
@@ -30,4 +30,39 @@ public abstract class GraphTypeFactory<VidType extends WritableComparable<VidTyp
   abstract public VertexData createVdata();
 
   abstract public EdgeData createEdata();
+
+  /**
+   * @return the column of the vids of a columnar {@link CombinedEdgeValueType},
+   *         or null if the edges of this graph type are stored as objects.
+   */
+  EdgeColumn vidColumn() {
+    initColumns();
+    return vidColumn;
+  }
+
+  /**
+   * @return the column of the edge data of a columnar
+   *         {@link CombinedEdgeValueType}, or null if the edges of this graph
+   *         type are stored as objects.
+   */
+  EdgeColumn edataColumn() {
+    initColumns();
+    return edataColumn;
+  }
+
+  private void initColumns() {
+    if (columnsInitialized)
+      return;
+    EdgeColumn vid = EdgeColumn.of(createVid());
+    EdgeColumn edata = EdgeColumn.of(createEdata());
+    if ((vid == EdgeColumn.INT || vid == EdgeColumn.LONG) && edata != null) {
+      vidColumn = vid;
+      edataColumn = edata;
+    }
+    columnsInitialized = true;
+  }
+
+  private boolean columnsInitialized;
+  private EdgeColumn vidColumn;
+  private EdgeColumn edataColumn;
 }
@@ -0,0 +1,124 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.JobConf;
+
+import com.intel.hadoop.graphbuilder.types.IntType;
+import com.intel.hadoop.graphbuilder.types.LongType;
+import com.intel.hadoop.graphbuilder.types.StringType;
+
+/**
+ * Compares serialized {@link IngressKeyType}s without deserializing them: the
+ * flag, then the pid of an edge key or the vid of a vertex key. Vids of
+ * {@code IntType}, {@code LongType} and {@code StringType} are compared on
+ * their bytes; keys of other vid types fall back to {@code compareTo}.
+ * <p>
+ * The key class is the map output key class of the job, so the comparator is
+ * set with {@code JobConf#setOutputKeyComparatorClass} rather than registered
+ * with {@code WritableComparator#define}, which would only hold in the JVM that
+ * generates the key class. Strings are ordered by their UTF-8 bytes as
+ * {@code Text}, which differs from {@code String#compareTo} only between
+ * supplementary characters and characters above U+E000; keys are equal in both
+ * orders alike.
+ * </p>
+ */
+public class IngressKeyComparator extends Configured implements
+    RawComparator<IngressKeyType> {
+
+  @Override
+  public void setConf(Configuration conf) {
+    super.setConf(conf);
+    if (conf == null)
+      return;
+    Class<? extends WritableComparable> keyClass = new JobConf(conf)
+        .getMapOutputKeyClass().asSubclass(WritableComparable.class);
+    Object vid;
+    try {
+      vid = ((IngressKeyType) keyClass.newInstance()).createVid();
+    } catch (InstantiationException e) {
+      throw new IllegalArgumentException(e);
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException(e);
+    }
+    if (vid instanceof IntType)
+      vidType = INT;
+    else if (vid instanceof LongType)
+      vidType = LONG;
+    else if (vid instanceof StringType)
+      vidType = STRING;
+    else
+      fallback = WritableComparator.get(keyClass);
+  }
+
+  @Override
+  public int compare(IngressKeyType o1, IngressKeyType o2) {
+    return o1.compareTo(o2);
+  }
+
+  @Override
+  public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+    short flag1 = (short) WritableComparator.readUnsignedShort(b1, s1);
+    short flag2 = (short) WritableComparator.readUnsignedShort(b2, s2);
+    if (flag1 != flag2)
+      return flag1 < flag2 ? -1 : 1;
+    if (flag1 == IngressKeyType.EDGEKEY) {
+      short pid1 = (short) WritableComparator.readUnsignedShort(b1, s1 + 2);
+      short pid2 = (short) WritableComparator.readUnsignedShort(b2, s2 + 2);
+      return pid1 < pid2 ? -1 : (pid1 == pid2 ? 0 : 1);
+    }
+    switch (vidType) {
+    case INT: {
+      int v1 = WritableComparator.readInt(b1, s1 + 2);
+      int v2 = WritableComparator.readInt(b2, s2 + 2);
+      return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+    }
+    case LONG: {
+      long v1 = WritableComparator.readLong(b1, s1 + 2);
+      long v2 = WritableComparator.readLong(b2, s2 + 2);
+      return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+    }
+    case STRING: {
+      int n1 = WritableUtils.decodeVIntSize(b1[s1 + 2]);
+      int n2 = WritableUtils.decodeVIntSize(b2[s2 + 2]);
+      return WritableComparator.compareBytes(b1, s1 + 2 + n1, l1 - 2 - n1, b2,
+          s2 + 2 + n2, l2 - 2 - n2);
+    }
+    default:
+      if (fallback == null)
+        throw new IllegalStateException("The comparator is not configured.");
+      return fallback.compare(b1, s1, l1, b2, s2, l2);
+    }
+  }
+
+  private static final int OTHER = 0;
+  private static final int INT = 1;
+  private static final int LONG = 2;
+  private static final int STRING = 3;
+
+  private int vidType = OTHER;
+  /** Deserializing comparator for the other vid types. */
+  private WritableComparator fallback;
+}
@@ -27,7 +27,8 @@ import org.apache.hadoop.io.WritableComparable;
 /**
  * Abstract MapKey for edge ingress templated with VidType. This key is a
  * "union" type of two types: EdgeKey and VertexKey. The reducer calls different
- * reduce methods based on the key type.
+ * reduce methods based on the key type. The shuffle compares the serialized
+ * keys with an {@link IngressKeyComparator}.
  * 
  * @param <VidType>
  */
@@ -142,12 +143,12 @@ public abstract class IngressKeyType<VidType extends WritableComparable<VidType>
   public int compareTo(IngressKeyType<VidType> other) {
     if (this.flag == other.flag) {
       if (this.flag == EDGEKEY) {
-        return ((Short) pid).compareTo(other.pid);
+        return pid - other.pid;
       } else {
         return vid.compareTo((VidType) other.vid);
       }
     } else {
-      return ((Short) (this.flag)).compareTo(other.flag);
+      return this.flag - other.flag;
     }
   }
 
@@ -21,6 +21,7 @@ package com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.Iterator;
 
 import org.apache.hadoop.io.Writable;
@@ -55,7 +56,8 @@ public abstract class IngressValueType<VidType extends WritableComparable<VidTyp
   }
 
   /**
-   * Reduce a list of values. Value
+   * Reduce a list of values. The edges are combined into the edge value reused
+   * by the init methods.
    * 
    * @param flag
    * @param iter
@@ -63,12 +65,15 @@ public abstract class IngressValueType<VidType extends WritableComparable<VidTyp
   public void reduce(short flag,
       Iterator<IngressValueType<VidType, VertexData, EdgeData>> iter) {
     if (flag == IngressKeyType.EDGEKEY) {
-      edgeValue = new CombinedEdgeValueType(getGraphTypeFactory());
+      if (edgeBuffer == null)
+        edgeBuffer = new CombinedEdgeValueType(getGraphTypeFactory());
+      edgeBuffer.clear();
+      edgeValue = edgeBuffer;
       while (iter.hasNext()) {
         IngressValueType<VidType, VertexData, EdgeData> next = iter.next();
         edgeValue.add(next.edgeValue());
-        CombinedEdgeValueType eval = next.edgeValue();
       }
+      this.vrecordValue = null;
       this.flag = EDGEVALUE;
     } else if (flag == IngressKeyType.VERTEXKEY) {
       vrecordValue = new CombinedVrecordValueType(getGraphTypeFactory());
@@ -83,7 +88,8 @@ public abstract class IngressValueType<VidType extends WritableComparable<VidTyp
   }
 
   /**
-   * Initialize the EdgeRecord value.
+   * Initialize the EdgeRecord value. The init methods reuse the values of the
+   * previous calls, so the value must be serialized before the next call.
    * 
    * @param pid
    * @param source
@@ -93,8 +99,10 @@ public abstract class IngressValueType<VidType extends WritableComparable<VidTyp
   public void initEdgeValue(short pid, VidType source, VidType target,
       EdgeData edata) {
     this.flag = EDGEVALUE;
-    this.edgeValue = new CombinedEdgeValueType(source, target, edata,
-        getGraphTypeFactory());
+    if (edgeBuffer == null)
+      edgeBuffer = new CombinedEdgeValueType(getGraphTypeFactory());
+    edgeBuffer.reset(source, target, edata);
+    this.edgeValue = edgeBuffer;
     this.vrecordValue = null;
   }
 
@@ -108,10 +116,30 @@ public abstract class IngressValueType<VidType extends WritableComparable<VidTyp
    */
   public void initVrecValue(VidType vid, short pid, int inEdges, int outEdges) {
     this.flag = VRECORDVALUE;
-    this.vrecordValue = new CombinedVrecordValueType(vid, pid, inEdges,
-        outEdges, getGraphTypeFactory());
+    if (vrecordBuffer == null)
+      vrecordBuffer = new CombinedVrecordValueType(getGraphTypeFactory());
+    vrecordBuffer.reset(vid, pid, inEdges, outEdges);
+    this.vrecordValue = vrecordBuffer;
     this.edgeValue = null;
+  }
 
+  /**
+   * Initialize as a VertexRecord value with a set of partitions and without
+   * vertex data.
+   * 
+   * @param vid
+   * @param pids
+   * @param inEdges
+   * @param outEdges
+   */
+  public void initVrecValue(VidType vid, BitSet pids, int inEdges,
+      int outEdges) {
+    this.flag = VRECORDVALUE;
+    if (vrecordBuffer == null)
+      vrecordBuffer = new CombinedVrecordValueType(getGraphTypeFactory());
+    vrecordBuffer.reset(vid, pids, inEdges, outEdges);
+    this.vrecordValue = vrecordBuffer;
+    this.edgeValue = null;
   }
 
   /**
@@ -122,7 +150,10 @@ public abstract class IngressValueType<VidType extends WritableComparable<VidTyp
    */
   public void initVrecValue(VidType vid, VertexData vdata) {
     this.flag = VRECORDVALUE;
-    this.vrecordValue = new CombinedVrecordValueType(vid, vdata);
+    if (vrecordBuffer == null)
+      vrecordBuffer = new CombinedVrecordValueType(getGraphTypeFactory());
+    vrecordBuffer.reset(vid, vdata);
+    this.vrecordValue = vrecordBuffer;
     this.edgeValue = null;
   }
 
@@ -157,9 +188,14 @@ public abstract class IngressValueType<VidType extends WritableComparable<VidTyp
 
   @Override
   public void readFields(DataInput in) throws IOException {
-    flag = in.readShort();
+    flag = in.readByte();
     if (flag == EDGEVALUE) {
-      edgeValue = new CombinedEdgeValueType(getGraphTypeFactory());
+      // The edges are copied by the combiner and the reducer, so the edge
+      // value is reused like the value itself.
+      if (edgeBuffer == null)
+        edgeBuffer = new CombinedEdgeValueType(getGraphTypeFactory());
+      edgeBuffer.clear();
+      edgeValue = edgeBuffer;
       edgeValue.readFields(in);
     } else if (flag == VRECORDVALUE) {
       vrecordValue = new CombinedVrecordValueType(getGraphTypeFactory());
@@ -171,8 +207,7 @@ public abstract class IngressValueType<VidType extends WritableComparable<VidTyp
 
   @Override
   public void write(DataOutput out) throws IOException {
-
-    out.writeShort(flag);
+    out.writeByte(flag);
     if (flag == EDGEVALUE) {
       edgeValue.write(out);
     } else if (flag == VRECORDVALUE) {
@@ -183,6 +218,12 @@ public abstract class IngressValueType<VidType extends WritableComparable<VidTyp
 
   protected CombinedEdgeValueType edgeValue;
   protected CombinedVrecordValueType vrecordValue;
+  /**
+   * Values reused by the init methods, so that a mapper emitting the same
+   * value object for every record does not allocate.
+   */
+  private CombinedEdgeValueType edgeBuffer;
+  private CombinedVrecordValueType vrecordBuffer;
   protected GraphTypeFactory<VidType, VertexData, EdgeData> factory;
   protected short flag;
 }
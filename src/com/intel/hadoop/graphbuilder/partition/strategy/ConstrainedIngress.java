@@ -0,0 +1,243 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.strategy;
+
+import java.util.Arrays;
+
+import com.intel.hadoop.graphbuilder.util.HashUtil;
+
+/**
+ * Constrained random assigns each vertex a constraint set of partitions from
+ * a hash of its id, and assigns an edge to a partition in the intersection of
+ * the constraint sets of its endpoints, chosen by a hash of the edge. A vertex
+ * is therefore replicated at most to its constraint set, instead of to every
+ * partition with {@code RandomIngress}. Like {@code RandomIngress}, the
+ * assignment of an edge depends on nothing but its endpoints.
+ * <p>
+ * The schemes differ by the shape of the constraint sets:
+ * <ul>
+ * <li>{@code GRID}: the partitions are laid out on a rows x cols grid, with
+ * rows the largest divisor of numProcs not above sqrt(numProcs), and the set
+ * of a vertex is the row and the column of its cell: at most rows + cols - 1
+ * replicas, 2 * sqrt(numProcs) - 1 for a square.</li>
+ * <li>{@code TORUS}: the column of the cell and the half of its row that
+ * follows it, wrapping around: at most rows + cols / 2 replicas.</li>
+ * <li>{@code PDS}: numProcs must be p^2 + p + 1 for a prime p; the sets are the
+ * shifts of a perfect difference set, so two sets meet in exactly one
+ * partition: at most p + 1 replicas.</li>
+ * </ul>
+ * </p>
+ * 
+ * @param <VidType>
+ */
+public class ConstrainedIngress<VidType> implements Ingress<VidType> {
+  /** Shapes of the constraint sets. */
+  public enum Scheme {
+    GRID, TORUS, PDS
+  }
+
+  /**
+   * @param numProcs
+   * @param scheme
+   * @throws IllegalArgumentException
+   *           if the scheme is {@code PDS} and numProcs is not p^2 + p + 1 for
+   *           a prime p.
+   */
+  public ConstrainedIngress(int numProcs, Scheme scheme) {
+    this.numProcs = numProcs;
+    this.scheme = scheme;
+    switch (scheme) {
+    case GRID:
+    case TORUS:
+      int rows = (int) Math.sqrt(numProcs);
+      while (numProcs % rows != 0)
+        rows--;
+      constraints = gridConstraints(rows, numProcs / rows,
+          scheme == Scheme.TORUS);
+      break;
+    case PDS:
+      constraints = pdsConstraints(numProcs);
+      break;
+    }
+    maxReplicas = 0;
+    for (int[] set : constraints)
+      maxReplicas = Math.max(maxReplicas, set.length);
+    stamp = new int[numProcs];
+    candidates = new int[maxReplicas];
+  }
+
+  @Override
+  public short computePid(VidType source, VidType target) {
+    int[] sourceSet = constraints[bucket(source)];
+    int[] targetSet = constraints[bucket(target)];
+    if (++epoch == 0) {
+      Arrays.fill(stamp, 0);
+      epoch = 1;
+    }
+    for (int pid : sourceSet)
+      stamp[pid] = epoch;
+    int n = 0;
+    for (int pid : targetSet) {
+      if (stamp[pid] == epoch)
+        candidates[n++] = pid;
+    }
+    int h = HashUtil.mix(HashUtil.hashpair(source, target)) & Integer.MAX_VALUE;
+    return (short) candidates[h % n];
+  }
+
+  @Override
+  public int numProcs() {
+    return numProcs;
+  }
+
+  @Override
+  public void setDegrees(DegreeTable degrees) {
+    // The placement does not depend on the degrees.
+  }
+
+  public Scheme scheme() {
+    return scheme;
+  }
+
+  /**
+   * @return the maximum number of partitions a vertex is replicated to.
+   */
+  public int maxReplicas() {
+    return maxReplicas;
+  }
+
+  /**
+   * @param vid
+   * @return the index of the constraint set of the vertex.
+   */
+  private int bucket(VidType vid) {
+    return (HashUtil.mix(vid.hashCode()) & Integer.MAX_VALUE)
+        % constraints.length;
+  }
+
+  /**
+   * @return for each cell of the grid, its column and its row, or the half of
+   *         its row that follows it.
+   */
+  private static int[][] gridConstraints(int rows, int cols, boolean torus) {
+    int rowCells = torus ? cols / 2 + 1 : cols;
+    int[][] sets = new int[rows * cols][];
+    for (int r = 0; r < rows; ++r) {
+      for (int c = 0; c < cols; ++c) {
+        int[] set = new int[rows + rowCells - 1];
+        int n = 0;
+        for (int k = 0; k < rowCells; ++k)
+          set[n++] = r * cols + (c + k) % cols;
+        for (int i = 0; i < rows; ++i) {
+          if (i != r)
+            set[n++] = i * cols + c;
+        }
+        sets[r * cols + c] = set;
+      }
+    }
+    return sets;
+  }
+
+  /**
+   * @return the shifts of a perfect difference set modulo numProcs.
+   */
+  private static int[][] pdsConstraints(int numProcs) {
+    int p = (int) Math.round((Math.sqrt(4.0 * numProcs - 3) - 1) / 2);
+    if (p < 2 || p * p + p + 1 != numProcs || !isPrime(p))
+      throw new IllegalArgumentException("PDS ingress needs p^2 + p + 1"
+          + " partitions for a prime p, not " + numProcs);
+    int[] base = perfectDifferenceSet(p);
+    int[][] sets = new int[numProcs][base.length];
+    for (int h = 0; h < numProcs; ++h) {
+      for (int k = 0; k < base.length; ++k)
+        sets[h][k] = (h + base[k]) % numProcs;
+    }
+    return sets;
+  }
+
+  /**
+   * Singer's construction: with x a primitive element of GF(p^3), the
+   * exponents i for which x^i lies in the plane spanned by 1 and x, taken
+   * modulo p^2 + p + 1, form a perfect difference set of p + 1 elements.
+   * 
+   * @param p
+   *          a prime.
+   * @return the difference set.
+   */
+  static int[] perfectDifferenceSet(int p) {
+    int n = p * p + p + 1;
+    int order = p * p * p - 1;
+    /* Find a monic x^3 + a x^2 + b x + c for which x has order p^3 - 1. */
+    for (int a = 0; a < p; ++a) {
+      for (int b = 0; b < p; ++b) {
+        for (int c = 1; c < p; ++c) {
+          int e0 = 1, e1 = 0, e2 = 0;
+          int[] set = new int[p + 1];
+          boolean[] seen = new boolean[n];
+          int size = 0;
+          int i = 0;
+          do {
+            if (e2 == 0 && !seen[i % n]) {
+              if (size == set.length)
+                break;
+              seen[i % n] = true;
+              set[size++] = i % n;
+            }
+            /* Multiply by x, reducing x^3 to -(a x^2 + b x + c). */
+            int t = e2;
+            e2 = mod(e1 - a * t, p);
+            e1 = mod(e0 - b * t, p);
+            e0 = mod(-c * t, p);
+            ++i;
+          } while (!(e0 == 1 && e1 == 0 && e2 == 0));
+          if (i == order && size == set.length) {
+            Arrays.sort(set);
+            return set;
+          }
+        }
+      }
+    }
+    throw new IllegalStateException("No primitive polynomial of degree 3 mod "
+        + p);
+  }
+
+  private static int mod(int v, int p) {
+    int r = v % p;
+    return r < 0 ? r + p : r;
+  }
+
+  private static boolean isPrime(int p) {
+    for (int d = 2; d * d <= p; ++d) {
+      if (p % d == 0)
+        return false;
+    }
+    return p >= 2;
+  }
+
+  private int numProcs;
+  private Scheme scheme;
+  /** Constraint set of each vertex bucket. */
+  private int[][] constraints;
+  private int maxReplicas;
+  /** Marks the constraint set of the source, by edge. */
+  private int[] stamp;
+  private int epoch;
+  /** Reusable intersection of the constraint sets. */
+  private int[] candidates;
+}
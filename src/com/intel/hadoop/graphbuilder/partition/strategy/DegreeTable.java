@@ -0,0 +1,204 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.strategy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.intel.hadoop.graphbuilder.types.IntType;
+import com.intel.hadoop.graphbuilder.types.LongType;
+
+/**
+ * Global degree of the vertices, counted by a pre-pass over the input and
+ * looked up by the ingress strategies.
+ * <p>
+ * Vertices are identified by a long key: the value of an integral vid, or a
+ * 64 bit hash of the string of other vids, in which case colliding vertices
+ * share the sum of their degrees. On disk, a table is a sequence of records
+ * sorted by key, each the vlong gap to the previous key, the first one
+ * absolute, followed by the vint degree. In memory, the keys and degrees are
+ * parallel arrays searched by bisection.
+ * </p>
+ */
+public class DegreeTable {
+  /** Prefix of the names of the table files written by the pre-pass. */
+  public static final String FILE_PREFIX = "degrees-";
+
+  /**
+   * @param vid
+   * @return the key of a vertex in the table.
+   */
+  public static long key(Object vid) {
+    if (vid instanceof IntType)
+      return ((IntType) vid).get();
+    if (vid instanceof LongType)
+      return ((LongType) vid).get();
+    if (vid instanceof Integer || vid instanceof Long)
+      return ((Number) vid).longValue();
+    // 64 bit FNV-1a.
+    String s = vid.toString();
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < s.length(); i++) {
+      h ^= s.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return h;
+  }
+
+  /**
+   * @param keys
+   *          strictly increasing keys.
+   * @param degrees
+   * @param size
+   *          number of entries used in the arrays.
+   */
+  public DegreeTable(long[] keys, int[] degrees, int size) {
+    this.keys = keys;
+    this.degrees = degrees;
+    this.size = size;
+  }
+
+  /**
+   * @param vid
+   * @return the degree of the vertex, or 0 if it is not in the table.
+   */
+  public int degree(Object vid) {
+    int i = Arrays.binarySearch(keys, 0, size, key(vid));
+    return i < 0 ? 0 : degrees[i];
+  }
+
+  /**
+   * @return number of vertices in the table.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Reads a table written by a {@link Writer} until the end of the input.
+   * 
+   * @param in
+   * @return the table.
+   * @throws IOException
+   */
+  public static DegreeTable read(DataInput in) throws IOException {
+    long[] keys = new long[1024];
+    int[] degrees = new int[1024];
+    int size = 0;
+    long key = 0;
+    while (true) {
+      long gap;
+      try {
+        gap = WritableUtils.readVLong(in);
+      } catch (EOFException e) {
+        break;
+      }
+      key += gap;
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, size * 2);
+        degrees = Arrays.copyOf(degrees, size * 2);
+      }
+      keys[size] = key;
+      degrees[size] = WritableUtils.readVInt(in);
+      size++;
+    }
+    return new DegreeTable(keys, degrees, size);
+  }
+
+  /**
+   * Reads and merges the tables written by the reducers of the pre-pass. Each
+   * file is sorted and no key is in two files.
+   * 
+   * @param fs
+   * @param files
+   * @return the merged table.
+   * @throws IOException
+   */
+  public static DegreeTable load(FileSystem fs, Path[] files)
+      throws IOException {
+    DegreeTable table = new DegreeTable(new long[0], new int[0], 0);
+    for (Path f : files) {
+      FSDataInputStream in = fs.open(f);
+      try {
+        table = table.size == 0 ? read(in) : merge(table, read(in));
+      } finally {
+        in.close();
+      }
+    }
+    return table;
+  }
+
+  private static DegreeTable merge(DegreeTable a, DegreeTable b) {
+    int size = a.size + b.size;
+    long[] keys = new long[size];
+    int[] degrees = new int[size];
+    int i = 0;
+    int j = 0;
+    for (int k = 0; k < size; k++) {
+      if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+        keys[k] = a.keys[i];
+        degrees[k] = a.degrees[i++];
+      } else {
+        keys[k] = b.keys[j];
+        degrees[k] = b.degrees[j++];
+      }
+    }
+    return new DegreeTable(keys, degrees, size);
+  }
+
+  /**
+   * Writes a table from entries appended in increasing key order.
+   */
+  public static class Writer {
+    public Writer(DataOutput out) {
+      this.out = out;
+    }
+
+    /**
+     * @param key
+     * @param degree
+     * @throws IOException
+     */
+    public void append(long key, int degree) throws IOException {
+      if (count > 0 && key <= last)
+        throw new IllegalArgumentException("Key " + key
+            + " is not larger than the previous key " + last);
+      WritableUtils.writeVLong(out, key - last);
+      WritableUtils.writeVInt(out, degree);
+      last = key;
+      count++;
+    }
+
+    private DataOutput out;
+    private long last;
+    private long count;
+  }
+
+  private long[] keys;
+  private int[] degrees;
+  private int size;
+}
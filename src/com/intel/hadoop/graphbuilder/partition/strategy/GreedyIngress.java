@@ -18,10 +18,6 @@
  */
 package com.intel.hadoop.graphbuilder.partition.strategy;
 
-import java.util.ArrayList;
-import java.util.BitSet;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Random;
 
 /**
@@ -29,22 +25,102 @@ import java.util.Random;
  * This class keeps track of the edges it has seen, and assign the partitions to
  * new edges such that the increase of total vertex mirror size is minimized
  * while the balance among partitions is also maintained.
+ * <p>
+ * The presence of each vertex is a packed bitset in a
+ * {@link VertexPresenceCache}, and the scores, candidates and loads are
+ * reusable primitive arrays, so assigning an edge does not allocate beyond the
+ * growth of the cache. The minimum and maximum load are maintained
+ * incrementally. The cache is unbounded by default; a bounded cache caps the
+ * memory of the mapper at the price of forgetting evicted vertices.
+ * </p>
+ * <p>
+ * In the coordinated mode, the ingress also records its assignments into a
+ * {@link PresenceSketch} that is published to the other mappers, and scores
+ * the partitions with the merged sketch of the other mappers as well: the
+ * presence of their bucket counts for the vertices, and their loads are added
+ * to the local loads.
+ * </p>
  * 
  * @param <VidType>
  */
 public class GreedyIngress<VidType> implements Ingress<VidType> {
+  /**
+   * Maximum number of vertices in the presence cache of a mapper; 0 for no
+   * bound.
+   */
+  public static final String CACHE_SIZE_KEY = "graphbuilder.ingress.greedy.cachesize";
+  /** Eviction policy of a bounded presence cache: lru, clock or degree. */
+  public static final String EVICTION_KEY = "graphbuilder.ingress.greedy.eviction";
+  /**
+   * Seed of the tie breaking, combined with the index of each mapper, for
+   * reproducible jobs; unset for an unseeded generator.
+   */
+  public static final String SEED_KEY = "graphbuilder.ingress.greedy.seed";
+
   public GreedyIngress(int numProcs) {
+    this(numProcs, new Random(), 0, VertexPresenceCache.Eviction.CLOCK);
+  }
+
+  /**
+   * Creates a greedy ingress with a bounded presence cache.
+   * 
+   * @param numProcs
+   * @param cacheSize
+   *          maximum number of vertices tracked, or a non positive value for
+   *          no bound.
+   * @param eviction
+   */
+  public GreedyIngress(int numProcs, int cacheSize,
+      VertexPresenceCache.Eviction eviction) {
+    this(numProcs, new Random(), cacheSize, eviction);
+  }
+
+  /**
+   * Creates a greedy ingress whose ties are broken by a seeded generator, so
+   * that the assignment is reproducible.
+   * 
+   * @param numProcs
+   * @param seed
+   */
+  public GreedyIngress(int numProcs, long seed) {
+    this(numProcs, new Random(seed), 0, VertexPresenceCache.Eviction.CLOCK);
+  }
+
+  /**
+   * Creates a greedy ingress with a seeded generator and a bounded presence
+   * cache.
+   * 
+   * @param numProcs
+   * @param seed
+   * @param cacheSize
+   * @param eviction
+   */
+  public GreedyIngress(int numProcs, long seed, int cacheSize,
+      VertexPresenceCache.Eviction eviction) {
+    this(numProcs, new Random(seed), cacheSize, eviction);
+  }
+
+  private GreedyIngress(int numProcs, Random random, int cacheSize,
+      VertexPresenceCache.Eviction eviction) {
     this.numProcs = numProcs;
-    vertexPresence = new HashMap<VidType, BitSet>();
-    procLoad = new ArrayList<Integer>(Collections.nCopies(numProcs, 0));
+    this.random = random;
+    numWords = (numProcs + 63) >>> 6;
+    vertexPresence = new VertexPresenceCache<VidType>(numProcs, cacheSize,
+        eviction);
+    procLoad = new PartitionLoads(numProcs);
+    scores = new double[numProcs];
+    bestProcs = new short[numProcs];
     useHash = true;
   }
 
   @Override
   public short computePid(VidType source, VidType target) {
-    short pid = getPid(source, target);
-    setVertexPresence(source, pid);
-    setVertexPresence(target, pid);
+    int sourceSlot = vertexPresence.lookup(source);
+    int targetSlot = vertexPresence.lookup(target);
+    short pid = getPid(source, sourceSlot, target, targetSlot);
+    vertexPresence.record(source, sourceSlot, target, targetSlot, pid);
+    if (localSketch != null)
+      localSketch.record(source, target, pid);
     return pid;
   }
 
@@ -53,23 +129,61 @@ public class GreedyIngress<VidType> implements Ingress<VidType> {
     return numProcs;
   }
 
+  @Override
+  public void setDegrees(DegreeTable degrees) {
+    // The placement does not depend on the degrees.
+  }
+
+  /**
+   * @return the table tracking the partitions of each vertex.
+   */
+  public VertexPresenceCache<VidType> presenceCache() {
+    return vertexPresence;
+  }
+
   /**
-   * Update the tracking table by adding the new assignment of pid to vid.
+   * Enables the coordinated mode.
    * 
-   * @param vid
-   * @param pid
+   * @param numBuckets
+   *          number of vertex buckets of the sketches.
    */
-  private void setVertexPresence(VidType vid, short pid) {
-    if (vertexPresence.containsKey(vid)) {
-      BitSet bitset = vertexPresence.get(vid);
-      if (!bitset.get(pid)) {
-        bitset.set(pid);
-      }
-    } else {
-      BitSet bitset = new BitSet(numProcs);
-      bitset.set(pid);
-      vertexPresence.put(vid, bitset);
-    }
+  public void coordinate(int numBuckets) {
+    localSketch = new PresenceSketch(numProcs, numBuckets);
+    remoteSketch = new PresenceSketch(numProcs, numBuckets);
+  }
+
+  /**
+   * @return the sketch of the assignments made by this ingress, or null if it
+   *         is not coordinated.
+   */
+  public PresenceSketch localSketch() {
+    return localSketch;
+  }
+
+  /**
+   * @return the merged sketch of the other mappers, or null if the ingress is
+   *         not coordinated.
+   */
+  public PresenceSketch remoteSketch() {
+    return remoteSketch;
+  }
+
+  /**
+   * Replaces the merged sketch of the other mappers.
+   * 
+   * @param remote
+   *          a sketch of the same shape as {@link #localSketch()}.
+   */
+  public void setRemoteSketch(PresenceSketch remote) {
+    if (localSketch == null)
+      throw new IllegalStateException("The ingress is not coordinated.");
+    if (remote.numProcs() != numProcs
+        || remote.numBuckets() != localSketch.numBuckets())
+      throw new IllegalArgumentException("The remote sketch has "
+          + remote.numBuckets() + " buckets, expected "
+          + localSketch.numBuckets());
+    remoteSketch = remote;
+    procLoad.setBase(remote);
   }
 
   /**
@@ -78,41 +192,60 @@ public class GreedyIngress<VidType> implements Ingress<VidType> {
    * the assignment that keeps the best load balance among all partitions.
    * 
    * @param source
+   * @param sourceSlot
+   *          presence slot of the source, or -1 if unseen.
    * @param target
+   * @param targetSlot
+   *          presence slot of the target, or -1 if unseen.
    * @return
    */
-  private short getPid(VidType source, VidType target) {
+  private short getPid(VidType source, int sourceSlot, VidType target,
+      int targetSlot) {
     double epsilon = this.threshold;
-    ArrayList<Double> scores = new ArrayList<Double>(Collections.nCopies(
-        numProcs, 0.0));
-    int minEdges = java.util.Collections.min(procLoad);
-    int maxEdges = java.util.Collections.max(procLoad);
-    BitSet sourceTable = (vertexPresence.containsKey(source)) ? vertexPresence
-        .get(source) : new BitSet(numProcs);
-    BitSet targetTable = (vertexPresence.containsKey(target)) ? vertexPresence
-        .get(target) : new BitSet(numProcs);
+    int minEdges = procLoad.min();
+    int maxEdges = procLoad.max();
+    /* A negative hash never matches a partition. */
+    int sourceHash = useHash ? source.hashCode() % numProcs : -1;
+    int targetHash = useHash ? target.hashCode() % numProcs : -1;
+    int sourceBucket = remoteSketch == null ? -1 : remoteSketch.bucket(source);
+    int targetBucket = remoteSketch == null ? -1 : remoteSketch.bucket(target);
 
-    for (int j = 0; j < numProcs; j++) {
-      double bal = (double) (maxEdges - procLoad.get(j))
-          / (maxEdges - minEdges + epsilon);
-      int sourceScore = (sourceTable.get(j) || (useHash && source.hashCode()
-          % numProcs == j)) ? 1 : 0;
-      int targetScore = (targetTable.get(j) || (useHash && target.hashCode()
-          % numProcs == j)) ? 1 : 0;
-      scores.set(j, bal + sourceScore + targetScore);
+    double maxScore = Double.NEGATIVE_INFINITY;
+    for (int w = 0; w < numWords; ++w) {
+      int base = w << 6;
+      long sourceWord = sourceSlot < 0 ? 0 : vertexPresence.word(sourceSlot, w);
+      long targetWord = targetSlot < 0 ? 0 : vertexPresence.word(targetSlot, w);
+      if (remoteSketch != null) {
+        sourceWord |= remoteSketch.word(sourceBucket, w);
+        targetWord |= remoteSketch.word(targetBucket, w);
+      }
+      if (sourceHash >= base && sourceHash < base + 64)
+        sourceWord |= 1L << sourceHash;
+      if (targetHash >= base && targetHash < base + 64)
+        targetWord |= 1L << targetHash;
+      int n = Math.min(64, numProcs - base);
+      for (int b = 0; b < n; ++b) {
+        int j = base + b;
+        double bal = (double) (maxEdges - procLoad.get(j))
+            / (maxEdges - minEdges + epsilon);
+        int sourceScore = (int) (sourceWord >>> b) & 1;
+        int targetScore = (int) (targetWord >>> b) & 1;
+        double score = bal + sourceScore + targetScore;
+        scores[j] = score;
+        if (score > maxScore)
+          maxScore = score;
+      }
     }
 
-    double maxScore = java.util.Collections.max(scores);
-    ArrayList<Short> bestProcs = new ArrayList<Short>();
+    int numBest = 0;
     for (int j = 0; j < numProcs; j++) {
-      if (Math.abs(scores.get(j) - maxScore) < 1e-5) {
-        bestProcs.add((short) j);
+      if (Math.abs(scores[j] - maxScore) < 1e-5) {
+        bestProcs[numBest++] = (short) j;
       }
     }
 
-    Random generator = new Random();
-    short pid = bestProcs.get(generator.nextInt(bestProcs.size()));
-    procLoad.set(pid, procLoad.get(pid) + 1);
+    short pid = bestProcs[numBest == 1 ? 0 : random.nextInt(numBest)];
+    procLoad.add(pid);
     return pid;
   }
 
@@ -124,6 +257,18 @@ public class GreedyIngress<VidType> implements Ingress<VidType> {
   private double threshold = 0.01;
   /** An optimization that pre-assign first seen vertex with a hash function. */
   private boolean useHash;
-  private HashMap<VidType, BitSet> vertexPresence;
-  private ArrayList<Integer> procLoad;
+  /** Number of longs in a presence bitset. */
+  private int numWords;
+  private VertexPresenceCache<VidType> vertexPresence;
+  private PartitionLoads procLoad;
+  /** Reusable score of each partition. */
+  private double[] scores;
+  /** Reusable list of the partitions with the best score. */
+  private short[] bestProcs;
+  /** Generator used to break ties. */
+  private Random random;
+  /** Assignments of this ingress, in the coordinated mode. */
+  private PresenceSketch localSketch;
+  /** Assignments of the other mappers, in the coordinated mode. */
+  private PresenceSketch remoteSketch;
 }
@@ -0,0 +1,190 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.strategy;
+
+import java.util.Random;
+
+/**
+ * High-Degree (are) Replicated First streaming vertex cut (Petroni et al.,
+ * CIKM 2015). Like {@link GreedyIngress}, an edge goes to a partition that
+ * already holds its endpoints, but among the endpoints the one with the higher
+ * partial degree is preferred for replication: on power-law graphs, cutting
+ * the few hubs spares the many low degree vertices from being mirrored.
+ * <p>
+ * For an edge (u, v) with partial degrees d(u) and d(v), counting this edge,
+ * let t(u) = d(u) / (d(u) + d(v)). The score of partition p is
+ * {@code g(u, p) + g(v, p) + lambda * (maxLoad - load(p)) / (1 + maxLoad - minLoad)}
+ * where g(x, p) = 1 + (1 - t(x)) if x is present on p, else 0. The edge goes
+ * to the partition with the best score, ties broken at random. A larger
+ * {@code lambda} favors balance over replication.
+ * </p>
+ * The partial degrees and presence are kept in a
+ * {@link VertexPresenceCache}, which may be bounded as for
+ * {@code GreedyIngress}. Given a {@link DegreeTable}, the global degrees
+ * replace the partial degrees of the vertices in the table, so hubs are
+ * recognized from their first edge.
+ * 
+ * @param <VidType>
+ */
+public class HdrfIngress<VidType> implements Ingress<VidType> {
+  /** Weight of the balance term; 1 by default. */
+  public static final String LAMBDA_KEY = "graphbuilder.ingress.hdrf.lambda";
+  public static final double DEFAULT_LAMBDA = 1.0;
+
+  public HdrfIngress(int numProcs) {
+    this(numProcs, new Random(), DEFAULT_LAMBDA, 0,
+        VertexPresenceCache.Eviction.CLOCK);
+  }
+
+  /**
+   * @param numProcs
+   * @param lambda
+   *          weight of the balance term.
+   * @param cacheSize
+   *          maximum number of vertices tracked, or a non positive value for
+   *          no bound.
+   * @param eviction
+   */
+  public HdrfIngress(int numProcs, double lambda, int cacheSize,
+      VertexPresenceCache.Eviction eviction) {
+    this(numProcs, new Random(), lambda, cacheSize, eviction);
+  }
+
+  /**
+   * Creates an HDRF ingress whose ties are broken by a seeded generator, so
+   * that the assignment is reproducible.
+   * 
+   * @param numProcs
+   * @param seed
+   * @param lambda
+   * @param cacheSize
+   * @param eviction
+   */
+  public HdrfIngress(int numProcs, long seed, double lambda, int cacheSize,
+      VertexPresenceCache.Eviction eviction) {
+    this(numProcs, new Random(seed), lambda, cacheSize, eviction);
+  }
+
+  private HdrfIngress(int numProcs, Random random, double lambda,
+      int cacheSize, VertexPresenceCache.Eviction eviction) {
+    this.numProcs = numProcs;
+    this.random = random;
+    this.lambda = lambda;
+    numWords = (numProcs + 63) >>> 6;
+    vertexPresence = new VertexPresenceCache<VidType>(numProcs, cacheSize,
+        eviction);
+    procLoad = new PartitionLoads(numProcs);
+    scores = new double[numProcs];
+    bestProcs = new short[numProcs];
+  }
+
+  @Override
+  public short computePid(VidType source, VidType target) {
+    int sourceSlot = vertexPresence.lookup(source);
+    int targetSlot = vertexPresence.lookup(target);
+    int sourceDegree = degree(source, sourceSlot);
+    int targetDegree = degree(target, targetSlot);
+    double sourceTheta = (double) sourceDegree / (sourceDegree + targetDegree);
+    double sourceRep = 1 + (1 - sourceTheta);
+    double targetRep = 1 + sourceTheta;
+
+    int minEdges = procLoad.min();
+    int maxEdges = procLoad.max();
+    double maxScore = Double.NEGATIVE_INFINITY;
+    for (int w = 0; w < numWords; ++w) {
+      int base = w << 6;
+      long sourceWord = sourceSlot < 0 ? 0 : vertexPresence.word(sourceSlot, w);
+      long targetWord = targetSlot < 0 ? 0 : vertexPresence.word(targetSlot, w);
+      int n = Math.min(64, numProcs - base);
+      for (int b = 0; b < n; ++b) {
+        int j = base + b;
+        double score = lambda * (maxEdges - procLoad.get(j))
+            / (EPSILON + maxEdges - minEdges);
+        if (((sourceWord >>> b) & 1) != 0)
+          score += sourceRep;
+        if (((targetWord >>> b) & 1) != 0)
+          score += targetRep;
+        scores[j] = score;
+        if (score > maxScore)
+          maxScore = score;
+      }
+    }
+
+    int numBest = 0;
+    for (int j = 0; j < numProcs; j++) {
+      if (Math.abs(scores[j] - maxScore) < 1e-5)
+        bestProcs[numBest++] = (short) j;
+    }
+    short pid = bestProcs[numBest == 1 ? 0 : random.nextInt(numBest)];
+    procLoad.add(pid);
+    vertexPresence.record(source, sourceSlot, target, targetSlot, pid);
+    return pid;
+  }
+
+  @Override
+  public int numProcs() {
+    return numProcs;
+  }
+
+  @Override
+  public void setDegrees(DegreeTable degrees) {
+    this.degrees = degrees;
+  }
+
+  /**
+   * @return the table tracking the partitions and partial degree of each
+   *         vertex.
+   */
+  public VertexPresenceCache<VidType> presenceCache() {
+    return vertexPresence;
+  }
+
+  /**
+   * @param vid
+   * @param slot
+   *          presence slot of the vertex, or -1 if unseen.
+   * @return the global degree of the vertex if known, else its partial degree.
+   */
+  private int degree(VidType vid, int slot) {
+    if (degrees != null) {
+      int d = degrees.degree(vid);
+      if (d > 0)
+        return d;
+    }
+    return slot < 0 ? 1 : vertexPresence.degree(slot);
+  }
+
+  /** Keeps the balance term finite when all loads are equal. */
+  private static final double EPSILON = 1.0;
+
+  private int numProcs;
+  private double lambda;
+  /** Number of longs in a presence bitset. */
+  private int numWords;
+  private VertexPresenceCache<VidType> vertexPresence;
+  private PartitionLoads procLoad;
+  /** Reusable score of each partition. */
+  private double[] scores;
+  /** Reusable list of the partitions with the best score. */
+  private short[] bestProcs;
+  /** Generator used to break ties. */
+  private Random random;
+  /** Global degrees, or null to use the partial degrees. */
+  private DegreeTable degrees;
+}
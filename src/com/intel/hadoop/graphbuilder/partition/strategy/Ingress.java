@@ -36,4 +36,12 @@ public interface Ingress<VidType> {
    * @return number of total partitions.
    */
   public int numProcs();
+
+  /**
+   * Provides the global degree of the vertices, counted by a pre-pass over the
+   * input. Strategies that do not use degrees ignore it.
+   * 
+   * @param degrees
+   */
+  public void setDegrees(DegreeTable degrees);
 }
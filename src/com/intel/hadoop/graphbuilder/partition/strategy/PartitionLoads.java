@@ -0,0 +1,103 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.strategy;
+
+/**
+ * Number of edges assigned to each partition, with the minimum and maximum
+ * load maintained incrementally. Since loads only grow by one, the loads are
+ * only rescanned when the last partition with the minimum load grows, which
+ * happens at most once per {@code numProcs} edges.
+ * <p>
+ * The loads may include a base, such as the edges assigned by other mappers,
+ * which is replaced as a whole by {@link #setBase}.
+ * </p>
+ */
+class PartitionLoads {
+  PartitionLoads(int numProcs) {
+    load = new int[numProcs];
+    base = new long[numProcs];
+    numAtMin = numProcs;
+  }
+
+  int get(int pid) {
+    return load[pid];
+  }
+
+  int min() {
+    return min;
+  }
+
+  int max() {
+    return max;
+  }
+
+  /**
+   * Increments the load of a partition.
+   * 
+   * @param pid
+   */
+  void add(int pid) {
+    int l = ++load[pid];
+    if (l > max)
+      max = l;
+    if (l - 1 == min && --numAtMin == 0) {
+      min = l;
+      for (int j = 0; j < load.length; j++) {
+        if (load[j] == min)
+          numAtMin++;
+      }
+    }
+  }
+
+  /**
+   * Replaces the base of the loads and rescans the minimum and maximum.
+   * 
+   * @param sketch
+   *          the sketch whose loads become the base.
+   */
+  void setBase(PresenceSketch sketch) {
+    for (int j = 0; j < load.length; j++) {
+      long b = sketch.load(j);
+      load[j] += (int) (b - base[j]);
+      base[j] = b;
+    }
+    min = Integer.MAX_VALUE;
+    max = Integer.MIN_VALUE;
+    numAtMin = 0;
+    for (int j = 0; j < load.length; j++) {
+      int l = load[j];
+      if (l > max)
+        max = l;
+      if (l < min) {
+        min = l;
+        numAtMin = 1;
+      } else if (l == min) {
+        numAtMin++;
+      }
+    }
+  }
+
+  private int[] load;
+  /** The part of each load that is not assigned locally. */
+  private long[] base;
+  private int min;
+  private int max;
+  /** Number of partitions whose load is {@code min}. */
+  private int numAtMin;
+}
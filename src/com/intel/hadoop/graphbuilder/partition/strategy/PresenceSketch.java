@@ -0,0 +1,240 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.strategy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.intel.hadoop.graphbuilder.util.HashUtil;
+
+/**
+ * A compact summary of the placement decisions of a mapper, exchanged between
+ * mappers in the coordinated greedy ingress. Vertices are hashed into a fixed
+ * number of buckets, each holding the bitset of the partitions that any vertex
+ * of the bucket was placed in, so a bucket may report a partition that a
+ * vertex is not in but never misses one. The sketch also carries the number of
+ * edges assigned to each partition. Sketches are merged by or-ing the bitsets
+ * and adding the loads.
+ * <p>
+ * A sketch tracks the buckets changed by {@link #record} since the last
+ * {@link #writeDelta}, so that it can be published as a series of sparse
+ * deltas, each carrying the changed buckets and the current loads.
+ * </p>
+ */
+public class PresenceSketch implements Writable {
+  /** Creates an empty sketch to be filled by {@link #readFields}. */
+  public PresenceSketch() {
+    this(1, 1);
+  }
+
+  /**
+   * @param numProcs
+   * @param numBuckets
+   *          number of vertex buckets; the sketch takes
+   *          {@code numBuckets * ceil(numProcs / 64)} longs.
+   */
+  public PresenceSketch(int numProcs, int numBuckets) {
+    init(numProcs, numBuckets);
+  }
+
+  public int numProcs() {
+    return numProcs;
+  }
+
+  public int numBuckets() {
+    return numBuckets;
+  }
+
+  /**
+   * @param vid
+   * @return the bucket of a vertex.
+   */
+  public int bucket(Object vid) {
+    return (HashUtil.mix(vid.hashCode()) & Integer.MAX_VALUE) % numBuckets;
+  }
+
+  /**
+   * @param bucket
+   * @param w
+   * @return the w-th 64 partitions of the presence bitset of a bucket.
+   */
+  public long word(int bucket, int w) {
+    return words[bucket * numWords + w];
+  }
+
+  /**
+   * @param pid
+   * @return the number of edges assigned to the partition.
+   */
+  public long load(int pid) {
+    return loads[pid];
+  }
+
+  /**
+   * Records the assignment of an edge to a partition.
+   * 
+   * @param source
+   * @param target
+   * @param pid
+   */
+  public void record(Object source, Object target, int pid) {
+    long bit = 1L << pid;
+    int w = pid >>> 6;
+    int sourceBucket = bucket(source);
+    int targetBucket = bucket(target);
+    words[sourceBucket * numWords + w] |= bit;
+    words[targetBucket * numWords + w] |= bit;
+    changed.set(sourceBucket);
+    changed.set(targetBucket);
+    loads[pid]++;
+  }
+
+  /**
+   * Adds the placements of another sketch of the same shape.
+   * 
+   * @param other
+   */
+  public void merge(PresenceSketch other) {
+    if (other.numProcs != numProcs || other.numBuckets != numBuckets)
+      throw new IllegalArgumentException("Cannot merge a sketch of "
+          + other.numProcs + " partitions and " + other.numBuckets
+          + " buckets into one of " + numProcs + " partitions and "
+          + numBuckets + " buckets.");
+    for (int i = 0; i < words.length; i++)
+      words[i] |= other.words[i];
+    for (int i = 0; i < loads.length; i++)
+      loads[i] += other.loads[i];
+  }
+
+  public void clear() {
+    Arrays.fill(words, 0);
+    Arrays.fill(loads, 0);
+    changed.clear();
+  }
+
+  /**
+   * Replaces the loads of the partitions.
+   * 
+   * @param loads
+   *          the load of each partition.
+   */
+  public void setLoads(long[] loads) {
+    System.arraycopy(loads, 0, this.loads, 0, numProcs);
+  }
+
+  /**
+   * Writes the loads and the buckets changed since the last call, as varints
+   * with the buckets delta coded, and marks all buckets unchanged.
+   * 
+   * @param out
+   * @throws IOException
+   */
+  public void writeDelta(DataOutput out) throws IOException {
+    out.writeInt(numProcs);
+    out.writeInt(numBuckets);
+    for (int i = 0; i < loads.length; i++)
+      WritableUtils.writeVLong(out, loads[i]);
+    WritableUtils.writeVInt(out, changed.cardinality());
+    int prev = 0;
+    for (int b = changed.nextSetBit(0); b >= 0; b = changed.nextSetBit(b + 1)) {
+      WritableUtils.writeVInt(out, b - prev);
+      prev = b;
+      for (int w = 0; w < numWords; w++)
+        WritableUtils.writeVLong(out, words[b * numWords + w]);
+    }
+    changed.clear();
+  }
+
+  /**
+   * Ors the buckets of a delta written by {@link #writeDelta} into this sketch
+   * of the same shape. The loads of this sketch are unchanged.
+   * 
+   * @param in
+   * @param deltaLoads
+   *          receives the loads of the delta.
+   * @throws IOException
+   */
+  public void mergeDelta(DataInput in, long[] deltaLoads) throws IOException {
+    int p = in.readInt();
+    int b = in.readInt();
+    if (p != numProcs || b != numBuckets)
+      throw new IOException("Cannot merge a delta of " + p + " partitions and "
+          + b + " buckets into a sketch of " + numProcs + " partitions and "
+          + numBuckets + " buckets.");
+    for (int i = 0; i < numProcs; i++)
+      deltaLoads[i] = WritableUtils.readVLong(in);
+    int numChanged = WritableUtils.readVInt(in);
+    int bucket = 0;
+    for (int i = 0; i < numChanged; i++) {
+      bucket += WritableUtils.readVInt(in);
+      for (int w = 0; w < numWords; w++)
+        words[bucket * numWords + w] |= WritableUtils.readVLong(in);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    int p = in.readInt();
+    int b = in.readInt();
+    if (p != numProcs || b != numBuckets)
+      init(p, b);
+    for (int i = 0; i < loads.length; i++)
+      loads[i] = in.readLong();
+    for (int i = 0; i < words.length; i++)
+      words[i] = in.readLong();
+  }
+
+  /**
+   * Writes the whole sketch, uncompressed. See {@link #writeDelta} for the
+   * sparse form.
+   */
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(numProcs);
+    out.writeInt(numBuckets);
+    for (int i = 0; i < loads.length; i++)
+      out.writeLong(loads[i]);
+    for (int i = 0; i < words.length; i++)
+      out.writeLong(words[i]);
+  }
+
+  private void init(int numProcs, int numBuckets) {
+    this.numProcs = numProcs;
+    this.numBuckets = numBuckets;
+    numWords = (numProcs + 63) >>> 6;
+    words = new long[numBuckets * numWords];
+    loads = new long[numProcs];
+    changed = new BitSet(numBuckets);
+  }
+
+  private int numProcs;
+  private int numBuckets;
+  /** Number of longs in the bitset of a bucket. */
+  private int numWords;
+  private long[] words;
+  private long[] loads;
+  /** Buckets changed since the last delta. */
+  private BitSet changed;
+}
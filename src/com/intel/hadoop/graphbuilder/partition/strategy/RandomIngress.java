@@ -49,5 +49,10 @@ public class RandomIngress<VidType> implements Ingress<VidType> {
     return numProcs;
   }
 
+  @Override
+  public void setDegrees(DegreeTable degrees) {
+    // The placement does not depend on the degrees.
+  }
+
   private int numProcs;
 }
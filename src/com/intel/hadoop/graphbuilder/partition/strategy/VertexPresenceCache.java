@@ -0,0 +1,377 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.partition.strategy;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import com.intel.hadoop.graphbuilder.types.IntType;
+import com.intel.hadoop.graphbuilder.types.LongType;
+import com.intel.hadoop.graphbuilder.util.LongIntHashMap;
+
+/**
+ * The table of partitions each vertex has been assigned to, used by
+ * {@link GreedyIngress}. Each vertex owns a slot, and the bitsets of all slots
+ * are packed in a single {@code long[]} of {@code ceil(numProcs / 64)} words
+ * per slot. Integral vids ({@code Integer}, {@code Long}, {@code IntType} and
+ * {@code LongType}) are indexed by a primitive {@code LongIntHashMap}; other
+ * vids fall back to a {@code HashMap}.
+ * <p>
+ * If the cache is bounded, inserting into a full cache evicts a vertex chosen
+ * by the {@link Eviction} policy. An evicted vertex is seen as new the next
+ * time, which only makes the placement less greedy. Lookups are counted, so
+ * the hit rate tells how much placement quality was given up.
+ * </p>
+ * 
+ * @param <VidType>
+ */
+public class VertexPresenceCache<VidType> {
+  /** Eviction policies of a bounded cache. */
+  public enum Eviction {
+    /** Evicts the least recently used vertex. */
+    LRU,
+    /** Evicts the first vertex not used since the last sweep of the clock. */
+    CLOCK,
+    /**
+     * Like {@code CLOCK}, but a vertex survives as many sweeps as the bit
+     * length of the number of edges it was seen on, which keeps hubs
+     * resident.
+     */
+    DEGREE
+  }
+
+  /**
+   * @param numProcs
+   *          number of partitions.
+   * @param maxSize
+   *          maximum number of vertices, or a non positive value for an
+   *          unbounded cache.
+   * @param eviction
+   *          the eviction policy of a bounded cache.
+   */
+  public VertexPresenceCache(int numProcs, int maxSize, Eviction eviction) {
+    this.numWords = (numProcs + 63) >>> 6;
+    this.maxSize = maxSize > 0 ? maxSize : Integer.MAX_VALUE;
+    this.eviction = eviction;
+    head = tail = -1;
+    allocate(Math.min(this.maxSize, INITIAL_CAPACITY));
+  }
+
+  /**
+   * Finds the slot of a vertex, counting a hit or a miss. A hit counts as a
+   * use of the vertex for the eviction policy.
+   * 
+   * @param vid
+   * @return the slot of the vertex, or -1 if it is absent.
+   */
+  public int lookup(VidType vid) {
+    int slot = indexOf(vid);
+    if (slot < 0) {
+      misses++;
+    } else {
+      hits++;
+      touch(slot);
+    }
+    return slot;
+  }
+
+  /**
+   * Finds the slot of a vertex, without counting a lookup.
+   * 
+   * @param vid
+   * @return the slot of the vertex, or -1 if it is absent.
+   */
+  public int indexOf(VidType vid) {
+    if (primitiveIndex != null)
+      return primitiveIndex.get(toLong(vid));
+    if (objectIndex != null) {
+      Integer slot = objectIndex.get(vid);
+      return slot == null ? -1 : slot;
+    }
+    return -1;
+  }
+
+  /**
+   * Inserts an absent vertex with an empty bitset, evicting a vertex if the
+   * cache is full.
+   * 
+   * @param vid
+   * @return the slot of the vertex.
+   */
+  public int insert(VidType vid) {
+    if (primitiveIndex == null && objectIndex == null) {
+      if (vid instanceof Integer || vid instanceof Long
+          || vid instanceof IntType || vid instanceof LongType) {
+        primitiveIndex = new LongIntHashMap(capacity);
+        primitiveKeys = new long[capacity];
+      } else {
+        objectIndex = new HashMap<Object, Integer>(capacity);
+        objectKeys = new Object[capacity];
+      }
+    }
+
+    int slot;
+    if (size == maxSize) {
+      slot = evict();
+    } else {
+      if (size == capacity)
+        allocate((int) Math.min(maxSize, 2L * capacity));
+      slot = size++;
+    }
+
+    Arrays.fill(words, slot * numWords, (slot + 1) * numWords, 0L);
+    if (primitiveIndex != null) {
+      long key = toLong(vid);
+      primitiveKeys[slot] = key;
+      primitiveIndex.putIfAbsent(key, slot);
+    } else {
+      objectKeys[slot] = vid;
+      objectIndex.put(vid, slot);
+    }
+    degree[slot] = 1;
+    if (eviction == Eviction.LRU)
+      linkFirst(slot);
+    else
+      credit[slot] = 1;
+    return slot;
+  }
+
+  /**
+   * Records the assignment of an edge to a partition, given the slots the
+   * endpoints were looked up at. The resident endpoints are updated before the
+   * absent ones are inserted, since an insert may evict.
+   * 
+   * @param source
+   * @param sourceSlot
+   *          slot of the source, or -1 if it was absent.
+   * @param target
+   * @param targetSlot
+   *          slot of the target, or -1 if it was absent.
+   * @param pid
+   */
+  public void record(VidType source, int sourceSlot, VidType target,
+      int targetSlot, int pid) {
+    if (sourceSlot >= 0)
+      set(sourceSlot, pid);
+    if (targetSlot >= 0)
+      set(targetSlot, pid);
+    if (sourceSlot < 0)
+      set(insert(source), pid);
+    if (targetSlot < 0) {
+      /* The target is already resident for a self loop. */
+      int slot = indexOf(target);
+      set(slot < 0 ? insert(target) : slot, pid);
+    }
+  }
+
+  /**
+   * @param slot
+   * @return the number of edges the vertex in the slot was seen on since it was
+   *         inserted, counting one per hit of {@link #lookup(Object)}.
+   */
+  public int degree(int slot) {
+    return degree[slot];
+  }
+
+  /**
+   * @param slot
+   * @param w
+   * @return the w-th word of the bitset in the slot.
+   */
+  public long word(int slot, int w) {
+    return words[slot * numWords + w];
+  }
+
+  /**
+   * @param slot
+   * @param pid
+   * @return whether the partition is set in the slot.
+   */
+  public boolean get(int slot, int pid) {
+    return (words[slot * numWords + (pid >>> 6)] & (1L << pid)) != 0;
+  }
+
+  /**
+   * Sets a partition in the bitset of a slot.
+   * 
+   * @param slot
+   * @param pid
+   */
+  public void set(int slot, int pid) {
+    words[slot * numWords + (pid >>> 6)] |= 1L << pid;
+  }
+
+  /**
+   * @return the number of resident vertices.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the maximum number of resident vertices.
+   */
+  public int maxSize() {
+    return maxSize;
+  }
+
+  public long hits() {
+    return hits;
+  }
+
+  public long misses() {
+    return misses;
+  }
+
+  public long evictions() {
+    return evictions;
+  }
+
+  /**
+   * @return hits / lookups, or 0 before the first lookup.
+   */
+  public double hitRate() {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  private void touch(int slot) {
+    if (degree[slot] < Integer.MAX_VALUE)
+      degree[slot]++;
+    switch (eviction) {
+    case LRU:
+      if (slot != head) {
+        unlink(slot);
+        linkFirst(slot);
+      }
+      break;
+    case CLOCK:
+      credit[slot] = 1;
+      break;
+    case DEGREE:
+      credit[slot] = (byte) (32 - Integer.numberOfLeadingZeros(degree[slot]));
+      break;
+    }
+  }
+
+  /**
+   * Removes the victim of the eviction policy from the index.
+   * 
+   * @return the freed slot.
+   */
+  private int evict() {
+    int slot;
+    if (eviction == Eviction.LRU) {
+      slot = tail;
+      unlink(slot);
+    } else {
+      while (credit[hand] > 0) {
+        credit[hand]--;
+        hand = (hand + 1) % size;
+      }
+      slot = hand;
+      hand = (hand + 1) % size;
+    }
+    if (primitiveIndex != null) {
+      primitiveIndex.remove(primitiveKeys[slot]);
+    } else {
+      objectIndex.remove(objectKeys[slot]);
+      objectKeys[slot] = null;
+    }
+    evictions++;
+    return slot;
+  }
+
+  private void linkFirst(int slot) {
+    prev[slot] = -1;
+    next[slot] = head;
+    if (head >= 0)
+      prev[head] = slot;
+    head = slot;
+    if (tail < 0)
+      tail = slot;
+  }
+
+  private void unlink(int slot) {
+    if (prev[slot] >= 0)
+      next[prev[slot]] = next[slot];
+    else
+      head = next[slot];
+    if (next[slot] >= 0)
+      prev[next[slot]] = prev[slot];
+    else
+      tail = prev[slot];
+  }
+
+  /** Grows the slot arrays, keeping the existing slots. */
+  private void allocate(int newCapacity) {
+    capacity = newCapacity;
+    words = words == null ? new long[capacity * numWords] : Arrays.copyOf(
+        words, capacity * numWords);
+    /* The keys are allocated by the first insert, which knows the vid type. */
+    if (primitiveKeys != null)
+      primitiveKeys = Arrays.copyOf(primitiveKeys, capacity);
+    if (objectKeys != null)
+      objectKeys = Arrays.copyOf(objectKeys, capacity);
+    degree = degree == null ? new int[capacity] : Arrays.copyOf(degree,
+        capacity);
+    if (eviction == Eviction.LRU) {
+      prev = prev == null ? new int[capacity] : Arrays.copyOf(prev, capacity);
+      next = next == null ? new int[capacity] : Arrays.copyOf(next, capacity);
+    } else {
+      credit = credit == null ? new byte[capacity] : Arrays.copyOf(credit,
+          capacity);
+    }
+  }
+
+  private static long toLong(Object vid) {
+    if (vid instanceof IntType)
+      return ((IntType) vid).get();
+    if (vid instanceof LongType)
+      return ((LongType) vid).get();
+    return ((Number) vid).longValue();
+  }
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private int numWords;
+  private int maxSize;
+  private Eviction eviction;
+  private int size;
+  private int capacity;
+  /** Packed bitsets, {@code numWords} per slot. */
+  private long[] words;
+  /** Key of each slot, for integral vids. */
+  private long[] primitiveKeys;
+  /** Key of each slot, for other vids. */
+  private Object[] objectKeys;
+  private LongIntHashMap primitiveIndex;
+  private HashMap<Object, Integer> objectIndex;
+  /** LRU list, from the most recently used slot at {@code head}. */
+  private int[] prev, next;
+  private int head, tail;
+  /** Number of edges each resident vertex was seen on. */
+  private int[] degree;
+  /** Number of clock sweeps each slot survives. */
+  private byte[] credit;
+  private int hand;
+  private long hits;
+  private long misses;
+  private long evictions;
+}
@@ -35,6 +35,22 @@ public class HashUtil {
     return combine(combine(0, o1), o2);
   }
 
+  /**
+   * Scrambles the bits of a hash code, so that consecutive hash codes, such as
+   * those of integer ids, spread over all buckets.
+   * 
+   * @param h
+   * @return the mixed hash, the finalizer of MurmurHash3.
+   */
+  public static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
   private static int combine(long seed, Object val) {
     return (int) (val.hashCode() + 0x9e3779b9 + (seed << 6) + (seed >> 2));
   }
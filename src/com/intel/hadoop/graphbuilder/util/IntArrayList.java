@@ -0,0 +1,209 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * A growable list of primitive ints backed by a single {@code int[]}. The
+ * primitive accessors {@code getInt}, {@code setInt} and {@code add(int)} do
+ * not box, while the {@code List<Integer>} view is kept so that existing
+ * callers (e.g. the JSON formatters) can consume it unchanged.
+ */
+public class IntArrayList extends AbstractList<Integer> implements
+    RandomAccess {
+
+  /** Creates an empty list. */
+  public IntArrayList() {
+    this(10);
+  }
+
+  /**
+   * Creates an empty list with the given initial capacity.
+   *
+   * @param capacity
+   */
+  public IntArrayList(int capacity) {
+    data = new int[Math.max(capacity, 1)];
+    size = 0;
+  }
+
+  /**
+   * Creates a list of {@code n} copies of {@code value}.
+   *
+   * @param n
+   * @param value
+   */
+  public IntArrayList(int n, int value) {
+    data = new int[Math.max(n, 1)];
+    if (value != 0)
+      Arrays.fill(data, 0, n, value);
+    size = n;
+  }
+
+  /**
+   * Wraps the first {@code size} elements of an existing array without
+   * copying.
+   *
+   * @param data
+   * @param size
+   */
+  public IntArrayList(int[] data, int size) {
+    this.data = data;
+    this.size = size;
+  }
+
+  /**
+   * @param i
+   * @return the i-th element without boxing.
+   */
+  public final int getInt(int i) {
+    if (i >= size)
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+    return data[i];
+  }
+
+  /**
+   * Replaces the i-th element without boxing.
+   *
+   * @param i
+   * @param value
+   * @return the old value.
+   */
+  public final int setInt(int i, int value) {
+    if (i >= size)
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+    int old = data[i];
+    data[i] = value;
+    return old;
+  }
+
+  /**
+   * Appends an element without boxing.
+   *
+   * @param value
+   */
+  public final void add(int value) {
+    if (size == data.length)
+      grow(size + 1);
+    data[size++] = value;
+  }
+
+  /**
+   * Appends all elements of another {@code IntArrayList}.
+   *
+   * @param other
+   */
+  public boolean addAll(IntArrayList other) {
+    ensureCapacity(size + other.size);
+    System.arraycopy(other.data, 0, data, size, other.size);
+    size += other.size;
+    return other.size > 0;
+  }
+
+  /**
+   * Reserves the space for n elements.
+   *
+   * @param n
+   */
+  public void ensureCapacity(int n) {
+    if (n > data.length)
+      grow(n);
+  }
+
+  /**
+   * Shrinks the backing array to the current size.
+   */
+  public void trimToSize() {
+    if (data.length > size)
+      data = Arrays.copyOf(data, Math.max(size, 1));
+  }
+
+  /**
+   * @return the backing array. Only the first {@code size()} elements are
+   *         valid, and the array may be replaced by subsequent {@code add}
+   *         calls.
+   */
+  public final int[] elements() {
+    return data;
+  }
+
+  @Override
+  public final int size() {
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    size = 0;
+  }
+
+  @Override
+  public Integer get(int index) {
+    return getInt(index);
+  }
+
+  @Override
+  public Integer set(int index, Integer element) {
+    return setInt(index, element);
+  }
+
+  @Override
+  public void add(int index, Integer element) {
+    if (index > size || index < 0)
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+          + size);
+    if (size == data.length)
+      grow(size + 1);
+    System.arraycopy(data, index, data, index + 1, size - index);
+    data[index] = element;
+    size++;
+  }
+
+  @Override
+  public Integer remove(int index) {
+    int old = getInt(index);
+    System.arraycopy(data, index + 1, data, index, size - index - 1);
+    size--;
+    return old;
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends Integer> c) {
+    if (c instanceof IntArrayList)
+      return addAll((IntArrayList) c);
+    ensureCapacity(size + c.size());
+    for (Integer i : c)
+      data[size++] = i;
+    return !c.isEmpty();
+  }
+
+  private void grow(int minCapacity) {
+    int capacity = data.length + (data.length >> 1) + 1;
+    if (capacity < minCapacity)
+      capacity = minCapacity;
+    data = Arrays.copyOf(data, capacity);
+  }
+
+  private int[] data;
+  private int size;
+}
@@ -0,0 +1,218 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.util;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from primitive long keys to non-negative int
+ * values, using linear probing over two parallel arrays. Compared to a
+ * {@code HashMap<Long, Integer>}, there is no boxing and no entry object, so
+ * each slot costs 12 bytes.
+ * <p>
+ * The table is filled up to 7/8 of its slots, and its size is not restricted
+ * to powers of two: a key is mapped to its home slot by multiplying its hash
+ * with the number of slots. A map created for its final size thus takes 12 *
+ * 8 / 7, about 14 bytes per key; a growing map is enlarged by half each time
+ * it fills up, and takes between 14 and 21 bytes per key.
+ * </p>
+ */
+public class LongIntHashMap {
+  /** The value returned for a missing key. */
+  public static final int NO_VALUE = -1;
+
+  /** Creates an empty map. */
+  public LongIntHashMap() {
+    this(16);
+  }
+
+  /**
+   * Creates an empty map that holds {@code expectedSize} keys without
+   * rehashing.
+   * 
+   * @param expectedSize
+   */
+  public LongIntHashMap(int expectedSize) {
+    allocate(tableSize(expectedSize));
+  }
+
+  /**
+   * @param key
+   * @return the value of the key, or {@code NO_VALUE} if the key is absent.
+   */
+  public int get(long key) {
+    for (int i = slot(key); values[i] != NO_VALUE; i = next(i)) {
+      if (keys[i] == key)
+        return values[i];
+    }
+    return NO_VALUE;
+  }
+
+  /**
+   * @param key
+   * @return true if the map contains the key.
+   */
+  public boolean containsKey(long key) {
+    return get(key) != NO_VALUE;
+  }
+
+  /**
+   * Associates the value with the key if the key is absent, with a single
+   * probe sequence.
+   * 
+   * @param key
+   * @param value
+   *          a non-negative value.
+   * @return the existing value of the key, or {@code NO_VALUE} if the value
+   *         was inserted.
+   */
+  public int putIfAbsent(long key, int value) {
+    if (value < 0)
+      throw new IllegalArgumentException("Negative value: " + value);
+    int i = slot(key);
+    while (values[i] != NO_VALUE) {
+      if (keys[i] == key)
+        return values[i];
+      i = next(i);
+    }
+    keys[i] = key;
+    values[i] = value;
+    if (++size > threshold)
+      rehash(keys.length + (keys.length >>> 1));
+    return NO_VALUE;
+  }
+
+  /**
+   * Removes a key. The following entries of its probe sequence are shifted
+   * back, so no tombstone is left behind.
+   * 
+   * @param key
+   * @return the removed value, or {@code NO_VALUE} if the key was absent.
+   */
+  public int remove(long key) {
+    for (int i = slot(key); values[i] != NO_VALUE; i = next(i)) {
+      if (keys[i] == key) {
+        int old = values[i];
+        int hole = i;
+        for (int j = next(i); values[j] != NO_VALUE; j = next(j)) {
+          /* Move the entry if the hole lies between its home slot and j. */
+          if (distance(slot(keys[j]), j) >= distance(hole, j)) {
+            keys[hole] = keys[j];
+            values[hole] = values[j];
+            hole = j;
+          }
+        }
+        values[hole] = NO_VALUE;
+        --size;
+        return old;
+      }
+    }
+    return NO_VALUE;
+  }
+
+  /**
+   * @return the number of keys in the map.
+   */
+  public int size() {
+    return size;
+  }
+
+  /** Removes all keys, keeping the capacity. */
+  public void clear() {
+    Arrays.fill(values, NO_VALUE);
+    size = 0;
+  }
+
+  /**
+   * @return the number of slots. Together with {@link #keyAt(int)} and
+   *         {@link #valueAt(int)} this allows iterating the map without
+   *         allocation.
+   */
+  public int capacity() {
+    return keys.length;
+  }
+
+  /**
+   * @param slot
+   * @return the key stored in the slot, only valid if
+   *         {@code valueAt(slot) != NO_VALUE}.
+   */
+  public long keyAt(int slot) {
+    return keys[slot];
+  }
+
+  /**
+   * @param slot
+   * @return the value stored in the slot, or {@code NO_VALUE} for an empty
+   *         slot.
+   */
+  public int valueAt(int slot) {
+    return values[slot];
+  }
+
+  /** @return the home slot of the key, from the high bits of its hash. */
+  private int slot(long key) {
+    int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+    return (int) (((h & 0xFFFFFFFFL) * keys.length) >>> 32);
+  }
+
+  private int next(int i) {
+    return ++i == keys.length ? 0 : i;
+  }
+
+  /** @return the number of probes from slot i to slot j. */
+  private int distance(int i, int j) {
+    return j >= i ? j - i : j - i + keys.length;
+  }
+
+  private static int tableSize(int expectedSize) {
+    long n = (long) expectedSize * 8 / 7 + 1;
+    return (int) Math.max(MIN_CAPACITY, Math.min(MAX_CAPACITY, n));
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    Arrays.fill(values, NO_VALUE);
+    threshold = capacity - (capacity >>> 3);
+  }
+
+  private void rehash(int capacity) {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(Math.min(MAX_CAPACITY, capacity));
+    for (int j = 0; j < oldKeys.length; ++j) {
+      if (oldValues[j] == NO_VALUE)
+        continue;
+      int i = slot(oldKeys[j]);
+      while (values[i] != NO_VALUE)
+        i = next(i);
+      keys[i] = oldKeys[j];
+      values[i] = oldValues[j];
+    }
+  }
+
+  private static final int MIN_CAPACITY = 8;
+  private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+  private long[] keys;
+  private int[] values;
+  private int size;
+  private int threshold;
+}
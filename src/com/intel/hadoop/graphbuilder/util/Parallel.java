@@ -18,23 +18,42 @@
  */
 package com.intel.hadoop.graphbuilder.util;
 
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.log4j.Logger;
 
 /**
- * Parallel for equivalent implementation.
+ * Parallel for equivalent implementation on top of a shared
+ * {@code ForkJoinPool}. Index ranges are split recursively down to a grain
+ * size, and idle threads steal the remaining halves, so uneven per-element
+ * cost does not leave threads idle. An exception thrown by an operation is
+ * rethrown by {@code For} in the calling thread.
+ * <p>
+ * The pool is shared by all instances. Its size defaults to the number of
+ * cores, and can be set from the job configuration with
+ * {@link #configure(Configuration)}.
+ * </p>
  * 
  * @author Haijie Gu
  * 
  */
 public class Parallel {
+  private static final Logger LOG = Logger.getLogger(Parallel.class);
+
   private static final int NUM_CORES = Runtime.getRuntime()
       .availableProcessors();
-  private static final int NUM_PROCS = NUM_CORES;
+
+  /** Number of grains per thread when splitting a range adaptively. */
+  private static final int GRAINS_PER_THREAD = 8;
+
+  /** Configuration key overriding the number of threads. */
+  public static final String NUM_THREADS_KEY = "graphbuilder.parallel.threads";
+
+  /** Configuration key of the number of reduce slots per node. */
+  public static final String REDUCE_SLOTS_KEY = "mapred.tasktracker.reduce.tasks.maximum";
 
   /**
    * Funtion interface for the parfor operation.
@@ -47,47 +66,142 @@ public class Parallel {
     public void perform(T pParameter, int idx);
   }
 
+  /**
+   * Function interface for the parfor operation over an index range. It is
+   * called on disjoint sub ranges {@code [begin, end)}.
+   */
+  public static interface RangeOperation {
+    public void perform(int begin, int end);
+  }
+
+  /**
+   * Sizes the shared pool from the job configuration. The number of threads
+   * is {@value #NUM_THREADS_KEY} if set, otherwise the number of cores divided
+   * by the number of reduce slots per node, so that concurrent reducers on one
+   * node do not oversubscribe the cores.
+   * 
+   * @param conf
+   */
+  public static void configure(Configuration conf) {
+    int slots = Math.max(1, conf.getInt(REDUCE_SLOTS_KEY, 1));
+    int threads = conf.getInt(NUM_THREADS_KEY, Math.max(1, NUM_CORES / slots));
+    setNumThreads(threads);
+  }
+
+  /**
+   * Resizes the shared pool. The calls of {@code For} already running finish
+   * on the previous pool, which is not shut down: its daemon threads exit on
+   * their own once idle.
+   * 
+   * @param n
+   *          the number of threads.
+   */
+  public static synchronized void setNumThreads(int n) {
+    n = Math.max(1, n);
+    if (pool != null && pool.getParallelism() == n)
+      return;
+    LOG.info("Parallel pool size: " + n);
+    pool = new ForkJoinPool(n);
+  }
+
+  /**
+   * @return the number of threads of the shared pool.
+   */
+  public static int numThreads() {
+    return getPool().getParallelism();
+  }
+
+  private static synchronized ForkJoinPool getPool() {
+    if (pool == null)
+      pool = new ForkJoinPool(NUM_CORES);
+    return pool;
+  }
+
   public Parallel() {
-    forPool = Executors.newFixedThreadPool(NUM_PROCS);
   }
 
+  /**
+   * Performs the operation on each element of the list in parallel.
+   * 
+   * @param pElements
+   * @param pOperation
+   */
   public <T> void For(final List<T> pElements, final Operation<T> pOperation) {
-    ExecutorService executor = forPool;
-    List<Future<?>> futures = new LinkedList<Future<?>>();
-
-    final int batchsize = pElements.size() < NUM_PROCS ? 1 : 1 + ((pElements
-        .size() - 1) / NUM_PROCS);
-    for (int i = 0; i < NUM_PROCS; ++i) {
-      final int pid = i;
-      Future<?> future = executor.submit(new Runnable() {
-        @Override
-        public void run() {
-          final int start = batchsize * pid;
-          final int end = Math.min(batchsize * (pid + 1), pElements.size());
-          for (int idx = start; idx < end; ++idx)
-            pOperation.perform(pElements.get(idx), idx);
-        }
-      });
-      futures.add(future);
-    }
-
-    for (Future<?> f : futures) {
-      try {
-        f.get();
-      } catch (InterruptedException e) {
-      } catch (ExecutionException e) {
+    For(0, pElements.size(), new RangeOperation() {
+      @Override
+      public void perform(int begin, int end) {
+        for (int idx = begin; idx < end; ++idx)
+          pOperation.perform(pElements.get(idx), idx);
       }
+    });
+  }
+
+  /**
+   * Performs the operation over {@code [begin, end)} in parallel, splitting
+   * the range adaptively.
+   * 
+   * @param begin
+   * @param end
+   * @param op
+   */
+  public void For(int begin, int end, RangeOperation op) {
+    int grain = (end - begin) / (numThreads() * GRAINS_PER_THREAD);
+    For(begin, end, Math.max(1, grain), op);
+  }
+
+  /**
+   * Performs the operation over {@code [begin, end)} in parallel. Ranges are
+   * split in halves until they are no larger than {@code grain}.
+   * 
+   * @param begin
+   * @param end
+   * @param grain
+   *          the largest range passed to a single call of the operation.
+   * @param op
+   */
+  public void For(int begin, int end, int grain, RangeOperation op) {
+    if (end <= begin)
+      return;
+    ForkJoinPool p = getPool();
+    if (end - begin <= grain || p.getParallelism() == 1) {
+      op.perform(begin, end);
+      return;
     }
+    p.invoke(new RangeTask(begin, end, Math.max(1, grain), op));
   }
 
   /**
-   * Reap the threads.
+   * Kept for compatibility. The pool is shared and its threads are daemon
+   * threads, so there is nothing to reap.
    */
   public void close() {
-    forPool.shutdown();
-    while (!forPool.isTerminated()) {
+  }
+
+  /**
+   * Recursively splits a range in halves and forks the upper half.
+   */
+  private static class RangeTask extends RecursiveAction {
+    RangeTask(int begin, int end, int grain, RangeOperation op) {
+      this.begin = begin;
+      this.end = end;
+      this.grain = grain;
+      this.op = op;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - begin <= grain) {
+        op.perform(begin, end);
+        return;
+      }
+      int mid = begin + (end - begin) / 2;
+      invokeAll(new RangeTask(begin, mid, grain, op), new RangeTask(mid, end,
+          grain, op));
     }
+
+    private final int begin, end, grain;
+    private final RangeOperation op;
   }
 
-  private ExecutorService forPool;
+  private static ForkJoinPool pool;
 }
@@ -0,0 +1,170 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+import com.intel.hadoop.graphbuilder.types.IntType;
+import com.intel.hadoop.graphbuilder.types.LongType;
+
+/**
+ * Variable length encoding of integers on {@code DataOutput}: 7 bits per
+ * byte, least significant group first, with the high bit set on all but the
+ * last byte. Signed values are zigzag encoded first, so that small negative
+ * values are short too. Vids of {@code IntType} and {@code LongType} are
+ * written as signed varints, other vids with their {@code Writable} encoding.
+ */
+public class VarInt {
+  /**
+   * Writes a non negative int; a negative int takes 5 bytes.
+   * 
+   * @param out
+   * @param v
+   * @throws IOException
+   */
+  public static void writeUnsigned(DataOutput out, int v) throws IOException {
+    while ((v & ~0x7f) != 0) {
+      out.writeByte((v & 0x7f) | 0x80);
+      v >>>= 7;
+    }
+    out.writeByte(v);
+  }
+
+  /**
+   * @param v
+   * @return the number of bytes of the unsigned varint encoding of v.
+   */
+  public static int sizeOfUnsigned(int v) {
+    int n = 1;
+    while ((v & ~0x7f) != 0) {
+      v >>>= 7;
+      n++;
+    }
+    return n;
+  }
+
+  public static int readUnsigned(DataInput in) throws IOException {
+    int v = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      byte b = in.readByte();
+      v |= (b & 0x7f) << shift;
+      if (b >= 0)
+        return v;
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  public static void writeUnsignedLong(DataOutput out, long v)
+      throws IOException {
+    while ((v & ~0x7fL) != 0) {
+      out.writeByte((int) ((v & 0x7f) | 0x80));
+      v >>>= 7;
+    }
+    out.writeByte((int) v);
+  }
+
+  public static long readUnsignedLong(DataInput in) throws IOException {
+    long v = 0;
+    for (int shift = 0; shift < 70; shift += 7) {
+      byte b = in.readByte();
+      v |= (long) (b & 0x7f) << shift;
+      if (b >= 0)
+        return v;
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  public static void writeSigned(DataOutput out, int v) throws IOException {
+    writeUnsigned(out, (v << 1) ^ (v >> 31));
+  }
+
+  public static int readSigned(DataInput in) throws IOException {
+    int z = readUnsigned(in);
+    return (z >>> 1) ^ -(z & 1);
+  }
+
+  public static void writeSignedLong(DataOutput out, long v)
+      throws IOException {
+    writeUnsignedLong(out, (v << 1) ^ (v >> 63));
+  }
+
+  public static long readSignedLong(DataInput in) throws IOException {
+    long z = readUnsignedLong(in);
+    return (z >>> 1) ^ -(z & 1);
+  }
+
+  /** Maximum number of bytes of a long varint. */
+  public static final int MAX_LONG_BYTES = 10;
+
+  /**
+   * Encodes a signed long into an array, so that a batch of values can be
+   * written with a single call. Same encoding as {@link #writeSignedLong}.
+   * 
+   * @param buf
+   *          with at least {@code MAX_LONG_BYTES} bytes from pos.
+   * @param pos
+   * @param v
+   * @return the position after the encoded value.
+   */
+  public static int putSignedLong(byte[] buf, int pos, long v) {
+    long z = (v << 1) ^ (v >> 63);
+    while ((z & ~0x7fL) != 0) {
+      buf[pos++] = (byte) ((z & 0x7f) | 0x80);
+      z >>>= 7;
+    }
+    buf[pos++] = (byte) z;
+    return pos;
+  }
+
+  /**
+   * Writes a vid, as a signed varint if it is integral.
+   * 
+   * @param out
+   * @param vid
+   * @throws IOException
+   */
+  public static void writeVid(DataOutput out, Writable vid) throws IOException {
+    if (vid instanceof IntType)
+      writeSigned(out, ((IntType) vid).get());
+    else if (vid instanceof LongType)
+      writeSignedLong(out, ((LongType) vid).get());
+    else
+      vid.write(out);
+  }
+
+  /**
+   * Reads a vid written by {@link #writeVid} into {@code vid}.
+   * 
+   * @param in
+   * @param vid
+   * @throws IOException
+   */
+  public static void readVid(DataInput in, Writable vid) throws IOException {
+    if (vid instanceof IntType)
+      ((IntType) vid).set(readSigned(in));
+    else if (vid instanceof LongType)
+      ((LongType) vid).set(readSignedLong(in));
+    else
+      vid.readFields(in);
+  }
+}
@@ -0,0 +1,249 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.test.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.Test;
+
+import com.intel.hadoop.graphbuilder.graph.glgraph.GLBinaryFormatter;
+import com.intel.hadoop.graphbuilder.graph.glgraph.EdgeType;
+import com.intel.hadoop.graphbuilder.graph.glgraph.GLBinaryGraphOutput;
+import com.intel.hadoop.graphbuilder.graph.glgraph.GLBinaryGraphReader;
+import com.intel.hadoop.graphbuilder.graph.glgraph.GLGraph;
+import com.intel.hadoop.graphbuilder.graph.glgraph.GLJsonFormatter;
+import com.intel.hadoop.graphbuilder.graph.glgraph.MappedGLGraph;
+import com.intel.hadoop.graphbuilder.types.IntType;
+import com.intel.hadoop.graphbuilder.types.StringType;
+
+/**
+ * Unit test for GLBinaryFormatter, GLBinaryGraphReader and MappedGLGraph.
+ */
+public class GLBinaryFormatterTest {
+
+  private GLGraph<IntType, IntType, IntType> randomGraph() throws Exception {
+    GLGraph<IntType, IntType, IntType> g = new GLGraph<IntType, IntType, IntType>();
+    Random rnd = new Random(31);
+    for (int i = 0; i < 20000; ++i) {
+      int source = rnd.nextInt(1 + rnd.nextInt(2000));
+      int target = rnd.nextInt(2000);
+      g.addEdge(new IntType(source), new IntType(target), new IntType(i));
+    }
+    g.finalize();
+    return g;
+  }
+
+  private File write(GLBinaryFormatter formatter, GLGraph g, String part)
+      throws IOException {
+    File file = File.createTempFile("glbinary", "." + part);
+    file.deleteOnExit();
+    OutputStream out = new FileOutputStream(file);
+    try {
+      if (part.equals("structure"))
+        formatter.writeStructure(g, out);
+      else if (part.equals("edata"))
+        formatter.writeEdata(g, out);
+      else
+        formatter.writeVids(g, out);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  private void assertSame(List<Integer> expected, IntBuffer actual) {
+    assertEquals(expected.size(), actual.remaining());
+    for (int i = 0; i < expected.size(); ++i)
+      assertEquals(expected.get(i).intValue(), actual.get(i));
+  }
+
+  /**
+   * Test that both encodings read back to the same structure.
+   */
+  @Test
+  public void testRoundTrip() throws Exception {
+    GLGraph<IntType, IntType, IntType> g = randomGraph();
+    for (boolean varint : new boolean[] { false, true }) {
+      File file = write(new GLBinaryFormatter(varint), g, "structure");
+      GLBinaryGraphReader reader = new GLBinaryGraphReader(file);
+      assertEquals(varint, reader.isVarint());
+      assertEquals(g.numVertices(), reader.numVertices());
+      assertEquals(g.numEdges(), reader.numEdges());
+      assertSame(g.csr().getRowOffsets(), reader.csrOffsets());
+      assertSame(g.csr().getColIndex(), reader.csrColumns());
+      assertSame(g.csc().getRowOffsets(), reader.cscOffsets());
+      assertSame(g.csc().getColIndex(), reader.cscColumns());
+      assertSame(g.c2rMap(), reader.c2rMap());
+    }
+
+    GLBinaryFormatter formatter = new GLBinaryFormatter();
+    ArrayList<IntType> edata = GLBinaryGraphReader.readWritables(
+        write(formatter, g, "edata"), IntType.class);
+    assertEquals(g.edatalist(), edata);
+    ArrayList<IntType> vids = GLBinaryGraphReader.readWritables(
+        write(formatter, g, "vids"), IntType.class);
+    assertEquals(g.numVertices(), vids.size());
+    for (int i = 0; i < vids.size(); ++i)
+      assertEquals(i, g.lvid(vids.get(i)));
+  }
+
+  /**
+   * Test that the varint structure is at least 5 times smaller than JSON.
+   */
+  @Test
+  public void testSize() throws Exception {
+    GLGraph<IntType, IntType, IntType> g = randomGraph();
+    long jsonSize = new GLJsonFormatter().structWriter(g).toString()
+        .getBytes("UTF-8").length;
+    long rawSize = write(new GLBinaryFormatter(false), g, "structure")
+        .length();
+    long varintSize = write(new GLBinaryFormatter(true), g, "structure")
+        .length();
+    assertEquals(20 + 4L * (2 * g.numVertices() + 2 + 3 * g.numEdges()),
+        rawSize);
+    assertTrue("json " + jsonSize + " varint " + varintSize,
+        varintSize * 5 <= jsonSize);
+  }
+
+  /**
+   * Test that a mapped partition traverses like the graph it was written from,
+   * with fixed size edge data and raw structure, and with variable size edge
+   * data and varint structure.
+   */
+  @Test
+  public void testMappedGraph() throws Exception {
+    GLGraph<IntType, IntType, IntType> g = randomGraph();
+    GLGraph<IntType, IntType, StringType> h = new GLGraph<IntType, IntType, StringType>();
+    Random rnd = new Random(7);
+    for (int i = 0; i < 5000; ++i) {
+      h.addEdge(new IntType(rnd.nextInt(500)), new IntType(rnd.nextInt(500)),
+          new StringType("e" + rnd.nextInt(1 << rnd.nextInt(20))));
+    }
+    h.finalize();
+    assertMapped(g, IntType.class, false);
+    assertMapped(h, StringType.class, true);
+  }
+
+  private <EdgeData extends Writable> void assertMapped(
+      GLGraph<IntType, IntType, EdgeData> g, Class<EdgeData> edataClass,
+      boolean varint) throws Exception {
+    File dir = File.createTempFile("glbinary", "partition");
+    dir.delete();
+    dir.mkdir();
+    GLBinaryFormatter formatter = new GLBinaryFormatter(varint);
+    write(formatter, g, "structure").renameTo(
+        new File(dir, GLBinaryGraphOutput.STRUCTURE_FILE));
+    write(formatter, g, "edata").renameTo(
+        new File(dir, GLBinaryGraphOutput.EDATA_FILE));
+    write(formatter, g, "vids").renameTo(
+        new File(dir, GLBinaryGraphOutput.VIDS_FILE));
+
+    try {
+      assertSameGraph(g, new MappedGLGraph<IntType, EdgeData>(dir,
+          IntType.class, edataClass));
+    } finally {
+      for (File f : dir.listFiles())
+        f.delete();
+      dir.delete();
+    }
+  }
+
+  private <EdgeData extends Writable> void assertSameGraph(
+      GLGraph<IntType, IntType, EdgeData> g, MappedGLGraph<IntType, EdgeData> m) {
+    assertEquals(g.numVertices(), m.numVertices());
+    assertEquals(g.numEdges(), m.numEdges());
+    for (int v = 0; v < g.numVertices(); ++v) {
+      IntType vid = m.vid(v);
+      assertEquals(v, g.lvid(vid));
+      assertEquals(v, m.lvid(vid));
+      assertEquals(g.numInEdges(v), m.numInEdges(v));
+      assertEquals(g.numOutEdges(v), m.numOutEdges(v));
+      assertSameEdges(g, m, g.inEdges(v), m.inEdges(v));
+      assertSameEdges(g, m, g.outEdges(v), m.outEdges(v));
+    }
+    assertEquals(-1, m.lvid(new IntType(-1)));
+  }
+
+  /**
+   * Test that a partition written by {@code GLBinaryGraphOutput} with the
+   * default configuration has a raw structure, which is mapped rather than
+   * decoded.
+   */
+  @Test
+  public void testDefaultOutputMapped() throws Exception {
+    GLGraph<IntType, IntType, IntType> g = new GLGraph<IntType, IntType, IntType>();
+    Random rnd = new Random(13);
+    for (int i = 0; i < 5000; ++i)
+      g.addEdge(new IntType(rnd.nextInt(500)), new IntType(rnd.nextInt(500)),
+          new IntType(i));
+    g.setPid(2);
+    File outputDir = File.createTempFile("glbinary", "output");
+    outputDir.delete();
+    JobConf conf = new JobConf();
+    conf.set("fs.default.name", "file:///");
+    FileOutputFormat.setOutputPath(conf, new Path(outputDir.getPath()));
+    GLBinaryGraphOutput output = new GLBinaryGraphOutput();
+    output.configure(conf);
+    output.write(g, null, null, null);
+
+    File dir = new File(outputDir, "partition2");
+    try {
+      GLBinaryGraphReader reader = new GLBinaryGraphReader(new File(dir,
+          GLBinaryGraphOutput.STRUCTURE_FILE));
+      assertFalse(reader.isVarint());
+      assertTrue(reader.csrColumns().isDirect());
+      assertTrue(reader.cscColumns().isDirect());
+      assertSameGraph(g, new MappedGLGraph<IntType, IntType>(dir,
+          IntType.class, IntType.class));
+    } finally {
+      FileUtil.fullyDelete(outputDir);
+    }
+  }
+
+  private <EdgeData extends Writable> void assertSameEdges(
+      GLGraph<IntType, IntType, EdgeData> g, MappedGLGraph<IntType, EdgeData> m,
+      Iterable<EdgeType> expected, Iterable<EdgeType> actual) {
+    Iterator<EdgeType> it = actual.iterator();
+    for (EdgeType e : expected) {
+      assertTrue(it.hasNext());
+      EdgeType a = it.next();
+      assertEquals(e.source(), a.source());
+      assertEquals(e.target(), a.target());
+      assertEquals(g.edgeData(e), m.edgeData(a));
+    }
+    assertFalse(it.hasNext());
+  }
+}
@@ -32,15 +32,23 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import org.junit.Test;
 
 import com.intel.hadoop.graphbuilder.graph.Edge;
 import com.intel.hadoop.graphbuilder.graph.Graph;
 import com.intel.hadoop.graphbuilder.graph.VertexRecord;
+import com.intel.hadoop.graphbuilder.graph.glgraph.CompressedGraphStruct;
 import com.intel.hadoop.graphbuilder.graph.glgraph.EdgeList;
+import com.intel.hadoop.graphbuilder.graph.glgraph.EdgeSpillFile;
 import com.intel.hadoop.graphbuilder.graph.glgraph.EdgeType;
 import com.intel.hadoop.graphbuilder.graph.glgraph.GLGraph;
+import com.intel.hadoop.graphbuilder.graph.glgraph.GLGraphBuilder;
+import com.intel.hadoop.graphbuilder.graph.glgraph.IntEdgeVisitor;
+import com.intel.hadoop.graphbuilder.graph.glgraph.SparseGraphStruct;
 import com.intel.hadoop.graphbuilder.parser.BasicGraphParser;
 import com.intel.hadoop.graphbuilder.parser.EmptyParser;
 import com.intel.hadoop.graphbuilder.parser.FieldParser;
@@ -48,6 +56,7 @@ import com.intel.hadoop.graphbuilder.parser.GraphParser;
 import com.intel.hadoop.graphbuilder.parser.IntParser;
 import com.intel.hadoop.graphbuilder.types.EmptyType;
 import com.intel.hadoop.graphbuilder.types.IntType;
+import com.intel.hadoop.graphbuilder.util.Parallel;
 
 /**
  * Unit test for GLGraph.
@@ -158,6 +167,313 @@ public class GLGraphTest {
     assertTrue(list.isEmpty());
   }
 
+  /**
+   * Checks the CSR, CSC and c2rMap of a random multigraph against the input
+   * edges: every edge appears once in each structure, columns are sorted
+   * within a row, and the edge data reached through CSR and CSC agree.
+   */
+  @Test
+  public void testRandomGraph() throws Exception {
+    int numEdges = 20000, maxVid = 500;
+    Random rnd = new Random(17);
+    GLGraph<Integer, Integer, Integer> myGraph = new GLGraph<Integer, Integer, Integer>();
+    for (int i = 0; i < numEdges; ++i) {
+      // Skewed sources so that some rows are large.
+      int source = rnd.nextInt(1 + rnd.nextInt(maxVid));
+      int target = rnd.nextInt(maxVid);
+      myGraph.addEdge(source, target, source * maxVid + target);
+    }
+    myGraph.finalize();
+    assertEquals("Num edges", numEdges, myGraph.numEdges());
+    assertEquals("CSR edges", numEdges, myGraph.csr().numEdges());
+    assertEquals("CSC edges", numEdges, myGraph.csc().numEdges());
+
+    int[] gvid = new int[myGraph.numVertices()];
+    for (Map.Entry<Integer, Integer> e : myGraph.vid2lvid()
+        .entrySet())
+      gvid[e.getValue()] = e.getKey();
+
+    int outTotal = 0, inTotal = 0;
+    for (int v = 0; v < myGraph.numVertices(); ++v) {
+      int last = -1;
+      for (EdgeType e : myGraph.outEdges(v)) {
+        assertEquals(v, e.source());
+        assertTrue("CSR columns sorted", e.target() >= last);
+        last = e.target();
+        assertEquals(gvid[e.source()] * maxVid + gvid[e.target()], myGraph
+            .edgeData(e).intValue());
+        outTotal++;
+      }
+      last = -1;
+      for (EdgeType e : myGraph.inEdges(v)) {
+        assertEquals(v, e.target());
+        assertTrue("CSC columns sorted", e.source() >= last);
+        last = e.source();
+        assertEquals(gvid[e.source()] * maxVid + gvid[e.target()], myGraph
+            .edgeData(e).intValue());
+        inTotal++;
+      }
+    }
+    assertEquals(numEdges, outTotal);
+    assertEquals(numEdges, inTotal);
+  }
+
+  /**
+   * Checks that the visitor traversal reports the same edges as the
+   * {@code EdgeList} wrappers.
+   */
+  @Test
+  public void testEdgeVisitor() throws Exception {
+    final GLGraph<Integer, Integer, Integer> myGraph = new GLGraph<Integer, Integer, Integer>();
+    Random rnd = new Random(3);
+    for (int i = 0; i < 2000; ++i)
+      myGraph.addEdge(rnd.nextInt(100), rnd.nextInt(100), i);
+    myGraph.finalize();
+
+    for (int v = 0; v < myGraph.numVertices(); ++v) {
+      final Iterator<EdgeType> outIter = myGraph.outEdges(v).iterator();
+      myGraph.forEachOutEdge(v, new IntEdgeVisitor() {
+        @Override
+        public void visit(int source, int target, int edgeid) {
+          EdgeType e = outIter.next();
+          assertEquals(e.source(), source);
+          assertEquals(e.target(), target);
+          assertEquals(myGraph.edgeData(e), myGraph.edgeData(edgeid));
+        }
+      });
+      assertTrue(!outIter.hasNext());
+
+      final Iterator<EdgeType> inIter = myGraph.inEdges(v).iterator();
+      myGraph.forEachInEdge(v, new IntEdgeVisitor() {
+        @Override
+        public void visit(int source, int target, int edgeid) {
+          EdgeType e = inIter.next();
+          assertEquals(e.source(), source);
+          assertEquals(e.target(), target);
+          assertEquals(myGraph.edgeData(e), myGraph.edgeData(edgeid));
+        }
+      });
+      assertTrue(!inIter.hasNext());
+    }
+  }
+
+  /**
+   * Finalizes, with four threads, a graph large enough for the counting sort to
+   * be split into four chunks, and checks that each vertex has the expected
+   * edges, with its out edges ordered by target and then by insertion order.
+   */
+  @Test
+  public void testParallelSort() throws Exception {
+    int numEdges = 5 * GLGraph.MIN_EDGES_PER_CHUNK, maxVid = 2000;
+    GLGraph<Integer, Integer, Integer> myGraph = new GLGraph<Integer, Integer, Integer>();
+    HashMap<Integer, List<Integer>> outExpected = new HashMap<Integer, List<Integer>>();
+    HashMap<Integer, List<Integer>> inExpected = new HashMap<Integer, List<Integer>>();
+    Random rnd = new Random(29);
+    for (int i = 0; i < numEdges; ++i) {
+      int source = rnd.nextInt(1 + rnd.nextInt(maxVid));
+      int target = rnd.nextInt(maxVid);
+      myGraph.addEdge(source, target, i);
+      expectEdge(outExpected, source, i);
+      expectEdge(inExpected, target, i);
+    }
+    assertTrue(numEdges >= 4 * myGraph.numVertices());
+    int numThreads = Parallel.numThreads();
+    try {
+      Parallel.setNumThreads(4);
+      myGraph.finalize();
+    } finally {
+      Parallel.setNumThreads(numThreads);
+    }
+
+    for (Map.Entry<Integer, Integer> e : myGraph.vid2lvid().entrySet()) {
+      List<Integer> out = new ArrayList<Integer>();
+      EdgeType prev = null;
+      for (EdgeType edge : myGraph.outEdges(e.getValue())) {
+        if (prev != null)
+          assertTrue(prev.target() < edge.target()
+              || (prev.target() == edge.target() && myGraph.edgeData(prev) < myGraph
+                  .edgeData(edge)));
+        out.add(myGraph.edgeData(edge));
+        prev = edge;
+      }
+      List<Integer> in = new ArrayList<Integer>();
+      for (EdgeType edge : myGraph.inEdges(e.getValue()))
+        in.add(myGraph.edgeData(edge));
+      Collections.sort(out);
+      Collections.sort(in);
+      assertEquals(expectedEdges(outExpected, e.getKey()), out);
+      assertEquals(expectedEdges(inExpected, e.getKey()), in);
+    }
+  }
+
+  private static void expectEdge(HashMap<Integer, List<Integer>> expected,
+      int vid, int edata) {
+    if (!expected.containsKey(vid))
+      expected.put(vid, new ArrayList<Integer>());
+    expected.get(vid).add(edata);
+  }
+
+  private static List<Integer> expectedEdges(
+      HashMap<Integer, List<Integer>> expected, int vid) {
+    List<Integer> edges = expected.get(vid);
+    return edges == null ? new ArrayList<Integer>() : edges;
+  }
+
+  /**
+   * Checks that a compressed structure traverses like the original one and
+   * takes at most a third of its memory.
+   */
+  @Test
+  public void testCompressedStructure() throws Exception {
+    final GLGraph<Integer, Integer, Integer> myGraph = new GLGraph<Integer, Integer, Integer>();
+    Random rnd = new Random(5);
+    for (int i = 0; i < 20000; ++i)
+      myGraph.addEdge(rnd.nextInt(500), rnd.nextInt(500), i);
+    myGraph.finalize();
+    SparseGraphStruct csr = myGraph.csr();
+    SparseGraphStruct csc = myGraph.csc();
+    final List<List<Integer>> outEdges = new ArrayList<List<Integer>>();
+    final List<List<Integer>> inEdges = new ArrayList<List<Integer>>();
+    for (int v = 0; v < myGraph.numVertices(); ++v) {
+      outEdges.add(edgeTriples(myGraph.outEdges(v), myGraph));
+      inEdges.add(edgeTriples(myGraph.inEdges(v), myGraph));
+    }
+
+    myGraph.compressStructure();
+    assertTrue(myGraph.isStructureCompressed());
+    for (int v = 0; v < myGraph.numVertices(); ++v) {
+      assertEquals(outEdges.get(v), edgeTriples(myGraph.outEdges(v), myGraph));
+      assertEquals(inEdges.get(v), edgeTriples(myGraph.inEdges(v), myGraph));
+      final List<Integer> visited = new ArrayList<Integer>();
+      IntEdgeVisitor visitor = new IntEdgeVisitor() {
+        @Override
+        public void visit(int source, int target, int edgeid) {
+          visited.add(source);
+          visited.add(target);
+          visited.add(myGraph.edgeData(edgeid));
+        }
+      };
+      myGraph.forEachOutEdge(v, visitor);
+      assertEquals(outEdges.get(v), visited);
+      visited.clear();
+      myGraph.forEachInEdge(v, visitor);
+      assertEquals(inEdges.get(v), visited);
+    }
+    assertEquals(csr.getRowOffsets(), myGraph.csr().getRowOffsets());
+    assertEquals(csr.getColIndex(), myGraph.csr().getColIndex());
+    assertEquals(csc.getColIndex(), myGraph.csc().getColIndex());
+
+    long rawSize = 4L * (csr.numVertices() + 1 + csr.numEdges());
+    long compressedSize = new CompressedGraphStruct(csr).sizeInBytes();
+    assertTrue("raw " + rawSize + " compressed " + compressedSize,
+        compressedSize * 3 <= rawSize);
+  }
+
+  private List<Integer> edgeTriples(EdgeList list,
+      GLGraph<Integer, Integer, Integer> g) {
+    List<Integer> triples = new ArrayList<Integer>();
+    for (EdgeType e : list) {
+      triples.add(e.source());
+      triples.add(e.target());
+      triples.add(g.edgeData(e));
+    }
+    return triples;
+  }
+
+  /**
+   * Finalizes the same graph with the in place and the out of place shuffle,
+   * and checks that the results are identical.
+   */
+  @Test
+  public void testShuffleModes() throws Exception {
+    GLGraph<Integer, Integer, Integer> inplace = new GLGraph<Integer, Integer, Integer>();
+    GLGraph<Integer, Integer, Integer> outofplace = new GLGraph<Integer, Integer, Integer>();
+    Random rnd = new Random(5);
+    for (int i = 0; i < 5000; ++i) {
+      int source = rnd.nextInt(300), target = rnd.nextInt(300);
+      inplace.addEdge(source, target, i);
+      outofplace.addEdge(source, target, i);
+    }
+    inplace.setShuffleMemoryBudget(0);
+    outofplace.setShuffleMemoryBudget(Long.MAX_VALUE);
+    inplace.finalize();
+    outofplace.finalize();
+    assertEquals(inplace.csr().getRowOffsets(), outofplace.csr()
+        .getRowOffsets());
+    assertEquals(inplace.csr().getColIndex(), outofplace.csr().getColIndex());
+    assertEquals(inplace.csc().getRowOffsets(), outofplace.csc()
+        .getRowOffsets());
+    assertEquals(inplace.csc().getColIndex(), outofplace.csc().getColIndex());
+    assertEquals(inplace.c2rMap(), outofplace.c2rMap());
+    assertEquals(inplace.edatalist(), outofplace.edatalist());
+  }
+
+  /**
+   * Test that integral and generic vids get local ids in insertion order.
+   */
+  @Test
+  public void testVid2lvid() throws Exception {
+    GLGraph<Long, Integer, Integer> longGraph = new GLGraph<Long, Integer, Integer>();
+    GLGraph<String, Integer, Integer> strGraph = new GLGraph<String, Integer, Integer>();
+    HashMap<Long, Integer> expected = new HashMap<Long, Integer>();
+    Random rnd = new Random(11);
+    for (int i = 0; i < 3000; ++i) {
+      long source = rnd.nextInt(1000) * 10000000000L;
+      long target = rnd.nextInt(1000) * 10000000000L;
+      longGraph.addEdge(source, target, i);
+      strGraph.addEdge(String.valueOf(source), String.valueOf(target), i);
+      if (!expected.containsKey(source))
+        expected.put(source, expected.size());
+      if (!expected.containsKey(target))
+        expected.put(target, expected.size());
+    }
+    assertEquals(expected.size(), longGraph.numVertices());
+    assertEquals(expected.size(), strGraph.numVertices());
+    assertEquals(expected, longGraph.vid2lvid());
+    for (Map.Entry<Long, Integer> e : expected.entrySet()) {
+      assertEquals(e.getValue().intValue(), longGraph.lvid(e.getKey()));
+      assertEquals(e.getValue().intValue(),
+          strGraph.lvid(String.valueOf(e.getKey())));
+    }
+    assertEquals(-1, longGraph.lvid(1L));
+    assertEquals(-1, strGraph.lvid("1"));
+  }
+
+  /**
+   * Builds the same graph with finalize, and with the two-pass builder replaying
+   * the edges from a spill file, and checks that the results are identical.
+   */
+  @Test
+  public void testBuilder() throws Exception {
+    GLGraph<IntType, Integer, IntType> expected = new GLGraph<IntType, Integer, IntType>();
+    GLGraphBuilder<IntType, Integer, IntType> builder = new GLGraphBuilder<IntType, Integer, IntType>();
+    EdgeSpillFile<IntType, IntType> spill = new EdgeSpillFile<IntType, IntType>(
+        null, IntType.class, IntType.class);
+    Random rnd = new Random(23);
+    for (int i = 0; i < 5000; ++i) {
+      IntType source = new IntType(rnd.nextInt(1 + rnd.nextInt(400)));
+      IntType target = new IntType(rnd.nextInt(400));
+      expected.addEdge(source, target, new IntType(i));
+      builder.countEdge(source, target);
+      spill.write(source, target, new IntType(i));
+    }
+    expected.finalize();
+    builder.allocate();
+    spill.replay(builder);
+    spill.delete();
+    GLGraph<IntType, Integer, IntType> actual = builder.build();
+
+    assertEquals(expected.numVertices(), actual.numVertices());
+    assertEquals(expected.numEdges(), actual.numEdges());
+    assertEquals(expected.vid2lvid(), actual.vid2lvid());
+    assertEquals(expected.csr().getRowOffsets(), actual.csr().getRowOffsets());
+    assertEquals(expected.csr().getColIndex(), actual.csr().getColIndex());
+    assertEquals(expected.csc().getRowOffsets(), actual.csc().getRowOffsets());
+    assertEquals(expected.csc().getColIndex(), actual.csc().getColIndex());
+    assertEquals(expected.c2rMap(), actual.c2rMap());
+    assertEquals(expected.edatalist(), actual.edatalist());
+  }
+
   @Test
   public void buildGraphExample() throws Exception {
     int numEdges = 5, numVertices = 6;
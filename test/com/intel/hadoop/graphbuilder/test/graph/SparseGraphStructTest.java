@@ -25,7 +25,9 @@ import java.util.Arrays;
 
 import org.junit.Test;
 
+import com.intel.hadoop.graphbuilder.graph.glgraph.CompressedGraphStruct;
 import com.intel.hadoop.graphbuilder.graph.glgraph.SparseGraphStruct;
+import com.intel.hadoop.graphbuilder.util.IntArrayList;
 
 /**
  * Unit test for SparseGraphStructs.
@@ -41,6 +43,8 @@ public class SparseGraphStructTest {
     testEmptyGraph(10);
     testEmptyGraph(100);
     testSmallGraph();
+    testRowOffsets();
+    testCompressed();
   }
 
   public void testEmptyGraph(int numVertices) {
@@ -72,4 +76,61 @@ public class SparseGraphStructTest {
     assertEquals("CSC col", colIndexExpect, myCSC.getColIndex());
   }
 
+  public void testRowOffsets() {
+    ArrayList<Integer> source = new ArrayList<Integer>(Arrays.asList(0, 0, 0,
+        2, 3));
+    ArrayList<Integer> target = new ArrayList<Integer>(Arrays.asList(1, 3, 6,
+        3, 4));
+    SparseGraphStruct myCSR = new SparseGraphStruct(7, source, target);
+    ArrayList<Integer> rowOffsetsExpect = new ArrayList<Integer>(Arrays.asList(
+        0, 3, 3, 4, 5, 5, 5, 5));
+    assertEquals("CSR offsets", rowOffsetsExpect, myCSR.getRowOffsets());
+
+    int[] degreeExpect = { 3, 0, 1, 1, 0, 0, 0 };
+    for (int i = 0; i < degreeExpect.length; ++i)
+      assertEquals("CSR degree", degreeExpect[i], myCSR.end(i) - myCSR.begin(i));
+
+    SparseGraphStruct fromOffsets = new SparseGraphStruct(
+        myCSR.getRowOffsets(), new IntArrayList(5, 0));
+    assertEquals("Legacy row", myCSR.getRowIndex(), fromOffsets.getRowIndex());
+    assertEquals("JSON rowOffsets", "{\"colIndex\":[1,3,6,3,4],"
+        + "\"rowOffsets\":[0,3,3,4,5,5,5,5]}", myCSR.toJSONObj(true)
+        .toJSONString());
+  }
+
+  public void testCompressed() {
+    assertEquals("Empty", 0, new CompressedGraphStruct(new SparseGraphStruct(
+        10)).numEdges());
+
+    /* Unsorted rows and blocks spanning several rows. */
+    int numVertices = 50;
+    IntArrayList sources = new IntArrayList();
+    IntArrayList targets = new IntArrayList();
+    for (int v = 0; v < numVertices; ++v) {
+      for (int j = 0; j < v % 7; ++j) {
+        sources.add(v);
+        targets.add((v * 7919 + j * 104729) % 100000);
+      }
+    }
+    SparseGraphStruct csr = new SparseGraphStruct(numVertices, sources,
+        targets);
+    CompressedGraphStruct compressed = new CompressedGraphStruct(csr);
+    assertEquals("numVertices", numVertices, compressed.numVertices());
+    assertEquals("numEdges", csr.numEdges(), compressed.numEdges());
+    for (int i = 0; i < csr.numEdges(); ++i)
+      assertEquals("col " + i, csr.col(i), compressed.col(i));
+    int[] row = new int[7];
+    for (int v = 0; v < numVertices; ++v) {
+      assertEquals("begin", csr.begin(v), compressed.begin(v));
+      assertEquals("end", csr.end(v), compressed.end(v));
+      int n = compressed.decodeRow(v, row);
+      for (int j = 0; j < n; ++j)
+        assertEquals("row " + v, csr.col(csr.begin(v) + j), row[j]);
+    }
+    SparseGraphStruct decompressed = compressed.decompress();
+    assertEquals("Decompressed offsets", csr.getRowOffsets(),
+        decompressed.getRowOffsets());
+    assertEquals("Decompressed columns", csr.getColIndex(),
+        decompressed.getColIndex());
+  }
 }
@@ -0,0 +1,140 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.test.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.junit.Test;
+
+import com.intel.hadoop.graphbuilder.graph.simplegraph.SimpleGraphOutput;
+import com.intel.hadoop.graphbuilder.graph.simplegraph.SimpleJsonFormatter;
+import com.intel.hadoop.graphbuilder.graph.simplegraph.SimpleSubGraph;
+import com.intel.hadoop.graphbuilder.graph.simplegraph.SpillingSubGraph;
+import com.intel.hadoop.graphbuilder.types.IntType;
+
+/**
+ * Unit test for SpillingSubGraph.
+ */
+public class SpillingSubGraphTest {
+
+  /** Collects the output files as they would be written by TextOutputFormat. */
+  private static class FileCollector implements OutputCollector<Text, Text> {
+    @Override
+    public void collect(Text key, Text value) throws IOException {
+      StringBuilder file = files.get(key.toString());
+      if (file == null) {
+        file = new StringBuilder();
+        files.put(key.toString(), file);
+      }
+      file.append(value.toString()).append("\n");
+    }
+
+    HashMap<String, String> contents() {
+      HashMap<String, String> ret = new HashMap<String, String>();
+      for (String key : files.keySet())
+        ret.put(key, files.get(key).toString());
+      return ret;
+    }
+
+    private HashMap<String, StringBuilder> files = new HashMap<String, StringBuilder>();
+  }
+
+  /**
+   * Test that the merged runs produce the same output as the in memory graph.
+   */
+  @Test
+  public void testSameOutput() throws Exception {
+    JobConf conf = new JobConf();
+    File localDir = new File(System.getProperty("java.io.tmpdir"),
+        "spillingsubgraphtest");
+    conf.set("mapred.local.dir", localDir.getPath());
+
+    SimpleSubGraph<IntType, Integer, IntType> expected = new SimpleSubGraph<IntType, Integer, IntType>();
+    SpillingSubGraph<IntType, IntType> actual = new SpillingSubGraph<IntType, IntType>(
+        conf, IntType.class, IntType.class, 4096);
+    expected.setPid(3);
+    expected.setSubPid(1);
+    actual.setPid(3);
+    actual.setSubPid(1);
+
+    Random rnd = new Random(7);
+    for (int i = 0; i < 5000; ++i) {
+      IntType source = new IntType(rnd.nextInt(1 + rnd.nextInt(300)));
+      IntType target = new IntType(rnd.nextInt(300));
+      expected.addEdge(source, target, new IntType(i));
+      actual.addEdge(source, target, new IntType(i));
+    }
+    assertEquals(expected.numEdges(), actual.numEdges());
+    assertTrue("Spilled runs", actual.numRuns() > 1);
+
+    FileCollector expectedOut = new FileCollector();
+    new SimpleGraphOutput().writeAndClear(expected, new SimpleJsonFormatter(),
+        expectedOut, null);
+    FileCollector actualOut = new FileCollector();
+    actual.write(actualOut, null);
+
+    assertEquals(expectedOut.contents(), actualOut.contents());
+    assertEquals(0, actual.numRuns());
+  }
+
+  /**
+   * Test that closing a graph which is not written deletes its runs.
+   */
+  @Test
+  public void testClose() throws Exception {
+    JobConf conf = new JobConf();
+    File localDir = new File(System.getProperty("java.io.tmpdir"),
+        "spillingsubgraphtest-close");
+    FileUtil.fullyDelete(localDir);
+    conf.set("mapred.local.dir", localDir.getPath());
+
+    SpillingSubGraph<IntType, IntType> graph = new SpillingSubGraph<IntType, IntType>(
+        conf, IntType.class, IntType.class, 1024);
+    Random rnd = new Random(9);
+    for (int i = 0; i < 1000; ++i)
+      graph.addEdge(new IntType(rnd.nextInt(100)),
+          new IntType(rnd.nextInt(100)), new IntType(i));
+    assertTrue("Spilled runs", graph.numRuns() > 1);
+    assertTrue(countFiles(localDir) > 1);
+
+    graph.close();
+    assertEquals(0, graph.numRuns());
+    assertEquals(0, countFiles(localDir));
+  }
+
+  private static int countFiles(File dir) {
+    int count = 0;
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files)
+        count += f.isDirectory() ? countFiles(f) : 1;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,123 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.test.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Test;
+
+import com.intel.hadoop.graphbuilder.graph.simplegraph.SimpleGraphOutput;
+import com.intel.hadoop.graphbuilder.graph.simplegraph.SimpleJsonFormatter;
+import com.intel.hadoop.graphbuilder.graph.simplegraph.SimpleSubGraph;
+import com.intel.hadoop.graphbuilder.io.ChunkedRecordWriter;
+import com.intel.hadoop.graphbuilder.io.MultiDirOutputFormat;
+
+/**
+ * Unit test for streaming graph output through {@code MultiDirOutputFormat}.
+ */
+public class MultiDirOutputFormatTest {
+
+  private SimpleSubGraph<Integer, Integer, String> graph(int pid) {
+    SimpleSubGraph<Integer, Integer, String> g = new SimpleSubGraph<Integer, Integer, String>();
+    g.setPid(pid);
+    g.setSubPid(0);
+    Random rnd = new Random(13);
+    for (int i = 0; i < 3000; ++i)
+      g.addEdge(rnd.nextInt(200), rnd.nextInt(200), "e\u00e9\ud834\udd1e" + i);
+    return g;
+  }
+
+  private String read(JobConf job, String name) throws IOException {
+    Path file = FileOutputFormat.getTaskOutputPath(job, name);
+    InputStream in = file.getFileSystem(job).open(file);
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      IOUtils.copyBytes(in, bytes, 4096, false);
+      return bytes.toString("UTF-8");
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Test that a graph written in small chunks has the same output as the one
+   * written in a single record.
+   */
+  @Test
+  public void testChunkedOutput() throws Exception {
+    File dir = new File(System.getProperty("java.io.tmpdir"),
+        "multidiroutputformattest");
+    JobConf job = new JobConf();
+    FileOutputFormat.setOutputPath(job, new Path(dir.getPath()));
+    job.set("mapred.task.id", "attempt_200707121733_0001_r_000000_0");
+    FileSystem fs = FileSystem.getLocal(job);
+    fs.delete(new Path(dir.getPath()), true);
+    /* Created by the job setup of the output committer. */
+    fs.mkdirs(new Path(dir.getPath(), "_temporary"));
+
+    final RecordWriter<Text, Text> writer = new MultiDirOutputFormat()
+        .getRecordWriter(fs, job, "part-00000", Reporter.NULL);
+    OutputCollector<Text, Text> out = new OutputCollector<Text, Text>() {
+      @Override
+      public void collect(Text key, Text value) throws IOException {
+        writer.write(key, value);
+      }
+    };
+
+    SimpleJsonFormatter formatter = new SimpleJsonFormatter();
+    String expectedStruct = formatter.structWriter(graph(0)).toString();
+    String expectedEdata = formatter.edataWriter(graph(0)).toString();
+
+    JobConf chunked = new JobConf(job);
+    chunked.setInt(ChunkedRecordWriter.CHUNK_SIZE_KEY, 7);
+    SimpleGraphOutput output = new SimpleGraphOutput();
+    output.configure(chunked);
+    output.writeAndClear(graph(1), formatter, out, Reporter.NULL);
+
+    JobConf single = new JobConf(job);
+    single.setInt(ChunkedRecordWriter.CHUNK_SIZE_KEY, Integer.MAX_VALUE);
+    output = new SimpleGraphOutput();
+    output.configure(single);
+    output.writeAndClear(graph(2), formatter, out, Reporter.NULL);
+    writer.close(Reporter.NULL);
+
+    for (int pid = 1; pid <= 2; ++pid) {
+      String base = "partition" + pid + "/subpart0/";
+      assertEquals(expectedStruct + "\n", read(job, base + "edgelist"));
+      assertEquals(expectedEdata + "\n", read(job, base + "edata"));
+      assertEquals("{\"numEdges\":3000}\n", read(job, base + "meta"));
+    }
+    fs.delete(new Path(dir.getPath()), true);
+  }
+}
@@ -0,0 +1,111 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.test.partition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.intel.hadoop.graphbuilder.partition.strategy.ConstrainedIngress;
+import com.intel.hadoop.graphbuilder.partition.strategy.ConstrainedIngress.Scheme;
+import com.intel.hadoop.graphbuilder.partition.strategy.Ingress;
+import com.intel.hadoop.graphbuilder.partition.strategy.RandomIngress;
+
+/**
+ * Unit test for ConstrainedIngress.
+ */
+public class ConstrainedIngressTest {
+
+  /**
+   * Assigns random edges, checking the bound on replicas and that the
+   * assignment only depends on the edge.
+   * 
+   * @return the replication factor.
+   */
+  private double assign(Ingress<Integer> ingress, int maxReplicas) {
+    Random rnd = new Random(ingress.numProcs());
+    HashMap<Integer, BitSet> replicas = new HashMap<Integer, BitSet>();
+    int[] load = new int[ingress.numProcs()];
+    for (int i = 0; i < 50000; ++i) {
+      int source = rnd.nextInt(2000);
+      int target = rnd.nextInt(10) == 0 ? rnd.nextInt(20) : rnd.nextInt(2000);
+      short pid = ingress.computePid(source, target);
+      assertTrue(pid >= 0 && pid < ingress.numProcs());
+      assertEquals(pid, ingress.computePid(source, target));
+      load[pid]++;
+      for (int v : new int[] { source, target }) {
+        if (!replicas.containsKey(v))
+          replicas.put(v, new BitSet());
+        replicas.get(v).set(pid);
+        assertTrue(replicas.get(v).cardinality() <= maxReplicas);
+      }
+    }
+    for (int l : load)
+      assertTrue("load " + l, l > 0);
+    long total = 0;
+    for (BitSet b : replicas.values())
+      total += b.cardinality();
+    return (double) total / replicas.size();
+  }
+
+  @Test
+  public void testGrid() {
+    ConstrainedIngress<Integer> grid = new ConstrainedIngress<Integer>(16,
+        Scheme.GRID);
+    assertEquals(7, grid.maxReplicas());
+    double rf = assign(grid, 7);
+    assertTrue(rf < assign(new RandomIngress<Integer>(16), 16));
+
+    /* 12 = 3 x 4 */
+    assertEquals(6, new ConstrainedIngress<Integer>(12, Scheme.GRID)
+        .maxReplicas());
+    assign(new ConstrainedIngress<Integer>(12, Scheme.GRID), 6);
+    assign(new ConstrainedIngress<Integer>(7, Scheme.GRID), 7);
+  }
+
+  @Test
+  public void testTorus() {
+    ConstrainedIngress<Integer> torus = new ConstrainedIngress<Integer>(16,
+        Scheme.TORUS);
+    assertEquals(6, torus.maxReplicas());
+    assign(torus, 6);
+    assign(new ConstrainedIngress<Integer>(30, Scheme.TORUS), 8);
+  }
+
+  @Test
+  public void testPds() {
+    int[][] valid = { { 7, 3 }, { 13, 4 }, { 31, 6 }, { 57, 8 }, { 133, 12 } };
+    for (int[] v : valid) {
+      ConstrainedIngress<Integer> pds = new ConstrainedIngress<Integer>(v[0],
+          Scheme.PDS);
+      assertEquals(v[1], pds.maxReplicas());
+      assign(pds, v[1]);
+    }
+    try {
+      new ConstrainedIngress<Integer>(16, Scheme.PDS);
+      assertTrue("16 is not p^2 + p + 1", false);
+    } catch (IllegalArgumentException e) {
+    }
+  }
+}
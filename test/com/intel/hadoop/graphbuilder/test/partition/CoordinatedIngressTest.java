@@ -0,0 +1,358 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.test.partition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RunningJob;
+import org.junit.Test;
+
+import com.intel.hadoop.graphbuilder.parser.BasicGraphParser;
+import com.intel.hadoop.graphbuilder.parser.EmptyParser;
+import com.intel.hadoop.graphbuilder.parser.IntParser;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.edge.EdgeIngressMR;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.edge.EdgeIngressReducer;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.edge.PresenceExchange;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.GraphTypeFactory;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressKeyType;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressValueType;
+import com.intel.hadoop.graphbuilder.partition.strategy.GreedyIngress;
+import com.intel.hadoop.graphbuilder.partition.strategy.PresenceSketch;
+import com.intel.hadoop.graphbuilder.types.EmptyType;
+import com.intel.hadoop.graphbuilder.types.IntType;
+
+/**
+ * Unit test for the coordinated greedy ingress.
+ */
+public class CoordinatedIngressTest {
+
+  public static class IntKey extends IngressKeyType<IntType> {
+    @Override
+    public IntType createVid() {
+      return new IntType();
+    }
+  }
+
+  public static class IntFactory extends
+      GraphTypeFactory<IntType, EmptyType, EmptyType> {
+    @Override
+    public IntType createVid() {
+      return new IntType();
+    }
+
+    @Override
+    public EmptyType createVdata() {
+      return EmptyType.INSTANCE;
+    }
+
+    @Override
+    public EmptyType createEdata() {
+      return EmptyType.INSTANCE;
+    }
+  }
+
+  public static class IntValue extends
+      IngressValueType<IntType, EmptyType, EmptyType> {
+    @Override
+    public GraphTypeFactory getGraphTypeFactory() {
+      if (factory == null)
+        factory = new IntFactory();
+      return factory;
+    }
+  }
+
+  @Test
+  public void testSketch() throws IOException {
+    PresenceSketch a = new PresenceSketch(100, 64);
+    PresenceSketch b = new PresenceSketch(100, 64);
+    a.record(1, 2, 3);
+    b.record(2, 5, 70);
+    b.record(2, 5, 70);
+    a.merge(b);
+    assertEquals(1, a.load(3));
+    assertEquals(2, a.load(70));
+    assertEquals(1L << 3, a.word(a.bucket(1), 0) & (1L << 3));
+    assertEquals(1L << 6, a.word(a.bucket(2), 1) & (1L << 6));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    a.write(new DataOutputStream(bytes));
+    PresenceSketch c = new PresenceSketch();
+    c.readFields(new DataInputStream(new ByteArrayInputStream(bytes
+        .toByteArray())));
+    assertEquals(100, c.numProcs());
+    assertEquals(64, c.numBuckets());
+    for (int pid = 0; pid < 100; ++pid)
+      assertEquals(a.load(pid), c.load(pid));
+    for (int i = 0; i < 64; ++i)
+      for (int w = 0; w < 2; ++w)
+        assertEquals(a.word(i, w), c.word(i, w));
+  }
+
+  /**
+   * Tests that a series of deltas merges into the whole sketch, and that a
+   * delta only carries the buckets changed since the previous one.
+   */
+  @Test
+  public void testDelta() throws IOException {
+    PresenceSketch a = new PresenceSketch(100, 64);
+    PresenceSketch merged = new PresenceSketch(100, 64);
+    long[] loads = new long[100];
+    a.record(1, 2, 3);
+    a.record(2, 5, 70);
+    ByteArrayOutputStream first = new ByteArrayOutputStream();
+    a.writeDelta(new DataOutputStream(first));
+    merged.mergeDelta(new DataInputStream(new ByteArrayInputStream(first
+        .toByteArray())), loads);
+    assertEquals(1, loads[3]);
+    assertEquals(1, loads[70]);
+
+    ByteArrayOutputStream empty = new ByteArrayOutputStream();
+    a.writeDelta(new DataOutputStream(empty));
+    a.record(7, 7, 99);
+    ByteArrayOutputStream second = new ByteArrayOutputStream();
+    a.writeDelta(new DataOutputStream(second));
+    assertTrue(second.size() < first.size());
+    assertTrue(empty.size() < second.size());
+    merged.mergeDelta(new DataInputStream(new ByteArrayInputStream(second
+        .toByteArray())), loads);
+    assertEquals(1, loads[99]);
+    for (int i = 0; i < 64; ++i)
+      for (int w = 0; w < 2; ++w)
+        assertEquals(a.word(i, w), merged.word(i, w));
+    for (int pid = 0; pid < 100; ++pid)
+      assertEquals(0, merged.load(pid));
+
+    try {
+      new PresenceSketch(100, 32).mergeDelta(new DataInputStream(
+          new ByteArrayInputStream(second.toByteArray())), loads);
+      fail("Merged a delta of another shape.");
+    } catch (IOException e) {
+    }
+  }
+
+  /**
+   * Tests that an ingress given the sketch of another one places the edges
+   * with the other ingress.
+   */
+  @Test
+  public void testRemoteSketch() {
+    GreedyIngress<Integer> first = new GreedyIngress<Integer>(8, 1L);
+    first.coordinate(1 << 16);
+    short[] pids = new short[50];
+    for (int k = 0; k < 50; ++k)
+      pids[k] = first.computePid(2 * k, 2 * k + 1);
+
+    GreedyIngress<Integer> second = new GreedyIngress<Integer>(8, 2L);
+    second.coordinate(1 << 16);
+    second.setRemoteSketch(first.localSketch());
+    for (int k = 0; k < 50; ++k)
+      assertEquals(pids[k], second.computePid(2 * k, 2 * k + 1));
+    assertEquals(50, second.localSketch().load(0) + second.localSketch().load(1)
+        + second.localSketch().load(2) + second.localSketch().load(3)
+        + second.localSketch().load(4) + second.localSketch().load(5)
+        + second.localSketch().load(6) + second.localSketch().load(7));
+  }
+
+  private PresenceExchange exchange(File dir, String attempt,
+      GreedyIngress<Integer> ingress) throws IOException {
+    JobConf job = new JobConf();
+    job.set(PresenceExchange.DIR_KEY, dir.getPath());
+    job.setInt(PresenceExchange.INTERVAL_KEY, 1);
+    job.setInt(PresenceExchange.BUCKETS_KEY, 1 << 10);
+    job.set("mapred.task.id", attempt);
+    return new PresenceExchange(job, ingress);
+  }
+
+  private long remoteLoad(GreedyIngress<Integer> ingress) {
+    long load = 0;
+    for (int pid = 0; pid < ingress.numProcs(); ++pid)
+      load += ingress.remoteSketch().load(pid);
+    return load;
+  }
+
+  /**
+   * Tests that the placements of a failed attempt are replaced by those of the
+   * retried attempt, and not counted twice.
+   */
+  @Test
+  public void testRetriedAttempt() throws IOException {
+    File dir = new File(System.getProperty("java.io.tmpdir"),
+        "coordinatedingresstest-retry");
+    FileSystem.getLocal(new JobConf()).delete(new Path(dir.getPath()), true);
+
+    GreedyIngress<Integer> failed = new GreedyIngress<Integer>(4, 1L);
+    PresenceExchange failedExchange = exchange(dir,
+        "attempt_local_0001_m_000000_0", failed);
+    for (int k = 0; k < 10; ++k)
+      failed.computePid(k, k + 1);
+    failedExchange.close();
+
+    GreedyIngress<Integer> other = new GreedyIngress<Integer>(4, 2L);
+    PresenceExchange otherExchange = exchange(dir,
+        "attempt_local_0001_m_000001_0", other);
+    assertEquals(10, remoteLoad(other));
+
+    GreedyIngress<Integer> retried = new GreedyIngress<Integer>(4, 3L);
+    PresenceExchange retriedExchange = exchange(dir,
+        "attempt_local_0001_m_000000_1", retried);
+    for (String f : dir.list())
+      assertFalse(f, f.startsWith("attempt_local_0001_m_000000_0"));
+    for (int k = 0; k < 3; ++k)
+      retried.computePid(k, k + 1);
+    retriedExchange.close();
+
+    other.computePid(100, 101);
+    otherExchange.edgeAssigned();
+    assertEquals(3, remoteLoad(other));
+  }
+
+  /**
+   * Tests that a delta which cannot be read is merged at a later exchange,
+   * even though a later delta of the same attempt was read.
+   */
+  @Test
+  public void testUnreadDelta() throws IOException {
+    File dir = new File(System.getProperty("java.io.tmpdir"),
+        "coordinatedingresstest-unread");
+    FileSystem.getLocal(new JobConf()).delete(new Path(dir.getPath()), true);
+
+    String attempt = "attempt_local_0001_m_000000_0";
+    GreedyIngress<Integer> first = new GreedyIngress<Integer>(4, 1L);
+    PresenceExchange firstExchange = exchange(dir, attempt, first);
+    for (int k = 0; k < 3; ++k) {
+      first.computePid(10 * k, 10 * k + 1);
+      firstExchange.edgeAssigned();
+    }
+    File delta = new File(dir, attempt + ".2");
+    File hidden = new File(dir, "_hidden");
+    assertTrue(delta.renameTo(hidden));
+
+    GreedyIngress<Integer> second = new GreedyIngress<Integer>(4, 2L);
+    PresenceExchange secondExchange = exchange(dir,
+        "attempt_local_0001_m_000001_0", second);
+    PresenceSketch local = first.localSketch();
+    int bucket = local.bucket(10);
+    for (int v : new int[] { 0, 1, 20, 21 })
+      assertTrue(bucket != local.bucket(v));
+    assertEquals(0, second.remoteSketch().word(bucket, 0));
+    assertEquals(3, remoteLoad(second));
+
+    assertTrue(hidden.renameTo(delta));
+    second.computePid(100, 101);
+    secondExchange.edgeAssigned();
+    assertEquals(local.word(bucket, 0), second.remoteSketch().word(bucket, 0));
+    assertEquals(3, remoteLoad(second));
+  }
+
+  /**
+   * @return a power-law graph grown by preferential attachment, in random
+   *         order.
+   */
+  private ArrayList<int[]> powerLawGraph(int numVertices, int edgesPerVertex) {
+    Random rnd = new Random(31);
+    ArrayList<Integer> endpoints = new ArrayList<Integer>();
+    ArrayList<int[]> edges = new ArrayList<int[]>();
+    endpoints.add(0);
+    for (int v = 1; v < numVertices; ++v) {
+      for (int j = 0; j < edgesPerVertex; ++j) {
+        int u = endpoints.get(rnd.nextInt(endpoints.size()));
+        edges.add(new int[] { v, u });
+        endpoints.add(u);
+        endpoints.add(v);
+      }
+    }
+    Collections.shuffle(edges, rnd);
+    return edges;
+  }
+
+  /**
+   * Runs the ingress in the local job runner and returns the replication
+   * factor.
+   */
+  private double runIngress(String[] inputs, File output, boolean coordinated)
+      throws Exception {
+    EdgeIngressMR mr = new EdgeIngressMR(BasicGraphParser.class,
+        IntParser.class, EmptyParser.class, EmptyParser.class);
+    mr.setKeyValueClass(IntKey.class, IntValue.class);
+    if (coordinated)
+      mr.setCoordination(500, 0);
+    JobConf conf = mr.getConf();
+    conf.setLong(GreedyIngress.SEED_KEY, 7L);
+    conf.set("mapred.job.tracker", "local");
+    conf.set("fs.default.name", "file:///");
+    FileSystem.getLocal(conf).delete(new Path(output.getPath()), true);
+    RunningJob job = mr.run(inputs, output.getPath(), 16, "greedy");
+    assertTrue(job.isSuccessful());
+    assertFalse(new File(output, "_presence").exists());
+    Counters counters = job.getCounters();
+    return (double) counters.getCounter(EdgeIngressReducer.COUNTER.REPLICAS)
+        / counters.getCounter(EdgeIngressReducer.COUNTER.VERTICES);
+  }
+
+  /**
+   * Tests that the mappers sharing their placements in the local job runner,
+   * which runs the mappers one after the other, replicate the vertices less
+   * than independent mappers.
+   */
+  @Test
+  public void testLocalJobRunner() throws Exception {
+    File dir = new File(System.getProperty("java.io.tmpdir"),
+        "coordinatedingresstest");
+    FileSystem.getLocal(new JobConf()).delete(new Path(dir.getPath()), true);
+    File inputDir = new File(dir, "input");
+    inputDir.mkdirs();
+    ArrayList<int[]> edges = powerLawGraph(5000, 3);
+    int numInputs = 4;
+    String[] inputs = new String[numInputs];
+    PrintWriter[] writers = new PrintWriter[numInputs];
+    for (int i = 0; i < numInputs; ++i) {
+      File f = new File(inputDir, "part" + i);
+      inputs[i] = f.getPath();
+      writers[i] = new PrintWriter(new FileWriter(f));
+    }
+    for (int i = 0; i < edges.size(); ++i)
+      writers[i % numInputs].println(edges.get(i)[0] + "\t" + edges.get(i)[1]);
+    for (PrintWriter w : writers)
+      w.close();
+
+    double independent = runIngress(inputs, new File(dir, "independent"),
+        false);
+    double coordinated = runIngress(inputs, new File(dir, "coordinated"), true);
+    assertTrue(coordinated < 0.92 * independent);
+  }
+}
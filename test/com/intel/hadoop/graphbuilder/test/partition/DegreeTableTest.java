@@ -0,0 +1,144 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.test.partition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RunningJob;
+import org.junit.Test;
+
+import com.intel.hadoop.graphbuilder.parser.BasicGraphParser;
+import com.intel.hadoop.graphbuilder.parser.EmptyParser;
+import com.intel.hadoop.graphbuilder.parser.IntParser;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.degree.DegreeCountMR;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.edge.EdgeIngressMR;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.edge.EdgeIngressMapper;
+import com.intel.hadoop.graphbuilder.partition.strategy.DegreeTable;
+import com.intel.hadoop.graphbuilder.test.partition.CoordinatedIngressTest.IntKey;
+import com.intel.hadoop.graphbuilder.test.partition.CoordinatedIngressTest.IntValue;
+import com.intel.hadoop.graphbuilder.types.IntType;
+import com.intel.hadoop.graphbuilder.types.StringType;
+
+/**
+ * Unit test for the degree table and the degree count pre-pass.
+ */
+public class DegreeTableTest {
+
+  private DegreeTable roundTrip(long[] keys, int[] degrees) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DegreeTable.Writer writer = new DegreeTable.Writer(new DataOutputStream(
+        bytes));
+    for (int i = 0; i < keys.length; ++i)
+      writer.append(keys[i], degrees[i]);
+    return DegreeTable.read(new DataInputStream(new ByteArrayInputStream(bytes
+        .toByteArray())));
+  }
+
+  @Test
+  public void testWriteRead() throws IOException {
+    long[] keys = { Long.MIN_VALUE, -5, 0, 3, 1L << 40, Long.MAX_VALUE };
+    int[] degrees = { 1, 2, 3, 4, 5, 6 };
+    DegreeTable table = roundTrip(keys, degrees);
+    assertEquals(6, table.size());
+    assertEquals(3, table.degree(0));
+    assertEquals(4, table.degree(new IntType(3)));
+    assertEquals(5, table.degree(1L << 40));
+    assertEquals(1, table.degree(Long.MIN_VALUE));
+    assertEquals(6, table.degree(Long.MAX_VALUE));
+    assertEquals(0, table.degree(1));
+
+    DegreeTable strings = roundTrip(
+        new long[] { DegreeTable.key(new StringType("hub")) },
+        new int[] { 100 });
+    assertEquals(100, strings.degree(new StringType("hub")));
+    assertEquals(0, strings.degree(new StringType("leaf")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsortedAppend() throws IOException {
+    DegreeTable.Writer writer = new DegreeTable.Writer(new DataOutputStream(
+        new ByteArrayOutputStream()));
+    writer.append(5, 1);
+    writer.append(5, 1);
+  }
+
+  /**
+   * Tests that the degree count job computes the degrees of the input, and
+   * that the ingress mappers load the table from the distributed cache.
+   */
+  @Test
+  public void testPrepass() throws Exception {
+    File dir = new File(System.getProperty("java.io.tmpdir"), "degreetabletest");
+    FileSystem.getLocal(new JobConf()).delete(new Path(dir.getPath()), true);
+    dir.mkdirs();
+    File input = new File(dir, "edges");
+    HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+    Random rnd = new Random(5);
+    PrintWriter writer = new PrintWriter(new FileWriter(input));
+    for (int i = 0; i < 3000; ++i) {
+      int u = rnd.nextInt(1000);
+      int v = rnd.nextInt(u + 1) - 500;
+      writer.println(u + "\t" + v);
+      for (int x : new int[] { u, v }) {
+        Integer d = expected.get(x);
+        expected.put(x, d == null ? 1 : d + 1);
+      }
+    }
+    writer.close();
+    String[] inputs = { input.getPath() };
+
+    String degrees = new File(dir, "degrees").getPath();
+    new DegreeCountMR(BasicGraphParser.class, IntParser.class,
+        EmptyParser.class).run(inputs, degrees);
+    JobConf job = new JobConf();
+    FileSystem fs = FileSystem.getLocal(job);
+    DegreeTable table = DegreeTable.load(fs,
+        new Path[] { new Path(degrees, DegreeTable.FILE_PREFIX + "part-00000") });
+    assertEquals(expected.size(), table.size());
+    for (int v : expected.keySet())
+      assertEquals((int) expected.get(v), table.degree(v));
+
+    EdgeIngressMR mr = new EdgeIngressMR(BasicGraphParser.class,
+        IntParser.class, EmptyParser.class, EmptyParser.class);
+    mr.setKeyValueClass(IntKey.class, IntValue.class);
+    mr.setDegreePrepass(true);
+    String output = new File(dir, "output").getPath();
+    RunningJob ingress = mr.run(inputs, output, 8, "hdrf");
+    assertTrue(ingress.isSuccessful());
+    assertEquals(expected.size(), ingress.getCounters()
+        .getCounter(EdgeIngressMapper.COUNTER.DEGREE_TABLE_VERTICES));
+    assertFalse(new File(output + "_degrees").exists());
+  }
+}
@@ -0,0 +1,173 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.test.partition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.intel.hadoop.graphbuilder.partition.strategy.GreedyIngress;
+import com.intel.hadoop.graphbuilder.partition.strategy.VertexPresenceCache;
+import com.intel.hadoop.graphbuilder.partition.strategy.VertexPresenceCache.Eviction;
+
+/**
+ * Unit test for GreedyIngress.
+ */
+public class GreedyIngressTest {
+
+  /**
+   * The original greedy assignment over boxed lists and {@code BitSet}s, with
+   * ties broken by a single seeded generator.
+   */
+  private static class ReferenceGreedy<VidType> {
+    ReferenceGreedy(int numProcs, long seed) {
+      this.numProcs = numProcs;
+      procLoad = new ArrayList<Integer>(Collections.nCopies(numProcs, 0));
+      generator = new Random(seed);
+    }
+
+    short computePid(VidType source, VidType target) {
+      ArrayList<Double> scores = new ArrayList<Double>(Collections.nCopies(
+          numProcs, 0.0));
+      int minEdges = Collections.min(procLoad);
+      int maxEdges = Collections.max(procLoad);
+      BitSet sourceTable = table(source);
+      BitSet targetTable = table(target);
+      for (int j = 0; j < numProcs; j++) {
+        double bal = (double) (maxEdges - procLoad.get(j))
+            / (maxEdges - minEdges + 0.01);
+        int sourceScore = (sourceTable.get(j) || source.hashCode() % numProcs == j) ? 1
+            : 0;
+        int targetScore = (targetTable.get(j) || target.hashCode() % numProcs == j) ? 1
+            : 0;
+        scores.set(j, bal + sourceScore + targetScore);
+      }
+      double maxScore = Collections.max(scores);
+      ArrayList<Short> bestProcs = new ArrayList<Short>();
+      for (int j = 0; j < numProcs; j++) {
+        if (Math.abs(scores.get(j) - maxScore) < 1e-5)
+          bestProcs.add((short) j);
+      }
+      short pid = bestProcs.get(bestProcs.size() == 1 ? 0 : generator
+          .nextInt(bestProcs.size()));
+      procLoad.set(pid, procLoad.get(pid) + 1);
+      sourceTable.set(pid);
+      targetTable.set(pid);
+      return pid;
+    }
+
+    private BitSet table(VidType vid) {
+      BitSet table = presence.get(vid);
+      if (table == null) {
+        table = new BitSet(numProcs);
+        presence.put(vid, table);
+      }
+      return table;
+    }
+
+    private int numProcs;
+    private ArrayList<Integer> procLoad;
+    private HashMap<VidType, BitSet> presence = new HashMap<VidType, BitSet>();
+    private Random generator;
+  }
+
+  private void assertSamePlacement(int numProcs, int numVertices) {
+    assertSamePlacement(new GreedyIngress<Integer>(numProcs, 42), numVertices);
+  }
+
+  private void assertSamePlacement(GreedyIngress<Integer> greedy,
+      int numVertices) {
+    int numProcs = greedy.numProcs();
+    ReferenceGreedy<Integer> reference = new ReferenceGreedy<Integer>(
+        numProcs, 42);
+    Random rnd = new Random(numProcs);
+    for (int i = 0; i < 20000; ++i) {
+      /* Negative vids have a negative hash. */
+      int source = rnd.nextInt(numVertices) - numVertices / 4;
+      int target = rnd.nextInt(10) == 0 ? source : rnd.nextInt(numVertices);
+      assertEquals("edge " + i, reference.computePid(source, target),
+          greedy.computePid(source, target));
+    }
+  }
+
+  /**
+   * Checks that the assignment is identical to the original algorithm, for
+   * partition counts below, at and above a bitset word.
+   */
+  @Test
+  public void testSamePlacement() {
+    assertSamePlacement(1, 100);
+    assertSamePlacement(7, 1000);
+    assertSamePlacement(64, 5000);
+    assertSamePlacement(130, 5000);
+    assertSamePlacement(512, 20000);
+  }
+
+  /**
+   * Checks that a bounded cache large enough for all vertices does not change
+   * the placement, and counts every lookup.
+   */
+  @Test
+  public void testLargeCache() {
+    for (Eviction eviction : Eviction.values()) {
+      GreedyIngress<Integer> greedy = new GreedyIngress<Integer>(64, 42, 6250,
+          eviction);
+      assertSamePlacement(greedy, 5000);
+      VertexPresenceCache<Integer> cache = greedy.presenceCache();
+      assertEquals(0, cache.evictions());
+      assertEquals(40000, cache.hits() + cache.misses());
+    }
+  }
+
+  /**
+   * Checks that a small cache stays within its bound, and that the degree
+   * aware policy keeps a hub resident where LRU evicts it.
+   */
+  @Test
+  public void testEviction() {
+    long[] hits = new long[Eviction.values().length];
+    for (Eviction eviction : Eviction.values()) {
+      GreedyIngress<String> greedy = new GreedyIngress<String>(100, 42, 32,
+          eviction);
+      int fresh = 0;
+      for (int i = 0; i < 200; ++i)
+        greedy.computePid("hub", "v" + fresh++);
+      for (int i = 0; i < 2000; ++i) {
+        String source = i % 20 == 0 ? "hub" : "v" + fresh++;
+        greedy.computePid(source, "v" + fresh++);
+      }
+      VertexPresenceCache<String> cache = greedy.presenceCache();
+      assertEquals(32, cache.size());
+      assertTrue(cache.evictions() > 0);
+      assertEquals(4400, cache.hits() + cache.misses());
+      hits[eviction.ordinal()] = cache.hits();
+      if (eviction == Eviction.DEGREE)
+        assertTrue(cache.indexOf("hub") >= 0);
+    }
+    assertTrue(hits[Eviction.DEGREE.ordinal()] > hits[Eviction.LRU.ordinal()]);
+    assertEquals(299, hits[Eviction.DEGREE.ordinal()]);
+  }
+}
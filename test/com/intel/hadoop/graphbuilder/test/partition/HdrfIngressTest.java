@@ -0,0 +1,162 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.test.partition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.intel.hadoop.graphbuilder.partition.strategy.DegreeTable;
+import com.intel.hadoop.graphbuilder.partition.strategy.GreedyIngress;
+import com.intel.hadoop.graphbuilder.partition.strategy.HdrfIngress;
+import com.intel.hadoop.graphbuilder.partition.strategy.Ingress;
+import com.intel.hadoop.graphbuilder.partition.strategy.RandomIngress;
+import com.intel.hadoop.graphbuilder.partition.strategy.VertexPresenceCache.Eviction;
+
+/**
+ * Unit test for HdrfIngress.
+ */
+public class HdrfIngressTest {
+
+  /**
+   * @return a power-law graph grown by preferential attachment, in random
+   *         order.
+   */
+  private ArrayList<int[]> powerLawGraph(int numVertices, int edgesPerVertex) {
+    Random rnd = new Random(23);
+    ArrayList<Integer> endpoints = new ArrayList<Integer>();
+    ArrayList<int[]> edges = new ArrayList<int[]>();
+    endpoints.add(0);
+    for (int v = 1; v < numVertices; ++v) {
+      for (int j = 0; j < edgesPerVertex; ++j) {
+        int u = endpoints.get(rnd.nextInt(endpoints.size()));
+        edges.add(new int[] { v, u });
+        endpoints.add(u);
+        endpoints.add(v);
+      }
+    }
+    java.util.Collections.shuffle(edges, rnd);
+    return edges;
+  }
+
+  /**
+   * @return the replication factor of the placement, after checking that the
+   *         maximum load is within 10% of the average.
+   */
+  private double replicationFactor(Ingress<Integer> ingress,
+      ArrayList<int[]> edges) {
+    HashMap<Integer, BitSet> replicas = new HashMap<Integer, BitSet>();
+    int[] load = new int[ingress.numProcs()];
+    for (int[] e : edges) {
+      short pid = ingress.computePid(e[0], e[1]);
+      load[pid]++;
+      for (int v : e) {
+        if (!replicas.containsKey(v))
+          replicas.put(v, new BitSet());
+        replicas.get(v).set(pid);
+      }
+    }
+    int maxLoad = 0;
+    for (int l : load)
+      maxLoad = Math.max(maxLoad, l);
+    assertTrue("max load " + maxLoad,
+        maxLoad <= 1.1 * edges.size() / ingress.numProcs());
+    long total = 0;
+    for (BitSet b : replicas.values())
+      total += b.cardinality();
+    return (double) total / replicas.size();
+  }
+
+  /**
+   * Checks that HDRF balances the load and replicates less than the greedy
+   * and random ingress on a power-law graph.
+   */
+  @Test
+  public void testReplicationFactor() {
+    ArrayList<int[]> edges = powerLawGraph(20000, 4);
+    int numProcs = 32;
+    double random = replicationFactor(new RandomIngress<Integer>(numProcs),
+        edges);
+    double greedy = replicationFactor(new GreedyIngress<Integer>(numProcs, 1),
+        edges);
+    double hdrf = replicationFactor(new HdrfIngress<Integer>(numProcs, 1,
+        HdrfIngress.DEFAULT_LAMBDA, 0, Eviction.CLOCK), edges);
+    assertTrue("random " + random + " greedy " + greedy + " hdrf " + hdrf,
+        hdrf < greedy && greedy < random);
+  }
+
+  /**
+   * Checks that the global degrees of a pre-pass lower the replication of
+   * HDRF, which otherwise learns the degrees from the edges seen so far.
+   */
+  @Test
+  public void testGlobalDegrees() {
+    ArrayList<int[]> edges = powerLawGraph(20000, 4);
+    TreeMap<Long, Integer> count = new TreeMap<Long, Integer>();
+    for (int[] e : edges) {
+      for (int v : e) {
+        Integer d = count.get((long) v);
+        count.put((long) v, d == null ? 1 : d + 1);
+      }
+    }
+    long[] keys = new long[count.size()];
+    int[] degrees = new int[count.size()];
+    int i = 0;
+    for (Map.Entry<Long, Integer> entry : count.entrySet()) {
+      keys[i] = entry.getKey();
+      degrees[i++] = entry.getValue();
+    }
+
+    HdrfIngress<Integer> partial = new HdrfIngress<Integer>(32, 1,
+        HdrfIngress.DEFAULT_LAMBDA, 0, Eviction.CLOCK);
+    HdrfIngress<Integer> global = new HdrfIngress<Integer>(32, 1,
+        HdrfIngress.DEFAULT_LAMBDA, 0, Eviction.CLOCK);
+    global.setDegrees(new DegreeTable(keys, degrees, i));
+    double partialRf = replicationFactor(partial, edges);
+    double globalRf = replicationFactor(global, edges);
+    assertTrue("partial " + partialRf + " global " + globalRf,
+        globalRf < partialRf);
+  }
+
+  /**
+   * Checks that the assignment is reproducible with a seed, and that a single
+   * partition takes every edge.
+   */
+  @Test
+  public void testSeed() {
+    ArrayList<int[]> edges = powerLawGraph(2000, 3);
+    HdrfIngress<Integer> a = new HdrfIngress<Integer>(16, 5, 1.0, 0,
+        Eviction.LRU);
+    HdrfIngress<Integer> b = new HdrfIngress<Integer>(16, 5, 1.0, 0,
+        Eviction.LRU);
+    HdrfIngress<Integer> single = new HdrfIngress<Integer>(1);
+    for (int[] e : edges) {
+      assertEquals(a.computePid(e[0], e[1]), b.computePid(e[0], e[1]));
+      assertEquals(0, single.computePid(e[0], e[1]));
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.test.partition;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Test;
+
+import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressKeyComparator;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressKeyType;
+import com.intel.hadoop.graphbuilder.test.partition.CoordinatedIngressTest.IntKey;
+import com.intel.hadoop.graphbuilder.types.FloatType;
+import com.intel.hadoop.graphbuilder.types.IntType;
+import com.intel.hadoop.graphbuilder.types.LongType;
+import com.intel.hadoop.graphbuilder.types.StringType;
+
+/**
+ * Unit test for the raw comparator of the ingress keys.
+ */
+public class IngressKeyComparatorTest {
+
+  public static class LongKey extends IngressKeyType<LongType> {
+    @Override
+    public LongType createVid() {
+      return new LongType();
+    }
+  }
+
+  public static class StringKey extends IngressKeyType<StringType> {
+    @Override
+    public StringType createVid() {
+      return new StringType();
+    }
+  }
+
+  public static class FloatKey extends IngressKeyType<FloatType> {
+    @Override
+    public FloatType createVid() {
+      return new FloatType();
+    }
+  }
+
+  /**
+   * Checks that the comparator orders the serialized keys as
+   * {@code compareTo}, for a mix of edge and vertex keys.
+   */
+  private <VidType extends WritableComparable<VidType>> void checkOrder(
+      Class<? extends IngressKeyType<VidType>> keyClass,
+      ArrayList<VidType> vids) throws Exception {
+    JobConf conf = new JobConf();
+    conf.setMapOutputKeyClass(keyClass);
+    IngressKeyComparator comparator = ReflectionUtils.newInstance(
+        IngressKeyComparator.class, conf);
+
+    Random rnd = new Random(11);
+    ArrayList<IngressKeyType<VidType>> keys = new ArrayList<IngressKeyType<VidType>>();
+    ArrayList<byte[]> bytes = new ArrayList<byte[]>();
+    for (int i = 0; i < 200; ++i) {
+      IngressKeyType<VidType> key = keyClass.newInstance();
+      if (rnd.nextInt(4) == 0)
+        key.set((short) (rnd.nextInt(600) - 300), null, IngressKeyType.EDGEKEY);
+      else
+        key.set((short) 0, vids.get(rnd.nextInt(vids.size())),
+            IngressKeyType.VERTEXKEY);
+      keys.add(key);
+      bytes.add(serialize(key, i));
+    }
+    for (int i = 0; i < keys.size(); ++i) {
+      for (int j = 0; j < keys.size(); ++j) {
+        byte[] b1 = bytes.get(i);
+        byte[] b2 = bytes.get(j);
+        int expected = Integer.signum(keys.get(i).compareTo(keys.get(j)));
+        assertEquals(keys.get(i) + " vs " + keys.get(j), expected,
+            Integer.signum(comparator.compare(b1, i % 5, b1.length - i % 5 - 3,
+                b2, j % 5, b2.length - j % 5 - 3)));
+      }
+    }
+  }
+
+  /** Serializes a key at an offset, followed by padding. */
+  private byte[] serialize(IngressKeyType key, int i) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    for (int k = 0; k < i % 5; ++k)
+      out.writeByte(0x7f);
+    key.write(out);
+    out.write(new byte[] { -1, -1, -1 });
+    byte[] b = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, b, 0, b.length);
+    return b;
+  }
+
+  @Test
+  public void testIntKey() throws Exception {
+    ArrayList<IntType> vids = new ArrayList<IntType>();
+    for (int v : new int[] { Integer.MIN_VALUE, -300, -1, 0, 1, 255, 256,
+        65536, Integer.MAX_VALUE })
+      vids.add(new IntType(v));
+    checkOrder(IntKey.class, vids);
+  }
+
+  @Test
+  public void testLongKey() throws Exception {
+    ArrayList<LongType> vids = new ArrayList<LongType>();
+    for (long v : new long[] { Long.MIN_VALUE, -1L << 40, -1, 0, 1,
+        1L << 33, Long.MAX_VALUE })
+      vids.add(new LongType(v));
+    checkOrder(LongKey.class, vids);
+  }
+
+  @Test
+  public void testStringKey() throws Exception {
+    ArrayList<StringType> vids = new ArrayList<StringType>();
+    StringBuilder longString = new StringBuilder();
+    for (int i = 0; i < 200; ++i)
+      longString.append('x');
+    for (String v : new String[] { "", "a", "ab", "b", "Z", "\u00e9t\u00e9",
+        "\u4e2d\u6587", longString.toString(), longString + "y" })
+      vids.add(new StringType(v));
+    checkOrder(StringKey.class, vids);
+  }
+
+  @Test
+  public void testFallback() throws Exception {
+    ArrayList<FloatType> vids = new ArrayList<FloatType>();
+    for (float v : new float[] { -2.5f, 0f, 1f, 3.25f })
+      vids.add(new FloatType(v));
+    checkOrder(FloatKey.class, vids);
+  }
+}
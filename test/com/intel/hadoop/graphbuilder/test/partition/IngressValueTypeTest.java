@@ -0,0 +1,260 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.test.partition;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.CombinedEdgeValueType;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.CombinedVrecordValueType;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.GraphTypeFactory;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressKeyType;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressValueType;
+import com.intel.hadoop.graphbuilder.test.partition.CoordinatedIngressTest.IntValue;
+import com.intel.hadoop.graphbuilder.types.EmptyType;
+import com.intel.hadoop.graphbuilder.types.FloatType;
+import com.intel.hadoop.graphbuilder.types.IntType;
+import com.intel.hadoop.graphbuilder.types.LongType;
+import com.intel.hadoop.graphbuilder.util.VarInt;
+
+/**
+ * Unit test for the reuse and the encoding of the map values of the edge
+ * ingress.
+ */
+public class IngressValueTypeTest {
+
+  private IntValue roundTrip(IntValue value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    value.write(new DataOutputStream(bytes));
+    IntValue copy = new IntValue();
+    copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes
+        .toByteArray())));
+    return copy;
+  }
+
+  /**
+   * Tests that a value initialized again reuses its edge and vertex record,
+   * and that each serialization only has the fields of the last init.
+   */
+  @Test
+  public void testReuse() throws IOException {
+    IntValue value = new IntValue();
+    value.initEdgeValue((short) 3, new IntType(1), new IntType(2),
+        EmptyType.INSTANCE);
+    CombinedEdgeValueType edge = value.edgeValue();
+    value.initVrecValue(new IntType(1), (short) 300, 0, 1);
+    CombinedVrecordValueType vrec = value.vrecordValue();
+    value.initEdgeValue((short) 4, new IntType(5), new IntType(6),
+        EmptyType.INSTANCE);
+    assertSame(edge, value.edgeValue());
+
+    IntValue copy = roundTrip(value);
+    assertEquals(1, copy.edgeValue().size());
+    assertEquals(new IntType(5), copy.edgeValue().sources().get(0));
+    assertEquals(new IntType(6), copy.edgeValue().targets().get(0));
+
+    value.initVrecValue(new IntType(6), (short) 7, 1, 0);
+    assertSame(vrec, value.vrecordValue());
+    copy = roundTrip(value);
+    BitSet pids = copy.vrecordValue().pids();
+    assertEquals(1, pids.cardinality());
+    assertTrue(pids.get(7));
+    assertNull(copy.vrecordValue().vid());
+    assertEquals(1, copy.vrecordValue().inEdges());
+    assertEquals(0, copy.vrecordValue().outEdges());
+    assertFalse(copy.vrecordValue().hasVdata());
+
+    value.initVrecValue(new IntType(8), EmptyType.INSTANCE);
+    assertSame(vrec, value.vrecordValue());
+    copy = roundTrip(value);
+    assertTrue(copy.vrecordValue().pids().isEmpty());
+    assertTrue(copy.vrecordValue().hasVdata());
+  }
+
+  /**
+   * Tests that combined vertex records union their partitions.
+   */
+  @Test
+  public void testCombine() throws IOException {
+    IntValue a = new IntValue();
+    IntValue b = new IntValue();
+    a.initVrecValue(new IntType(1), (short) 2, 1, 0);
+    CombinedVrecordValueType sum = new CombinedVrecordValueType(
+        a.getGraphTypeFactory());
+    sum.add(a.vrecordValue());
+    b.initVrecValue(new IntType(1), (short) 200, 0, 1);
+    sum.add(b.vrecordValue());
+    b.initVrecValue(new IntType(1), (short) 2, 0, 1);
+    sum.add(b.vrecordValue());
+    assertEquals(2, sum.pids().cardinality());
+    assertTrue(sum.pids().get(2) && sum.pids().get(200));
+    assertEquals(1, sum.inEdges());
+    assertEquals(2, sum.outEdges());
+  }
+
+  private int size(IntValue value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    value.write(new DataOutputStream(bytes));
+    return bytes.size();
+  }
+
+  /**
+   * Tests that the partitions of a vertex record round trip through both the
+   * bitmap and the list encoding, and that the shorter one is used.
+   */
+  @Test
+  public void testPidEncoding() throws IOException {
+    IntValue value = new IntValue();
+    value.initVrecValue(new IntType(1), (short) 0, 1, 0);
+    CombinedVrecordValueType dense = new CombinedVrecordValueType(
+        value.getGraphTypeFactory());
+    for (short pid = 0; pid < 16; pid += 2) {
+      value.initVrecValue(new IntType(1), pid, 1, 0);
+      dense.add(value.vrecordValue());
+    }
+    value.vrecordValue().add(dense);
+    // flag, header, nbytes, 2 bytes of bitmap, in and out edges
+    assertEquals(7, size(value));
+    BitSet pids = roundTrip(value).vrecordValue().pids();
+    assertEquals(8, pids.cardinality());
+    assertEquals(dense.pids(), pids);
+
+    value.initVrecValue(new IntType(1), (short) 30000, 1, 0);
+    // flag, header, count, 3 bytes of gap, in and out edges
+    assertEquals(8, size(value));
+    IntValue copy = roundTrip(value);
+    assertEquals(1, copy.vrecordValue().pids().cardinality());
+    assertTrue(copy.vrecordValue().pids().get(30000));
+    assertEquals(1, copy.vrecordValue().inEdges());
+  }
+
+  /**
+   * Tests that an edge value with small vids encodes each vid in one byte.
+   */
+  @Test
+  public void testEdgeEncoding() throws IOException {
+    IntValue value = new IntValue();
+    value.initEdgeValue((short) 0, new IntType(-3), new IntType(60),
+        EmptyType.INSTANCE);
+    // flag, size, source, target
+    assertEquals(4, size(value));
+    IntValue copy = roundTrip(value);
+    assertEquals(new IntType(-3), copy.edgeValue().sources().get(0));
+    assertEquals(new IntType(60), copy.edgeValue().targets().get(0));
+  }
+
+  /** A factory whose edges are stored in columns, with float edge data. */
+  public static class FloatEdgeFactory extends
+      GraphTypeFactory<LongType, EmptyType, FloatType> {
+    @Override
+    public LongType createVid() {
+      return new LongType();
+    }
+
+    @Override
+    public EmptyType createVdata() {
+      return EmptyType.INSTANCE;
+    }
+
+    @Override
+    public FloatType createEdata() {
+      return new FloatType();
+    }
+  }
+
+  /**
+   * Tests that columnar edge values are combined by array copy, and are
+   * serialized as the edges of a value stored in lists.
+   */
+  @Test
+  public void testColumns() throws IOException {
+    FloatEdgeFactory factory = new FloatEdgeFactory();
+    CombinedEdgeValueType sum = new CombinedEdgeValueType(factory);
+    CombinedEdgeValueType edge = new CombinedEdgeValueType(factory);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    DataOutputStream expectedOut = new DataOutputStream(expected);
+    VarInt.writeUnsigned(expectedOut, 100);
+    for (int i = 0; i < 100; ++i) {
+      edge.reset(new LongType(i - 50), new LongType(1L << i % 60),
+          new FloatType(i / 4f));
+      sum.add(edge);
+      sum.add(new CombinedEdgeValueType(factory));
+    }
+    for (int i = 0; i < 100; ++i)
+      VarInt.writeVid(expectedOut, new LongType(i - 50));
+    for (int i = 0; i < 100; ++i)
+      VarInt.writeVid(expectedOut, new LongType(1L << i % 60));
+    for (int i = 0; i < 100; ++i)
+      new FloatType(i / 4f).write(expectedOut);
+
+    assertEquals(100, sum.size());
+    assertEquals(new LongType(7 - 50), sum.sources().get(7));
+    assertEquals(new LongType(1L << 7), sum.targets().get(7));
+    assertEquals(new FloatType(7 / 4f), sum.edata().get(7));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    sum.write(new DataOutputStream(bytes));
+    assertArrayEquals(expected.toByteArray(), bytes.toByteArray());
+
+    CombinedEdgeValueType copy = new CombinedEdgeValueType(factory);
+    copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes
+        .toByteArray())));
+    assertEquals(sum.sources(), copy.sources());
+    assertEquals(sum.targets(), copy.targets());
+    assertEquals(sum.edata(), copy.edata());
+    copy.clear();
+    assertEquals(0, copy.size());
+    assertTrue(copy.sources().isEmpty());
+  }
+
+  /**
+   * Tests that the combined edges of a key do not carry over to the next key
+   * when the combined value is reused.
+   */
+  @Test
+  public void testReduceReuse() throws IOException {
+    IntValue value = new IntValue();
+    value.initEdgeValue((short) 0, new IntType(1), new IntType(2),
+        EmptyType.INSTANCE);
+    IntValue other = roundTrip(value);
+    IntValue sum = new IntValue();
+    sum.reduce(IngressKeyType.EDGEKEY,
+        Arrays.<IngressValueType<IntType, EmptyType, EmptyType>> asList(value,
+            other).iterator());
+    assertEquals(2, sum.edgeValue().size());
+    sum.reduce(IngressKeyType.EDGEKEY,
+        Arrays.<IngressValueType<IntType, EmptyType, EmptyType>> asList(other)
+            .iterator());
+    assertEquals(1, sum.edgeValue().size());
+    assertEquals(new IntType(2), roundTrip(sum).edgeValue().targets().get(0));
+  }
+}
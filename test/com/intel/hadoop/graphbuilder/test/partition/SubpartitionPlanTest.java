@@ -0,0 +1,160 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.test.partition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RunningJob;
+import org.junit.Test;
+
+import com.intel.hadoop.graphbuilder.parser.BasicGraphParser;
+import com.intel.hadoop.graphbuilder.parser.EmptyParser;
+import com.intel.hadoop.graphbuilder.parser.IntParser;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.edge.EdgeIngressMR;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.edge.SubpartitionPartitioner;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.edge.SubpartitionPlan;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.keyvalue.IngressKeyType;
+import com.intel.hadoop.graphbuilder.test.partition.CoordinatedIngressTest.IntKey;
+import com.intel.hadoop.graphbuilder.test.partition.CoordinatedIngressTest.IntValue;
+import com.intel.hadoop.graphbuilder.types.IntType;
+
+/**
+ * Unit test for the skew aware split of the partitions into sub-partitions.
+ */
+public class SubpartitionPlanTest {
+
+  /**
+   * Tests that a heavy partition gets more sub-partitions, and that the
+   * reducers are more balanced than with the uniform split.
+   */
+  @Test
+  public void testBalance() {
+    long[] loads = { 800, 100, 100, 0 };
+    SubpartitionPlan plan = SubpartitionPlan.balance(loads, 4, 3);
+    assertEquals(13, plan.subparts(0));
+    assertEquals(2, plan.subparts(1));
+    assertEquals(2, plan.subparts(2));
+    assertEquals(1, plan.subparts(3));
+    assertEquals(13, plan.stride());
+
+    double[] reducerLoads = new double[3];
+    for (int pid = 0; pid < loads.length; ++pid) {
+      for (int sub = 0; sub < plan.subparts(pid); ++sub) {
+        int reducer = plan.reducer(pid * plan.stride() + sub);
+        assertTrue(reducer >= 0 && reducer < 3);
+        reducerLoads[reducer] += (double) loads[pid] / plan.subparts(pid);
+      }
+      for (int sub = plan.subparts(pid); sub < plan.stride(); ++sub)
+        assertEquals(-1, plan.reducer(pid * plan.stride() + sub));
+    }
+    double[] uniformLoads = new double[3];
+    for (int qid = 0; qid < loads.length * 4; ++qid)
+      uniformLoads[qid % 3] += loads[qid / 4] / 4.0;
+    assertTrue(max(reducerLoads) <= 1.1 * 1000 / 3);
+    assertTrue(max(reducerLoads) < max(uniformLoads));
+  }
+
+  private double max(double[] values) {
+    double max = values[0];
+    for (double v : values)
+      max = Math.max(max, v);
+    return max;
+  }
+
+  /**
+   * Tests that the partitioner routes the edges by the plan stored in the job,
+   * and the vertices by hash.
+   */
+  @Test
+  public void testPartitioner() {
+    JobConf job = new JobConf();
+    SubpartitionPartitioner<IntKey, IntValue> partitioner = new SubpartitionPartitioner<IntKey, IntValue>();
+    partitioner.configure(job);
+    IntKey key = new IntKey();
+    key.set((short) 5, null, IngressKeyType.EDGEKEY);
+    assertEquals(5 % 3, partitioner.getPartition(key, null, 3));
+    assertNull(SubpartitionPlan.load(job));
+
+    SubpartitionPlan.balance(new long[] { 0, 900, 100 }, 2, 3).store(job);
+    SubpartitionPlan plan = SubpartitionPlan.load(job);
+    assertEquals(plan.stride(), job.getInt("subpartPerPartition", 0));
+    partitioner.configure(job);
+    for (int sub = 0; sub < plan.subparts(1); ++sub) {
+      short qid = (short) (plan.stride() + sub);
+      key.set(qid, null, IngressKeyType.EDGEKEY);
+      assertEquals(plan.reducer(qid), partitioner.getPartition(key, null, 3));
+    }
+    key.set((short) 1, new IntType(-7), IngressKeyType.VERTEXKEY);
+    assertEquals((new IntType(-7).hashCode() & Integer.MAX_VALUE) % 3,
+        partitioner.getPartition(key, null, 3));
+  }
+
+  /**
+   * Tests that with a skewed grid ingress, the sub-partitions of the heavy
+   * partitions outnumber those of the light ones.
+   */
+  @Test
+  public void testLocalJobRunner() throws Exception {
+    File dir = new File(System.getProperty("java.io.tmpdir"),
+        "subpartitionplantest");
+    FileSystem.getLocal(new JobConf()).delete(new Path(dir.getPath()), true);
+    dir.mkdirs();
+    File input = new File(dir, "edges");
+    Random rnd = new Random(3);
+    PrintWriter writer = new PrintWriter(new FileWriter(input));
+    for (int i = 0; i < 2500; ++i) {
+      if (rnd.nextInt(5) > 0)
+        writer.println("0\t" + (1 + rnd.nextInt(5000)));
+      else
+        writer.println((1 + rnd.nextInt(5000)) + "\t" + (1 + rnd.nextInt(5000)));
+    }
+    writer.close();
+
+    EdgeIngressMR mr = new EdgeIngressMR(BasicGraphParser.class,
+        IntParser.class, EmptyParser.class, EmptyParser.class);
+    mr.setKeyValueClass(IntKey.class, IntValue.class);
+    mr.setTotalSubPartition(4);
+    mr.setSkewAwareSplit(1000);
+    String output = new File(dir, "output").getPath();
+    RunningJob job = mr.run(new String[] { input.getPath() }, output, 16,
+        "grid");
+    assertTrue(job.isSuccessful());
+
+    int minSubparts = Integer.MAX_VALUE;
+    int maxSubparts = 0;
+    for (int pid = 0; pid < 16; ++pid) {
+      String[] subparts = new File(output, "partition" + pid).list();
+      int n = subparts == null ? 0 : subparts.length;
+      minSubparts = Math.min(minSubparts, n);
+      maxSubparts = Math.max(maxSubparts, n);
+    }
+    assertTrue(maxSubparts > 4);
+    assertTrue(minSubparts < 4);
+  }
+}
@@ -0,0 +1,190 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.test.partition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RunningJob;
+import org.junit.Test;
+
+import com.intel.hadoop.graphbuilder.parser.BasicGraphParser;
+import com.intel.hadoop.graphbuilder.parser.EmptyParser;
+import com.intel.hadoop.graphbuilder.parser.IntParser;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.edge.EdgeIngressMR;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.edge.EdgeIngressMapper;
+import com.intel.hadoop.graphbuilder.partition.mapreduce.edge.VertexRecordBuffer;
+import com.intel.hadoop.graphbuilder.test.partition.CoordinatedIngressTest.IntKey;
+import com.intel.hadoop.graphbuilder.test.partition.CoordinatedIngressTest.IntValue;
+import com.intel.hadoop.graphbuilder.types.IntType;
+
+/**
+ * Unit test for the in-mapper combining of the vertex records.
+ */
+public class VertexRecordBufferTest {
+
+  /** A vid whose key collides with every other instance. */
+  private static class CollidingVid {
+    @Override
+    public String toString() {
+      return "v";
+    }
+  }
+
+  /**
+   * Tests that the records of a vertex are combined, including partitions in
+   * different bitmap words, and that a full buffer rejects new vertices only.
+   */
+  @Test
+  public void testAdd() {
+    VertexRecordBuffer<IntType> buffer = new VertexRecordBuffer<IntType>(2,
+        130);
+    assertTrue(buffer.add(new IntType(7), 3, 0, 1));
+    assertTrue(buffer.add(new IntType(7), 129, 1, 0));
+    assertTrue(buffer.add(new IntType(7), 3, 0, 1));
+    assertTrue(buffer.add(new IntType(-1), 64, 1, 0));
+    assertTrue(buffer.isFull());
+    assertFalse(buffer.add(new IntType(8), 0, 1, 0));
+    assertTrue(buffer.add(new IntType(-1), 0, 1, 0));
+
+    assertEquals(2, buffer.size());
+    assertEquals(new IntType(7), buffer.vid(0));
+    BitSet pids = new BitSet();
+    buffer.pids(0, pids);
+    assertEquals(2, pids.cardinality());
+    assertTrue(pids.get(3) && pids.get(129));
+    assertEquals(1, buffer.inEdges(0));
+    assertEquals(2, buffer.outEdges(0));
+    buffer.pids(1, pids);
+    assertEquals(2, pids.cardinality());
+    assertTrue(pids.get(0) && pids.get(64));
+    assertEquals(2, buffer.inEdges(1));
+
+    buffer.clear();
+    assertEquals(0, buffer.size());
+    assertTrue(buffer.add(new IntType(8), 1, 1, 0));
+    buffer.pids(0, pids);
+    assertEquals(1, pids.cardinality());
+    assertEquals(1, buffer.inEdges(0));
+    assertEquals(0, buffer.outEdges(0));
+  }
+
+  /**
+   * Tests that a vertex whose key is taken by another vertex is not buffered.
+   */
+  @Test
+  public void testCollision() {
+    VertexRecordBuffer<CollidingVid> buffer = new VertexRecordBuffer<CollidingVid>(
+        4, 2);
+    CollidingVid a = new CollidingVid();
+    assertTrue(buffer.add(a, 0, 1, 0));
+    assertFalse(buffer.add(new CollidingVid(), 1, 1, 0));
+    assertTrue(buffer.add(a, 1, 1, 0));
+    assertEquals(1, buffer.size());
+  }
+
+  private static final Pattern VRECORD = Pattern
+      .compile("\"owner\":(\\d+),\"outEdges\":(\\d+),\"mirrors\":\\[([\\d,]*)\\],"
+          + "\"gvid\":(-?\\d+),\"vdata\":null,\"inEdges\":(\\d+)");
+
+  /**
+   * Reads the vertex records of an ingress output, with the owner merged into
+   * the mirrors since the owner is picked at random.
+   */
+  private HashMap<Integer, String> readVrecords(String output)
+      throws IOException {
+    HashMap<Integer, String> vrecords = new HashMap<Integer, String>();
+    BufferedReader reader = new BufferedReader(new FileReader(new File(output,
+        "vrecord/part-00000")));
+    for (String line = reader.readLine(); line != null; line = reader
+        .readLine()) {
+      Matcher m = VRECORD.matcher(line);
+      assertTrue(line, m.find());
+      TreeSet<Integer> pids = new TreeSet<Integer>();
+      pids.add(Integer.valueOf(m.group(1)));
+      for (String pid : m.group(3).split(","))
+        if (!pid.isEmpty())
+          pids.add(Integer.valueOf(pid));
+      vrecords.put(Integer.valueOf(m.group(4)), pids + " in=" + m.group(5)
+          + " out=" + m.group(2));
+    }
+    reader.close();
+    return vrecords;
+  }
+
+  private long mapOutputRecords(RunningJob job) throws IOException {
+    return job.getCounters()
+        .findCounter("org.apache.hadoop.mapred.Task$Counter",
+            "MAP_OUTPUT_RECORDS").getValue();
+  }
+
+  /**
+   * Tests that the combined vertex records are the same as without combining,
+   * with fewer map output records, including when the buffer is flushed before
+   * the end of the input.
+   */
+  @Test
+  public void testLocalJobRunner() throws Exception {
+    File dir = new File(System.getProperty("java.io.tmpdir"),
+        "vertexrecordbuffertest");
+    FileSystem.getLocal(new JobConf()).delete(new Path(dir.getPath()), true);
+    dir.mkdirs();
+    File input = new File(dir, "edges");
+    Random rnd = new Random(11);
+    PrintWriter writer = new PrintWriter(new FileWriter(input));
+    for (int i = 0; i < 3000; ++i)
+      writer.println(rnd.nextInt(100) + "\t" + rnd.nextInt(100));
+    writer.close();
+    String[] inputs = { input.getPath() };
+
+    String[] outputs = new String[2];
+    RunningJob[] jobs = new RunningJob[2];
+    for (int i = 0; i < 2; ++i) {
+      EdgeIngressMR mr = new EdgeIngressMR(BasicGraphParser.class,
+          IntParser.class, EmptyParser.class, EmptyParser.class);
+      mr.setKeyValueClass(IntKey.class, IntValue.class);
+      mr.setVertexCombining(i * 96);
+      outputs[i] = new File(dir, "output" + i).getPath();
+      jobs[i] = mr.run(inputs, outputs[i], 8, "grid");
+      assertTrue(jobs[i].isSuccessful());
+    }
+    assertEquals(readVrecords(outputs[0]), readVrecords(outputs[1]));
+    assertEquals(9000, mapOutputRecords(jobs[0]));
+    assertTrue(mapOutputRecords(jobs[1]) < 6000);
+    assertTrue(jobs[1].getCounters().getCounter(
+        EdgeIngressMapper.COUNTER.VERTEX_BUFFER_FLUSHES) > 1);
+  }
+}
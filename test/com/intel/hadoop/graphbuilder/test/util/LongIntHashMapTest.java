@@ -0,0 +1,127 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.test.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.intel.hadoop.graphbuilder.util.LongIntHashMap;
+
+/**
+ * Test for {@code LongIntHashMap}.
+ * 
+ * @see LongIntHashMap
+ */
+public class LongIntHashMapTest {
+
+  /**
+   * Test putIfAbsent and get against a {@code HashMap}, across rehashing.
+   */
+  @Test
+  public void testPutGet() {
+    LongIntHashMap map = new LongIntHashMap(4);
+    HashMap<Long, Integer> expected = new HashMap<Long, Integer>();
+    Random rnd = new Random(3);
+    for (int i = 0; i < 50000; ++i) {
+      long key = rnd.nextInt(20000) * 0x100000001L - 7;
+      Integer old = expected.get(key);
+      int ret = map.putIfAbsent(key, expected.size());
+      if (old == null) {
+        assertEquals(LongIntHashMap.NO_VALUE, ret);
+        expected.put(key, expected.size());
+      } else {
+        assertEquals(old.intValue(), ret);
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    for (Map.Entry<Long, Integer> e : expected.entrySet())
+      assertEquals(e.getValue().intValue(), map.get(e.getKey()));
+    assertFalse(map.containsKey(-6));
+
+    int found = 0;
+    for (int slot = 0; slot < map.capacity(); ++slot) {
+      if (map.valueAt(slot) != LongIntHashMap.NO_VALUE) {
+        assertEquals(expected.get(map.keyAt(slot)).intValue(),
+            map.valueAt(slot));
+        found++;
+      }
+    }
+    assertEquals(expected.size(), found);
+
+    map.clear();
+    assertEquals(0, map.size());
+    assertEquals(LongIntHashMap.NO_VALUE, map.get(-7));
+    map.putIfAbsent(-7, 0);
+    assertTrue(map.containsKey(-7));
+  }
+
+  /**
+   * Test that a map created for its final size holds its keys in about 8 / 7
+   * slots per key, and that a growing map stays within 12 / 7.
+   */
+  @Test
+  public void testFootprint() {
+    int n = 1000000;
+    LongIntHashMap sized = new LongIntHashMap(n);
+    LongIntHashMap growing = new LongIntHashMap();
+    for (int i = 0; i < n; ++i) {
+      sized.putIfAbsent(i * 31L, i);
+      growing.putIfAbsent(i * 31L, i);
+    }
+    assertEquals(n * 8 / 7 + 1, sized.capacity());
+    assertTrue(growing.capacity() <= n * 12L / 7);
+    for (int i = 0; i < n; i += 997)
+      assertEquals(i, growing.get(i * 31L));
+  }
+
+  /**
+   * Test remove against a {@code HashMap}, with keys colliding in a small
+   * table.
+   */
+  @Test
+  public void testRemove() {
+    LongIntHashMap map = new LongIntHashMap(64);
+    HashMap<Long, Integer> expected = new HashMap<Long, Integer>();
+    Random rnd = new Random(11);
+    for (int i = 0; i < 20000; ++i) {
+      long key = rnd.nextInt(80);
+      if (rnd.nextBoolean()) {
+        Integer old = expected.remove(key);
+        assertEquals(old == null ? LongIntHashMap.NO_VALUE : old.intValue(),
+            map.remove(key));
+      } else if (!expected.containsKey(key)) {
+        expected.put(key, i);
+        map.putIfAbsent(key, i);
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    for (long key = 0; key < 80; ++key) {
+      Integer value = expected.get(key);
+      assertEquals(value == null ? LongIntHashMap.NO_VALUE : value.intValue(),
+          map.get(key));
+    }
+  }
+}
@@ -23,11 +23,13 @@ import static org.junit.Assert.assertEquals;
 import java.util.ArrayList;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
 
 import com.intel.hadoop.graphbuilder.util.Parallel;
 import com.intel.hadoop.graphbuilder.util.Parallel.Operation;
+import com.intel.hadoop.graphbuilder.util.Parallel.RangeOperation;
 
 /**
  * Test for {@code Parallel}.
@@ -119,4 +121,83 @@ public class ParallelTest {
     for (int i = 0; i < counterArray.size(); ++i)
       assertEquals(counterArray.get(i).get(), counterArray2.get(i).get());
   }
+
+  /**
+   * Test range ParFor: every index in the range is visited exactly once.
+   */
+  @Test
+  public void testRange() {
+    final int n = 100000;
+    final int[] visited = new int[n];
+    final AtomicLong sum = new AtomicLong();
+    Parallel parfor = new Parallel();
+    parfor.For(0, n, new RangeOperation() {
+      @Override
+      public void perform(int begin, int end) {
+        long local = 0;
+        for (int i = begin; i < end; ++i) {
+          visited[i]++;
+          local += i;
+        }
+        sum.addAndGet(local);
+      }
+    });
+    for (int i = 0; i < n; ++i)
+      assertEquals(1, visited[i]);
+    assertEquals((long) n * (n - 1) / 2, sum.get());
+  }
+
+  /**
+   * Test that resizing the pool does not fail the loops running on it.
+   */
+  @Test
+  public void testResize() throws Exception {
+    final int n = 10000, rounds = 200;
+    final AtomicLong visited = new AtomicLong();
+    final Throwable[] error = new Throwable[1];
+    Thread worker = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int r = 0; r < rounds; ++r) {
+            new Parallel().For(0, n, 16, new RangeOperation() {
+              @Override
+              public void perform(int begin, int end) {
+                visited.addAndGet(end - begin);
+              }
+            });
+          }
+        } catch (Throwable t) {
+          error[0] = t;
+        }
+      }
+    };
+    int numThreads = Parallel.numThreads();
+    try {
+      worker.start();
+      for (int r = 0; worker.isAlive(); ++r)
+        Parallel.setNumThreads(2 + r % 2);
+      worker.join();
+    } finally {
+      Parallel.setNumThreads(numThreads);
+    }
+    if (error[0] != null)
+      throw new AssertionError(error[0]);
+    assertEquals((long) n * rounds, visited.get());
+  }
+
+  /**
+   * Test that an exception thrown by the operation reaches the caller.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testException() {
+    Parallel.setNumThreads(4);
+    new Parallel().For(0, 1000, 1, new RangeOperation() {
+      @Override
+      public void perform(int begin, int end) {
+        if (begin <= 500 && 500 < end)
+          throw new IllegalStateException("failed at 500");
+      }
+    });
+  }
 }
@@ -0,0 +1,122 @@
+/* Copyright (C) 2012 Intel Corporation.
+ *     All rights reserved.
+ *           
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * For more about this software visit:
+ *      http://www.01.org/GraphBuilder 
+ */
+package com.intel.hadoop.graphbuilder.test.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.intel.hadoop.graphbuilder.types.IntType;
+import com.intel.hadoop.graphbuilder.types.LongType;
+import com.intel.hadoop.graphbuilder.types.StringType;
+import com.intel.hadoop.graphbuilder.util.VarInt;
+
+/**
+ * Test for {@code VarInt}.
+ * 
+ * @see VarInt
+ */
+public class VarIntTest {
+
+  private static final int[] INTS = { 0, 1, -1, 63, -64, 64, 127, 128, 16383,
+      16384, Integer.MAX_VALUE, Integer.MIN_VALUE };
+
+  private static final long[] LONGS = { 0L, -1L, 1L << 35, -(1L << 35),
+      Long.MAX_VALUE, Long.MIN_VALUE };
+
+  /**
+   * Tests the round trip of signed and unsigned values, including the
+   * extremes.
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    for (int v : INTS) {
+      VarInt.writeSigned(out, v);
+      VarInt.writeUnsigned(out, v);
+    }
+    for (long v : LONGS) {
+      VarInt.writeSignedLong(out, v);
+      VarInt.writeUnsignedLong(out, v);
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+        bytes.toByteArray()));
+    for (int v : INTS) {
+      assertEquals(v, VarInt.readSigned(in));
+      assertEquals(v, VarInt.readUnsigned(in));
+    }
+    for (long v : LONGS) {
+      assertEquals(v, VarInt.readSignedLong(in));
+      assertEquals(v, VarInt.readUnsignedLong(in));
+    }
+    assertEquals(0, in.available());
+  }
+
+  /**
+   * Tests the encoded sizes: small magnitudes of either sign take one byte.
+   */
+  @Test
+  public void testSize() throws IOException {
+    assertEquals(1, size(-64));
+    assertEquals(1, size(63));
+    assertEquals(2, size(64));
+    assertEquals(5, size(Integer.MIN_VALUE));
+    assertEquals(1, VarInt.sizeOfUnsigned(127));
+    assertEquals(2, VarInt.sizeOfUnsigned(128));
+    assertEquals(5, VarInt.sizeOfUnsigned(-1));
+  }
+
+  /**
+   * Tests the round trip of the vids.
+   */
+  @Test
+  public void testVid() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    VarInt.writeVid(out, new IntType(-7));
+    VarInt.writeVid(out, new LongType(1L << 40));
+    VarInt.writeVid(out, new StringType("v"));
+    // 1 byte for -7, 6 for 2^40 and the text for "v"
+    assertEquals(1 + 6 + 2, bytes.size());
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+        bytes.toByteArray()));
+    IntType i = new IntType();
+    LongType l = new LongType();
+    StringType s = new StringType();
+    VarInt.readVid(in, i);
+    VarInt.readVid(in, l);
+    VarInt.readVid(in, s);
+    assertEquals(new IntType(-7), i);
+    assertEquals(new LongType(1L << 40), l);
+    assertEquals(new StringType("v"), s);
+  }
+
+  private int size(int v) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    VarInt.writeSigned(new DataOutputStream(bytes), v);
+    return bytes.size();
+  }
+}